@@ -1,10 +1,21 @@
 package com.tools;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.util.List;
 
 public class FileUtils {
+  // The path name that stands for standard input or standard output
+  public static final String STANDARD_STREAM = "-";
+
+  // The original standard output once it has been reserved for data
+  private static PrintStream standardOutput = null;
 
   /**
    * Returns a Path to a temporary directory that will be deleted when the JVM exits.
@@ -31,4 +42,71 @@ public class FileUtils {
 
     return path;
   }
+
+  /**
+   * Returns a boolean indicating if the path stands for standard input or standard output.
+   */
+  public static boolean isStandardStream(Path path) { return path.toString().equals(STANDARD_STREAM); }
+
+  /**
+   * Ensures that standard input is named at most once since it can only be read a single time.
+   *
+   * @param paths the List<Path> of inputs
+   * @throws IllegalArgumentException if standard input is named more than once
+   */
+  public static void checkStandardInput(List<Path> paths) {
+    int count = 0;
+    for (Path path : paths) if (isStandardStream(path)) count++;
+
+    if (count > 1) throw new IllegalArgumentException("standard input can only be used as a single input");
+  }
+
+  /**
+   * Opens the path for reading, where "-" reads from standard input.
+   *
+   * @throws IOException if the file cannot be opened
+   */
+  public static InputStream newInputStream(Path path) throws IOException {
+    InputStream inputStream;
+    if (isStandardStream(path)) inputStream = System.in;
+    else inputStream = Files.newInputStream(path);
+
+    return inputStream;
+  }
+
+  /**
+   * Reserves standard output for data so that anything else printed to it, such as log messages, is sent to standard
+   * error instead.  This should be called before any actors are started when writing to standard output.
+   */
+  public static synchronized void reserveStandardOutput() {
+    if (standardOutput == null) {
+      standardOutput = System.out;
+      System.setOut(System.err);
+    }
+  }
+
+  /**
+   * Opens the path for writing, where "-" writes to the reserved standard output.
+   *
+   * @throws IOException if the file cannot be opened
+   */
+  public static OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
+    OutputStream outputStream;
+    if (isStandardStream(path)) {
+      reserveStandardOutput();
+
+      // Closing the stream only flushes it so the process can still write to standard output afterwards
+      outputStream = new FilterOutputStream(standardOutput) {
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+          out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException { flush(); }
+      };
+    } else outputStream = Files.newOutputStream(path, options);
+
+    return outputStream;
+  }
 }
@@ -5,6 +5,7 @@ import com.google.common.base.Splitter;
 import com.tools.methylation.caller.MethylationRatioCaller;
 import com.tools.methylation.differential.DifferentialMethylationCaller;
 import com.tools.methylation.extractor.BismarkMethylationExtractor;
+import com.tools.methylation.extractor.ReadFilter;
 import com.tools.methylation.merger.MethylationCallMerger;
 import com.tools.methylation.population.MethylationPopulationCaller;
 import joptsimple.OptionParser;
@@ -46,10 +47,12 @@ public class Runner {
   public static void runCaller(String[] args) throws Exception {
     OptionParser parser = new OptionParser();
     ValueConverter<Path> PathConverter = new PathConverter();
-    OptionSpec<Path> input =
-      parser.accepts("input", "input methylation call file").withRequiredArg().withValuesConvertedBy(PathConverter);
-    OptionSpec<Path> output =
-      parser.accepts("output", "output methylation call file").withRequiredArg().withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> input = parser.accepts("input", "input methylation call file or - for stdin")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> output = parser.accepts("output", "output methylation call file or - for stdout")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
     OptionSpec<Integer> threads = parser.accepts("threads", "maximum number of threads")
       .withOptionalArg()
       .ofType(Integer.class)
@@ -64,6 +67,8 @@ public class Runner {
     OptionSet options = parser.parse(args);
 
     if (options.hasArgument(input) && options.hasArgument(output)) {
+      reserveStandardOutput(options.valueOf(output));
+
       Optional<Double> defaultErrorRate = Optional.fromNullable(options.valueOf(error));
 
       MethylationRatioCaller caller = new MethylationRatioCaller(
@@ -78,10 +83,12 @@ public class Runner {
   public static void runPopulationCaller(String[] args) throws Exception {
     OptionParser parser = new OptionParser();
     ValueConverter<Path> PathConverter = new PathConverter();
-    OptionSpec<Path> input =
-      parser.accepts("inputs", "input methylation call files").withRequiredArg().withValuesConvertedBy(PathConverter);
-    OptionSpec<Path> output =
-      parser.accepts("output", "output methylation call file").withRequiredArg().withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> input = parser.accepts("inputs", "input methylation call files, one of which may be - for stdin")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> output = parser.accepts("output", "output methylation call file or - for stdout")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
     OptionSpec<Integer> threads = parser.accepts("threads", "maximum number of threads")
       .withOptionalArg()
       .ofType(Integer.class)
@@ -96,6 +103,9 @@ public class Runner {
     OptionSet options = parser.parse(args);
 
     if (options.hasArgument(input) && options.hasArgument(output)) {
+      FileUtils.checkStandardInput(options.valuesOf(input));
+      reserveStandardOutput(options.valueOf(output));
+
       Optional<Integer> cutoff = Optional.fromNullable(options.valueOf(error));
 
       MethylationPopulationCaller caller = new MethylationPopulationCaller(
@@ -110,10 +120,12 @@ public class Runner {
   public static void runDifferentialCaller(String[] args) throws Exception {
     OptionParser parser = new OptionParser();
     ValueConverter<Path> PathConverter = new PathConverter();
-    OptionSpec<Path> input =
-      parser.accepts("input", "input methylation call files").withRequiredArg().withValuesConvertedBy(PathConverter);
-    OptionSpec<Path> output =
-      parser.accepts("output", "output methylation call file").withRequiredArg().withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> input = parser.accepts("input", "input methylation call files, one of which may be - for stdin")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> output = parser.accepts("output", "output methylation call file or - for stdout")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
     OptionSpec<String> conditions = parser.accepts("conditions", "input condition assignments").withRequiredArg();
     OptionSpec<Path> regions = parser
       .accepts("regions", "tab delimited file specifying regions for testing")
@@ -130,6 +142,9 @@ public class Runner {
     OptionSet options = parser.parse(args);
 
     if (options.hasArgument(input) && options.hasArgument(output) && options.hasArgument(conditions)) {
+      FileUtils.checkStandardInput(options.valuesOf(input));
+      reserveStandardOutput(options.valueOf(output));
+
       ArrayList<Integer> conditionValues = new ArrayList<>();
       Splitter splitter = Splitter.on(",");
       for (String stringValue : splitter.splitToList(options.valueOf(conditions))) {
@@ -157,10 +172,34 @@ public class Runner {
       parser.accepts("input", "input bismark alignment file").withRequiredArg().withValuesConvertedBy(PathConverter);
     OptionSpec<Path> output =
       parser.accepts("output", "prefix for output files").withRequiredArg().withValuesConvertedBy(PathConverter);
-    OptionSpec<String> controlContigs = parser.accepts("contigs", "contigs that biologically have no methylation")
+    // The contigs keep -c as their short option, which is otherwise ambiguous with the contexts
+    OptionSpec<String> controlContigs = parser
+      .acceptsAll(Arrays.asList("contigs", "c"), "contigs that biologically have no methylation")
       .withOptionalArg()
       .ofType(String.class)
       .withValuesSeparatedBy(' ');
+    OptionSpec<String> contexts = parser.accepts("contexts", "contexts to extract of CpG, CHG, CHH and CN_CHN")
+      .withRequiredArg()
+      .ofType(String.class)
+      .withValuesSeparatedBy(',')
+      .defaultsTo("CpG", "CHG", "CHH", "CN_CHN");
+    OptionSpec<Void> collapse = parser.accepts("collapse", "collapse the strands of each CpG into a single site");
+    OptionSpec<Void> deduplicate = parser.accepts("deduplicate", "drop PCR duplicates rather than counting them");
+    OptionSpec<Integer> mappingQuality = parser.accepts("mapq", "minimum mapping quality of a counted read")
+      .withRequiredArg()
+      .ofType(Integer.class)
+      .defaultsTo(0);
+    OptionSpec<Integer> excludedFlags = parser.accepts("exclude", "SAM flag bits of reads that are not counted")
+      .withRequiredArg()
+      .ofType(Integer.class)
+      .defaultsTo(0);
+    OptionSpec<Integer> baseQuality = parser.accepts("quality", "minimum base quality of a counted call")
+      .withRequiredArg()
+      .ofType(Integer.class)
+      .defaultsTo(0);
+    OptionSpec<Integer> nonCpgCount = parser.accepts("nonCpg", "maximum methylated non-CpG calls of a counted read")
+      .withRequiredArg()
+      .ofType(Integer.class);
     OptionSpec<Integer> threads = parser.accepts("threads", "maximum number of threads")
       .withOptionalArg()
       .ofType(Integer.class)
@@ -172,10 +211,20 @@ public class Runner {
     OptionSet options = parser.parse(args);
 
     if (options.hasArgument(input) && options.hasArgument(output)) {
+      ReadFilter readFilter = new ReadFilter(
+        options.valueOf(mappingQuality),
+        options.valueOf(excludedFlags),
+        options.valueOf(baseQuality),
+        options.has(nonCpgCount) ? options.valueOf(nonCpgCount) : ReadFilter.NONE.maxMethylatedNonCpgCount
+      );
       BismarkMethylationExtractor extractor = new BismarkMethylationExtractor(
         options.valueOf(input),
         options.valueOf(output),
-        options.valuesOf(controlContigs)
+        options.valuesOf(controlContigs),
+        options.valuesOf(contexts),
+        options.has(collapse),
+        options.has(deduplicate),
+        readFilter
       );
       extractor.run(options.valueOf(threads));
     } else parser.printHelpOn(System.out);
@@ -184,10 +233,12 @@ public class Runner {
   public static void runMerger(String[] args) throws Exception {
     OptionParser parser = new OptionParser();
     ValueConverter<Path> PathConverter = new PathConverter();
-    OptionSpec<Path> input =
-      parser.accepts("input", "input methylation call files").withRequiredArg().withValuesConvertedBy(PathConverter);
-    OptionSpec<Path> output =
-      parser.accepts("output", "output methylation call file").withRequiredArg().withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> input = parser.accepts("input", "input methylation call files, one of which may be - for stdin")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
+    OptionSpec<Path> output = parser.accepts("output", "output methylation call file or - for stdout")
+      .withRequiredArg()
+      .withValuesConvertedBy(PathConverter);
     OptionSpec<Integer> threads = parser.accepts("threads", "maximum number of threads")
       .withOptionalArg()
       .ofType(Integer.class)
@@ -199,6 +250,9 @@ public class Runner {
     OptionSet options = parser.parse(args);
 
     if (options.hasArgument(input) && options.hasArgument(output)) {
+      FileUtils.checkStandardInput(options.valuesOf(input));
+      reserveStandardOutput(options.valueOf(output));
+
       MethylationCallMerger merger = new MethylationCallMerger(
         options.valuesOf(input),
         options.valueOf(output)
@@ -207,6 +261,11 @@ public class Runner {
     } else parser.printHelpOn(System.out);
   }
 
+  // Ensures nothing but the data is written to standard output when it is used as the output
+  private static void reserveStandardOutput(Path outputPath) {
+    if (FileUtils.isStandardStream(outputPath)) FileUtils.reserveStandardOutput();
+  }
+
   private static void displayHelp() {
     System.out.println("Program: tools");
     System.out.println("Version: 0.1");
@@ -5,6 +5,7 @@ import akka.japi.Function;
 import akka.pattern.Patterns;
 import akka.routing.Broadcast;
 import akka.routing.RoundRobinRouter;
+import com.google.common.base.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.concurrent.Await;
@@ -42,6 +43,9 @@ public abstract class AbstractMaster extends UntypedActor {
   // The int number of workers
   private final int workerCount;
 
+  // Indicates if the workers are a pool shared with other masters, which outlives this actor
+  protected final boolean hasSharedWorkers;
+
   // Indicates whether internal status should be logged
   private boolean verbose;
 
@@ -56,15 +60,22 @@ public abstract class AbstractMaster extends UntypedActor {
     this.writerRef = getContext().actorOf(builder.writerProps(getSelf()), "writer");
 
     this.workerCount = builder.workerCount;
-    Props workerProps = builder.workerProps(writerRef).withRouter(new RoundRobinRouter(workerCount));
-    this.workerRef = getContext().actorOf(workerProps, "worker");
-
-    this.readerRef = getContext().actorOf(builder.readerProps(workerRef), "reader");
+    Optional<ActorRef> workerPool = builder.workerPool();
+    this.hasSharedWorkers = workerPool.isPresent();
+    if (hasSharedWorkers) {
+      // The work names the writer that the shared workers send it to once it is complete
+      this.workerRef = workerPool.get();
+      this.readerRef = getContext().actorOf(builder.readerProps(workerRef, writerRef), "reader");
+    } else {
+      Props workerProps = builder.workerProps(writerRef).withRouter(new RoundRobinRouter(workerCount));
+      this.workerRef = getContext().actorOf(workerProps, "worker");
+      this.readerRef = getContext().actorOf(builder.readerProps(workerRef), "reader");
+    }
 
     // Set up the reaper for graceful shutdown
     this.reaperRef = getContext().actorOf(Reaper.props());
     reaperRef.tell(new AbstractMessages.WatchMe(readerRef), getSelf());
-    reaperRef.tell(new AbstractMessages.WatchMe(workerRef), getSelf());
+    if (!hasSharedWorkers) reaperRef.tell(new AbstractMessages.WatchMe(workerRef), getSelf());
     reaperRef.tell(new AbstractMessages.WatchMe(writerRef), getSelf());
     getContext().watch(reaperRef);
 
@@ -103,8 +114,8 @@ public abstract class AbstractMaster extends UntypedActor {
 
   protected void handleCustom(Object message) { unhandled(message); }
   protected void onCompletion() {
-    // The process is complete so shutdown
-    workerRef.tell(new Broadcast(PoisonPill.getInstance()), getSelf());
+    // The process is complete so shutdown, leaving a shared pool of workers to its owner
+    if (!hasSharedWorkers) workerRef.tell(new Broadcast(PoisonPill.getInstance()), getSelf());
     writerRef.tell(PoisonPill.getInstance(), getSelf());
   }
 
@@ -177,6 +188,18 @@ public abstract class AbstractMaster extends UntypedActor {
       this.workerCount = Math.max(threadCount - 2, 1);
     }
 
+    /**
+     * Returns the pool of workers that the work is routed to in place of workers of the master's own, which is shared
+     * with other masters and so is neither watched nor stopped by the master.
+     */
+    protected Optional<ActorRef> workerPool() { return Optional.absent(); }
+
+    /**
+     * Returns the Props of the reader when the work is routed to a shared pool of workers, which are not bound to the
+     * writer of the master and so must be sent the writer along with the work.
+     */
+    protected Props readerProps(ActorRef workerRef, ActorRef writerRef) { return readerProps(workerRef); }
+
     protected abstract Props readerProps(ActorRef workerRef);
     protected abstract Props workerProps(ActorRef writerRef);
     protected abstract Props writerProps(ActorRef masterRef);
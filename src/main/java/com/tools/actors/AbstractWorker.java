@@ -19,11 +19,17 @@ public abstract class AbstractWorker<T extends AbstractMessages.Work,
 
     if (getWorkClass().isAssignableFrom(message.getClass())) {
       // Perform the calling
-      AbstractMessages.WorkComplete workComplete = work((T) message);
-      writerRef.tell(workComplete, getSelf());
+      T work = (T) message;
+      AbstractMessages.WorkComplete workComplete = work(work);
+      getWriterRef(work).tell(workComplete, getSelf());
     } else unhandled(message);
   }
 
+  /**
+   * Returns the writer that the completed work is sent to, which workers shared by several writers take from the work.
+   */
+  protected ActorRef getWriterRef(T message) { return writerRef; }
+
   protected abstract Class<T> getWorkClass();
   protected abstract U work(T message);
 }
@@ -0,0 +1,176 @@
+package com.tools.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 block compressor in the style of LZ4.  A block is a series of sequences, each of which is a token
+ * holding the literal and match lengths, the literals, a two byte little endian match offset and any extended match
+ * length.  The final sequence only holds literals.  Matches are found with a single probe into a hash table of the
+ * preceding four byte sequences, which trades compression ratio for speed.
+ */
+final class BlockLz {
+  // The size of the hash table of previously seen sequences
+  private static final int HASH_LOG = 12;
+  static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+
+  private static final int MIN_MATCH = 4;
+  private static final int MAX_OFFSET = 0xFFFF;
+
+  // The end of a block is always encoded as literals so the decoder can copy matches without overrunning
+  private static final int LAST_LITERALS = 5;
+  private static final int MATCH_FIND_LIMIT = 12;
+
+  private BlockLz() { }
+
+  /**
+   * Returns the maximum number of bytes needed to compress a block of the specified length.
+   */
+  static int maxCompressedLength(int length) { return length + length / 255 + 16; }
+
+  /**
+   * Compresses the source bytes into the destination, which must have room for the maximum compressed length.
+   *
+   * @param source        the byte[] to compress
+   * @param length        the int number of bytes of the source to compress
+   * @param destination   the byte[] in which to write the compressed bytes
+   * @param hashTable     the int[] hash table with HASH_TABLE_SIZE entries, which is reused between blocks
+   * @return the int number of compressed bytes
+   */
+  static int compress(byte[] source, int length, byte[] destination, int[] hashTable) {
+    Arrays.fill(hashTable, -1);
+
+    int anchor = 0;
+    int position = 0;
+    int outputPosition = 0;
+    int matchLimit = length - LAST_LITERALS;
+    int searchLimit = length - MATCH_FIND_LIMIT;
+    while (position < searchLimit) {
+      int sequence = readInt(source, position);
+      int hash = hash(sequence);
+      int reference = hashTable[hash];
+      hashTable[hash] = position;
+
+      if (reference < 0 || position - reference > MAX_OFFSET || readInt(source, reference) != sequence) {
+        position++;
+        continue;
+      }
+
+      // Extend the match backwards over the pending literals and then forwards
+      while (position > anchor && reference > 0 && source[position - 1] == source[reference - 1]) {
+        position--;
+        reference--;
+      }
+      int matchLength = MIN_MATCH;
+      while (position + matchLength < matchLimit && source[position + matchLength] == source[reference + matchLength]) {
+        matchLength++;
+      }
+
+      outputPosition = writeLiterals(source, anchor, position - anchor, matchLength - MIN_MATCH, destination,
+        outputPosition);
+      int offset = position - reference;
+      destination[outputPosition++] = (byte) offset;
+      destination[outputPosition++] = (byte) (offset >>> 8);
+      if (matchLength - MIN_MATCH >= 15) outputPosition = writeLength(matchLength - MIN_MATCH - 15, destination,
+        outputPosition);
+
+      position += matchLength;
+      anchor = position;
+    }
+
+    // Write the remaining bytes as literals
+    return writeLiterals(source, anchor, length - anchor, 0, destination, outputPosition);
+  }
+
+  /**
+   * Decompresses a block into the destination.
+   *
+   * @param source            the byte[] holding the compressed block
+   * @param length            the int number of compressed bytes
+   * @param destination       the byte[] in which to write the decompressed bytes
+   * @param expectedLength    the int number of bytes the block decompresses to
+   * @throws IOException if the block is corrupt
+   */
+  static void decompress(byte[] source, int length, byte[] destination, int expectedLength) throws IOException {
+    int position = 0;
+    int outputPosition = 0;
+    while (position < length) {
+      int token = source[position++] & 0xFF;
+
+      // Copy the literals
+      int literalLength = token >>> 4;
+      if (literalLength == 15) {
+        int extension;
+        do {
+          if (position >= length) throw new IOException("truncated literal length");
+          extension = source[position++] & 0xFF;
+          literalLength += extension;
+        } while (extension == 255);
+      }
+      if (position + literalLength > length || outputPosition + literalLength > expectedLength) {
+        throw new IOException("literals overrun the block");
+      }
+      System.arraycopy(source, position, destination, outputPosition, literalLength);
+      position += literalLength;
+      outputPosition += literalLength;
+
+      // The final sequence has no match
+      if (position == length) break;
+
+      // Copy the match, which may overlap the bytes being written
+      if (position + 2 > length) throw new IOException("truncated match offset");
+      int offset = (source[position] & 0xFF) | ((source[position + 1] & 0xFF) << 8);
+      position += 2;
+      int matchLength = token & 0x0F;
+      if (matchLength == 15) {
+        int extension;
+        do {
+          if (position >= length) throw new IOException("truncated match length");
+          extension = source[position++] & 0xFF;
+          matchLength += extension;
+        } while (extension == 255);
+      }
+      matchLength += MIN_MATCH;
+
+      int reference = outputPosition - offset;
+      if (offset == 0 || reference < 0 || outputPosition + matchLength > expectedLength) {
+        throw new IOException("invalid match in block");
+      }
+      for (int index = 0; index < matchLength; index++) destination[outputPosition++] = destination[reference++];
+    }
+
+    if (outputPosition != expectedLength) throw new IOException("block decompressed to an unexpected length");
+  }
+
+  private static int writeLiterals(byte[] source,
+                                   int start,
+                                   int literalLength,
+                                   int matchToken,
+                                   byte[] destination,
+                                   int outputPosition) {
+    destination[outputPosition++] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(matchToken, 15));
+    if (literalLength >= 15) outputPosition = writeLength(literalLength - 15, destination, outputPosition);
+
+    System.arraycopy(source, start, destination, outputPosition, literalLength);
+    return outputPosition + literalLength;
+  }
+
+  private static int writeLength(int length, byte[] destination, int outputPosition) {
+    while (length >= 255) {
+      destination[outputPosition++] = (byte) 255;
+      length -= 255;
+    }
+    destination[outputPosition++] = (byte) length;
+
+    return outputPosition;
+  }
+
+  private static int readInt(byte[] bytes, int position) {
+    return (bytes[position] & 0xFF) |
+      ((bytes[position + 1] & 0xFF) << 8) |
+      ((bytes[position + 2] & 0xFF) << 16) |
+      ((bytes[position + 3] & 0xFF) << 24);
+  }
+
+  private static int hash(int sequence) { return (sequence * -1640531535) >>> (32 - HASH_LOG); }
+}
@@ -0,0 +1,91 @@
+package com.tools.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that decompresses the blocks written by a BlockLzOutputStream.  Streams that were appended to one
+ * another are read as a single stream since the magic bytes can never be mistaken for a block length.
+ */
+class BlockLzInputStream extends InputStream {
+  private final DataInputStream inputStream;
+  private final byte[] buffer;
+  private final byte[] compressedBuffer;
+  private int bufferPosition = 0;
+  private int bufferLength = 0;
+  private boolean isExhausted = false;
+
+  public BlockLzInputStream(InputStream inputStream) throws IOException {
+    this.inputStream = new DataInputStream(inputStream);
+    this.buffer = new byte[BlockLzOutputStream.BLOCK_SIZE];
+    this.compressedBuffer = new byte[BlockLzOutputStream.BLOCK_SIZE];
+
+    if (this.inputStream.readInt() != CompressionCodec.BLOCK_LZ_MAGIC) {
+      throw new IOException("input is not block compressed");
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (bufferPosition == bufferLength && !readBlock()) return -1;
+
+    return buffer[bufferPosition++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) return 0;
+    if (bufferPosition == bufferLength && !readBlock()) return -1;
+
+    int count = Math.min(length, bufferLength - bufferPosition);
+    System.arraycopy(buffer, bufferPosition, bytes, offset, count);
+    bufferPosition += count;
+
+    return count;
+  }
+
+  @Override
+  public int available() { return bufferLength - bufferPosition; }
+
+  @Override
+  public void close() throws IOException { inputStream.close(); }
+
+  /**
+   * Reads and decompresses the next non-empty block, returning false if the input is exhausted.
+   */
+  private boolean readBlock() throws IOException {
+    bufferPosition = 0;
+    bufferLength = 0;
+
+    while (!isExhausted && bufferLength == 0) {
+      // The input may only end between blocks
+      int firstByte = inputStream.read();
+      if (firstByte < 0) {
+        isExhausted = true;
+        break;
+      }
+
+      int length = (firstByte << 24) | (inputStream.readUnsignedByte() << 16) | inputStream.readUnsignedShort();
+      if (length == CompressionCodec.BLOCK_LZ_MAGIC) continue;
+      if (length < 0 || length > BlockLzOutputStream.BLOCK_SIZE) throw new IOException("invalid block length");
+
+      int storedLength = inputStream.readInt();
+      if (storedLength < 0 || storedLength > length) throw new IOException("invalid stored block length");
+
+      try {
+        if (storedLength == length) inputStream.readFully(buffer, 0, length);
+        else {
+          inputStream.readFully(compressedBuffer, 0, storedLength);
+          BlockLz.decompress(compressedBuffer, storedLength, buffer, length);
+        }
+      } catch (EOFException exception) {
+        throw new IOException("truncated block", exception);
+      }
+      bufferLength = length;
+    }
+
+    return bufferLength > 0;
+  }
+}
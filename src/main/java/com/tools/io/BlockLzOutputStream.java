@@ -0,0 +1,84 @@
+package com.tools.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that compresses its bytes with BlockLz.  The stream starts with the codec magic bytes and is followed
+ * by blocks, each with a header of its decompressed and stored lengths.  A block that does not shrink is stored as is,
+ * which is marked by the stored length matching the decompressed length.
+ */
+class BlockLzOutputStream extends OutputStream {
+  // The maximum number of decompressed bytes in a block
+  static final int BLOCK_SIZE = 1 << 16;
+
+  private final DataOutputStream outputStream;
+  private final byte[] buffer;
+  private final byte[] compressedBuffer;
+  private final int[] hashTable;
+  private int bufferLength = 0;
+  private boolean isClosed = false;
+
+  public BlockLzOutputStream(OutputStream outputStream) throws IOException {
+    this.outputStream = new DataOutputStream(outputStream);
+    this.buffer = new byte[BLOCK_SIZE];
+    this.compressedBuffer = new byte[BlockLz.maxCompressedLength(BLOCK_SIZE)];
+    this.hashTable = new int[BlockLz.HASH_TABLE_SIZE];
+
+    this.outputStream.writeInt(CompressionCodec.BLOCK_LZ_MAGIC);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (bufferLength == BLOCK_SIZE) writeBlock();
+    buffer[bufferLength++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (bufferLength == BLOCK_SIZE) writeBlock();
+
+      int count = Math.min(length, BLOCK_SIZE - bufferLength);
+      System.arraycopy(bytes, offset, buffer, bufferLength, count);
+      bufferLength += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writeBlock();
+    outputStream.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (isClosed) return;
+
+    isClosed = true;
+    try {
+      writeBlock();
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    if (bufferLength == 0) return;
+
+    int compressedLength = BlockLz.compress(buffer, bufferLength, compressedBuffer, hashTable);
+    outputStream.writeInt(bufferLength);
+    if (compressedLength < bufferLength) {
+      outputStream.writeInt(compressedLength);
+      outputStream.write(compressedBuffer, 0, compressedLength);
+    } else {
+      outputStream.writeInt(bufferLength);
+      outputStream.write(buffer, 0, bufferLength);
+    }
+
+    bufferLength = 0;
+  }
+}
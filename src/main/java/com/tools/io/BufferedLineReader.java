@@ -5,10 +5,9 @@ import com.google.common.collect.PeekingIterator;
 
 import java.io.*;
 import java.util.NoSuchElementException;
-import java.util.zip.GZIPInputStream;
 
 /**
- * A PeekingIterator over the lines in the provided InputStream.
+ * A PeekingIterator over the lines in the provided InputStream, which may be compressed with any CompressionCodec.
  */
 public class BufferedLineReader implements PeekingIterator<String>, Closeable {
   private BufferedReader reader;
@@ -22,23 +21,8 @@ public class BufferedLineReader implements PeekingIterator<String>, Closeable {
    * @throws IOException if the InputStream cannot be read
    */
   public BufferedLineReader(InputStream inputStream) throws IOException {
-    // Ensure that input stream can be reset
-    if (!inputStream.markSupported()) {
-      inputStream = new BufferedInputStream(inputStream);
-    }
-    inputStream.mark(2);
-
-    // Read the first two byes to see if they are the gzip magic header
-    int magicHeader = inputStream.read() & 0xFF | ((inputStream.read() << 8) & 0xFF00);
-    inputStream.reset();
-
-    InputStream processedInputStream;
-    if (magicHeader == GZIPInputStream.GZIP_MAGIC) {
-      // Treat the input as gzip
-      processedInputStream = new GZIPInputStream(inputStream);
-    } else {
-      processedInputStream = inputStream;
-    }
+    // Decompress the input according to its magic bytes
+    InputStream processedInputStream = CompressionCodec.decompressDetected(inputStream);
 
     this.reader = new BufferedReader(new InputStreamReader(processedInputStream));
     this.bufferedLine = Optional.absent();
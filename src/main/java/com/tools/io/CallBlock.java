@@ -0,0 +1,223 @@
+package com.tools.io;
+
+import com.google.common.collect.AbstractIterator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A block of ordered methylation calls stored column-wise in parallel primitive arrays.  Consecutive calls on the same
+ * contig share a single contig run, so each call costs only its positional and count payload.
+ */
+public class CallBlock implements Iterable<MethylationCall> {
+  // The approximate number of bytes needed to hold a single call including the ratio
+  public static final int BYTES_PER_CALL = 24;
+
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  // The contig runs with the index of the first call belonging to each run
+  private String[] runContigs;
+  private int[] runStarts;
+  private int runCount = 0;
+
+  // The per call columns, where the ratios are null if the block does not carry ratios
+  private int[] positions;
+  private byte[] strands;
+  private int[] methylatedCounts;
+  private int[] totalCounts;
+  private double[] ratios;
+  private int size = 0;
+
+  public CallBlock() { this(DEFAULT_CAPACITY, false); }
+
+  public CallBlock(int capacity, boolean hasRatios) {
+    int initialCapacity = Math.max(capacity, 1);
+
+    this.runContigs = new String[8];
+    this.runStarts = new int[8];
+
+    this.positions = new int[initialCapacity];
+    this.strands = new byte[initialCapacity];
+    this.methylatedCounts = new int[initialCapacity];
+    this.totalCounts = new int[initialCapacity];
+    this.ratios = hasRatios ? new double[initialCapacity] : null;
+  }
+
+  /**
+   * Appends a call without a ratio to the end of the block.
+   *
+   * @param contig          the String name of the contig
+   * @param position        the int position of the call
+   * @param strand          the char strand of the call
+   * @param methylatedCount the int number of methylated observations
+   * @param totalCount      the int total number of observations
+   */
+  public void add(String contig, int position, char strand, int methylatedCount, int totalCount) {
+    if (ratios != null) throw new IllegalStateException("block requires a ratio for every call");
+
+    append(contig, position, strand, methylatedCount, totalCount);
+  }
+
+  /**
+   * Appends a call with a ratio to the end of the block.
+   *
+   * @param contig          the String name of the contig
+   * @param position        the int position of the call
+   * @param strand          the char strand of the call
+   * @param methylatedCount the int number of methylated observations
+   * @param totalCount      the int total number of observations
+   * @param ratio           the double methylation ratio of the call
+   */
+  public void add(String contig, int position, char strand, int methylatedCount, int totalCount, double ratio) {
+    if (ratios == null) throw new IllegalStateException("block does not carry ratios");
+
+    append(contig, position, strand, methylatedCount, totalCount);
+    ratios[size - 1] = ratio;
+  }
+
+  /**
+   * Appends the MethylationCall to the end of the block.
+   *
+   * @param call  the MethylationCall to add
+   */
+  public void add(MethylationCall call) {
+    if (ratios != null) {
+      add(call.contig, call.position, call.strand, call.methylatedCount, call.totalCount, call.ratio.get());
+    } else add(call.contig, call.position, call.strand, call.methylatedCount, call.totalCount);
+  }
+
+  public boolean hasRatios() { return ratios != null; }
+  public boolean isEmpty() { return size == 0; }
+  public int size() { return size; }
+
+  public int getPosition(int index) { return positions[index]; }
+  public char getStrand(int index) { return (char) strands[index]; }
+  public int getMethylatedCount(int index) { return methylatedCounts[index]; }
+  public int getTotalCount(int index) { return totalCounts[index]; }
+
+  public double getRatio(int index) {
+    if (ratios == null) throw new IllegalStateException("block does not carry ratios");
+
+    return ratios[index];
+  }
+
+  /**
+   * Returns the name of the contig of the call at the specified index.
+   */
+  public String getContig(int index) {
+    if (index < 0 || index >= size) throw new IndexOutOfBoundsException("no call at index " + index);
+
+    // Locate the run containing the index
+    int run = Arrays.binarySearch(runStarts, 0, runCount, index);
+    if (run < 0) run = -run - 2;
+
+    return runContigs[run];
+  }
+
+  public int getRunCount() { return runCount; }
+  public String getRunContig(int run) { return runContigs[run]; }
+  public int getRunStart(int run) { return runStarts[run]; }
+  public int getRunEnd(int run) { return run + 1 < runCount ? runStarts[run + 1] : size; }
+
+  /**
+   * Returns the call at the specified index as a MethylationCall.
+   */
+  public MethylationCall get(int index) {
+    return toCall(getContig(index), index);
+  }
+
+  /**
+   * Returns the last call in the block as a MethylationCall.
+   */
+  public MethylationCall getLast() {
+    if (size == 0) throw new IndexOutOfBoundsException("block is empty");
+
+    return toCall(runContigs[runCount - 1], size - 1);
+  }
+
+  @Override
+  public Iterator<MethylationCall> iterator() {
+    return new AbstractIterator<MethylationCall>() {
+      private int run = 0;
+      private int index = 0;
+
+      @Override
+      protected MethylationCall computeNext() {
+        MethylationCall nextCall;
+        if (index < size) {
+          while (index >= getRunEnd(run)) run++;
+          nextCall = toCall(runContigs[run], index++);
+        } else nextCall = endOfData();
+
+        return nextCall;
+      }
+    };
+  }
+
+  /**
+   * Returns a CallBlock holding the provided calls, which carries ratios if the first call has a ratio.
+   *
+   * @param calls the Iterable<MethylationCall> to copy into the block
+   * @return a CallBlock with the calls in iteration order
+   */
+  public static CallBlock fromCalls(Iterable<MethylationCall> calls) {
+    Iterator<MethylationCall> iterator = calls.iterator();
+    boolean hasRatios = iterator.hasNext() && iterator.next().ratio.isPresent();
+
+    CallBlock block = new CallBlock(DEFAULT_CAPACITY, hasRatios);
+    for (MethylationCall call : calls) block.add(call);
+
+    return block;
+  }
+
+  private void append(String contig, int position, char strand, int methylatedCount, int totalCount) {
+    if (size == positions.length) grow();
+
+    // Start a new run if the contig changes
+    if (runCount == 0 || !runContigs[runCount - 1].equals(contig)) {
+      if (runCount == runContigs.length) {
+        runContigs = Arrays.copyOf(runContigs, 2 * runCount);
+        runStarts = Arrays.copyOf(runStarts, 2 * runCount);
+      }
+      runContigs[runCount] = contig;
+      runStarts[runCount] = size;
+      runCount++;
+    }
+
+    positions[size] = position;
+    strands[size] = (byte) strand;
+    methylatedCounts[size] = methylatedCount;
+    totalCounts[size] = totalCount;
+    size++;
+  }
+
+  private void grow() {
+    int capacity = 2 * positions.length;
+    positions = Arrays.copyOf(positions, capacity);
+    strands = Arrays.copyOf(strands, capacity);
+    methylatedCounts = Arrays.copyOf(methylatedCounts, capacity);
+    totalCounts = Arrays.copyOf(totalCounts, capacity);
+    if (ratios != null) ratios = Arrays.copyOf(ratios, capacity);
+  }
+
+  private MethylationCall toCall(String contig, int index) {
+    if (ratios != null) {
+      return new MethylationCall(
+        contig,
+        positions[index],
+        (char) strands[index],
+        methylatedCounts[index],
+        totalCounts[index],
+        ratios[index]
+      );
+    } else {
+      return new MethylationCall(
+        contig,
+        positions[index],
+        (char) strands[index],
+        methylatedCounts[index],
+        totalCounts[index]
+      );
+    }
+  }
+}
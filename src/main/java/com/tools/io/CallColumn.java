@@ -0,0 +1,11 @@
+package com.tools.io;
+
+/**
+ * The value columns of a methylation call, used to select which columns a reader converts.  The contig, position and
+ * strand columns are always read.
+ */
+public enum CallColumn {
+  METHYLATED_COUNT,
+  TOTAL_COUNT,
+  RATIO
+}
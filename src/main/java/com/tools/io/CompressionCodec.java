@@ -0,0 +1,147 @@
+package com.tools.io;
+
+import com.tools.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression formats understood for call files and intermediate spills.  Inputs are recognized by their magic
+ * bytes while outputs are compressed according to their file extension.  GZIP is written at its fastest level and
+ * BLOCK_LZ is an in-tree LZ codec for when speed matters more than the compression ratio.
+ */
+public enum CompressionCodec {
+  NONE("") {
+    @Override
+    public OutputStream compress(OutputStream outputStream) { return outputStream; }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) { return inputStream; }
+  },
+  GZIP(".gz") {
+    @Override
+    public OutputStream compress(OutputStream outputStream) throws IOException {
+      return new GZIPOutputStream(outputStream, BUFFER_SIZE) {
+        {
+          def.setLevel(Deflater.BEST_SPEED);
+        }
+      };
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) throws IOException {
+      return new GZIPInputStream(inputStream, BUFFER_SIZE);
+    }
+  },
+  BLOCK_LZ(".blz") {
+    @Override
+    public OutputStream compress(OutputStream outputStream) throws IOException {
+      return new BlockLzOutputStream(outputStream);
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) throws IOException {
+      return new BlockLzInputStream(inputStream);
+    }
+  };
+
+  // The magic bytes at the start of a BLOCK_LZ stream, which are "BLZ" followed by the format version
+  static final int BLOCK_LZ_MAGIC = 0x424C5A01;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  public final String extension;
+
+  CompressionCodec(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * Returns an OutputStream that compresses the bytes written to it into the provided stream.
+   */
+  public abstract OutputStream compress(OutputStream outputStream) throws IOException;
+
+  /**
+   * Returns an InputStream that decompresses the bytes read from the provided stream.
+   */
+  public abstract InputStream decompress(InputStream inputStream) throws IOException;
+
+  /**
+   * Returns the codec identified by the extension of the path, which is NONE for an unrecognized extension.
+   */
+  public static CompressionCodec forPath(Path path) {
+    String fileName = path.getFileName().toString();
+
+    CompressionCodec codec = NONE;
+    for (CompressionCodec candidate : values()) {
+      if (candidate != NONE && fileName.endsWith(candidate.extension)) codec = candidate;
+    }
+
+    return codec;
+  }
+
+  /**
+   * Returns the codec identified by the magic bytes at the start of the stream, leaving the stream unchanged.
+   *
+   * @param inputStream   an InputStream that supports mark
+   * @throws IOException if the stream cannot be read
+   */
+  public static CompressionCodec detect(InputStream inputStream) throws IOException {
+    if (!inputStream.markSupported()) throw new IllegalArgumentException("input stream does not support mark");
+
+    inputStream.mark(4);
+    int magic = 0;
+    int count = 0;
+    int b;
+    while (count < 4 && (b = inputStream.read()) >= 0) {
+      magic = (magic << 8) | b;
+      count++;
+    }
+    inputStream.reset();
+
+    CompressionCodec codec;
+    if (count >= 2 && (magic >>> (8 * (count - 2))) == 0x1F8B) codec = GZIP;
+    else if (count == 4 && magic == BLOCK_LZ_MAGIC) codec = BLOCK_LZ;
+    else codec = NONE;
+
+    return codec;
+  }
+
+  /**
+   * Returns an InputStream over the decompressed bytes of the stream, detecting its codec by its magic bytes.
+   *
+   * @throws IOException if the stream cannot be read
+   */
+  public static InputStream decompressDetected(InputStream inputStream) throws IOException {
+    if (!inputStream.markSupported()) inputStream = new BufferedInputStream(inputStream, BUFFER_SIZE);
+
+    return detect(inputStream).decompress(inputStream);
+  }
+
+  /**
+   * Opens the path, or standard input for "-", for reading, decompressing its contents according to its magic bytes.
+   *
+   * @throws IOException if the file cannot be opened
+   */
+  public static InputStream newInputStream(Path path) throws IOException {
+    return decompressDetected(FileUtils.newInputStream(path));
+  }
+
+  /**
+   * Opens the path, or standard output for "-", for writing, compressing its contents according to its extension.
+   * Appending to a compressed file starts a new compressed stream, which is read back as a continuation of the
+   * existing one.
+   *
+   * @throws IOException if the file cannot be opened
+   */
+  public static OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
+    return forPath(path).compress(FileUtils.newOutputStream(path, options));
+  }
+}
@@ -0,0 +1,102 @@
+package com.tools.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable set of closed genomic intervals that answers whether a position falls inside any of them.
+ */
+public class IntervalSet {
+  private final HashMap<String, ContigIntervals> contigIntervals;
+
+  private IntervalSet(HashMap<String, ContigIntervals> contigIntervals) {
+    this.contigIntervals = contigIntervals;
+  }
+
+  /**
+   * Returns the intervals on the specified contig, or null if there are none.
+   */
+  public ContigIntervals getIntervals(String contig) { return contigIntervals.get(contig); }
+
+  public boolean contains(String contig, int position) {
+    ContigIntervals intervals = contigIntervals.get(contig);
+    return intervals != null && intervals.contains(position);
+  }
+
+  /**
+   * The disjoint intervals on a single contig, sorted by start.
+   */
+  public static class ContigIntervals {
+    private final int[] starts;
+    private final int[] stops;
+
+    private ContigIntervals(int[] starts, int[] stops) {
+      this.starts = starts;
+      this.stops = stops;
+    }
+
+    public boolean contains(int position) {
+      // Locate the last interval starting at or before the position
+      int index = Arrays.binarySearch(starts, position);
+      if (index < 0) index = -index - 2;
+
+      return index >= 0 && position <= stops[index];
+    }
+  }
+
+  public static class Builder {
+    private final HashMap<String, ArrayList<int[]>> intervals = new HashMap<>();
+
+    /**
+     * Adds the closed interval from start to stop on the contig.
+     */
+    public Builder add(String contig, int start, int stop) {
+      ArrayList<int[]> contigIntervals = intervals.get(contig);
+      if (contigIntervals == null) {
+        contigIntervals = new ArrayList<>();
+        intervals.put(contig, contigIntervals);
+      }
+      contigIntervals.add(new int[] {start, stop});
+
+      return this;
+    }
+
+    public IntervalSet build() {
+      Comparator<int[]> startComparator = new Comparator<int[]>() {
+        @Override
+        public int compare(int[] interval1, int[] interval2) {
+          return Integer.compare(interval1[0], interval2[0]);
+        }
+      };
+
+      HashMap<String, ContigIntervals> contigIntervals = new HashMap<>();
+      for (Map.Entry<String, ArrayList<int[]>> entry : intervals.entrySet()) {
+        ArrayList<int[]> sortedIntervals = new ArrayList<>(entry.getValue());
+        Collections.sort(sortedIntervals, startComparator);
+
+        // Merge the overlapping intervals
+        int[] starts = new int[sortedIntervals.size()];
+        int[] stops = new int[sortedIntervals.size()];
+        int count = 0;
+        for (int[] interval : sortedIntervals) {
+          if (count > 0 && interval[0] <= stops[count - 1]) {
+            stops[count - 1] = Math.max(stops[count - 1], interval[1]);
+          } else {
+            starts[count] = interval[0];
+            stops[count] = interval[1];
+            count++;
+          }
+        }
+
+        ContigIntervals mergedIntervals = new ContigIntervals(Arrays.copyOf(starts, count), Arrays.copyOf(stops, count));
+        contigIntervals.put(entry.getKey(), mergedIntervals);
+      }
+
+      return new IntervalSet(contigIntervals);
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package com.tools.io;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Performs a streaming k-way merge over a collection of sorted MethylationCallReaders, aligning the calls of every
+ * input at each site.  The inputs are ordered with a binary heap keyed by contig index, position and strand so that
+ * sites are produced in the sequence dictionary order regardless of which inputs have calls.  Each input is read and
+ * parsed ahead on its own thread, so only the alignment of the calls happens on the consuming thread.
+ */
+public class MethylationCallMerger implements Closeable {
+  // The number of calls read from an input at a time
+  private static final int CHUNK_SIZE = 4096;
+
+  public final SequenceDictionary sequenceDictionary;
+
+  private final ArrayList<PrefetchingCallReader> callReaders;
+  private final boolean hasRatios;
+
+  // The dictionary of each input and the map from its contig indices to the indices of the merged dictionary
+  private final SequenceDictionary[] inputDictionaries;
+  private final int[][] contigIndexMaps;
+
+  // The current block of each input along with the cursor, contig run and contig index of its next call
+  private final CallBlock[] blocks;
+  private final int[] cursors;
+  private final int[] runs;
+  private final int[] contigIndices;
+
+  // A binary min heap of the indices of the inputs with unmerged calls
+  private final int[] heap;
+  private int heapSize = 0;
+
+  public MethylationCallMerger(List<MethylationCallReader> callReaders, SequenceDictionary sequenceDictionary) {
+    this(callReaders, sequenceDictionary, 0);
+  }
+
+  /**
+   * Constructs a MethylationCallMerger over the provided readers, which are owned by the merger from now on.  Calls
+   * under the minimum depth are discarded as they are read.
+   *
+   * @param callReaders         the List<MethylationCallReader> of sorted inputs to merge
+   * @param sequenceDictionary  the SequenceDictionary specifying the order of the contigs, which must contain the
+   *                            contigs of every input such as the union of the input dictionaries
+   * @param minDepth            the int minimum total count a call needs to be included
+   */
+  public MethylationCallMerger(List<MethylationCallReader> callReaders,
+                               SequenceDictionary sequenceDictionary,
+                               int minDepth) {
+    this.sequenceDictionary = sequenceDictionary;
+
+    int inputCount = callReaders.size();
+    this.blocks = new CallBlock[inputCount];
+    this.cursors = new int[inputCount];
+    this.runs = new int[inputCount];
+    this.contigIndices = new int[inputCount];
+    this.heap = new int[inputCount];
+
+    this.inputDictionaries = new SequenceDictionary[inputCount];
+    this.contigIndexMaps = new int[inputCount][];
+    for (int input = 0; input < inputCount; input++) {
+      inputDictionaries[input] = callReaders.get(input).sequenceDictionary;
+      contigIndexMaps[input] = sequenceDictionary.mapContigIndices(inputDictionaries[input]);
+    }
+
+    // Start reading ahead on all of the inputs
+    this.callReaders = new ArrayList<>(inputCount);
+    for (MethylationCallReader callReader : callReaders) {
+      this.callReaders.add(new PrefetchingCallReader(callReader, CHUNK_SIZE, minDepth));
+    }
+
+    // Load the first block of each input, only carrying ratios if every input has them
+    boolean allRatios = true;
+    for (int input = 0; input < inputCount; input++) {
+      if (load(input)) {
+        allRatios &= blocks[input].hasRatios();
+        heap[heapSize] = input;
+        siftUp(heapSize++);
+      }
+    }
+    this.hasRatios = heapSize > 0 && allRatios;
+  }
+
+  /**
+   * Stops reading ahead and closes all of the underlying readers.
+   */
+  @Override
+  public void close() {
+    for (PrefetchingCallReader callReader : callReaders) callReader.close();
+  }
+
+  public int getInputCount() { return callReaders.size(); }
+
+  /**
+   * Returns a boolean indicating if any of the inputs have unmerged calls.
+   */
+  public boolean hasNext() { return heapSize > 0; }
+
+  /**
+   * Returns a SiteBlock with up to the specified number of the next sites.
+   *
+   * @param maxSites  the int maximum number of sites to read
+   * @return a SiteBlock with the sites in order
+   */
+  public SiteBlock readBlock(int maxSites) {
+    SiteBlock siteBlock = new SiteBlock(getInputCount(), Math.min(maxSites, CHUNK_SIZE), hasRatios);
+    while (heapSize > 0 && siteBlock.size() < maxSites) mergeSite(siteBlock);
+
+    return siteBlock;
+  }
+
+  /**
+   * Returns a SiteBlock with all of the next sites that precede or are at the specified stop position.
+   *
+   * @param stopContigIndex the int index of the stop contig in the SequenceDictionary
+   * @param stopPosition    the int position of the last site to include on the stop contig
+   * @return a SiteBlock with the sites in order
+   */
+  public SiteBlock readBlock(int stopContigIndex, int stopPosition) {
+    SiteBlock siteBlock = new SiteBlock(getInputCount(), hasRatios);
+    while (heapSize > 0) {
+      int input = heap[0];
+      int contigIndex = contigIndices[input];
+      if (contigIndex > stopContigIndex ||
+        (contigIndex == stopContigIndex && blocks[input].getPosition(cursors[input]) > stopPosition)) break;
+
+      mergeSite(siteBlock);
+    }
+
+    return siteBlock;
+  }
+
+  /**
+   * Appends the next site to the block, filling in the slot of every input with a call at the site.
+   */
+  private void mergeSite(SiteBlock siteBlock) {
+    int input = heap[0];
+    CallBlock block = blocks[input];
+    int contigIndex = contigIndices[input];
+    int position = block.getPosition(cursors[input]);
+    char strand = block.getStrand(cursors[input]);
+    siteBlock.addSite(block.getRunContig(runs[input]), position, strand);
+
+    do {
+      input = heap[0];
+      block = blocks[input];
+      int cursor = cursors[input];
+      if (hasRatios) {
+        siteBlock.setCall(input, block.getMethylatedCount(cursor), block.getTotalCount(cursor), block.getRatio(cursor));
+      } else siteBlock.setCall(input, block.getMethylatedCount(cursor), block.getTotalCount(cursor));
+
+      // Advance the input and restore the heap
+      if (advance(input)) siftDown(0);
+      else {
+        heap[0] = heap[--heapSize];
+        siftDown(0);
+      }
+    } while (heapSize > 0 && compareTo(heap[0], contigIndex, position, strand) == 0);
+  }
+
+  /**
+   * Moves the input on to its next call, returning false if the input is exhausted.
+   */
+  private boolean advance(int input) {
+    CallBlock block = blocks[input];
+    int contigIndex = contigIndices[input];
+    int position = block.getPosition(cursors[input]);
+    char strand = block.getStrand(cursors[input]);
+
+    boolean hasCall;
+    if (++cursors[input] == block.size()) hasCall = load(input);
+    else {
+      if (cursors[input] == block.getRunEnd(runs[input])) {
+        runs[input]++;
+        contigIndices[input] = getContigIndex(input, block.getRunContig(runs[input]));
+      }
+      hasCall = true;
+    }
+
+    // Ensure that the input is sorted without repeated sites, since an out of order call would be silently misplaced
+    // and a repeated call would overwrite the slot of the input at its site
+    if (hasCall && compareTo(input, contigIndex, position, strand) <= 0) {
+      throw new IllegalArgumentException(
+        "input " + input + " is not sorted by contig, position and strand or repeats a call at " + position
+      );
+    }
+
+    return hasCall;
+  }
+
+  /**
+   * Reads the next block for the input, returning false if the input is exhausted.
+   */
+  private boolean load(int input) {
+    CallBlock block = callReaders.get(input).readBlock();
+    blocks[input] = block;
+    cursors[input] = 0;
+    runs[input] = 0;
+    if (!block.isEmpty()) contigIndices[input] = getContigIndex(input, block.getRunContig(0));
+
+    return !block.isEmpty();
+  }
+
+  /**
+   * Returns the index in the merged dictionary of a contig of the input.
+   */
+  private int getContigIndex(int input, String contig) {
+    return contigIndexMaps[input][inputDictionaries[input].getContigIndex(contig)];
+  }
+
+  /**
+   * Compares the next call of the input to the specified site.
+   */
+  private int compareTo(int input, int contigIndex, int position, char strand) {
+    int comparison = Integer.compare(contigIndices[input], contigIndex);
+    if (comparison == 0) comparison = Integer.compare(blocks[input].getPosition(cursors[input]), position);
+    if (comparison == 0) comparison = Character.compare(blocks[input].getStrand(cursors[input]), strand);
+
+    return comparison;
+  }
+
+  /**
+   * Compares the next calls of two inputs, breaking ties by the input order.
+   */
+  private int compare(int input1, int input2) {
+    int cursor2 = cursors[input2];
+    int comparison = compareTo(input1, contigIndices[input2], blocks[input2].getPosition(cursor2),
+      blocks[input2].getStrand(cursor2));
+
+    return comparison != 0 ? comparison : Integer.compare(input1, input2);
+  }
+
+  private void siftUp(int index) {
+    int input = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (compare(input, heap[parent]) >= 0) break;
+
+      heap[index] = heap[parent];
+      index = parent;
+    }
+    heap[index] = input;
+  }
+
+  private void siftDown(int index) {
+    if (heapSize == 0) return;
+
+    int input = heap[index];
+    int half = heapSize >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      if (child + 1 < heapSize && compare(heap[child + 1], heap[child]) < 0) child++;
+      if (compare(input, heap[child]) <= 0) break;
+
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = input;
+  }
+}
@@ -8,11 +8,26 @@ import java.io.InputStream;
 import java.util.*;
 
 public class MethylationCallReader implements MethylationCallFormat, Closeable {
+  // The initial capacity of the blocks read from this reader
+  private static final int BLOCK_CAPACITY = 4096;
+
   public final SequenceDictionary sequenceDictionary;
 
   private final BufferedLineReader lineIterator;
   private Optional<MethylationCall> bufferedCall;
 
+  // The columns converted when reading blocks
+  private final boolean readsMethylatedCount;
+  private final boolean readsTotalCount;
+  private final boolean readsRatio;
+
+  // The intervals outside of which calls are skipped when reading blocks
+  private Optional<IntervalSet> intervals = Optional.absent();
+
+  // The contig of the last line read into a block and its intervals, so unchanged contigs are not copied again
+  private String lastContig = null;
+  private IntervalSet.ContigIntervals lastContigIntervals = null;
+
   /**
    * Constructs a MethylationCallReader around the provided InputStream.
    *
@@ -21,9 +36,37 @@ public class MethylationCallReader implements MethylationCallFormat, Closeable {
    * @throws IOException if it is unable to read from the InputStream
    */
   public MethylationCallReader(InputStream inputStream) throws IOException {
+    this(inputStream, EnumSet.allOf(CallColumn.class));
+  }
+
+  /**
+   * Constructs a MethylationCallReader around the provided InputStream that only converts the specified columns when
+   * reading blocks.  The skipped columns are left as zero, or absent for the ratio.
+   *
+   * @param inputStream   the InputStream to read the methylation call lines from
+   * @param columns       the EnumSet<CallColumn> to convert
+   *
+   * @throws IOException if it is unable to read from the InputStream
+   */
+  public MethylationCallReader(InputStream inputStream, EnumSet<CallColumn> columns) throws IOException {
     this.lineIterator = new BufferedLineReader(inputStream);
     this.sequenceDictionary = parseHeader(lineIterator);
     this.bufferedCall = Optional.absent();
+
+    this.readsMethylatedCount = columns.contains(CallColumn.METHYLATED_COUNT);
+    this.readsTotalCount = columns.contains(CallColumn.TOTAL_COUNT);
+    this.readsRatio = columns.contains(CallColumn.RATIO);
+  }
+
+  /**
+   * Restricts the blocks read to calls falling inside the intervals.  The remaining calls are rejected from their
+   * contig and position alone.
+   *
+   * @param intervals the IntervalSet of calls to keep
+   */
+  public void setIntervals(IntervalSet intervals) {
+    this.intervals = Optional.of(intervals);
+    this.lastContig = null;
   }
 
   /**
@@ -60,6 +103,183 @@ public class MethylationCallReader implements MethylationCallFormat, Closeable {
     return bufferedCall.get();
   }
 
+  /**
+   * Returns a CallBlock with up to the specified number of the next entries.
+   *
+   * @param maxCount  the int maximum number of entries to read
+   * @return a CallBlock with the entries in the order they were read
+   */
+  public CallBlock readBlock(int maxCount) { return readBlock(maxCount, 0); }
+
+  /**
+   * Returns a CallBlock with up to the specified number of the next entries with at least the minimum depth.  Entries
+   * under the minimum depth are discarded.
+   *
+   * @param maxCount  the int maximum number of entries to read
+   * @param minDepth  the int minimum total count an entry needs to be included
+   * @return a CallBlock with the entries in the order they were read
+   */
+  public CallBlock readBlock(int maxCount, int minDepth) {
+    CallBlock block = new CallBlock(Math.min(maxCount, BLOCK_CAPACITY), hasRatios());
+    while (block.size() < maxCount && hasNext()) addNext(block, minDepth);
+
+    return block;
+  }
+
+  /**
+   * Returns a CallBlock with all of the next entries that precede or are at the specified stop position.
+   *
+   * @param stopContigIndex     the int index of the stop contig in the provided SequenceDictionary
+   * @param stopPosition        the int position of the last entry to include on the stop contig
+   * @param sequenceDictionary  the SequenceDictionary specifying the order of the contigs
+   * @return a CallBlock with the entries in the order they were read
+   */
+  public CallBlock readBlock(int stopContigIndex, int stopPosition, SequenceDictionary sequenceDictionary) {
+    return readBlock(stopContigIndex, stopPosition, sequenceDictionary, 0);
+  }
+
+  /**
+   * Returns a CallBlock with all of the next entries with at least the minimum depth that precede or are at the
+   * specified stop position.  Entries under the minimum depth are discarded.
+   *
+   * @param stopContigIndex     the int index of the stop contig in the provided SequenceDictionary
+   * @param stopPosition        the int position of the last entry to include on the stop contig
+   * @param sequenceDictionary  the SequenceDictionary specifying the order of the contigs
+   * @param minDepth            the int minimum total count an entry needs to be included
+   * @return a CallBlock with the entries in the order they were read
+   */
+  public CallBlock readBlock(int stopContigIndex,
+                             int stopPosition,
+                             SequenceDictionary sequenceDictionary,
+                             int minDepth) {
+    CallBlock block = new CallBlock(BLOCK_CAPACITY, hasRatios());
+
+    // The contig of the last line looked ahead at and its index, so unchanged contigs are not looked up again
+    String contig = null;
+    int contigIndex = -1;
+    boolean isPastStop = false;
+    while (!isPastStop && hasNext()) {
+      if (bufferedCall.isPresent()) {
+        MethylationCall call = bufferedCall.get();
+        int callContigIndex = sequenceDictionary.getContigIndex(call.contig);
+        isPastStop = callContigIndex > stopContigIndex ||
+          (callContigIndex == stopContigIndex && call.position > stopPosition);
+      } else {
+        // Look ahead on the raw contig and position columns rather than parsing the whole line
+        String line = lineIterator.peek();
+        int contigEnd = line.indexOf('\t');
+        if (contig == null || contig.length() != contigEnd || !line.startsWith(contig)) {
+          contig = line.substring(0, contigEnd);
+          contigIndex = sequenceDictionary.getContigIndex(contig);
+        }
+
+        if (contigIndex == stopContigIndex) {
+          int position = parseInt(line, contigEnd + 1, line.indexOf('\t', contigEnd + 1));
+          isPastStop = position > stopPosition;
+        } else isPastStop = contigIndex > stopContigIndex;
+      }
+
+      if (!isPastStop) addNext(block, minDepth);
+    }
+
+    return block;
+  }
+
+  /**
+   * Returns true if the blocks read from this reader carry a methylation ratio, which is whether the next line has a
+   * ratio column.
+   */
+  private boolean hasRatios() {
+    boolean hasRatios = false;
+    if (readsRatio && hasNext()) {
+      if (bufferedCall.isPresent()) hasRatios = bufferedCall.get().ratio.isPresent();
+      else {
+        // The ratio follows the fifth delimiter
+        String line = lineIterator.peek();
+        int ratioStart = 0;
+        for (int i = 0; i < 5 && ratioStart >= 0; i++) {
+          int delimiter = line.indexOf('\t', ratioStart);
+          ratioStart = delimiter < 0 ? -1 : delimiter + 1;
+        }
+        hasRatios = ratioStart > 0 && ratioStart < line.length() && line.charAt(ratioStart) != '\t';
+      }
+    }
+
+    return hasRatios;
+  }
+
+  private void addNext(CallBlock block, int minDepth) {
+    if (bufferedCall.isPresent()) {
+      MethylationCall call = bufferedCall.get();
+      bufferedCall = Optional.absent();
+
+      boolean isIncluded = !intervals.isPresent() || intervals.get().contains(call.contig, call.position);
+      if (isIncluded && call.totalCount >= minDepth) {
+        int methylatedCount = readsMethylatedCount ? call.methylatedCount : 0;
+        int totalCount = readsTotalCount ? call.totalCount : 0;
+        if (block.hasRatios()) {
+          block.add(call.contig, call.position, call.strand, methylatedCount, totalCount, call.ratio.get());
+        } else block.add(call.contig, call.position, call.strand, methylatedCount, totalCount);
+      }
+    } else addLine(block, lineIterator.next(), minDepth);
+  }
+
+  /**
+   * Parses the line into the block, only converting the projected columns and stopping as soon as the call is
+   * rejected.
+   */
+  private void addLine(CallBlock block, String line, int minDepth) {
+    // Reuse the previous contig if it is unchanged
+    int contigEnd = line.indexOf('\t');
+    if (lastContig == null || lastContig.length() != contigEnd || !line.startsWith(lastContig)) {
+      lastContig = line.substring(0, contigEnd);
+      if (intervals.isPresent()) lastContigIntervals = intervals.get().getIntervals(lastContig);
+    }
+
+    int positionEnd = line.indexOf('\t', contigEnd + 1);
+    int position = parseInt(line, contigEnd + 1, positionEnd);
+    if (intervals.isPresent() && (lastContigIntervals == null || !lastContigIntervals.contains(position))) return;
+
+    // Locate the count columns
+    char strand = line.charAt(positionEnd + 1);
+    int methylatedEnd = line.indexOf('\t', positionEnd + 3);
+    int totalEnd = line.indexOf('\t', methylatedEnd + 1);
+    if (totalEnd < 0) totalEnd = line.length();
+
+    int totalCount = 0;
+    if (readsTotalCount || minDepth > 0) {
+      totalCount = parseInt(line, methylatedEnd + 1, totalEnd);
+      if (totalCount < minDepth) return;
+      if (!readsTotalCount) totalCount = 0;
+    }
+    int methylatedCount = readsMethylatedCount ? parseInt(line, positionEnd + 3, methylatedEnd) : 0;
+
+    if (block.hasRatios()) {
+      int ratioEnd = line.indexOf('\t', totalEnd + 1);
+      double ratio = Double.parseDouble(line.substring(totalEnd + 1, ratioEnd < 0 ? line.length() : ratioEnd));
+      block.add(lastContig, position, strand, methylatedCount, totalCount, ratio);
+    } else block.add(lastContig, position, strand, methylatedCount, totalCount);
+  }
+
+  /**
+   * Parses the non-negative decimal integer between the start and end indices of the line.
+   *
+   * @throws NumberFormatException if the characters are not a valid integer
+   */
+  private static int parseInt(String line, int start, int end) {
+    if (start >= end) throw new NumberFormatException("empty field in " + line);
+
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = line.charAt(i) - '0';
+      if (digit < 0 || digit > 9) throw new NumberFormatException("invalid integer in " + line);
+
+      value = 10 * value + digit;
+    }
+
+    return value;
+  }
+
   private SequenceDictionary parseHeader(BufferedLineReader lineReader) {
     // Validate that the expected pragma is found
     if (!lineReader.next().equals(FORMAT_IDENTIFIER)) {
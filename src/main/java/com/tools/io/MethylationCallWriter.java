@@ -30,6 +30,11 @@ public class MethylationCallWriter implements MethylationCallFormat, Closeable {
   @Override
   public void close() { writer.close(); }
 
+  /**
+   * Flushes anything in the buffer to the output stream.
+   */
+  public void flush() { writer.flush(); }
+
   /**
    * Writes the provided MethylationCall to the underlying writer.
    *
@@ -67,6 +72,29 @@ public class MethylationCallWriter implements MethylationCallFormat, Closeable {
     for (MethylationCall methylationCall: methylationCalls) write(methylationCall);
   }
 
+  /**
+   * Writes all of the calls in the CallBlock to the underlying writer.
+   *
+   * @param block the CallBlock to write
+   */
+  public void write(CallBlock block) {
+    StringBuilder line = new StringBuilder();
+    for (int run = 0; run < block.getRunCount(); run++) {
+      String contig = block.getRunContig(run);
+      for (int i = block.getRunStart(run), n = block.getRunEnd(run); i < n; i++) {
+        line.setLength(0);
+        line.append(contig).append(FIELD_DELIMITER)
+          .append(block.getPosition(i)).append(FIELD_DELIMITER)
+          .append(block.getStrand(i)).append(FIELD_DELIMITER)
+          .append(block.getMethylatedCount(i)).append(FIELD_DELIMITER)
+          .append(block.getTotalCount(i));
+        if (block.hasRatios()) line.append(FIELD_DELIMITER).append(ratioFormat.format(block.getRatio(i)));
+
+        writer.println(line);
+      }
+    }
+  }
+
   /**
    * Writes the LinkedHashMap<String, Integer> specifying the sequence order and lengths
    *
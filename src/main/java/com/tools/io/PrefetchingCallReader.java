@@ -0,0 +1,100 @@
+package com.tools.io;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads blocks from a MethylationCallReader on a dedicated thread, keeping a bounded number of parsed blocks ready so
+ * that reading and decompressing an input overlaps with the consumption of its calls.
+ */
+public class PrefetchingCallReader implements Closeable {
+  // The number of parsed blocks buffered ahead of the consumer
+  private static final int QUEUE_CAPACITY = 4;
+
+  private final MethylationCallReader callReader;
+  private final ArrayBlockingQueue<CallBlock> blocks;
+  private final Thread readerThread;
+
+  private volatile Throwable failure = null;
+  private boolean isExhausted = false;
+
+  /**
+   * Constructs a PrefetchingCallReader and starts reading from the provided reader.  Calls under the minimum depth
+   * are discarded as they are read.
+   *
+   * @param callReader  the MethylationCallReader to read from, which is owned by this reader from now on
+   * @param blockSize   the int maximum number of calls in each block
+   * @param minDepth    the int minimum total count a call needs to be included
+   */
+  public PrefetchingCallReader(final MethylationCallReader callReader, final int blockSize, final int minDepth) {
+    this.callReader = callReader;
+    this.blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    this.readerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          // An empty block marks the end of the input
+          CallBlock block;
+          do {
+            block = callReader.readBlock(blockSize, minDepth);
+            blocks.put(block);
+          } while (!block.isEmpty());
+        } catch (InterruptedException exception) {
+          // The reader has been closed
+        } catch (Throwable throwable) {
+          failure = throwable;
+        } finally {
+          // The end marker is always delivered after a failure so that the consumer never waits forever
+          if (failure != null) {
+            try {
+              blocks.put(new CallBlock(1, false));
+            } catch (InterruptedException exception) {
+              // The reader has been closed
+            }
+          }
+        }
+      }
+    }, "call-reader");
+    readerThread.setDaemon(true);
+    readerThread.start();
+  }
+
+  /**
+   * Returns the next block of calls, which is empty once the input has been exhausted.
+   *
+   * @throws IllegalStateException if the input could not be read
+   */
+  public CallBlock readBlock() {
+    CallBlock block = new CallBlock(1, false);
+    if (!isExhausted) {
+      try {
+        block = blocks.take();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while waiting for calls", exception);
+      }
+      isExhausted = block.isEmpty();
+    }
+
+    // The blocks read before a failure are still consumed, and the failure ends the input in their place
+    if (isExhausted && failure != null) throw new IllegalStateException("unable to read calls", failure);
+
+    return block;
+  }
+
+  /**
+   * Stops the reading thread and closes the underlying reader.
+   */
+  @Override
+  public void close() {
+    readerThread.interrupt();
+    try {
+      readerThread.join();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+
+    callReader.close();
+  }
+}
@@ -62,6 +62,104 @@ public class SequenceDictionary {
     return sortedContigs;
   }
 
+  /**
+   * Returns an int array mapping the index of each contig in the other dictionary to its index in this dictionary.
+   *
+   * @param other the SequenceDictionary whose contig indices should be mapped
+   * @return an int[] indexed by the contig indices of the other dictionary
+   *
+   * @throws IllegalArgumentException if the other dictionary has a contig that is not in this dictionary
+   */
+  public int[] mapContigIndices(SequenceDictionary other) {
+    int[] contigIndices = new int[other.contigOrderMap.size()];
+    for (Map.Entry<String, Integer> entry : other.contigOrderMap.entrySet()) {
+      Integer index = contigOrderMap.get(entry.getKey());
+      if (index == null) throw new IllegalArgumentException(entry.getKey() + " is not defined");
+
+      contigIndices[entry.getValue()] = index;
+    }
+
+    return contigIndices;
+  }
+
+  /**
+   * Returns a SequenceDictionary containing the contigs of all of the provided dictionaries, ordered such that the
+   * sorted contigs of every dictionary keep their relative order.  A contig is a control if it is a control in any of
+   * the dictionaries.
+   *
+   * @param dictionaries  the List<SequenceDictionary> to combine
+   * @return a SequenceDictionary with the union of the contigs
+   *
+   * @throws IllegalArgumentException if the dictionaries disagree on the length or the order of the contigs
+   */
+  public static SequenceDictionary union(List<SequenceDictionary> dictionaries) {
+    // Build the precedence graph of the contigs, keeping the first seen order to break ties
+    LinkedHashMap<String, Integer> contigLengthMap = new LinkedHashMap<>();
+    LinkedHashSet<String> controlContigs = new LinkedHashSet<>();
+    HashMap<String, LinkedHashSet<String>> successors = new HashMap<>();
+    HashMap<String, Integer> predecessorCounts = new HashMap<>();
+    for (SequenceDictionary dictionary : dictionaries) {
+      controlContigs.addAll(dictionary.controlContigs);
+
+      String previousContig = null;
+      for (String contig : dictionary.getSortedContigs()) {
+        Integer length = dictionary.contigLengthMap.get(contig);
+        Integer existingLength = contigLengthMap.get(contig);
+        if (existingLength == null) {
+          contigLengthMap.put(contig, length);
+          successors.put(contig, new LinkedHashSet<String>());
+          predecessorCounts.put(contig, 0);
+        } else if (!existingLength.equals(length)) {
+          throw new IllegalArgumentException(contig + " has conflicting lengths " + existingLength + " and " + length);
+        }
+
+        if (previousContig != null && successors.get(previousContig).add(contig)) {
+          predecessorCounts.put(contig, predecessorCounts.get(contig) + 1);
+        }
+        previousContig = contig;
+      }
+    }
+
+    // Repeatedly take the first seen contig that has no remaining predecessors
+    ArrayList<String> contigs = new ArrayList<>(contigLengthMap.keySet());
+    HashMap<String, Integer> firstSeenIndices = new HashMap<>();
+    for (int i = 0; i < contigs.size(); i++) firstSeenIndices.put(contigs.get(i), i);
+
+    PriorityQueue<Integer> readyContigs = new PriorityQueue<>();
+    for (int i = 0; i < contigs.size(); i++) {
+      if (predecessorCounts.get(contigs.get(i)) == 0) readyContigs.add(i);
+    }
+
+    LinkedHashMap<String, Integer> orderedLengthMap = new LinkedHashMap<>();
+    while (!readyContigs.isEmpty()) {
+      String nextContig = contigs.get(readyContigs.poll());
+      orderedLengthMap.put(nextContig, contigLengthMap.get(nextContig));
+
+      for (String successor : successors.get(nextContig)) {
+        int predecessorCount = predecessorCounts.get(successor) - 1;
+        predecessorCounts.put(successor, predecessorCount);
+        if (predecessorCount == 0) readyContigs.add(firstSeenIndices.get(successor));
+      }
+    }
+    if (orderedLengthMap.size() < contigs.size()) {
+      throw new IllegalArgumentException("inputs have conflicting contig orders");
+    }
+
+    // Ensure that moving the controls to the front keeps every dictionary sorted
+    SequenceDictionary union = new SequenceDictionary(orderedLengthMap, new ArrayList<>(controlContigs));
+    for (SequenceDictionary dictionary : dictionaries) {
+      int previousIndex = -1;
+      for (String contig : dictionary.getSortedContigs()) {
+        int index = union.getContigIndex(contig);
+        if (index < previousIndex) throw new IllegalArgumentException("inputs have conflicting control contigs");
+
+        previousIndex = index;
+      }
+    }
+
+    return union;
+  }
+
   private static HashMap<String, Integer> buildContigOrderMap(LinkedHashMap<String, Integer> contigLengthMap,
                                                               List<String> controlContigs) {
     // Determine the sort order with control contigs in the front
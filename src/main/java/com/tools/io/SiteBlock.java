@@ -0,0 +1,175 @@
+package com.tools.io;
+
+import java.util.Arrays;
+
+/**
+ * A block of ordered sites with one call slot per input, where a slot is absent if the input had no call at the site.
+ * The slot columns are laid out site-major so all of the inputs for a site are adjacent.
+ */
+public class SiteBlock {
+  // The approximate number of bytes needed to hold the site coordinates and a single input slot
+  public static final int BYTES_PER_SITE = 8;
+  public static final int BYTES_PER_SLOT = 16;
+
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  // Marks an input that has no call at a site
+  private static final int ABSENT = -1;
+
+  public final int inputCount;
+
+  // The contig runs with the index of the first site belonging to each run
+  private String[] runContigs;
+  private int[] runStarts;
+  private int runCount = 0;
+
+  // The per site columns
+  private int[] positions;
+  private byte[] strands;
+  private int size = 0;
+
+  // The per slot columns, where the ratios are null if the block does not carry ratios
+  private int[] methylatedCounts;
+  private int[] totalCounts;
+  private double[] ratios;
+
+  public SiteBlock(int inputCount, boolean hasRatios) { this(inputCount, DEFAULT_CAPACITY, hasRatios); }
+
+  public SiteBlock(int inputCount, int capacity, boolean hasRatios) {
+    int initialCapacity = Math.max(capacity, 1);
+    this.inputCount = inputCount;
+
+    this.runContigs = new String[8];
+    this.runStarts = new int[8];
+
+    this.positions = new int[initialCapacity];
+    this.strands = new byte[initialCapacity];
+    this.methylatedCounts = new int[initialCapacity * inputCount];
+    this.totalCounts = new int[initialCapacity * inputCount];
+    this.ratios = hasRatios ? new double[initialCapacity * inputCount] : null;
+  }
+
+  /**
+   * Appends a site to the end of the block with all of its input slots absent.
+   *
+   * @param contig    the String name of the contig
+   * @param position  the int position of the site
+   * @param strand    the char strand of the site
+   */
+  public void addSite(String contig, int position, char strand) {
+    if (size == positions.length) grow();
+
+    // Start a new run if the contig changes
+    if (runCount == 0 || !runContigs[runCount - 1].equals(contig)) {
+      if (runCount == runContigs.length) {
+        runContigs = Arrays.copyOf(runContigs, 2 * runCount);
+        runStarts = Arrays.copyOf(runStarts, 2 * runCount);
+      }
+      runContigs[runCount] = contig;
+      runStarts[runCount] = size;
+      runCount++;
+    }
+
+    positions[size] = position;
+    strands[size] = (byte) strand;
+    Arrays.fill(totalCounts, size * inputCount, (size + 1) * inputCount, ABSENT);
+    size++;
+  }
+
+  /**
+   * Sets the call of the input at the last site in the block.
+   *
+   * @param input           the int index of the input
+   * @param methylatedCount the int number of methylated observations
+   * @param totalCount      the int total number of observations
+   */
+  public void setCall(int input, int methylatedCount, int totalCount) {
+    int slot = (size - 1) * inputCount + input;
+    methylatedCounts[slot] = methylatedCount;
+    totalCounts[slot] = totalCount;
+  }
+
+  /**
+   * Sets the call of the input at the last site in the block including its ratio.
+   *
+   * @param input           the int index of the input
+   * @param methylatedCount the int number of methylated observations
+   * @param totalCount      the int total number of observations
+   * @param ratio           the double methylation ratio of the call
+   */
+  public void setCall(int input, int methylatedCount, int totalCount, double ratio) {
+    if (ratios == null) throw new IllegalStateException("block does not carry ratios");
+
+    setCall(input, methylatedCount, totalCount);
+    ratios[(size - 1) * inputCount + input] = ratio;
+  }
+
+  /**
+   * Appends a copy of the site at the specified index of another block with the same inputs.
+   *
+   * @param siteBlock the SiteBlock from which to copy the site
+   * @param site      the int index of the site in the other block
+   */
+  public void addSite(SiteBlock siteBlock, int site) {
+    if (siteBlock.inputCount != inputCount) throw new IllegalArgumentException("blocks have different inputs");
+
+    addSite(siteBlock.getContig(site), siteBlock.positions[site], (char) siteBlock.strands[site]);
+
+    int offset = (size - 1) * inputCount;
+    int otherOffset = site * inputCount;
+    System.arraycopy(siteBlock.methylatedCounts, otherOffset, methylatedCounts, offset, inputCount);
+    System.arraycopy(siteBlock.totalCounts, otherOffset, totalCounts, offset, inputCount);
+    if (ratios != null && siteBlock.ratios != null) {
+      System.arraycopy(siteBlock.ratios, otherOffset, ratios, offset, inputCount);
+    }
+  }
+
+  public boolean hasRatios() { return ratios != null; }
+  public boolean isEmpty() { return size == 0; }
+  public int size() { return size; }
+
+  public int getPosition(int site) { return positions[site]; }
+  public char getStrand(int site) { return (char) strands[site]; }
+
+  public boolean isPresent(int site, int input) { return totalCounts[site * inputCount + input] != ABSENT; }
+  public int getMethylatedCount(int site, int input) { return methylatedCounts[site * inputCount + input]; }
+  public int getTotalCount(int site, int input) { return totalCounts[site * inputCount + input]; }
+
+  public double getRatio(int site, int input) {
+    if (ratios == null) throw new IllegalStateException("block does not carry ratios");
+
+    return ratios[site * inputCount + input];
+  }
+
+  /**
+   * Returns the name of the contig of the site at the specified index.
+   */
+  public String getContig(int site) {
+    if (site < 0 || site >= size) throw new IndexOutOfBoundsException("no site at index " + site);
+
+    // Locate the run containing the index
+    int run = Arrays.binarySearch(runStarts, 0, runCount, site);
+    if (run < 0) run = -run - 2;
+
+    return runContigs[run];
+  }
+
+  public int getRunCount() { return runCount; }
+  public String getRunContig(int run) { return runContigs[run]; }
+  public int getRunStart(int run) { return runStarts[run]; }
+  public int getRunEnd(int run) { return run + 1 < runCount ? runStarts[run + 1] : size; }
+
+  /**
+   * Returns the approximate number of bytes needed to hold a single site with the specified number of inputs.
+   */
+  public static int bytesPerSite(int inputCount) { return BYTES_PER_SITE + inputCount * BYTES_PER_SLOT; }
+
+  private void grow() {
+    int capacity = 2 * positions.length;
+    positions = Arrays.copyOf(positions, capacity);
+    strands = Arrays.copyOf(strands, capacity);
+    methylatedCounts = Arrays.copyOf(methylatedCounts, capacity * inputCount);
+    totalCounts = Arrays.copyOf(totalCounts, capacity * inputCount);
+    if (ratios != null) ratios = Arrays.copyOf(ratios, capacity * inputCount);
+  }
+}
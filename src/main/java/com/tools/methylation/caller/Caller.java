@@ -4,9 +4,7 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
 import com.tools.actors.AbstractWorker;
-import com.tools.io.MethylationCall;
-
-import java.util.*;
+import com.tools.io.CallBlock;
 
 /**
  * Makes consensus methylation calls using one or more biological replicates.
@@ -23,33 +21,35 @@ class Caller extends AbstractWorker<Messages.CallsRead, Messages.CallingComplete
 
   @Override
   protected Messages.CallingComplete work(Messages.CallsRead message) {
-    ArrayList<MethylationCall> consensusCalls = callRatios(message.calls);
+    CallBlock consensusCalls = callRatios(message.calls);
     return new Messages.CallingComplete(message.index, consensusCalls);
   }
 
   /**
-   * Returns an ArrayList of ObservedRatios giving the error rate corrected methylation ratio at a given site.
+   * Returns a CallBlock giving the error rate corrected methylation ratio at each site.
    *
-   * @param calls the ArrayDeque<MethylationCall> enumerating the ordered methylation calls
+   * @param calls the CallBlock enumerating the ordered methylation calls
    *
-   * @return an ArrayList<RatioCall> with the called ratios
+   * @return a CallBlock with the called ratios
    */
-  protected ArrayList<MethylationCall> callRatios(ArrayDeque<MethylationCall> calls) {
-    ArrayList<MethylationCall> ratioCalls = new ArrayList<>(calls.size());
-    for (MethylationCall call : calls) {
-      // Calculate the corrected ratio
-      double rawRatio = (double) call.methylatedCount / call.totalCount;
-      double ratio = Math.max(0, (rawRatio - errorRate) / (1 - errorRate));
+  protected CallBlock callRatios(CallBlock calls) {
+    CallBlock ratioCalls = new CallBlock(calls.size(), true);
+    for (int run = 0; run < calls.getRunCount(); run++) {
+      String contig = calls.getRunContig(run);
+      for (int i = calls.getRunStart(run), n = calls.getRunEnd(run); i < n; i++) {
+        // Calculate the corrected ratio
+        double rawRatio = (double) calls.getMethylatedCount(i) / calls.getTotalCount(i);
+        double ratio = Math.max(0, (rawRatio - errorRate) / (1 - errorRate));
 
-      MethylationCall ratioCall = new MethylationCall(
-        call.contig,
-        call.position,
-        call.strand,
-        call.methylatedCount,
-        call.totalCount,
-        ratio
-      );
-      ratioCalls.add(ratioCall);
+        ratioCalls.add(
+          contig,
+          calls.getPosition(i),
+          calls.getStrand(i),
+          calls.getMethylatedCount(i),
+          calls.getTotalCount(i),
+          ratio
+        );
+      }
     }
 
     return ratioCalls;
@@ -3,13 +3,16 @@ package com.tools.methylation.caller;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
+import com.tools.FileUtils;
 import com.tools.actors.AbstractMaster;
+import com.tools.io.CallBlock;
+import com.tools.io.CallColumn;
 import com.tools.io.MethylationCall;
 import com.tools.io.MethylationCallReader;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.EnumSet;
 import java.util.HashSet;
 
 /**
@@ -43,8 +46,9 @@ class Master extends AbstractMaster {
                    double defaultErrorRate, int threadCount) throws IOException {
       super(threadCount);
 
-      // Open the call Reader
-      this.callReader = new MethylationCallReader(Files.newInputStream(inputPath));
+      // Open the call Reader, skipping any existing ratios since they are recalculated
+      EnumSet<CallColumn> columns = EnumSet.of(CallColumn.METHYLATED_COUNT, CallColumn.TOTAL_COUNT);
+      this.callReader = new MethylationCallReader(FileUtils.newInputStream(inputPath), columns);
       this.errorRate = calculateErrorRate(callReader, defaultErrorRate);
       this.outputPath = outputPath;
     }
@@ -88,10 +92,11 @@ class Master extends AbstractMaster {
     // Determine the block size to prevent out of memory errors
     private static int determineBlockSize(int threadCount) {
       // The maximum number of records that any child actor will have to hold in memory
-      int maxBlockSize = 100000;
+      int maxBlockSize = 400000;
 
+      // Each worker holds the block it was sent along with the block it produces
       double availableThreadMemory = 0.8 * Runtime.getRuntime().maxMemory() / threadCount;
-      long maxBlockLength = (long) Math.floor(availableThreadMemory / 200);
+      long maxBlockLength = (long) Math.floor(availableThreadMemory / (2 * CallBlock.BYTES_PER_CALL));
       return Math.min((int) maxBlockLength, maxBlockSize);
     }
   }
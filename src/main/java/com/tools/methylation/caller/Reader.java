@@ -3,13 +3,11 @@ package com.tools.methylation.caller;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
-import com.google.common.base.Optional;
 import com.tools.actors.AbstractReader;
-import com.tools.io.MethylationCall;
+import com.tools.io.CallBlock;
 import com.tools.io.MethylationCallReader;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
 
 /**
  * Reads common chunks from a collection of input files.
@@ -35,19 +33,12 @@ class Reader extends AbstractReader<Messages.CallsRead> {
   @Override
   protected Messages.CallsRead read(int blockIndex) {
     // Read the maximum number of calls permitted by the block size
-    ArrayDeque<MethylationCall> calls = readCalls(callReader, maxWorkSize);
+    CallBlock calls = callReader.readBlock(maxWorkSize);
 
     // Create the message
     return new Messages.CallsRead(blockIndex, calls);
   }
 
-  private ArrayDeque<MethylationCall> readCalls(MethylationCallReader callReader, int maxCount) {
-    ArrayDeque<MethylationCall> calls = new ArrayDeque<>();
-    while (callReader.hasNext() && calls.size() < maxCount) calls.addLast(callReader.next());
-
-    return calls;
-  }
-
   public static Props props(final MethylationCallReader callReader,
                             final int maxWorkSize,
                             final ActorRef receiverRef) {
@@ -5,12 +5,12 @@ import akka.actor.Props;
 import akka.japi.Creator;
 import com.google.common.base.Joiner;
 import com.tools.actors.AbstractWriter;
+import com.tools.io.CompressionCodec;
 import com.tools.io.MethylationCallWriter;
 import com.tools.io.SequenceDictionary;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -21,7 +21,7 @@ class Writer extends AbstractWriter<Messages.CallingComplete> {
   public Writer(Path outputPath, SequenceDictionary sequenceDictionary, ActorRef masterRef) throws IOException {
     super(masterRef, true);
     this.sequenceDictionary = sequenceDictionary;
-    this.writer = new MethylationCallWriter(Files.newOutputStream(outputPath));
+    this.writer = new MethylationCallWriter(CompressionCodec.newOutputStream(outputPath));
   }
 
   @Override
@@ -2,7 +2,7 @@ package com.tools.methylation.differential;
 
 import akka.actor.UntypedActor;
 import com.google.common.base.Optional;
-import com.tools.io.MethylationCall;
+import com.tools.io.SiteBlock;
 import com.tools.methylation.utils.Statistics;
 import org.apache.commons.math3.distribution.TDistribution;
 
@@ -52,37 +52,19 @@ public abstract class Caller extends UntypedActor {
     return result;
   }
 
-  // Merges the calls by contig and position
-  protected HashMap<String, TreeMap<Integer, ObservedSite>> mergeCalls(List<ArrayDeque<MethylationCall>> callBlocks,
-                                                                       ArrayList<Integer> conditions,
-                                                                       int minCoverage) {
-    HashMap<String, TreeMap<Integer, ObservedSite>> mergedCalls = new HashMap<>();
-    for (int i = 0; i < callBlocks.size(); i++) {
-      ArrayDeque<MethylationCall> callBlock = callBlocks.get(i);
-      for (MethylationCall call : callBlock) {
-        // Retrieve the contig call count structure
-        TreeMap<Integer, ObservedSite> contigSites = mergedCalls.get(call.contig);
-        if (contigSites == null) {
-          contigSites = new TreeMap<>();
-          mergedCalls.put(call.contig, contigSites);
-        }
-
-        // Add the observation
-        ObservedSite site = contigSites.get(call.position);
-        if (site == null) {
-          site = new ObservedSite(call.position, call.strand);
-          contigSites.put(call.position, site);
-        }
-
-        // Only make observations if there is sufficient coverage
-        if (call.totalCount >= minCoverage) {
-          double methylationRatio = (double) call.methylatedCount / call.totalCount;
-          site.addObservation(methylationRatio, call.totalCount, conditions.get(i));
-        }
+  // Collects the observations of all the inputs at a site
+  protected ObservedSite observeSite(SiteBlock sites, int site, List<Integer> conditions, int minCoverage) {
+    ObservedSite observedSite = new ObservedSite(sites.getPosition(site), sites.getStrand(site));
+    for (int input = 0; input < sites.inputCount; input++) {
+      // Only make observations if there is sufficient coverage
+      int totalCount = sites.getTotalCount(site, input);
+      if (sites.isPresent(site, input) && totalCount >= minCoverage) {
+        double methylationRatio = (double) sites.getMethylatedCount(site, input) / totalCount;
+        observedSite.addObservation(methylationRatio, totalCount, conditions.get(input));
       }
     }
 
-    return mergedCalls;
+    return observedSite;
   }
 
   class ObservedSite {
@@ -5,6 +5,7 @@ import akka.actor.Props;
 import akka.japi.Creator;
 import com.google.common.base.Optional;
 import com.tools.actors.AbstractMaster;
+import com.tools.io.SiteBlock;
 import com.tools.methylation.utils.Region;
 import com.tools.methylation.utils.RegionReader;
 
@@ -70,7 +71,7 @@ class Master extends AbstractMaster {
 
     @Override
     protected Props readerProps(ActorRef workerRef) {
-      int blockSize = determineBlockSize(workerCount);
+      int blockSize = determineBlockSize(inputPaths.size(), workerCount);
 
       Props props;
       if (regions.isPresent()) props = RegionReader.props(inputPaths, regions.get(), blockSize, workerRef);
@@ -94,12 +95,13 @@ class Master extends AbstractMaster {
     }
 
     // Determine the block size to prevent out of memory errors
-    private static int determineBlockSize(int threadCount) {
-      // The maximum number of records that any child actor will have to hold in memory
-      int maxBlockSize = 100000;
+    private static int determineBlockSize(int inputCount, int threadCount) {
+      // The maximum number of sites that any child actor will have to hold in memory
+      int maxBlockSize = 400000;
 
+      // Each worker holds the sites it was sent, which dominate the few differential calls it produces
       double availableThreadMemory = 0.8 * Runtime.getRuntime().maxMemory() / threadCount;
-      long maxBlockLength = (long) Math.floor(availableThreadMemory / 200);
+      long maxBlockLength = (long) Math.floor(availableThreadMemory / SiteBlock.bytesPerSite(inputCount));
       return Math.min((int) maxBlockLength, maxBlockSize);
     }
   }
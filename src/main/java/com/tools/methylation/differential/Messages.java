@@ -2,25 +2,22 @@ package com.tools.methylation.differential;
 
 import com.google.common.base.Optional;
 import com.tools.actors.AbstractMessages;
-import com.tools.io.MethylationCall;
+import com.tools.io.SiteBlock;
 import com.tools.io.SequenceDictionary;
 import com.tools.methylation.utils.RegionReader;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 
 class Messages extends AbstractMessages {
 
-  // Messages that a collection of co-located MethylationCalls can be merged
+  // Messages that a block of sites aligned across the inputs can be called
   public static class Call extends Work {
-    public final ArrayList<ArrayDeque<MethylationCall>> blocks;
+    public final SiteBlock sites;
     public final SequenceDictionary sequenceDictionary;
 
-    public Call(int index,
-                ArrayList<ArrayDeque<MethylationCall>> blocks,
-                SequenceDictionary sequenceDictionary) {
+    public Call(int index, SiteBlock sites, SequenceDictionary sequenceDictionary) {
       super(index);
-      this.blocks = blocks;
+      this.sites = sites;
       this.sequenceDictionary = sequenceDictionary;
     }
   }
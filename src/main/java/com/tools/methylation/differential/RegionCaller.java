@@ -4,7 +4,7 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
 import com.google.common.base.Optional;
-import com.tools.io.MethylationCall;
+import com.tools.io.SiteBlock;
 import com.tools.methylation.utils.CallRegions;
 import com.tools.methylation.utils.Region;
 import com.tools.methylation.utils.RegionReader;
@@ -51,22 +51,18 @@ class RegionCaller extends Caller {
                                              ArrayList<Integer> conditions) {
     ArrayList<DifferentialCall> differentialCalls = new ArrayList<>();
     for (RegionReader.RegionCalls calledRegion : regionCalls) {
-      differentialCalls.add(callRegion(calledRegion.region, calledRegion.calls, conditions));
+      differentialCalls.add(callRegion(calledRegion.region, calledRegion.sites, conditions));
     }
 
     return differentialCalls;
   }
 
-  protected DifferentialCall callRegion(Region region,
-                                        ArrayList<ArrayDeque<MethylationCall>> calls,
-                                        ArrayList<Integer> conditions) {
-    // Merge all of the calls together across the region
-    TreeMap<Integer, ObservedSite> mergedCalls = mergeCalls(calls, conditions, MIN_COVERAGE).get(region.contig);
-    if (mergedCalls == null) mergedCalls = new TreeMap<>();
-
-    // Perform differential calling pooling all of the calls
+  protected DifferentialCall callRegion(Region region, SiteBlock sites, ArrayList<Integer> conditions) {
+    // Perform differential calling pooling all of the calls across the region
     ObservedRegion observedRegion = new ObservedRegion(region.start, region.stop);
-    for (ObservedSite observedSite : mergedCalls.values()) observedRegion.addObservations(observedSite);
+    for (int site = 0; site < sites.size(); site++) {
+      observedRegion.addObservations(observeSite(sites, site, conditions, MIN_COVERAGE));
+    }
     Optional<TTestResult> tTestResult = differentialTTest(observedRegion.sample1Values, observedRegion.sample2Values);
 
     DifferentialCall differentialCall;
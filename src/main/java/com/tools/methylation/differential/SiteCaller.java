@@ -4,7 +4,7 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
 import com.google.common.base.Optional;
-import com.tools.io.MethylationCall;
+import com.tools.io.SiteBlock;
 
 import java.util.*;
 
@@ -22,11 +22,7 @@ class SiteCaller extends Caller {
     if (message instanceof Messages.Call) {
       // Perform the calling
       Messages.Call call = (Messages.Call) message;
-      ArrayList<DifferentialCall> differentialCalls = call(
-        call.blocks,
-        conditions,
-        call.sequenceDictionary.contigOrderMap
-      );
+      ArrayList<DifferentialCall> differentialCalls = call(call.sites, conditions);
 
       // Message that the calling has been completed
       Messages.CallingComplete callingComplete = new Messages.CallingComplete(
@@ -39,67 +35,48 @@ class SiteCaller extends Caller {
   }
 
   /**
-   * Returns an ArrayList of Observations built out of merging co-located counts across all the blocks.
+   * Returns an ArrayList of the significant DifferentialCalls found by testing the observations at each site.
    *
-   * @param callBlocks    the List<ArrayDeque<MethylationCall>> enumerating the calls across all of the blocks
-   * @param conditions    the ArrayList<Integer> giving the corresponding condition values for each of the blocks
-   * @param contigOrder   the HashMap<String, Integer> specifying the order of the contigs
+   * @param sites         the SiteBlock with the calls of every input aligned by site
+   * @param conditions    the ArrayList<Integer> giving the corresponding condition values for each of the inputs
    *
-   * @return an ArrayList<MethylationCall> with the merged calls in the contig order
+   * @return an ArrayList<DifferentialCall> with the significant calls in the contig order
    */
-  protected ArrayList<DifferentialCall> call(List<ArrayDeque<MethylationCall>> callBlocks,
-                                             ArrayList<Integer> conditions,
-                                             final HashMap<String, Integer> contigOrder) {
-    // Generate the observations for all of the sites
-    HashMap<String, TreeMap<Integer, ObservedSite>> mergedCalls = mergeCalls(callBlocks, conditions, MIN_COVERAGE);
-
-    // Get the contigs in order
-    // Order the counts using the contig order
-    Comparator<String> contigComparator = new Comparator<String>() {
-      @Override
-      public int compare(String contig1, String contig2) {
-        return contigOrder.get(contig1) - contigOrder.get(contig2) ;
-      }
-    };
-    ArrayList<String> contigs = new ArrayList<>(mergedCalls.keySet());
-    Collections.sort(contigs, contigComparator);
-
-    // Perform the differential calling
-    ArrayList<DifferentialSiteCall> rawCalls = new ArrayList<>();
-    for (String contig : contigs) {
-      ArrayList<DifferentialSiteCall> contigCalls = callContigSites(contig, mergedCalls.get(contig));
-      rawCalls.addAll(contigCalls);
-    }
-
-    // Handle the filtering and return
+  protected ArrayList<DifferentialCall> call(SiteBlock sites, ArrayList<Integer> conditions) {
     ArrayList<DifferentialCall> differentialCalls = new ArrayList<>();
-    for (DifferentialSiteCall differentialSiteCall : rawCalls) {
-      if (differentialSiteCall.pValue <= CUTOFF) differentialCalls.add(differentialSiteCall);
+    for (int run = 0; run < sites.getRunCount(); run++) {
+      String contig = sites.getRunContig(run);
+      for (int site = sites.getRunStart(run), n = sites.getRunEnd(run); site < n; site++) {
+        // Perform the differential calling and handle the filtering
+        ObservedSite observedSite = observeSite(sites, site, conditions, MIN_COVERAGE);
+        Optional<DifferentialSiteCall> differentialCall = callSite(contig, observedSite);
+        if (differentialCall.isPresent() && differentialCall.get().pValue <= CUTOFF) {
+          differentialCalls.add(differentialCall.get());
+        }
+      }
     }
 
     return differentialCalls;
   }
 
-  private ArrayList<DifferentialSiteCall> callContigSites(String contig, TreeMap<Integer, ObservedSite> contigSites) {
-    ArrayList<DifferentialSiteCall> calls = new ArrayList<>();
-    for (Map.Entry<Integer, ObservedSite> sitePair : contigSites.entrySet()) {
-      ObservedSite observedSite = sitePair.getValue();
-      Optional<TTestResult> tTestResult = differentialTTest(observedSite.sample1Values, observedSite.sample2Values);
-      if (tTestResult.isPresent()) {
-        DifferentialSiteCall differentialCall = new DifferentialSiteCall(
-          contig,
-          sitePair.getKey(),
-          observedSite.strand,
-          tTestResult.get().sample1Mean,
-          tTestResult.get().sample2Mean,
-          tTestResult.get().tStatistic,
-          tTestResult.get().pValue
-        );
-        calls.add(differentialCall);
-      }
+  private Optional<DifferentialSiteCall> callSite(String contig, ObservedSite observedSite) {
+    Optional<DifferentialSiteCall> call = Optional.absent();
+
+    Optional<TTestResult> tTestResult = differentialTTest(observedSite.sample1Values, observedSite.sample2Values);
+    if (tTestResult.isPresent()) {
+      DifferentialSiteCall differentialCall = new DifferentialSiteCall(
+        contig,
+        observedSite.position,
+        observedSite.strand,
+        tTestResult.get().sample1Mean,
+        tTestResult.get().sample2Mean,
+        tTestResult.get().tStatistic,
+        tTestResult.get().pValue
+      );
+      call = Optional.of(differentialCall);
     }
 
-    return calls;
+    return call;
   }
 
   public static Props props(final List<Integer> conditions, final ActorRef receiverRef) {
@@ -6,10 +6,10 @@ import akka.actor.UntypedActor;
 import akka.japi.Creator;
 import com.google.common.base.Joiner;
 import com.tools.actors.AbstractWriter;
+import com.tools.io.CompressionCodec;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -20,7 +20,7 @@ class Writer extends AbstractWriter<Messages.CallingComplete> {
 
   public Writer(Path outputPath, boolean isRegionFormat, ActorRef masterRef) throws IOException {
     super(masterRef, true);
-    this.writer = new PrintWriter(Files.newOutputStream(outputPath));
+    this.writer = new PrintWriter(CompressionCodec.newOutputStream(outputPath));
     this.isRegionFormat = isRegionFormat;
   }
 
@@ -2,6 +2,7 @@ package com.tools.methylation.extractor;
 
 abstract class AlignedFragment {
   public abstract String contig();
+  public abstract int referenceIndex();
   public abstract int start();
   public abstract int stop();
 }
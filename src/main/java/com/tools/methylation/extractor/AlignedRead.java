@@ -0,0 +1,127 @@
+package com.tools.methylation.extractor;
+
+import net.sf.samtools.CigarElement;
+import net.sf.samtools.CigarOperator;
+import net.sf.samtools.SAMRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The parts of an aligned read that are needed to extract its methylation calls.  The Cigar is packed as in the BAM
+ * format, with the length of each element shifted above its 4 bit operator code.
+ */
+class AlignedRead {
+  static final String GENOME_CONVERSION_TAG = "XG";
+  static final String METHYLATION_TAG = "XM";
+
+  // The operator codes of the packed Cigar elements
+  public static final int CIGAR_MATCH = 0;
+  public static final int CIGAR_INSERTION = 1;
+  public static final int CIGAR_DELETION = 2;
+
+  // The flag bits that identify duplicates, the mates of a pair and reads aligned to the reverse of their sequence
+  public static final int REVERSE_FLAG = 0x10;
+  public static final int FIRST_OF_PAIR_FLAG = 0x40;
+  public static final int SECOND_OF_PAIR_FLAG = 0x80;
+  public static final int DUPLICATE_FLAG = 0x400;
+
+  public final String contig;
+
+  // The index of the contig in the sequence dictionary of the alignment file
+  public final int referenceIndex;
+
+  public final int start;
+  public final int stop;
+  public final int[] cigar;
+
+  // The bismark methylation call characters
+  public final byte[] methylationCalls;
+
+  // Whether the read was converted from the forward strand of the reference
+  public final boolean isForward;
+
+  // The SAM flags of the record and the start of its mate, which is zero unless the read is paired
+  public final int flags;
+  public final int mateStart;
+
+  public AlignedRead(String contig,
+                     int referenceIndex,
+                     int start,
+                     int[] cigar,
+                     byte[] methylationCalls,
+                     boolean isForward) {
+    this(contig, referenceIndex, start, cigar, methylationCalls, isForward, 0, 0);
+  }
+
+  public AlignedRead(String contig,
+                     int referenceIndex,
+                     int start,
+                     int[] cigar,
+                     byte[] methylationCalls,
+                     boolean isForward,
+                     int flags,
+                     int mateStart) {
+    this.contig = contig;
+    this.referenceIndex = referenceIndex;
+    this.start = start;
+    this.stop = start + referenceLength(cigar) - 1;
+    this.cigar = cigar;
+    this.methylationCalls = methylationCalls;
+    this.isForward = isForward;
+    this.flags = flags;
+    this.mateStart = mateStart;
+  }
+
+  /**
+   * Returns the AlignedRead for a record produced by bismark.
+   */
+  public static AlignedRead fromRecord(SAMRecord record) { return fromRecord(record, ReadFilter.NONE); }
+
+  /**
+   * Returns the AlignedRead for a record produced by bismark without the calls at bases below the minimum quality of
+   * the filter.
+   */
+  public static AlignedRead fromRecord(SAMRecord record, ReadFilter readFilter) {
+    List<CigarElement> cigarElements = record.getCigar().getCigarElements();
+    int[] cigar = new int[cigarElements.size()];
+    for (int i = 0; i < cigar.length; i++) {
+      CigarElement cigarElement = cigarElements.get(i);
+      cigar[i] = cigarElement.getLength() << 4 | CigarOperator.enumToBinary(cigarElement.getOperator());
+    }
+
+    byte[] methylationCalls = ((String) record.getAttribute(METHYLATION_TAG)).getBytes(StandardCharsets.US_ASCII);
+    readFilter.maskCalls(methylationCalls, record.getBaseQualities(), 0);
+
+    return new AlignedRead(
+      record.getReferenceName(),
+      record.getReferenceIndex(),
+      record.getAlignmentStart(),
+      cigar,
+      methylationCalls,
+      record.getAttribute(GENOME_CONVERSION_TAG).equals("CT"),
+      record.getFlags(),
+      record.getReadPairedFlag() ? record.getMateAlignmentStart() : 0
+    );
+  }
+
+  public boolean isDuplicate() { return (flags & DUPLICATE_FLAG) != 0; }
+  public boolean isFirstOfPair() { return (flags & FIRST_OF_PAIR_FLAG) != 0; }
+  public boolean isSecondOfPair() { return (flags & SECOND_OF_PAIR_FLAG) != 0; }
+  public boolean isReverse() { return (flags & REVERSE_FLAG) != 0; }
+
+  public static int cigarLength(int cigarElement) { return cigarElement >>> 4; }
+  public static int cigarOperator(int cigarElement) { return cigarElement & 0xF; }
+
+  // Sums the lengths of the elements that consume reference positions
+  private static int referenceLength(int[] cigar) {
+    int length = 0;
+    for (int cigarElement : cigar) {
+      if (CigarOperator.binaryToEnum(cigarOperator(cigarElement)).consumesReferenceBases()) {
+        length += cigarLength(cigarElement);
+      }
+    }
+
+    return length;
+  }
+}
@@ -3,6 +3,8 @@ package com.tools.methylation.extractor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import com.google.common.collect.ImmutableMap;
+import com.tools.io.CompressionCodec;
 import com.tools.io.MethylationCallWriter;
 import com.tools.io.SequenceDictionary;
 import com.typesafe.config.Config;
@@ -19,40 +21,88 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BismarkMethylationExtractor {
   private final Logger logger = LoggerFactory.getLogger(BismarkMethylationExtractor.class);
 
+  // The name of each context, which prefixes the name of its output
+  public static final Map<String, Character> CONTEXT_NAMES = ImmutableMap.of(
+    "CpG", MethylationCounts.CPG_CONTEXT,
+    "CHG", MethylationCounts.CHG_CONTEXT,
+    "CHH", MethylationCounts.CHH_CONTEXT,
+    "CN_CHN", MethylationCounts.CN_CHN_CONTEXT
+  );
+
   private final Path inputPath;
   private final Path outputDirectory;
   private final List<String> controlContigs;
+  private final List<String> contexts;
+  private final boolean isCollapsed;
+  private final boolean isDeduplicated;
+  private final ReadFilter readFilter;
 
   public BismarkMethylationExtractor(Path inputPath, Path outputDirectory, List<String> controlContigs) {
+    this(
+      inputPath,
+      outputDirectory,
+      controlContigs,
+      new ArrayList<>(CONTEXT_NAMES.keySet()),
+      false,
+      false,
+      ReadFilter.NONE
+    );
+  }
+
+  /**
+   * Constructs a BismarkMethylationExtractor that only counts and writes the named contexts.
+   *
+   * @param contexts       the names of the contexts to extract, which are any of CpG, CHG, CHH and CN_CHN
+   * @param isCollapsed    whether the calls on both strands of each CpG are written as a single site at the position of
+   *                       the cytosine on the forward strand
+   * @param isDeduplicated whether the PCR duplicates, flagged or sharing the contig, strand, start and mate start of
+   *                       another fragment, are dropped rather than counted
+   * @param readFilter     the ReadFilter of the reads and calls that are counted
+   */
+  public BismarkMethylationExtractor(Path inputPath,
+                                     Path outputDirectory,
+                                     List<String> controlContigs,
+                                     List<String> contexts,
+                                     boolean isCollapsed,
+                                     boolean isDeduplicated,
+                                     ReadFilter readFilter) {
+    for (String context : contexts) {
+      if (!CONTEXT_NAMES.containsKey(context)) throw new IllegalArgumentException("unknown context: " + context);
+    }
+    if (contexts.isEmpty()) throw new IllegalArgumentException("no contexts selected");
+
     this.inputPath = inputPath;
     this.outputDirectory = outputDirectory;
     this.controlContigs = controlContigs;
+    this.contexts = contexts;
+    this.isCollapsed = isCollapsed;
+    this.isDeduplicated = isDeduplicated;
+    this.readFilter = readFilter;
   }
 
   public void run(int threadCount) throws Exception {
     // Create the output paths
     Files.createDirectories(outputDirectory.toAbsolutePath());
-    Path cpgOutputPath = outputDirectory.resolve("CpG_context.tab");
-    Path chgOutputPath = outputDirectory.resolve("CHG_context.tab");
-    Path chhOutputPath = outputDirectory.resolve("CHH_context.tab");
-    Path cnOutputPath = outputDirectory.resolve("CN_CHN_context.tab");
+    LinkedHashMap<Character, Path> outputPaths = new LinkedHashMap<>();
+    for (Map.Entry<String, Character> entry : CONTEXT_NAMES.entrySet()) {
+      if (contexts.contains(entry.getKey())) {
+        outputPaths.put(entry.getValue(), outputDirectory.resolve(entry.getKey() + "_context.tab"));
+      }
+    }
     Path summaryPath = outputDirectory.resolve("summary.tab");
 
     // Write out the headers
-    SequenceDictionary sequenceDictionary = writeHeaders(
-      inputPath,
-      controlContigs,
-      cpgOutputPath,
-      chgOutputPath,
-      chhOutputPath,
-      cnOutputPath
-    );
+    Collection<Path> paths = outputPaths.values();
+    SequenceDictionary sequenceDictionary = writeHeaders(inputPath, controlContigs, paths.toArray(new Path[0]));
 
     // Determine the maximum amount of memory that can be used in bytes
     long availableMemory = Runtime.getRuntime().maxMemory() / 2;
@@ -61,10 +111,10 @@ public class BismarkMethylationExtractor {
     Props props = Master.props(
       inputPath,
       sequenceDictionary,
-      cpgOutputPath,
-      chgOutputPath,
-      chhOutputPath,
-      cnOutputPath,
+      outputPaths,
+      isCollapsed,
+      isDeduplicated,
+      readFilter,
       summaryPath,
       availableMemory,
       threadCount
@@ -98,7 +148,7 @@ public class BismarkMethylationExtractor {
     SequenceDictionary sequenceDictionary = new SequenceDictionary(contigLengths, controlContigs);
 
     for (Path path : paths) {
-      try (OutputStream outputStream = Files.newOutputStream(path);
+      try (OutputStream outputStream = CompressionCodec.newOutputStream(path);
            MethylationCallWriter writer = new MethylationCallWriter(outputStream)) {
         writer.writeHeader(sequenceDictionary);
       }
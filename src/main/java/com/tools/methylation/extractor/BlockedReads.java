@@ -1,27 +1,95 @@
 package com.tools.methylation.extractor;
 
+import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMSequenceRecord;
+import net.sf.samtools.util.CloseableIterator;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 
 class BlockedReads {
   public Path path;
   public CoordinateConverter coordinateConverter;
 
+  // The filter applied to the records as they are read
+  public ReadFilter readFilter;
+
   public BlockedReads(Path path, CoordinateConverter coordinateConverter) {
+    this(path, coordinateConverter, ReadFilter.NONE);
+  }
+
+  public BlockedReads(Path path, CoordinateConverter coordinateConverter, ReadFilter readFilter) {
     this.path = path;
     this.coordinateConverter = coordinateConverter;
+    this.readFilter = readFilter;
   }
 
   public boolean isEmpty() {
     boolean isEmpty;
     if (Files.exists(path)) {
-      try (SAMFileReader samReader = new SAMFileReader(path.toFile())) {
-        isEmpty = !samReader.iterator().hasNext();
+      try {
+        CloseableIterator<AlignedFragment> fragments = fragments();
+        isEmpty = !fragments.hasNext();
+        fragments.close();
+      } catch (IOException exception) {
+        throw new IllegalStateException("unable to read blocked reads " + path, exception);
       }
     } else isEmpty = true;
 
     return isEmpty;
   }
+
+  /**
+   * Returns true if the fragments of the block come in the order of their contig and start.
+   */
+  public boolean isSorted() {
+    boolean isSorted;
+    try (SAMFileReader samReader = new SAMFileReader(path.toFile())) {
+      isSorted = samReader.getFileHeader().getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+    }
+
+    return isSorted;
+  }
+
+  /**
+   * Returns an iterator over the fragments of the block, which must be closed once it is no longer needed.
+   *
+   * @throws IOException if the reads cannot be opened
+   */
+  public CloseableIterator<AlignedFragment> fragments() throws IOException { return fragments(1); }
+
+  /**
+   * Returns an iterator over the fragments of the block, which must be closed once it is no longer needed.  A BAM file
+   * is inflated and decoded straight from its raw records on the specified number of threads.  The mates of coordinate
+   * sorted reads are paired however far apart they are.
+   *
+   * @param decoderCount  the int number of threads decoding the reads
+   * @throws IOException if the reads cannot be opened
+   */
+  public CloseableIterator<AlignedFragment> fragments(int decoderCount) throws IOException {
+    SAMFileReader samReader = new SAMFileReader(path.toFile());
+    boolean isSorted = samReader.getFileHeader().getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+
+    CloseableIterator<AlignedFragment> fragments;
+    if (samReader.isBinary()) {
+      // The raw records refer to their contigs by their index in the header
+      ArrayList<String> contigs = new ArrayList<>();
+      for (SAMSequenceRecord sequenceRecord : samReader.getFileHeader().getSequenceDictionary().getSequences()) {
+        contigs.add(sequenceRecord.getSequenceName());
+      }
+      samReader.close();
+
+      fragments = new RecordFragmentIterator.RawBamRecords(
+        new ParallelBamIterator(path, decoderCount),
+        contigs,
+        readFilter,
+        isSorted
+      );
+    } else fragments = new RecordFragmentIterator.SamRecords(samReader, samReader.iterator(), readFilter, isSorted);
+
+    return fragments;
+  }
 }
@@ -19,6 +19,7 @@ import scala.concurrent.duration.Duration;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.nio.file.Path;
+import java.util.Set;
 
 import static akka.actor.SupervisorStrategy.escalate;
 
@@ -32,8 +33,19 @@ class Blocker extends AbstractMaster {
                  SequenceDictionary sequenceDictionary,
                  ActorRef masterRef,
                  long availableMemory,
-                 int threadCount) {
-    super(new Builder(inputPath, sequenceDictionary, availableMemory, threadCount), false);
+                 int threadCount,
+                 int concurrentBlockCount,
+                 Set<Character> contexts,
+                 ReadFilter readFilter) {
+    super(new Builder(
+      inputPath,
+      sequenceDictionary,
+      availableMemory,
+      threadCount,
+      concurrentBlockCount,
+      contexts,
+      readFilter
+    ), false);
 
     this.masterRef = masterRef;
   }
@@ -68,30 +80,55 @@ class Blocker extends AbstractMaster {
     );
   }
 
+  /**
+   * Returns the Props for a Blocker whose reference blocks are sized to share the memory with the other blocks that
+   * are extracted at the same time, counting only the selected contexts.  The reads rejected by the filter are
+   * dropped before they are blocked.
+   */
   public static Props props(final Path inputPath,
                             final SequenceDictionary sequenceDictionary,
                             final ActorRef masterRef,
                             final long availableMemory,
-                            final int threadCount) {
+                            final int threadCount,
+                            final int concurrentBlockCount,
+                            final Set<Character> contexts,
+                            final ReadFilter readFilter) {
     return Props.create(new Creator<Blocker>() {
       @Override
       public Blocker create() throws Exception {
-        return new Blocker(inputPath, sequenceDictionary, masterRef, availableMemory, threadCount);
+        return new Blocker(
+          inputPath,
+          sequenceDictionary,
+          masterRef,
+          availableMemory,
+          threadCount,
+          concurrentBlockCount,
+          contexts,
+          readFilter
+        );
       }
     });
   }
 
   public static class Builder extends MasterBuilder {
     private final Path inputPath;
+    private final ReadFilter readFilter;
     private final CoordinateConverter coordinateConverter;
     private final SAMFileHeader samFileHeader;
     private final int blockCount;
     private final int readerBlockSize;
     private final int referenceBlockSize;
 
-    public Builder(Path inputPath, SequenceDictionary sequenceDictionary, long availableMemory, int threadCount) {
+    public Builder(Path inputPath,
+                   SequenceDictionary sequenceDictionary,
+                   long availableMemory,
+                   int threadCount,
+                   int concurrentBlockCount,
+                   Set<Character> contexts,
+                   ReadFilter readFilter) {
       super(threadCount);
       this.inputPath = inputPath;
+      this.readFilter = readFilter;
 
       // Grab the SAM header so it can be added to any block sam files
       try (SAMFileReader samReader = new SAMFileReader(inputPath.toFile())) {
@@ -100,13 +137,17 @@ class Blocker extends AbstractMaster {
 
       this.coordinateConverter = CoordinateConverter.fromSequenceDictionary(sequenceDictionary);
       this.readerBlockSize = determineBlockSize(availableMemory, workerCount);
-      this.referenceBlockSize = determineReferenceBlockSize(availableMemory, workerCount);
+      long blockMemory = availableMemory / concurrentBlockCount;
+      this.referenceBlockSize = determineReferenceBlockSize(blockMemory, workerCount, contexts);
       this.blockCount = (int) Math.ceil((double) coordinateConverter.referenceLength() / referenceBlockSize);
     }
 
     @Override
     protected Props readerProps(ActorRef workerRef) {
-      return Reader.props(inputPath, readerBlockSize, workerRef);
+      // The input is decoded on as many threads as there are workers, which would otherwise wait on the reader.  Any
+      // duplicates are dropped as each block is extracted, since the fragments sharing a start share a block.
+      BlockedReads blockedReads = new BlockedReads(inputPath, coordinateConverter, readFilter);
+      return Reader.props(blockedReads, readerBlockSize, workerCount, Long.MAX_VALUE, false, workerRef);
     }
 
     @Override
@@ -131,13 +172,13 @@ class Blocker extends AbstractMaster {
       return Math.min((int) blockLength, maxBlockLength);
     }
 
-    private int determineReferenceBlockSize(long availableMemory, int threadCount) {
+    static int determineReferenceBlockSize(long availableMemory, int threadCount, Set<Character> contexts) {
       // The maximum number of records that any child actor will have to hold in memory
       int maxBlockLength = 10000000;
 
       /** The schematic formula is
        *
-       * a * M >= s * t * r + s * (t + 1) * c
+       * a * M >= s * t * r + s * c
        *
        * where
        *  a - ratio of total memory to use
@@ -145,13 +186,15 @@ class Blocker extends AbstractMaster {
        *  s - block size
        *  t - thread count
        *  r - sam entry size
-       *  c - count footprint
+       *  c - count footprint of the selected contexts
+       *
+       * where the workers of a block all count into a single shared counter.
        */
-      int countBytes = 8;
+      int countBytes = MethylationCounts.bytesPerPosition(contexts);
       int samRecordBytes = 200;
 
       // Calculate the largest block length that can be used
-      double countCoefficient = threadCount * (samRecordBytes + countBytes) + countBytes;
+      double countCoefficient = threadCount * samRecordBytes + countBytes;
       long blockLength = (long) Math.floor(availableMemory / countCoefficient);
 
       return Math.min((int) blockLength, maxBlockLength);
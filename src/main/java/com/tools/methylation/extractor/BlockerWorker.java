@@ -4,7 +4,6 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
 import com.tools.actors.AbstractWorker;
-import net.sf.samtools.SAMRecord;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -31,28 +30,20 @@ class BlockerWorker extends AbstractWorker<Messages.AlignedReadsRead, Messages.R
   }
 
   private ArrayList<ReadBlock> block(ArrayDeque<AlignedFragment> fragments) {
-    HashMap<Integer, ArrayDeque<SAMRecord>> blockMap = new HashMap<>();
+    HashMap<Integer, ArrayDeque<AlignedFragment>> blockMap = new HashMap<>();
 
     for (AlignedFragment fragment : fragments) {
-      long startPosition = coordinateConverter.convert(fragment.contig(), fragment.start());
+      long startPosition = coordinateConverter.convert(fragment.referenceIndex(), fragment.start());
 
       // Identify the bin that the fragment belongs to
       int binIndex = (int) Math.floor((double) startPosition / binSize);
 
-      if (!blockMap.containsKey(binIndex)) blockMap.put(binIndex, new ArrayDeque<SAMRecord>());
-      ArrayDeque<SAMRecord> blockRecords = blockMap.get(binIndex);
-
-      if (fragment instanceof SingleEndFragment) {
-        blockRecords.addLast(((SingleEndFragment) fragment).read);
-      } else {
-        PairedEndFragment pairedEndFragment = (PairedEndFragment) fragment;
-        blockRecords.addLast(pairedEndFragment.read1);
-        blockRecords.addLast(pairedEndFragment.read2);
-      }
+      if (!blockMap.containsKey(binIndex)) blockMap.put(binIndex, new ArrayDeque<AlignedFragment>());
+      blockMap.get(binIndex).addLast(fragment);
     }
 
     ArrayList<ReadBlock> readBlocks = new ArrayList<>();
-    for (Map.Entry<Integer, ArrayDeque<SAMRecord>> entry : blockMap.entrySet()) {
+    for (Map.Entry<Integer, ArrayDeque<AlignedFragment>> entry : blockMap.entrySet()) {
       ReadBlock readBlock = new ReadBlock(entry.getKey(), entry.getValue());
       readBlocks.add(readBlock);
     }
@@ -73,11 +64,11 @@ class BlockerWorker extends AbstractWorker<Messages.AlignedReadsRead, Messages.R
 
   class ReadBlock {
     public final int index;
-    public final ArrayDeque<SAMRecord> records;
+    public final ArrayDeque<AlignedFragment> fragments;
 
-    public ReadBlock(int index, ArrayDeque<SAMRecord> records) {
+    public ReadBlock(int index, ArrayDeque<AlignedFragment> fragments) {
       this.index = index;
-      this.records = records;
+      this.fragments = fragments;
     }
   }
 }
@@ -5,21 +5,40 @@ import akka.actor.Props;
 import akka.japi.Creator;
 import com.tools.FileUtils;
 import com.tools.actors.AbstractWriter;
-import net.sf.samtools.*;
+import com.tools.io.CompressionCodec;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMSequenceRecord;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 
+/**
+ * Spills the fragments of each block to a file in the compact FragmentSpill format.  Only the most recently used
+ * spill files are kept open, so that the number of open files is bounded regardless of the number of blocks.
+ */
 class BlockerWriter extends AbstractWriter<Messages.ReadsBlocked> {
-  private final HashMap<Integer, SAMFileWriter> writerMap;
+  // The largest number of spill files that are open at once
+  private static final int MAX_OPEN_WRITERS = 64;
+
   private final HashMap<Integer, Path> pathMap;
   private final int blockSize;
   private final CoordinateConverter coordinateConverter;
 
+  // The names of the contigs that the spilled fragments refer to by index
+  private final List<String> contigs;
+  private final FragmentSpill fragmentSpill;
+
+  // The open spill files in order of least recent use
+  private final LinkedHashMap<Integer, DataOutputStream> writerMap = new LinkedHashMap<>(16, 0.75f, true);
+
   public BlockerWriter(SAMFileHeader samHeader,
                        int blockCount,
                        int blockSize,
@@ -30,31 +49,32 @@ class BlockerWriter extends AbstractWriter<Messages.ReadsBlocked> {
     this.blockSize = blockSize;
     this.coordinateConverter = coordinateConverter;
 
-    // Open writers for all of the blocks
-    this.writerMap = new HashMap<>();
-    this.pathMap = new HashMap<>();
-    // TODO: Look at writing BAM file instead
-    SAMFileWriterFactory samFileWriterFactory = new SAMFileWriterFactory();
-    while (writerMap.size() < blockCount) {
-      Path outputPath = FileUtils.createTempFile("sam");
-      SAMTextWriter samWriter = (SAMTextWriter) samFileWriterFactory.makeSAMWriter(
-        samHeader,
-        false,
-        outputPath.toFile()
-      );
+    this.contigs = new ArrayList<>();
+    for (SAMSequenceRecord sequenceRecord : samHeader.getSequenceDictionary().getSequences()) {
+      contigs.add(sequenceRecord.getSequenceName());
+    }
+    this.fragmentSpill = new FragmentSpill(contigs);
 
-      pathMap.put(writerMap.size(), outputPath);
-      writerMap.put(writerMap.size(), samWriter);
+    // Create the files for all of the blocks, which are only read back once so they are compressed for speed
+    this.pathMap = new HashMap<>();
+    while (pathMap.size() < blockCount) {
+      pathMap.put(pathMap.size(), FileUtils.createTempFile("spill" + CompressionCodec.BLOCK_LZ.extension));
     }
   }
 
+  @Override
+  public void postStop() throws Exception {
+    super.postStop();
+    closeWriters();
+  }
+
   @Override protected Class<Messages.ReadsBlocked> getWorkCompleteClass() { return Messages.ReadsBlocked.class; }
 
   @Override
   protected void handleCustom(Object message) throws Exception {
     if (message instanceof Messages.BlockingCompleted) {
       // Close the resources
-      for (SAMFileWriter samFileWriter : writerMap.values()) samFileWriter.close();
+      closeWriters();
 
       ArrayList<Integer> indices = new ArrayList<>(pathMap.keySet());
       Collections.sort(indices);
@@ -64,7 +84,7 @@ class BlockerWriter extends AbstractWriter<Messages.ReadsBlocked> {
 
       ArrayList<BlockedReads> blockedReads = new ArrayList<>();
       for (int index : indices) {
-        BlockedReads block = new BlockedReads(pathMap.get(index), coordinateConverters.next());
+        BlockedReads block = new SpilledReads(pathMap.get(index), coordinateConverters.next(), contigs);
         blockedReads.add(block);
       }
 
@@ -74,16 +94,44 @@ class BlockerWriter extends AbstractWriter<Messages.ReadsBlocked> {
 
   @Override
   protected void write(Messages.ReadsBlocked message) {
-    // Merge the counts
-    for (BlockerWorker.ReadBlock readBlock : message.blocks) {
-      SAMFileWriter samFileWriter = writerMap.get(readBlock.index);
-      for (SAMRecord samRecord : readBlock.records) samFileWriter.addAlignment(samRecord);
+    try {
+      for (BlockerWorker.ReadBlock readBlock : message.blocks) {
+        DataOutputStream outputStream = getWriter(readBlock.index);
+        for (AlignedFragment fragment : readBlock.fragments) fragmentSpill.write(fragment, outputStream);
+      }
+    } catch (IOException exception) {
+      throw new IllegalStateException("unable to spill blocked reads", exception);
     }
   }
 
   @Override
   protected void writeHeader(Messages.ReadsBlocked message) { }
 
+  // Returns the open spill file of the block, closing the least recently used file if too many are open
+  private DataOutputStream getWriter(int index) throws IOException {
+    DataOutputStream outputStream = writerMap.get(index);
+    if (outputStream == null) {
+      if (writerMap.size() >= MAX_OPEN_WRITERS) {
+        Iterator<DataOutputStream> writers = writerMap.values().iterator();
+        writers.next().close();
+        writers.remove();
+      }
+
+      // Each reopening appends a new compressed stream that is read back as a continuation of the file
+      outputStream = new DataOutputStream(
+        CompressionCodec.newOutputStream(pathMap.get(index), StandardOpenOption.APPEND)
+      );
+      writerMap.put(index, outputStream);
+    }
+
+    return outputStream;
+  }
+
+  private void closeWriters() throws IOException {
+    for (DataOutputStream outputStream : writerMap.values()) outputStream.close();
+    writerMap.clear();
+  }
+
   public static Props props(final SAMFileHeader samHeader,
                             final int blockCount,
                             final int blockSize,
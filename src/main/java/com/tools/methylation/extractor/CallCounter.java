@@ -0,0 +1,42 @@
+package com.tools.methylation.extractor;
+
+/**
+ * Counts methylation calls by key, where a key is the flattened position shifted left by two with the strand and
+ * methylation bits below it.  The counted calls are visited in key order through slots numbered from zero, where
+ * nextSlot skips any slots without a count.
+ */
+abstract class CallCounter {
+  /**
+   * Adds the count to the call with the specified key.
+   */
+  public abstract void add(int key, int count);
+
+  /**
+   * Returns the number of slots in the counter, which bounds the slot numbers.
+   */
+  public abstract int getSlotCount();
+
+  /**
+   * Returns the first slot at or after the provided slot with a non-zero count, which is the slot count if there are
+   * no more counts.
+   */
+  public abstract int nextSlot(int slot);
+
+  public abstract int getKey(int slot);
+  public abstract int getCount(int slot);
+
+  /**
+   * Adds all of the counts of the provided counter to this.
+   */
+  public void addAll(CallCounter counter) { addAll(counter, 0); }
+
+  /**
+   * Adds all of the counts of the provided counter to this, shifting their keys by the offset between the counters.
+   */
+  public void addAll(CallCounter counter, int keyShift) {
+    int slotCount = counter.getSlotCount();
+    for (int slot = counter.nextSlot(0); slot < slotCount; slot = counter.nextSlot(slot + 1)) {
+      add(counter.getKey(slot) + keyShift, counter.getCount(slot));
+    }
+  }
+}
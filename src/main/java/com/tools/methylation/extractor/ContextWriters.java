@@ -0,0 +1,211 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tools.io.CompressionCodec;
+import com.tools.io.MethylationCall;
+import com.tools.io.MethylationCallWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Holds the output of each context open for the whole extraction and writes the contexts concurrently, each on its
+ * own thread, so that writing a block takes about as long as its largest context.  Each context records the depth of
+ * its sites as it is written and the depths are merged once all of the contexts have been written.  The contexts are
+ * flushed after each write so that the calls are visible once the write returns.  Only one write may be in progress
+ * at a time.
+ */
+class ContextWriters implements Closeable {
+  // The open writer for each context
+  private final LinkedHashMap<Character, MethylationCallWriter> writers = new LinkedHashMap<>();
+  private final ExecutorService executor;
+
+  // Whether the strands of each CpG are collapsed into a single site
+  private final boolean isCollapsed;
+
+  /**
+   * Constructs ContextWriters appending to the outputs of every context, whose headers must already be written.
+   *
+   * @throws IOException if any of the outputs cannot be opened
+   */
+  public ContextWriters(Path cpgOutputPath,
+                        Path chgOutputPath,
+                        Path chhOutputPath,
+                        Path cnOutputPath) throws IOException {
+    this(
+      ImmutableMap.of(
+        MethylationCounts.CPG_CONTEXT, cpgOutputPath,
+        MethylationCounts.CHG_CONTEXT, chgOutputPath,
+        MethylationCounts.CHH_CONTEXT, chhOutputPath,
+        MethylationCounts.CN_CHN_CONTEXT, cnOutputPath
+      ),
+      false
+    );
+  }
+
+  /**
+   * Constructs ContextWriters appending to the output of each of the selected contexts, whose headers must already be
+   * written.  The calls of any other context are not written.
+   *
+   * @param outputPaths the Path of the output of each context keyed by its context code
+   * @param isCollapsed whether the calls on both strands of each CpG are written as a single site on the forward strand
+   * @throws IOException if any of the outputs cannot be opened
+   */
+  public ContextWriters(Map<Character, Path> outputPaths, boolean isCollapsed) throws IOException {
+    this.isCollapsed = isCollapsed;
+    for (Map.Entry<Character, Path> entry : outputPaths.entrySet()) {
+      writers.put(entry.getKey(), openWriter(entry.getValue()));
+    }
+
+    this.executor = Executors.newFixedThreadPool(
+      Math.max(writers.size(), 1),
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("context-writer-%d").build()
+    );
+  }
+
+  /**
+   * Returns the contexts that are written.
+   */
+  public Set<Character> getContexts() { return Collections.unmodifiableSet(writers.keySet()); }
+
+  /**
+   * Writes the calls of each context, returning the calls of each context that belong to the following block.
+   *
+   * @param counts      the MethylationCounts with the calls to write
+   * @param depthCounts the depth counter of each contig, which records the sites written
+   */
+  public Map<Character, ArrayList<MethylationCall>> write(MethylationCounts counts,
+                                                          Map<String, DepthCounter> depthCounts) {
+    return write(counts, counts.getStop(), depthCounts);
+  }
+
+  /**
+   * Writes the calls of each context through the stop position, returning the later calls of each context, which
+   * include the calls of a collapsed site at the stop whose reverse strand may be counted with the later calls.
+   *
+   * @param counts      the MethylationCounts with the calls to write
+   * @param stop        the long last flattened position to write
+   * @param depthCounts the depth counter of each contig, which records the sites written
+   */
+  public Map<Character, ArrayList<MethylationCall>> write(MethylationCounts counts,
+                                                          long stop,
+                                                          Map<String, DepthCounter> depthCounts) {
+    HashMap<Character, Iterator<MethylationCall>> calls = new HashMap<>();
+    for (char context : writers.keySet()) calls.put(context, counts.iterator(context, stop, isCollapsed(context)));
+
+    return writeContexts(calls, depthCounts);
+  }
+
+  /**
+   * Writes the calls of each context, which are already in order and are the last calls to be written.
+   *
+   * @param calls       the calls of each context, where any context may be missing
+   * @param depthCounts the depth counter of each contig, which records the sites written
+   */
+  public void write(Map<Character, ArrayList<MethylationCall>> calls, Map<String, DepthCounter> depthCounts) {
+    HashMap<Character, Iterator<MethylationCall>> callIterators = new HashMap<>();
+    for (char context : writers.keySet()) {
+      if (calls.containsKey(context)) {
+        Iterator<MethylationCall> contextCalls = calls.get(context).iterator();
+        if (isCollapsed(context)) contextCalls = new CpgStrandCollapser(contextCalls);
+        callIterators.put(context, contextCalls);
+      }
+    }
+
+    writeContexts(callIterators, depthCounts);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    for (MethylationCallWriter writer : writers.values()) writer.close();
+  }
+
+  private boolean isCollapsed(char context) { return isCollapsed && context == MethylationCounts.CPG_CONTEXT; }
+
+  private Map<Character, ArrayList<MethylationCall>> writeContexts(Map<Character, Iterator<MethylationCall>> calls,
+                                                                   Map<String, DepthCounter> depthCounts) {
+    // Start all of the contexts before waiting on any of them
+    LinkedHashMap<Character, ContextWrite> contextWrites = new LinkedHashMap<>();
+    LinkedHashMap<Character, Future<ArrayList<MethylationCall>>> futures = new LinkedHashMap<>();
+    for (Map.Entry<Character, Iterator<MethylationCall>> entry : calls.entrySet()) {
+      ContextWrite contextWrite = new ContextWrite(writers.get(entry.getKey()), entry.getValue());
+      contextWrites.put(entry.getKey(), contextWrite);
+      futures.put(entry.getKey(), executor.submit(contextWrite));
+    }
+
+    HashMap<Character, ArrayList<MethylationCall>> remainders = new HashMap<>();
+    for (Map.Entry<Character, Future<ArrayList<MethylationCall>>> entry : futures.entrySet()) {
+      remainders.put(entry.getKey(), await(entry.getValue()));
+
+      // Merge the depths of the context
+      for (Map.Entry<String, DepthCounter> depthEntry : contextWrites.get(entry.getKey()).depthCounts.entrySet()) {
+        DepthCounter depthCounter = depthCounts.get(depthEntry.getKey());
+        if (depthCounter == null) {
+          depthCounter = new DepthCounter();
+          depthCounts.put(depthEntry.getKey(), depthCounter);
+        }
+        depthCounter.merge(depthEntry.getValue());
+      }
+    }
+
+    return remainders;
+  }
+
+  private static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while writing calls", exception);
+    } catch (ExecutionException exception) {
+      throw new IllegalStateException("unable to write calls", exception.getCause());
+    }
+  }
+
+  private static MethylationCallWriter openWriter(Path outputPath) throws IOException {
+    return new MethylationCallWriter(CompressionCodec.newOutputStream(outputPath, StandardOpenOption.APPEND));
+  }
+
+  /**
+   * Writes the calls of a single context recording the depths of its sites, returning any calls left by the iterator.
+   */
+  private static class ContextWrite implements Callable<ArrayList<MethylationCall>> {
+    private final MethylationCallWriter writer;
+    private final Iterator<MethylationCall> calls;
+    private final HashMap<String, DepthCounter> depthCounts = new HashMap<>();
+
+    public ContextWrite(MethylationCallWriter writer, Iterator<MethylationCall> calls) {
+      this.writer = writer;
+      this.calls = calls;
+    }
+
+    @Override
+    public ArrayList<MethylationCall> call() {
+      ExtractorWriter.writeCalls(calls, writer, depthCounts);
+      writer.flush();
+
+      ArrayList<MethylationCall> remainders;
+      if (calls instanceof MethylationCounts.MethylationCallIterator) {
+        remainders = ((MethylationCounts.MethylationCallIterator) calls).getRemainingCounts();
+      } else remainders = new ArrayList<>();
+
+      return remainders;
+    }
+  }
+}
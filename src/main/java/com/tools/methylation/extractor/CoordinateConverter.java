@@ -3,21 +3,32 @@ package com.tools.methylation.extractor;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 import com.tools.io.SequenceDictionary;
+import com.tools.methylation.utils.Region;
 import net.sf.samtools.SAMSequenceRecord;
 
 import java.util.*;
 
 /**
  * Provides a mapping between the reference contig based coordinate system and a single linear system that is easily
- * blocked.
+ * blocked.  Besides converting by contig name, positions can be converted by the index of their contig in the
+ * sequence dictionary of the alignment file through a table of offsets, which avoids hashing the contig of every read.
  */
 class CoordinateConverter {
+  // The offset of the contigs that are not part of the converter
+  private static final long NO_OFFSET = Long.MIN_VALUE;
+
   public final String stopContig;
   public final int stopPosition;
 
   private final List<ReferenceSequence> referenceSequences;
   private final HashMap<String, Long> sequenceOffsets;
 
+  // The contigs in the order of the sequence dictionary of the alignment file and the offset of each
+  private final List<String> referenceContigs;
+  private final long[] referenceOffsets;
+
+  private final InverseCoordinateConvertor inverseConvertor;
+
   public CoordinateConverter(List<ReferenceSequence> referenceSequences, int offset)  {
     this(
       referenceSequences,
@@ -31,6 +42,19 @@ class CoordinateConverter {
                              int offset,
                              String stopContig,
                              int stopPosition)  {
+    this(referenceSequences, offset, stopContig, stopPosition, contigs(referenceSequences));
+  }
+
+  /**
+   * Constructs a CoordinateConverter whose reference indices are the indices of the reference contigs, which are the
+   * contigs in the order of the sequence dictionary of the alignment file and may include contigs outside of the
+   * reference sequences.
+   */
+  public CoordinateConverter(List<ReferenceSequence> referenceSequences,
+                             int offset,
+                             String stopContig,
+                             int stopPosition,
+                             List<String> referenceContigs)  {
     if (referenceSequences.size() == 0) {
       throw new IllegalArgumentException("must include at least 1 reference sequence for offset: " +
         offset + ", stop: " + stopContig + ":" + stopPosition);
@@ -53,6 +77,21 @@ class CoordinateConverter {
     if (!lastSequence.contig.equals(stopContig)) {
       throw new IllegalArgumentException("last contig " + lastSequence.contig + " does not match stop " + stopContig);
     }
+
+    // Build the table of offsets by reference index
+    this.referenceContigs = referenceContigs;
+    this.referenceOffsets = new long[referenceContigs.size()];
+    for (int i = 0; i < referenceOffsets.length; i++) {
+      Long sequenceOffset = sequenceOffsets.get(referenceContigs.get(i));
+      referenceOffsets[i] = sequenceOffset == null ? NO_OFFSET : sequenceOffset;
+    }
+
+    this.inverseConvertor = new InverseCoordinateConvertor(
+      referenceSequences,
+      sequenceOffsets,
+      stopContig,
+      stopPosition
+    );
   }
 
   @Override
@@ -77,10 +116,36 @@ class CoordinateConverter {
     return offset + sequencePosition;
   }
 
-  public InverseCoordinateConvertor inverseConvertor() {
-    return new InverseCoordinateConvertor(referenceSequences, sequenceOffsets, stopContig, stopPosition);
+  /**
+   * Returns the flattened position given the index of the contig in the sequence dictionary of the alignment file.
+   */
+  public long convert(int referenceIndex, int sequencePosition) {
+    long offset = referenceOffsets[referenceIndex];
+    if (offset == NO_OFFSET) {
+      throw new IllegalArgumentException("unknown contig encountered: " + referenceContigs.get(referenceIndex));
+    }
+
+    return offset + sequencePosition;
+  }
+
+  /**
+   * Returns the length of the whole contig, even when the converter stops within the contig.
+   */
+  public int contigLength(String contig) {
+    ReferenceSequence contigSequence = null;
+    for (ReferenceSequence referenceSequence : referenceSequences) {
+      if (referenceSequence.contig.equals(contig)) contigSequence = referenceSequence;
+    }
+    if (contigSequence == null) throw new IllegalArgumentException("unknown contig encountered: " + contig);
+
+    return contigSequence.length;
   }
 
+  /**
+   * Returns the InverseCoordinateConvertor of this, which is safe to share between threads.
+   */
+  public InverseCoordinateConvertor inverseConvertor() { return inverseConvertor; }
+
   public long referenceLength() {
     long length = sequenceOffsets.get(referenceSequences.get(0).contig);
     for (ReferenceSequence referenceSequence : referenceSequences) length += referenceSequence.length;
@@ -92,6 +157,27 @@ class CoordinateConverter {
     return length;
   }
 
+  /**
+   * Returns the regions of the reference whose positions flatten to the positions from start through stop.
+   *
+   * @param start the long first flattened position
+   * @param stop  the long last flattened position
+   */
+  public ArrayList<Region> regions(long start, long stop) {
+    ArrayList<Region> regions = new ArrayList<>();
+    for (ReferenceSequence referenceSequence : referenceSequences) {
+      long offset = sequenceOffsets.get(referenceSequence.contig);
+      long regionStart = Math.max(start - offset, 1);
+      long regionStop = Math.min(stop - offset, referenceSequence.length);
+      if (regionStart <= regionStop) {
+        String id = referenceSequence.contig + ":" + regionStart + "-" + regionStop;
+        regions.add(new Region(id, referenceSequence.contig, (int) regionStart, (int) regionStop));
+      }
+    }
+
+    return regions;
+  }
+
   /**
    * Splits this Coordinate Convertor into smaller chunks providing coordinate mappings against sub-regions of the
    * genome.
@@ -126,7 +212,8 @@ class CoordinateConverter {
         referenceSequences,
         offset,
         stopPosition.contig,
-        stopPosition.position
+        stopPosition.position,
+        referenceContigs
       );
       coordinateConverters.add(chunkConverter);
 
@@ -153,8 +240,23 @@ class CoordinateConverter {
 
       referenceSequences.add(referenceSequence);
     }
-    
-    return new CoordinateConverter(referenceSequences, 0);
+    ReferenceSequence lastSequence = referenceSequences.get(referenceSequences.size() - 1);
+
+    // The reference indices follow the order of the contigs in the alignment file rather than the sorted order
+    return new CoordinateConverter(
+      referenceSequences,
+      0,
+      lastSequence.contig,
+      lastSequence.length,
+      new ArrayList<>(sequenceDictionary.contigLengthMap.keySet())
+    );
+  }
+
+  private static List<String> contigs(List<ReferenceSequence> referenceSequences) {
+    ArrayList<String> contigs = new ArrayList<>();
+    for (ReferenceSequence referenceSequence : referenceSequences) contigs.add(referenceSequence.contig);
+
+    return contigs;
   }
 
   public static class ReferenceSequence {
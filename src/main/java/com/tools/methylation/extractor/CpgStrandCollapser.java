@@ -0,0 +1,77 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.tools.io.MethylationCall;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Collapses the calls of both strands of each CpG into a single site at the position of the cytosine on the forward
+ * strand.  The cytosine on the reverse strand follows the one on the forward strand, so the reverse strand calls are
+ * merged into the forward strand calls of the preceding position, except at the first position of a contig where
+ * there is no preceding position.  The calls must be in the order of their contig, position and strand, and a site
+ * is only complete once the calls have moved past the position that follows it.
+ */
+class CpgStrandCollapser extends AbstractIterator<MethylationCall> {
+  private final PeekingIterator<MethylationCall> calls;
+
+  // The sites that may still gain calls in the order of their position, which are all on the contig of the last call
+  private final ArrayList<MethylationCall> sites = new ArrayList<>();
+
+  public CpgStrandCollapser(Iterator<MethylationCall> calls) {
+    this.calls = Iterators.peekingIterator(calls);
+  }
+
+  @Override
+  protected MethylationCall computeNext() {
+    // Gather the calls until the first site can no longer gain calls
+    while (calls.hasNext() && (sites.isEmpty() || !isComplete(sites.get(0), calls.peek()))) add(calls.next());
+
+    MethylationCall nextElement;
+    if (sites.isEmpty() || (!calls.hasNext() && !isComplete(sites.get(0)))) nextElement = endOfData();
+    else nextElement = sites.remove(0);
+
+    return nextElement;
+  }
+
+  /**
+   * Returns whether the site can no longer gain calls once all of the calls have been gathered, which is always true
+   * unless the calls following the last of them are still to come.
+   */
+  protected boolean isComplete(MethylationCall site) { return true; }
+
+  /**
+   * Returns the calls that have not been collapsed into a complete site in their order, which are the calls of the
+   * incomplete sites followed by the calls that were not gathered.
+   */
+  public ArrayList<MethylationCall> getRemainingCalls() {
+    ArrayList<MethylationCall> remainingCalls = new ArrayList<>(sites);
+    sites.clear();
+    Iterators.addAll(remainingCalls, calls);
+
+    return remainingCalls;
+  }
+
+  private static boolean isComplete(MethylationCall site, MethylationCall nextCall) {
+    return !site.contig.equals(nextCall.contig) || nextCall.position > site.position + 1;
+  }
+
+  private void add(MethylationCall call) {
+    MethylationCall site;
+    if (call.strand == '-' && call.position > 1) {
+      site = new MethylationCall(call.contig, call.position - 1, '+', call.methylatedCount, call.totalCount);
+    } else site = new MethylationCall(call.contig, call.position, call.strand, call.methylatedCount, call.totalCount);
+
+    // Merge the site into the matching site, where the reverse strand sites may precede the last of the sites
+    int index = sites.size();
+    while (index > 0 && sites.get(index - 1).position > site.position) index--;
+    MethylationCall precedingSite = index > 0 ? sites.get(index - 1) : null;
+    if (precedingSite != null && precedingSite.position == site.position && precedingSite.strand == site.strand) {
+      precedingSite.methylatedCount += site.methylatedCount;
+      precedingSite.totalCount += site.totalCount;
+    } else sites.add(index, site);
+  }
+}
@@ -0,0 +1,144 @@
+package com.tools.methylation.extractor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Counts calls in off-heap arrays indexed by call key.  Every position has a slot for each combination of strand and
+ * methylation state, so counting a call is a single increment.  The positions are split into pages that are only
+ * allocated once a call lands in them, which keeps the memory proportional to the part of the reference that is
+ * covered.  The slots are numbered in key order across the pages so they can be iterated in order.
+ */
+class DenseCallCounter extends CallCounter {
+  // The number of slots held for each position
+  public static final int SLOTS_PER_POSITION = 4;
+  public static final int BYTES_PER_POSITION = SLOTS_PER_POSITION * 4;
+
+  // The number of positions in each page
+  private static final int PAGE_SHIFT = 10;
+  private static final int PAGE_POSITIONS = 1 << PAGE_SHIFT;
+  private static final int PAGE_SLOTS = PAGE_POSITIONS * SLOTS_PER_POSITION;
+  private static final int UNALLOCATED = -1;
+
+  // The largest number of pages the slot numbers can address
+  private static final int MAX_PAGES = Integer.MAX_VALUE / PAGE_SLOTS;
+
+  // The index of the first page and the offset of each page in the slab or UNALLOCATED
+  private int firstPage;
+  private int[] pageOffsets;
+
+  // The off-heap counts of all of the allocated pages
+  private IntBuffer slab;
+  private int allocatedPageCount = 0;
+
+  /**
+   * Constructs a DenseCallCounter expecting calls in the specified window of positions.  Calls outside of the window
+   * are still counted.
+   *
+   * @param start   the int first flattened position in the window
+   * @param length  the int number of positions in the window
+   */
+  public DenseCallCounter(int start, int length) {
+    this.firstPage = start >> PAGE_SHIFT;
+    int lastPage = (start + Math.max(length, 1) - 1) >> PAGE_SHIFT;
+    this.pageOffsets = new int[lastPage - firstPage + 1];
+    Arrays.fill(pageOffsets, UNALLOCATED);
+
+    this.slab = allocate(Math.min(pageOffsets.length, 16));
+  }
+
+  @Override
+  public void add(int key, int count) {
+    int position = key >> 2;
+    int page = (position >> PAGE_SHIFT) - firstPage;
+    if (page < 0 || page >= pageOffsets.length) page = growPages(position >> PAGE_SHIFT);
+
+    int offset = pageOffsets[page];
+    if (offset == UNALLOCATED) offset = allocatePage(page);
+
+    int index = offset + (((position & (PAGE_POSITIONS - 1)) << 2) | (key & 0x3));
+    slab.put(index, slab.get(index) + count);
+  }
+
+  @Override
+  public int getSlotCount() { return pageOffsets.length * PAGE_SLOTS; }
+
+  @Override
+  public int nextSlot(int slot) {
+    int slotCount = getSlotCount();
+    while (slot < slotCount) {
+      int offset = pageOffsets[slot / PAGE_SLOTS];
+      if (offset == UNALLOCATED) {
+        // Skip to the start of the next page
+        slot = (slot / PAGE_SLOTS + 1) * PAGE_SLOTS;
+      } else if (slab.get(offset + slot % PAGE_SLOTS) == 0) {
+        slot++;
+      } else break;
+    }
+
+    return Math.min(slot, slotCount);
+  }
+
+  @Override
+  public int getKey(int slot) { return (((firstPage << PAGE_SHIFT) + (slot >> 2)) << 2) | (slot & 0x3); }
+
+  @Override
+  public int getCount(int slot) {
+    int offset = pageOffsets[slot / PAGE_SLOTS];
+    return offset == UNALLOCATED ? 0 : slab.get(offset + slot % PAGE_SLOTS);
+  }
+
+  /**
+   * Extends the page table to include the page along with some headroom, returning the new index of the page.
+   */
+  private int growPages(int page) {
+    int headroom = pageOffsets.length / 2;
+    int lastPage = firstPage + pageOffsets.length - 1;
+    int newFirstPage = firstPage;
+    if (page < firstPage) newFirstPage = Math.max(page - headroom, Integer.MIN_VALUE >> PAGE_SHIFT);
+    int newLastPage = lastPage;
+    if (page > lastPage) newLastPage = Math.min(page + headroom, Integer.MAX_VALUE >> PAGE_SHIFT);
+    if ((long) newLastPage - newFirstPage + 1 > MAX_PAGES) {
+      throw new IllegalArgumentException("calls span too many positions to count");
+    }
+
+    int[] newPageOffsets = new int[newLastPage - newFirstPage + 1];
+    Arrays.fill(newPageOffsets, UNALLOCATED);
+    System.arraycopy(pageOffsets, 0, newPageOffsets, firstPage - newFirstPage, pageOffsets.length);
+
+    this.pageOffsets = newPageOffsets;
+    this.firstPage = newFirstPage;
+
+    return page - firstPage;
+  }
+
+  /**
+   * Assigns the page the next zeroed page of the slab, growing the slab if it is full.
+   */
+  private int allocatePage(int page) {
+    if ((allocatedPageCount + 1) * PAGE_SLOTS > slab.capacity()) {
+      int capacity = (int) Math.min(2L * slab.capacity() / PAGE_SLOTS, MAX_PAGES);
+      if (capacity <= allocatedPageCount) throw new IllegalArgumentException("calls span too many positions to count");
+
+      IntBuffer newSlab = allocate(capacity);
+      slab.rewind();
+      newSlab.put(slab);
+      newSlab.rewind();
+      this.slab = newSlab;
+    }
+
+    pageOffsets[page] = allocatedPageCount * PAGE_SLOTS;
+    allocatedPageCount++;
+
+    return pageOffsets[page];
+  }
+
+  private static IntBuffer allocate(int pageCount) {
+    long bytes = (long) Math.max(pageCount, 1) * PAGE_SLOTS * 4;
+    if (bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("calls span too many positions to count");
+
+    return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+}
@@ -0,0 +1,108 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.collect.AbstractIterator;
+import net.sf.samtools.util.CloseableIterator;
+
+/**
+ * Drops the PCR duplicates from the fragments, which are the fragments flagged as duplicates and any fragment with the
+ * same contig, strand, start and mate start as an earlier fragment.  The fragments are remembered by a 64-bit
+ * fingerprint of those fields.  Duplicates always share a start, so when the fragments are sorted by their start the
+ * fingerprints are dropped each time the start advances and only the fragments at a single position are held.
+ * Otherwise the fingerprints of every fragment are held until the iterator is closed.  Closing the filter closes the
+ * underlying fragments.
+ */
+class DuplicateFilter extends AbstractIterator<AlignedFragment> implements CloseableIterator<AlignedFragment> {
+  private final CloseableIterator<AlignedFragment> fragments;
+  private final boolean isSorted;
+  private final FingerprintSet fingerprints = new FingerprintSet();
+
+  // The position of the last fragment, whose fingerprints are the only ones held when the fragments are sorted
+  private int referenceIndex = -1;
+  private int start = -1;
+
+  private long duplicateCount = 0;
+
+  /**
+   * Constructs a DuplicateFilter over the fragments.
+   *
+   * @param fragments the fragments to filter
+   * @param isSorted  whether the fragments are sorted by their contig and start
+   */
+  public DuplicateFilter(CloseableIterator<AlignedFragment> fragments, boolean isSorted) {
+    this.fragments = fragments;
+    this.isSorted = isSorted;
+  }
+
+  @Override
+  protected AlignedFragment computeNext() {
+    AlignedFragment nextFragment = null;
+    while (nextFragment == null && fragments.hasNext()) {
+      AlignedFragment fragment = fragments.next();
+      if (isSorted && (fragment.referenceIndex() != referenceIndex || fragment.start() != start)) {
+        fingerprints.clear();
+        referenceIndex = fragment.referenceIndex();
+        start = fragment.start();
+      }
+
+      if (!isFlagged(fragment) && fingerprints.add(fingerprint(fragment))) nextFragment = fragment;
+      else duplicateCount++;
+    }
+
+    return nextFragment == null ? endOfData() : nextFragment;
+  }
+
+  /**
+   * Returns the number of fragments dropped as duplicates so far.
+   */
+  public long getDuplicateCount() { return duplicateCount; }
+
+  @Override
+  public void close() { fragments.close(); }
+
+  /**
+   * Returns the fingerprint of the contig, strand, start and mate start of the fragment.  The reads of a pair that are
+   * not grouped into a fragment are told apart by whether they are the first of the pair, so that the two mates of a
+   * pair starting at the same position are not taken as duplicates of each other.
+   */
+  static long fingerprint(AlignedFragment fragment) {
+    AlignedRead read;
+    int mateStart;
+    int kind;
+    if (fragment instanceof PairedEndFragment) {
+      PairedEndFragment pairedEndFragment = (PairedEndFragment) fragment;
+      read = pairedEndFragment.read1;
+      mateStart = pairedEndFragment.read2.start;
+      kind = 0;
+    } else {
+      read = ((SingleEndFragment) fragment).read;
+      mateStart = read.mateStart;
+      kind = read.isFirstOfPair() ? 1 : 2;
+    }
+
+    long position = (long) read.start << 32 | (mateStart & 0xFFFFFFFFL);
+    long identity = (long) read.referenceIndex << 3 | kind << 1 | (read.isForward ? 1 : 0);
+
+    return mix(position ^ mix(identity));
+  }
+
+  private static boolean isFlagged(AlignedFragment fragment) {
+    boolean isFlagged;
+    if (fragment instanceof PairedEndFragment) {
+      PairedEndFragment pairedEndFragment = (PairedEndFragment) fragment;
+      isFlagged = pairedEndFragment.read1.isDuplicate() || pairedEndFragment.read2.isDuplicate();
+    } else isFlagged = ((SingleEndFragment) fragment).read.isDuplicate();
+
+    return isFlagged;
+  }
+
+  // The finalizer of MurmurHash3, which spreads every bit of the value across the fingerprint
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+
+    return value;
+  }
+}
@@ -3,11 +3,11 @@ package com.tools.methylation.extractor;
 import akka.actor.*;
 import akka.japi.Creator;
 import akka.japi.Function;
+import com.google.common.base.Optional;
 import com.tools.actors.AbstractMaster;
 import com.tools.io.MethylationCall;
 import scala.concurrent.duration.Duration;
 
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Map;
 
@@ -16,26 +16,26 @@ import static akka.actor.SupervisorStrategy.escalate;
 public class Extractor extends AbstractMaster {
   private final ActorRef masterRef;
 
-  public Extractor(Path inputPath,
-                   Path cpgOutputPath,
-                   Path chgOutputPath,
-                   Path chhOutputPath,
-                   Path cnOutputPath,
+  public Extractor(BlockedReads blockedReads,
+                   ContextWriters contextWriters,
                    CoordinateConverter coordinateConverter,
-                   Map<Character, ArrayList<MethylationCall>> remainders,
+                   Optional<Map<Character, ArrayList<MethylationCall>>> remainders,
                    ActorRef masterRef,
                    long availableMemory,
-                   int threadCount) {
+                   int threadCount,
+                   boolean isStreaming,
+                   boolean isDeduplicated,
+                   Optional<ActorRef> workerPool) {
     super(new Builder(
-      inputPath,
-      cpgOutputPath,
-      chgOutputPath,
-      chhOutputPath,
-      cnOutputPath,
+      blockedReads,
+      contextWriters,
       coordinateConverter,
       remainders,
       availableMemory,
-      threadCount
+      threadCount,
+      isStreaming,
+      isDeduplicated,
+      workerPool
     ), false);
 
     this.masterRef = masterRef;
@@ -57,12 +57,16 @@ public class Extractor extends AbstractMaster {
 
   @Override
   protected void handleCustom(Object message) {
-    if (message instanceof Messages.WriteAllComplete) {
+    if (message instanceof Messages.BlockRemainders) {
+      // The preceding block has been written, so this block can be written once it has been counted
+      writerRef.tell(message, getSelf());
+    } else if (message instanceof Messages.WriteAllComplete) {
       // Message that all work has been completed
       Messages.WriteAllComplete writeAllComplete = (Messages.WriteAllComplete) message;
       Messages.BlockCountsWritten writtenMessage = new Messages.BlockCountsWritten(
         writeAllComplete.remainders,
-        writeAllComplete.depthCounts
+        writeAllComplete.depthCounts,
+        writeAllComplete.mbiasCounts
       );
       masterRef.tell(writtenMessage, getSelf());
       writerRef.tell(PoisonPill.getInstance(), getSelf());
@@ -73,92 +77,151 @@ public class Extractor extends AbstractMaster {
 
   @Override
   protected void onCompletion() {
-    workerRef.tell(PoisonPill.getInstance(), getSelf());
+    if (!hasSharedWorkers) workerRef.tell(PoisonPill.getInstance(), getSelf());
     writerRef.tell(new Messages.WriteAll(), getSelf());
   }
 
-  public static Props props(final Path inputPath,
-                            final Path cpgOutputPath,
-                            final Path chgOutputPath,
-                            final Path chhOutputPath,
-                            final Path cnOutputPath,
+  public static Props props(final BlockedReads blockedReads,
+                            final ContextWriters contextWriters,
                             final CoordinateConverter coordinateConverter,
                             final Map<Character, ArrayList<MethylationCall>> remainders,
                             final ActorRef masterRef,
                             final long availableMemory,
                             final int threadCount) {
+    return props(
+      blockedReads,
+      contextWriters,
+      coordinateConverter,
+      Optional.of(remainders),
+      masterRef,
+      availableMemory,
+      threadCount,
+      false,
+      false,
+      Optional.<ActorRef>absent()
+    );
+  }
+
+  /**
+   * Returns the Props for an Extractor, which writes the calls as the reads move past them when streaming reads that
+   * are sorted in the order of the coordinates, rather than once the entire block has been counted.  A block without
+   * remainders waits for the remainders of the preceding block before it is written, so that blocks can be counted
+   * concurrently while still being written in order.
+   *
+   * @param isDeduplicated whether the PCR duplicates are dropped as the reads are read
+   * @param workerPool     the ExtractorCounters shared by the blocks, otherwise the block has workers of its own
+   */
+  public static Props props(final BlockedReads blockedReads,
+                            final ContextWriters contextWriters,
+                            final CoordinateConverter coordinateConverter,
+                            final Optional<Map<Character, ArrayList<MethylationCall>>> remainders,
+                            final ActorRef masterRef,
+                            final long availableMemory,
+                            final int threadCount,
+                            final boolean isStreaming,
+                            final boolean isDeduplicated,
+                            final Optional<ActorRef> workerPool) {
     return Props.create(new Creator<Extractor>() {
       @Override
       public Extractor create() throws Exception {
         return new Extractor(
-          inputPath,
-          cpgOutputPath,
-          chgOutputPath,
-          chhOutputPath,
-          cnOutputPath,
+          blockedReads,
+          contextWriters,
           coordinateConverter,
           remainders,
           masterRef,
           availableMemory,
-          threadCount
+          threadCount,
+          isStreaming,
+          isDeduplicated,
+          workerPool
         );
       }
     });
   }
 
   public static class Builder extends MasterBuilder {
-    private final Path inputPath;
-    private final Path cpgOutputPath;
-    private final Path chgOutputPath;
-    private final Path chhOutputPath;
-    private final Path cnOutputPath;
+    private final BlockedReads blockedReads;
+    private final ContextWriters contextWriters;
     private final CoordinateConverter coordinateConverter;
-    private final Map<Character, ArrayList<MethylationCall>> remainders;
+    private final Optional<Map<Character, ArrayList<MethylationCall>>> remainders;
+    private final boolean isStreaming;
+    private final boolean isDeduplicated;
+    private final Optional<ActorRef> workerPool;
+
+    // The counts shared by all of the workers of a reference block, which are absent when streaming
+    private final Optional<MethylationCounts> sharedCounts;
 
     private final int blockSize;
 
-    public Builder(Path inputPath,
-                   Path cpgOutputPath,
-                   Path chgOutputPath,
-                   Path chhOutputPath,
-                   Path cnOutputPath,
+    public Builder(BlockedReads blockedReads,
+                   ContextWriters contextWriters,
                    CoordinateConverter coordinateConverter,
-                   Map<Character, ArrayList<MethylationCall>> remainders,
+                   Optional<Map<Character, ArrayList<MethylationCall>>> remainders,
                    long availableMemory,
-                   int threadCount) {
+                   int threadCount,
+                   boolean isStreaming,
+                   boolean isDeduplicated,
+                   Optional<ActorRef> workerPool) {
       super(threadCount, false);
-      this.inputPath = inputPath;
-      this.cpgOutputPath = cpgOutputPath;
-      this.chgOutputPath = chgOutputPath;
-      this.chhOutputPath = chhOutputPath;
-      this.cnOutputPath = cnOutputPath;
+      this.blockedReads = blockedReads;
+      this.contextWriters = contextWriters;
       this.coordinateConverter = coordinateConverter;
       this.remainders = remainders;
+      this.isStreaming = isStreaming;
+      this.isDeduplicated = isDeduplicated;
+      this.workerPool = workerPool;
+
+      // Streamed blocks are counted in a window of the reference for each chunk rather than across the whole block
+      boolean isShared = !isStreaming && coordinateConverter.referenceLength() <= MethylationCounts.MAX_WINDOW_LENGTH;
+      if (isShared) {
+        this.sharedCounts = Optional.of(MethylationCounts.shared(coordinateConverter, contextWriters.getContexts()));
+      } else this.sharedCounts = Optional.absent();
 
       this.blockSize = determineBlockSize(availableMemory, workerCount);
     }
 
+    @Override
+    protected Optional<ActorRef> workerPool() { return workerPool; }
+
     @Override
     protected Props readerProps(ActorRef workerRef) {
-      return Reader.props(inputPath, blockSize, workerRef);
+      return readerProps(Optional.<ExtractorCounter.Block>absent(), workerRef);
+    }
+
+    @Override
+    protected Props readerProps(ActorRef workerRef, ActorRef writerRef) {
+      ExtractorCounter.Block block = new ExtractorCounter.Block(coordinateConverter, sharedCounts, writerRef);
+      return readerProps(Optional.of(block), workerRef);
+    }
+
+    private Props readerProps(Optional<ExtractorCounter.Block> block, ActorRef workerRef) {
+      // Streamed blocks are kept short enough for the keys of their counts to fit in an int
+      long maxSpan = isStreaming ? MethylationCounts.MAX_WINDOW_LENGTH : Long.MAX_VALUE;
+      return Reader.props(blockedReads, blockSize, workerCount, maxSpan, isDeduplicated, block, workerRef);
     }
 
     @Override
     protected Props workerProps(ActorRef writerRef) {
-      return ExtractorCounter.props(coordinateConverter, writerRef);
+      return ExtractorCounter.props(coordinateConverter, contextWriters.getContexts(), sharedCounts, writerRef);
     }
 
     @Override
     protected Props writerProps(ActorRef masterRef) {
-      return ExtractorWriter.props(
-        cpgOutputPath,
-        chgOutputPath,
-        chhOutputPath,
-        cnOutputPath,
-        coordinateConverter,
-        remainders,
-        masterRef
-      );
+      Props writerProps;
+      if (isStreaming) {
+        writerProps = StreamingExtractorWriter.props(contextWriters, masterRef);
+      } else {
+        writerProps = ExtractorWriter.props(
+          contextWriters,
+          coordinateConverter,
+          remainders,
+          sharedCounts,
+          masterRef
+        );
+      }
+
+      return writerProps;
     }
 
     // Determine the block size to prevent out of memory errors
@@ -167,8 +230,14 @@ public class Extractor extends AbstractMaster {
       int maxBlockLength = 100000;
       int minBlockLength = 1000;
 
-      // Calculate the memory consumed by the counters
-      long counterBytes = (threadCount + 1) * 8 * coordinateConverter.referenceLength();
+      // Calculate the memory consumed by the counters of the written contexts, which are shared by the workers or
+      // only hold a window of the reference for each worker when streaming
+      int positionBytes = MethylationCounts.bytesPerPosition(contextWriters.getContexts());
+      long blockCounterBytes = positionBytes * coordinateConverter.referenceLength();
+      long counterBytes;
+      if (isStreaming) counterBytes = 0;
+      else if (sharedCounts.isPresent()) counterBytes = blockCounterBytes;
+      else counterBytes = (threadCount + 1) * blockCounterBytes;
 
       // Calculate the largest block length that can be used
       double availableThreadMemory =  (availableMemory - counterBytes) / threadCount;
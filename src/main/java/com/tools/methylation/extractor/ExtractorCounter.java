@@ -3,48 +3,127 @@ package com.tools.methylation.extractor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
+import com.google.common.base.Optional;
+import com.google.common.primitives.Longs;
 import com.tools.actors.AbstractWorker;
-import net.sf.samtools.Cigar;
-import net.sf.samtools.CigarElement;
 import net.sf.samtools.CigarOperator;
-import net.sf.samtools.SAMRecord;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Set;
 
 class ExtractorCounter extends AbstractWorker<Messages.AlignedReadsRead, Messages.MethylationCalculated> {
-  private static final String GENOME_CONVERSION_TAG = "XG";
-  private static final String METHYLATION_TAG = "XM";
+  // The code of each call character, where the calls of unwanted contexts are skipped
+  private final int[] callCodes;
 
-  private final CoordinateConverter coordinateConverter;
+  // The block that every chunk is counted for, which is absent for workers shared by the blocks
+  private final Optional<Block> block;
 
-  public ExtractorCounter(CoordinateConverter coordinateConverter, ActorRef writerRef) {
-    super(writerRef);
-    this.coordinateConverter = coordinateConverter;
+  public ExtractorCounter(Set<Character> contexts, Optional<Block> block) {
+    super(block.isPresent() ? block.get().writerRef : ActorRef.noSender());
+    this.callCodes = MethylationCounts.callCodes(contexts);
+    this.block = block;
   }
 
   @Override protected Class<Messages.AlignedReadsRead> getWorkClass() { return Messages.AlignedReadsRead.class; }
 
+  @Override
+  protected ActorRef getWriterRef(Messages.AlignedReadsRead message) { return getBlock(message).writerRef; }
+
   @Override
   protected Messages.MethylationCalculated work(Messages.AlignedReadsRead message) {
-    MethylationCounts methylationCounts = count(message.fragments);
+    Block block = getBlock(message);
+    CoordinateConverter coordinateConverter = block.coordinateConverter;
 
-    return new Messages.MethylationCalculated(message.index, methylationCounts);
+    // The counts by read cycle are kept for each chunk, since a shared worker counts chunks of several blocks
+    MbiasCounter mbiasCounts = new MbiasCounter();
+    MethylationCounts methylationCounts;
+    if (block.sharedCounts.isPresent()) {
+      methylationCounts = block.sharedCounts.get();
+      countFragments(methylationCounts, mbiasCounts, callCodes, message.fragments);
+    } else methylationCounts = count(coordinateConverter, mbiasCounts, message.fragments);
+
+    long lastStart = Long.MIN_VALUE;
+    if (!message.fragments.isEmpty()) {
+      AlignedFragment lastFragment = message.fragments.getLast();
+      lastStart = coordinateConverter.convert(lastFragment.referenceIndex(), lastFragment.start());
+    }
+
+    return new Messages.MethylationCalculated(message.index, methylationCounts, lastStart, mbiasCounts);
   }
 
-  private MethylationCounts count(ArrayDeque<AlignedFragment> fragments) {
-    MethylationCounts counts = new MethylationCounts(coordinateConverter);
+  /**
+   * Returns the block that the chunk is counted for, which is named by the chunk when the worker is shared.
+   */
+  private Block getBlock(Messages.AlignedReadsRead message) { return message.block.or(block).get(); }
 
+  private MethylationCounts count(CoordinateConverter coordinateConverter,
+                                  MbiasCounter mbiasCounts,
+                                  ArrayDeque<AlignedFragment> fragments) {
+    // Size the counters to the span of the reference covered by the fragments
+    long[] starts = new long[fragments.size()];
+    long[] stops = new long[fragments.size()];
+    int index = 0;
+    for (AlignedFragment fragment : fragments) {
+      starts[index] = coordinateConverter.convert(fragment.referenceIndex(), fragment.start());
+      stops[index] = coordinateConverter.convert(fragment.referenceIndex(), fragment.stop());
+      index++;
+    }
+    long windowStart = fragments.isEmpty() ? 0 : Longs.min(starts);
+    long windowStop = fragments.isEmpty() ? 0 : Longs.max(stops);
+
+    // Choose the counters from how densely the fragments cover their span
+    long coveredPositions = countCoveredPositions(starts, stops);
+    MethylationCounts counts = new MethylationCounts(coordinateConverter, windowStart, windowStop, coveredPositions);
+    countFragments(counts, mbiasCounts, callCodes, fragments);
+
+    return counts;
+  }
+
+  /**
+   * Counts the calls of the fragments of the selected contexts, whose codes are given by the call character, into the
+   * counts and the counts by read cycle.
+   */
+  static void countFragments(MethylationCounts counts,
+                             MbiasCounter mbiasCounts,
+                             int[] callCodes,
+                             Iterable<AlignedFragment> fragments) {
     for (AlignedFragment fragment : fragments) {
       if (fragment instanceof SingleEndFragment) {
         SingleEndFragment singleEndFragment = (SingleEndFragment) fragment;
-        countSingle(counts, singleEndFragment.read);
+        countSingle(counts, mbiasCounts, callCodes, singleEndFragment.read);
       } else if (fragment instanceof PairedEndFragment) {
         PairedEndFragment pairedEndFragment = (PairedEndFragment) fragment;
-        countPairedEnd(counts, pairedEndFragment.read1, pairedEndFragment.read2);
+        countPairedEnd(counts, mbiasCounts, callCodes, pairedEndFragment.read1, pairedEndFragment.read2);
       }
     }
+  }
 
-    return counts;
+  /**
+   * Returns the number of positions covered by at least one of the intervals, which are given by their inclusive start
+   * and stop positions.  The arrays are sorted in the process.
+   */
+  static long countCoveredPositions(long[] starts, long[] stops) {
+    Arrays.sort(starts);
+    Arrays.sort(stops);
+
+    // Sweep the interval boundaries tracking the number of open intervals
+    long coveredPositions = 0;
+    long coveredStart = 0;
+    int openCount = 0;
+    for (int startIndex = 0, stopIndex = 0; stopIndex < stops.length; ) {
+      if (startIndex < starts.length && starts[startIndex] <= stops[stopIndex]) {
+        if (openCount == 0) coveredStart = starts[startIndex];
+        openCount++;
+        startIndex++;
+      } else {
+        openCount--;
+        if (openCount == 0) coveredPositions += stops[stopIndex] - coveredStart + 1;
+        stopIndex++;
+      }
+    }
+
+    return coveredPositions;
   }
 
   /**
@@ -55,87 +134,143 @@ class ExtractorCounter extends AbstractWorker<Messages.AlignedReadsRead, Message
    * specifying the discard offset corresponding the number of reference positions for which calls should
    * be discarded before recognizing counts.
    *
-   * @param contig            the String name of the contig on which the calls were made
-   * @param startPosition     the int start position of the first call in the methylation call string
-   * @param cigar             the Cigar sequence giving the mapping between the methylation calls and the reference
-   * @param methylationCalls  the String with the bismark methylation calls
+   * Each counted call is also counted at its cycle in the read, which runs from the end of the calls for a read aligned
+   * to the reverse of its sequence.
+   *
+   * @param read              the AlignedRead with the bismark methylation calls and its packed Cigar
    * @param isForward         a boolean indicating if the calls correspond to the forward strand of the reference
    * @param discardOffset     the int number of reference positions to discard from the front of the call sequence
    */
-  private void countCalls(MethylationCounts counts,
-                          String contig,
-                          int startPosition,
-                          Cigar cigar,
-                          String methylationCalls,
-                          boolean isForward,
-                          int discardOffset) {
+  private static void countCalls(MethylationCounts counts,
+                                 MbiasCounter mbiasCounts,
+                                 int[] callCodes,
+                                 AlignedRead read,
+                                 boolean isForward,
+                                 int discardOffset) {
+    byte[] methylationCalls = read.methylationCalls;
+    int startPosition = read.start;
+
+    // Resolve the contig once so the calls are counted directly at their offset into the window
+    int contigOffset = counts.contigOffset(read.referenceIndex);
+
     // The position at which calls all following calls can be recorded
     int callStartPosition = startPosition + discardOffset;
 
+    // The cycles run backward through the calls of a reversed read
+    boolean isReverse = read.isReverse();
+    boolean isSecondRead = read.isSecondOfPair();
+    int lastCall = methylationCalls.length - 1;
+
     // Iterate through the cigar chunks in parallel with the calls
     int callOffset = 0;
-    for (CigarElement cigarElement : cigar.getCigarElements()) {
-      CigarOperator operator = cigarElement.getOperator();
-      if (CigarOperator.MATCH_OR_MISMATCH == operator) {
-        for (int i = 0, n = cigarElement.getLength(); i < n; i++) {
-          // Get the call and ensure that it is a methylation call
-          char call = methylationCalls.charAt(callOffset);
-          if (call != '.') {
-            // Determine the position and count it if it is in range
-            int position = i + startPosition;
-            if (position >= callStartPosition) counts.count(call, isForward, contig, position);
+    for (int cigarElement : read.cigar) {
+      int operator = AlignedRead.cigarOperator(cigarElement);
+      int length = AlignedRead.cigarLength(cigarElement);
+      if (AlignedRead.CIGAR_MATCH == operator) {
+        // Skip the calls before the start position
+        int first = Math.min(Math.max(callStartPosition - startPosition, 0), length);
+        for (int i = first; i < length; i++) {
+          int callCode = callCodes[methylationCalls[callOffset + i] & 0xFF];
+          if (callCode >= 0) {
+            counts.countCall(callCode, contigOffset + startPosition + i, isForward);
+            int cycle = isReverse ? lastCall - callOffset - i : callOffset + i;
+            mbiasCounts.count(callCode, cycle, isSecondRead);
+          } else if (callCode == MethylationCounts.UNKNOWN_CALL) {
+            throw new RuntimeException("unknown context encountered: " + (char) methylationCalls[callOffset + i]);
           }
-
-          // Update the index into the methylation call string
-          callOffset += 1;
         }
 
-        startPosition += cigarElement.getLength();
-      } else if (CigarOperator.INSERTION == operator) {
+        callOffset += length;
+        startPosition += length;
+      } else if (AlignedRead.CIGAR_INSERTION == operator) {
         // Skip insertions
-        for (int i = 0; i < cigarElement.getLength(); i++) callOffset += 1;
-      } else if (CigarOperator.DELETION == operator) {
+        callOffset += length;
+      } else if (AlignedRead.CIGAR_DELETION == operator) {
         // Incorporate deletions into the offset
-        startPosition += cigarElement.getLength();
+        startPosition += length;
       } else {
-        throw new RuntimeException("unrecognized operation encountered (" + operator + ")");
+        throw new RuntimeException("unrecognized operation encountered (" + CigarOperator.binaryToEnum(operator) + ")");
       }
     }
   }
 
-  private void countPairedEnd(MethylationCounts counts, SAMRecord record1, SAMRecord record2) {
+  private static void countPairedEnd(MethylationCounts counts,
+                                     MbiasCounter mbiasCounts,
+                                     int[] callCodes,
+                                     AlignedRead read1,
+                                     AlignedRead read2) {
     // Determine the orientation of the fragment
-    boolean isForward = record1.getAttribute(GENOME_CONVERSION_TAG).equals("CT");
-    String contig = record1.getReferenceName();
+    boolean isForward = read1.isForward;
 
     // Count the first read
-    Cigar cigar1 = record1.getCigar();
-    String methylationCalls1 = (String) record1.getAttribute(METHYLATION_TAG);
-    countCalls(counts, contig, record1.getAlignmentStart(), cigar1, methylationCalls1, isForward, 0);
+    countCalls(counts, mbiasCounts, callCodes, read1, isForward, 0);
 
     // Count the second read dropping duplicate positions
-    Cigar cigar2 = record2.getCigar();
-    String methylationCalls2 = (String) record2.getAttribute(METHYLATION_TAG);
-    int overlap = Math.max(0, record1.getAlignmentEnd() - record2.getAlignmentStart() + 1);
-    countCalls(counts, contig, record2.getAlignmentStart(), cigar2, methylationCalls2, isForward, overlap);
+    int overlap = Math.max(0, read1.stop - read2.start + 1);
+    countCalls(counts, mbiasCounts, callCodes, read2, isForward, overlap);
   }
 
-  private void countSingle(MethylationCounts counts, SAMRecord record) {
-    // Extract variables
-    boolean isForward = record.getAttribute(GENOME_CONVERSION_TAG).equals("CT");
-    Cigar cigar = record.getCigar();
-    String methylationCalls = (String) record.getAttribute(METHYLATION_TAG);
-
+  private static void countSingle(MethylationCounts counts,
+                                  MbiasCounter mbiasCounts,
+                                  int[] callCodes,
+                                  AlignedRead read) {
     // Count without an offset
-    countCalls(counts, record.getReferenceName(), record.getAlignmentStart(), cigar, methylationCalls, isForward, 0);
+    countCalls(counts, mbiasCounts, callCodes, read, read.isForward, 0);
   }
 
   public static Props props(final CoordinateConverter coordinateConverter, final ActorRef receiverRef) {
+    return props(
+      coordinateConverter,
+      MethylationCounts.ALL_CONTEXTS,
+      Optional.<MethylationCounts>absent(),
+      receiverRef
+    );
+  }
+
+  /**
+   * Returns the Props for an ExtractorCounter, which counts into the shared counts if they are present rather than
+   * sending the counts of each chunk to be merged by the writer.  Only the calls of the contexts are counted.
+   */
+  public static Props props(final CoordinateConverter coordinateConverter,
+                            final Set<Character> contexts,
+                            final Optional<MethylationCounts> sharedCounts,
+                            final ActorRef receiverRef) {
+    return props(contexts, Optional.of(new Block(coordinateConverter, sharedCounts, receiverRef)));
+  }
+
+  /**
+   * Returns the Props for an ExtractorCounter shared by the blocks, which counts each chunk for the block it names.
+   */
+  public static Props props(final Set<Character> contexts) {
+    return props(contexts, Optional.<Block>absent());
+  }
+
+  private static Props props(final Set<Character> contexts, final Optional<Block> block) {
     return Props.create(new Creator<ExtractorCounter>() {
       @Override
       public ExtractorCounter create() throws Exception {
-        return new ExtractorCounter(coordinateConverter, receiverRef);
+        return new ExtractorCounter(contexts, block);
       }
     });
   }
+
+  /**
+   * The reference block that chunks of fragments are counted for along with the writer that its counts are sent to.
+   */
+  static class Block {
+    public final CoordinateConverter coordinateConverter;
+
+    // The counts shared with the other workers of the block, otherwise each chunk is counted separately
+    public final Optional<MethylationCounts> sharedCounts;
+
+    public final ActorRef writerRef;
+
+    public Block(CoordinateConverter coordinateConverter,
+                 Optional<MethylationCounts> sharedCounts,
+                 ActorRef writerRef) {
+      this.coordinateConverter = coordinateConverter;
+      this.sharedCounts = sharedCounts;
+      this.writerRef = writerRef;
+    }
+  }
 }
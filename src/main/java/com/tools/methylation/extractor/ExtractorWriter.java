@@ -3,46 +3,44 @@ package com.tools.methylation.extractor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.base.Optional;
 import com.tools.actors.AbstractWriter;
 import com.tools.io.MethylationCall;
 import com.tools.io.MethylationCallWriter;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 class ExtractorWriter extends AbstractWriter<Messages.MethylationCalculated> {
-  private final Path cpgOutputPath;
-  private final Path chgOutputPath;
-  private final Path chhOutputPath;
-  private final Path cnOutputPath;
+  private final ContextWriters contextWriters;
   private final MethylationCounts counts;
 
   // Counts stats about the depth of coverage across each contig
   private final HashMap<String, DepthCounter> depthCounts = new HashMap<>();
 
+  // The counts by read cycle of the chunks of the block
+  private final MbiasCounter mbiasCounts = new MbiasCounter();
+
+  // Whether the calls of the preceding block have been counted and whether all of the counts have been merged
+  private boolean remaindersCounted = false;
+  private boolean allCounted = false;
+
   private boolean written = false;
 
-  public ExtractorWriter(Path cpgOutputPath,
-                         Path chgOutputPath,
-                         Path chhOutputPath,
-                         Path cnOutputPath,
+  public ExtractorWriter(ContextWriters contextWriters,
                          CoordinateConverter coordinateConverter,
-                         Map<Character, ArrayList<MethylationCall>> remainders,
-                         ActorRef masterRef) throws IOException {
+                         Optional<Map<Character, ArrayList<MethylationCall>>> remainders,
+                         Optional<MethylationCounts> sharedCounts,
+                         ActorRef masterRef) {
     super(masterRef, true);
-    this.cpgOutputPath = cpgOutputPath;
-    this.chgOutputPath = chgOutputPath;
-    this.chhOutputPath = chhOutputPath;
-    this.cnOutputPath = cnOutputPath;
-    this.counts = new MethylationCounts(coordinateConverter);
-    counts.countAll(remainders);
+    this.contextWriters = contextWriters;
+    this.counts = sharedCounts.or(new MethylationCounts(coordinateConverter));
+    if (remainders.isPresent()) {
+      counts.countAll(remainders.get());
+      remaindersCounted = true;
+    }
   }
 
   @Override
@@ -52,89 +50,97 @@ class ExtractorWriter extends AbstractWriter<Messages.MethylationCalculated> {
 
   @Override
   protected void handleCustom(Object message) throws Exception {
-    if (message instanceof Messages.WriteAll && !written) {
-      // Write everything to file
+    if (message instanceof Messages.WriteAll) {
+      allCounted = true;
+      writeIfReady();
+    } else if (message instanceof Messages.BlockRemainders && !remaindersCounted) {
+      counts.countAll(((Messages.BlockRemainders) message).remainders);
+      remaindersCounted = true;
+      writeIfReady();
+    } else unhandled(message);
+  }
+
+  /**
+   * Writes everything to file once the block has been counted and the preceding block has been written.
+   */
+  private void writeIfReady() {
+    if (allCounted && remaindersCounted && !written) {
+      // Write out each of the contexts
       written = true;
-      Map<Character, ArrayList<MethylationCall>> remainders = writeAll();
+      Map<Character, ArrayList<MethylationCall>> remainders = contextWriters.write(counts, depthCounts);
 
       // Inform the master that all writing in now complete
-      masterRef.tell(new Messages.WriteAllComplete(remainders, depthCounts), getSelf());
-    } else unhandled(message);
+      masterRef.tell(new Messages.WriteAllComplete(remainders, depthCounts, mbiasCounts), getSelf());
+    }
   }
 
   @Override
   protected void write(Messages.MethylationCalculated message) {
-    // Merge the counts
-    this.counts.countAll(message.counts);
+    // Merge the counts unless the workers counted into the shared counts
+    if (message.counts != counts) counts.countAll(message.counts);
+    mbiasCounts.merge(message.mbiasCounts);
   }
 
   @Override
   protected void writeHeader(Messages.MethylationCalculated message) { }
 
-  private Map<Character, ArrayList<MethylationCall>> writeAll() throws IOException {
-    // Write out each of the contexts
-    ArrayList<MethylationCall> cpgRemainders = writeContext(MethylationCounts.CPG_CONTEXT, cpgOutputPath);
-    ArrayList<MethylationCall> chgRemainders = writeContext(MethylationCounts.CHG_CONTEXT, chgOutputPath);
-    ArrayList<MethylationCall> chhRemainders = writeContext(MethylationCounts.CHH_CONTEXT, chhOutputPath);
-    ArrayList<MethylationCall> cnRemainders = writeContext(MethylationCounts.CN_CHN_CONTEXT, cnOutputPath);
-
-    return ImmutableMap.of(
-      MethylationCounts.CPG_CONTEXT, cpgRemainders,
-      MethylationCounts.CHG_CONTEXT, chgRemainders,
-      MethylationCounts.CHH_CONTEXT, chhRemainders,
-      MethylationCounts.CN_CHN_CONTEXT, cnRemainders
-    );
-  }
-
-  private ArrayList<MethylationCall> writeContext(char context, Path outputPath) throws IOException {
-    ArrayList<MethylationCall> remainders;
-    try (OutputStream outputStream = Files.newOutputStream(outputPath, StandardOpenOption.APPEND);
-         MethylationCallWriter writer = new MethylationCallWriter(outputStream)) {
-      MethylationCounts.MethylationCallIterator methylationCalls = counts.iterator(context);
-
-      // Write all of the counts
-      String contig = null;
-      DepthCounter contigDepthCounter = null;
-      while (methylationCalls.hasNext()) {
-        MethylationCall methylationCall = methylationCalls.next();
-
-        // Count the site
-        if (!methylationCall.contig.equals(contig)) {
-          contig = methylationCall.contig;
-          if (depthCounts.containsKey(contig)) contigDepthCounter = depthCounts.get(contig);
-          else {
-            contigDepthCounter = new DepthCounter();
-            depthCounts.put(contig, contigDepthCounter);
-          }
+  /**
+   * Writes the calls to the writer while recording the depth of each site in the counter for its contig.
+   */
+  static void writeCalls(Iterator<MethylationCall> methylationCalls,
+                         MethylationCallWriter writer,
+                         Map<String, DepthCounter> depthCounts) {
+    String contig = null;
+    DepthCounter contigDepthCounter = null;
+    while (methylationCalls.hasNext()) {
+      MethylationCall methylationCall = methylationCalls.next();
+
+      // Count the site
+      if (!methylationCall.contig.equals(contig)) {
+        contig = methylationCall.contig;
+        if (depthCounts.containsKey(contig)) contigDepthCounter = depthCounts.get(contig);
+        else {
+          contigDepthCounter = new DepthCounter();
+          depthCounts.put(contig, contigDepthCounter);
         }
-        contigDepthCounter.count(methylationCall.methylatedCount, methylationCall.totalCount);
-
-        writer.write(methylationCall);
       }
+      contigDepthCounter.count(methylationCall.methylatedCount, methylationCall.totalCount);
 
-      remainders = methylationCalls.getRemainingCounts();
+      writer.write(methylationCall);
     }
-
-    return remainders;
   }
 
-  public static Props props(final Path cpgOutputPath,
-                            final Path chgOutputPath,
-                            final Path chhOutputPath,
-                            final Path cnOutputPath,
+  public static Props props(final ContextWriters contextWriters,
                             final CoordinateConverter coordinateConverter,
                             final Map<Character, ArrayList<MethylationCall>> remainders,
                             final ActorRef receiverRef) {
+    return props(
+      contextWriters,
+      coordinateConverter,
+      Optional.of(remainders),
+      Optional.<MethylationCounts>absent(),
+      receiverRef
+    );
+  }
+
+  /**
+   * Returns the Props for an ExtractorWriter, which writes the shared counts of the workers if they are present rather
+   * than merging the counts of each chunk.  Without remainders the block is only written once the remainders of the
+   * preceding block arrive.
+   */
+  public static Props props(final ContextWriters contextWriters,
+                            final CoordinateConverter coordinateConverter,
+                            final Optional<Map<Character, ArrayList<MethylationCall>>> remainders,
+                            final Optional<MethylationCounts> sharedCounts,
+                            final ActorRef receiverRef) {
     return Props.create(new Creator<ExtractorWriter>() {
       @Override
       public ExtractorWriter create() throws Exception {
         return new ExtractorWriter(
-          cpgOutputPath,
-          chgOutputPath,
-          chhOutputPath,
-          cnOutputPath,
+          contextWriters,
           coordinateConverter,
           remainders,
+          sharedCounts,
           receiverRef
         );
       }
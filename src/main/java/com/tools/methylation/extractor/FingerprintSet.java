@@ -0,0 +1,60 @@
+package com.tools.methylation.extractor;
+
+import java.util.Arrays;
+
+/**
+ * A set of 64-bit fingerprints held in a single open addressed array of longs, which takes a fraction of the memory of
+ * a HashSet of boxed Longs.  Zero marks an empty slot, so a fingerprint of zero is stored as one.  Clearing the set
+ * releases a table that has grown far beyond its last contents, so that a single deep pile of fragments does not leave
+ * every later clear sweeping a large table.
+ */
+class FingerprintSet {
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] slots = new long[MIN_CAPACITY];
+  private int size = 0;
+
+  /**
+   * Adds the fingerprint to the set, returning false if it was already present.
+   */
+  public boolean add(long fingerprint) {
+    if (fingerprint == 0) fingerprint = 1;
+
+    // Keep the table at most half full so that the probes stay short
+    if (2 * (size + 1) > slots.length) resize(2 * slots.length);
+
+    int slot = find(slots, fingerprint);
+    boolean isAdded = slots[slot] == 0;
+    if (isAdded) {
+      slots[slot] = fingerprint;
+      size++;
+    }
+
+    return isAdded;
+  }
+
+  public int size() { return size; }
+
+  public void clear() {
+    if (slots.length > MIN_CAPACITY && 8 * size < slots.length) slots = new long[MIN_CAPACITY];
+    else if (size > 0) Arrays.fill(slots, 0);
+    size = 0;
+  }
+
+  private void resize(int capacity) {
+    long[] resizedSlots = new long[capacity];
+    for (long fingerprint : slots) {
+      if (fingerprint != 0) resizedSlots[find(resizedSlots, fingerprint)] = fingerprint;
+    }
+    slots = resizedSlots;
+  }
+
+  // Returns the slot holding the fingerprint or the empty slot where it belongs
+  private static int find(long[] slots, long fingerprint) {
+    int mask = slots.length - 1;
+    int slot = (int) (fingerprint ^ fingerprint >>> 32) & mask;
+    while (slots[slot] != 0 && slots[slot] != fingerprint) slot = (slot + 1) & mask;
+
+    return slot;
+  }
+}
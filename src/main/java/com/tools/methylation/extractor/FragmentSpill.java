@@ -0,0 +1,162 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.collect.AbstractIterator;
+import com.tools.io.CompressionCodec;
+import net.sf.samtools.util.CloseableIterator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A compact binary format for the fragments spilled to disk between blocking and extraction.  Each fragment is written
+ * as its length in bytes followed by its read count and the contig index, start, strand, flags, mate start, packed
+ * Cigar and methylation calls of each read, which is all that extraction needs from the original records.  A
+ * FragmentSpill reuses a buffer for writing so it should only be used to write from a single thread.
+ */
+class FragmentSpill {
+  private final List<String> contigs;
+  private final HashMap<String, Integer> contigIndices = new HashMap<>();
+
+  // The buffer into which each fragment is encoded before its length is known
+  private final ByteArrayOutputStream fragmentBuffer = new ByteArrayOutputStream();
+  private final DataOutputStream fragmentOutputStream = new DataOutputStream(fragmentBuffer);
+
+  /**
+   * Constructs a FragmentSpill that refers to contigs by their index in the provided list.
+   */
+  public FragmentSpill(List<String> contigs) {
+    this.contigs = contigs;
+    for (int i = 0; i < contigs.size(); i++) contigIndices.put(contigs.get(i), i);
+  }
+
+  /**
+   * Writes the fragment to the output stream.
+   *
+   * @throws IOException if the fragment cannot be written
+   */
+  public void write(AlignedFragment fragment, DataOutputStream outputStream) throws IOException {
+    fragmentBuffer.reset();
+    if (fragment instanceof SingleEndFragment) {
+      fragmentOutputStream.writeByte(1);
+      writeRead(((SingleEndFragment) fragment).read);
+    } else {
+      PairedEndFragment pairedEndFragment = (PairedEndFragment) fragment;
+      fragmentOutputStream.writeByte(2);
+      writeRead(pairedEndFragment.read1);
+      writeRead(pairedEndFragment.read2);
+    }
+
+    outputStream.writeInt(fragmentBuffer.size());
+    fragmentBuffer.writeTo(outputStream);
+  }
+
+  /**
+   * Returns an iterator over the fragments spilled to the path, which closes the file once it is closed.
+   *
+   * @throws IOException if the file cannot be opened
+   */
+  public CloseableIterator<AlignedFragment> read(Path path) throws IOException {
+    DataInputStream inputStream = new DataInputStream(CompressionCodec.newInputStream(path));
+
+    return new FragmentIterator(inputStream, path);
+  }
+
+  /**
+   * Decodes a fragment from the buffer, which holds the bytes that follow the length of the fragment.
+   */
+  public AlignedFragment read(ByteBuffer buffer) {
+    AlignedFragment fragment;
+    if (buffer.get() == 1) fragment = new SingleEndFragment(readRead(buffer));
+    else fragment = new PairedEndFragment(readRead(buffer), readRead(buffer));
+
+    return fragment;
+  }
+
+  private void writeRead(AlignedRead read) throws IOException {
+    Integer contigIndex = contigIndices.get(read.contig);
+    if (contigIndex == null) throw new IllegalArgumentException("unknown contig encountered: " + read.contig);
+
+    fragmentOutputStream.writeInt(contigIndex);
+    fragmentOutputStream.writeInt(read.start);
+    fragmentOutputStream.writeBoolean(read.isForward);
+    fragmentOutputStream.writeShort(read.flags);
+    fragmentOutputStream.writeInt(read.mateStart);
+    fragmentOutputStream.writeInt(read.cigar.length);
+    for (int cigarElement : read.cigar) fragmentOutputStream.writeInt(cigarElement);
+
+    fragmentOutputStream.writeInt(read.methylationCalls.length);
+    fragmentOutputStream.write(read.methylationCalls);
+  }
+
+  private AlignedRead readRead(ByteBuffer buffer) {
+    int contigIndex = buffer.getInt();
+    int start = buffer.getInt();
+    boolean isForward = buffer.get() != 0;
+    int flags = buffer.getShort() & 0xFFFF;
+    int mateStart = buffer.getInt();
+
+    int[] cigar = new int[buffer.getInt()];
+    for (int i = 0; i < cigar.length; i++) cigar[i] = buffer.getInt();
+
+    byte[] methylationCalls = new byte[buffer.getInt()];
+    buffer.get(methylationCalls);
+
+    return new AlignedRead(
+      contigs.get(contigIndex),
+      contigIndex,
+      start,
+      cigar,
+      methylationCalls,
+      isForward,
+      flags,
+      mateStart
+    );
+  }
+
+  private class FragmentIterator extends AbstractIterator<AlignedFragment>
+                                 implements CloseableIterator<AlignedFragment> {
+    private final DataInputStream inputStream;
+    private final Path path;
+    private byte[] fragmentBytes = new byte[1024];
+
+    public FragmentIterator(DataInputStream inputStream, Path path) {
+      this.inputStream = inputStream;
+      this.path = path;
+    }
+
+    @Override
+    protected AlignedFragment computeNext() {
+      AlignedFragment fragment;
+      try {
+        int firstByte = inputStream.read();
+        if (firstByte >= 0) {
+          // Read the length of the fragment and then the entire fragment
+          int length = firstByte << 24 | inputStream.readUnsignedByte() << 16 | inputStream.readUnsignedShort();
+          if (length > fragmentBytes.length) fragmentBytes = new byte[Math.max(length, 2 * fragmentBytes.length)];
+          inputStream.readFully(fragmentBytes, 0, length);
+
+          fragment = read(ByteBuffer.wrap(fragmentBytes, 0, length));
+        } else fragment = endOfData();
+      } catch (IOException exception) {
+        throw new IllegalStateException("unable to read spilled fragments " + path, exception);
+      }
+
+      return fragment;
+    }
+
+    @Override
+    public void close() {
+      try {
+        inputStream.close();
+      } catch (IOException exception) {
+        throw new IllegalStateException("unable to close spilled fragments " + path, exception);
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.collect.AbstractIterator;
+import com.tools.methylation.utils.Region;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMRecordIterator;
+import net.sf.samtools.util.CloseableIterator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The reads of a block queried directly from a coordinate sorted and indexed BAM file, which avoids rewriting the
+ * reads into a file per block.  A block holds the fragments that start within its regions, matching the Blocker, so
+ * reads overlapping the start of a region are left to the preceding block.  A pair belongs to the block of its first
+ * read, so the query of a region continues past its end to reach the mates of its reads and skips the reads whose mate
+ * starts before it.
+ */
+class IndexedBlockedReads extends BlockedReads {
+  // The furthest apart that the mates of a pair are kept together, which bounds how far a query runs past its region
+  static final int MAX_MATE_DISTANCE = 100000;
+
+  private final List<Region> regions;
+
+  public IndexedBlockedReads(Path path,
+                             CoordinateConverter coordinateConverter,
+                             List<Region> regions,
+                             ReadFilter readFilter) {
+    super(path, coordinateConverter, readFilter);
+    this.regions = regions;
+  }
+
+  @Override
+  public boolean isSorted() { return true; }
+
+  @Override
+  public CloseableIterator<AlignedFragment> fragments(int decoderCount) throws IOException {
+    // Only the BGZF blocks overlapping the regions are read, which the index lookups already keep to a minimum
+    SAMFileReader samReader = new SAMFileReader(path.toFile());
+
+    return new RecordFragmentIterator.SamRecords(
+      samReader,
+      new RegionIterator(samReader, regions.iterator()),
+      readFilter,
+      true
+    );
+  }
+
+  /**
+   * Returns true if the alignment file is a coordinate sorted BAM file with an index, so that its blocks can be
+   * queried directly.
+   */
+  public static boolean isIndexed(Path path) {
+    boolean isIndexed;
+    try (SAMFileReader samReader = new SAMFileReader(path.toFile())) {
+      isIndexed = samReader.isBinary() &&
+        samReader.hasIndex() &&
+        samReader.getFileHeader().getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+    }
+
+    return isIndexed;
+  }
+
+  /**
+   * Returns the blocks of the indexed alignment file, which are split at the same positions as the Blocker.
+   *
+   * @param path                the Path of the indexed BAM file
+   * @param coordinateConverter the CoordinateConverter spanning the entire reference
+   * @param blockSize           the int number of reference positions in each block
+   * @param readFilter          the ReadFilter applied to the reads of each block
+   */
+  public static ArrayList<BlockedReads> split(Path path,
+                                              CoordinateConverter coordinateConverter,
+                                              int blockSize,
+                                              ReadFilter readFilter) {
+    ArrayList<BlockedReads> blockedReads = new ArrayList<>();
+
+    long blockStart = 0;
+    for (CoordinateConverter blockConverter : coordinateConverter.split(blockSize)) {
+      List<Region> regions = coordinateConverter.regions(blockStart, blockStart + blockSize - 1);
+      blockedReads.add(new IndexedBlockedReads(path, blockConverter, regions, readFilter));
+      blockStart += blockSize;
+    }
+
+    return blockedReads;
+  }
+
+  // Successively queries each region, only opening the next query once the last is exhausted
+  private static class RegionIterator extends AbstractIterator<SAMRecord> implements CloseableIterator<SAMRecord> {
+    private final SAMFileReader samReader;
+    private final Iterator<Region> regions;
+
+    private Region region;
+    private SAMRecordIterator records;
+
+    // The names of the mates starting past the end of the region and the last of their starts
+    private final HashSet<String> mateNames = new HashSet<>();
+    private int lastMateStart;
+
+    public RegionIterator(SAMFileReader samReader, Iterator<Region> regions) {
+      this.samReader = samReader;
+      this.regions = regions;
+    }
+
+    @Override
+    protected SAMRecord computeNext() {
+      SAMRecord nextRecord = null;
+      while (nextRecord == null && (records != null || regions.hasNext())) {
+        if (records == null) {
+          // Query through the end of the contig, since the mates may start past the end of the region
+          region = regions.next();
+          records = samReader.query(region.contig, region.start, 0, false);
+          lastMateStart = region.stop;
+        } else if (!records.hasNext()) {
+          close();
+        } else {
+          SAMRecord record = records.next();
+          if (record.getAlignmentStart() > lastMateStart) close();
+          else if (record.getAlignmentStart() > region.stop) {
+            // Past the end of the region only the mates of its reads are wanted
+            if (mateNames.remove(record.getReadName())) nextRecord = record;
+          } else if (record.getAlignmentStart() >= region.start && !isMateBefore(record, region.start)) {
+            // Skip the reads that start in the preceding block, or whose mate does
+            nextRecord = record;
+            if (isMateAfter(record, region.stop)) {
+              mateNames.add(record.getReadName());
+              lastMateStart = Math.max(lastMateStart, record.getMateAlignmentStart());
+            }
+          }
+        }
+      }
+
+      return nextRecord == null ? endOfData() : nextRecord;
+    }
+
+    @Override
+    public void close() {
+      if (records != null) records.close();
+      records = null;
+      mateNames.clear();
+    }
+
+    private static boolean isMateBefore(SAMRecord record, int position) {
+      return hasNearbyMate(record) && record.getMateAlignmentStart() < position;
+    }
+
+    private static boolean isMateAfter(SAMRecord record, int position) {
+      return hasNearbyMate(record) && record.getMateAlignmentStart() > position;
+    }
+
+    // Mates further apart than the maximum distance are left to their own blocks as single reads
+    private static boolean hasNearbyMate(SAMRecord record) {
+      return record.getReadPairedFlag() &&
+        !record.getMateUnmappedFlag() &&
+        record.getMateReferenceIndex().equals(record.getReferenceIndex()) &&
+        Math.abs(record.getMateAlignmentStart() - record.getAlignmentStart()) <= MAX_MATE_DISTANCE;
+    }
+  }
+}
@@ -1,14 +1,18 @@
 package com.tools.methylation.extractor;
 
-import com.google.common.collect.Iterators;
-import com.google.common.collect.PeekingIterator;
-
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Converts flattened positions back to their contig and position by binary searching the stops of the sequences.  The
+ * convertor holds no state between conversions, so the positions can be converted in any order and the convertor can
+ * be shared between threads.
+ */
 class InverseCoordinateConvertor {
-  private final PeekingIterator<ReferenceSequenceCoordinates> sequenceCoordinates;
+  private final String[] sequenceNames;
+  private final long[] sequenceOffsets;
+  private final long[] sequenceStops;
+
   private final String stopContig;
   private final int stopPosition;
 
@@ -19,31 +23,30 @@ class InverseCoordinateConvertor {
     this.stopContig = stopContig;
     this.stopPosition = stopPosition;
 
-    ArrayList<ReferenceSequenceCoordinates> referenceCoordinates = new ArrayList<>();
-    for (CoordinateConverter.ReferenceSequence referenceSequence : referenceSequences) {
-      ReferenceSequenceCoordinates coordinates = new ReferenceSequenceCoordinates(
-        referenceSequence.contig,
-        offsets.get(referenceSequence.contig),
-        referenceSequence.length
-      );
-
-      referenceCoordinates.add(coordinates);
+    this.sequenceNames = new String[referenceSequences.size()];
+    this.sequenceOffsets = new long[referenceSequences.size()];
+    this.sequenceStops = new long[referenceSequences.size()];
+    for (int i = 0; i < sequenceNames.length; i++) {
+      CoordinateConverter.ReferenceSequence referenceSequence = referenceSequences.get(i);
+      sequenceNames[i] = referenceSequence.contig;
+      sequenceOffsets[i] = offsets.get(referenceSequence.contig);
+      sequenceStops[i] = sequenceOffsets[i] + referenceSequence.length;
     }
-
-    this.sequenceCoordinates = Iterators.peekingIterator(referenceCoordinates.iterator());
   }
 
   public ContigPosition convert(long position) {
-    // Ensure that the current sequence is the first sequence beyond this position
-    while (sequenceCoordinates.hasNext() && position > sequenceCoordinates.peek().stop) sequenceCoordinates.next();
+    // Find the first sequence whose stop is at or beyond the position
+    int low = 0;
+    int high = sequenceStops.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sequenceStops[middle] < position) low = middle + 1;
+      else high = middle;
+    }
 
     ContigPosition result;
-    if (sequenceCoordinates.hasNext()) {
-      // Identify the sequence
-      String sequenceName = sequenceCoordinates.peek().name;
-      int contigPosition = (int) (position - sequenceCoordinates.peek().offset);
-
-      result = new ContigPosition(sequenceName, contigPosition);
+    if (low < sequenceStops.length) {
+      result = new ContigPosition(sequenceNames[low], (int) (position - sequenceOffsets[low]));
     } else result = new ContigPosition(stopContig, stopPosition);
 
     return result;
@@ -58,16 +61,4 @@ class InverseCoordinateConvertor {
       this.position = position;
     }
   }
-
-  public class ReferenceSequenceCoordinates {
-    public final String name;
-    public final long offset;
-    public final long stop;
-
-    public ReferenceSequenceCoordinates(String name, long offset, long length) {
-      this.name = name;
-      this.offset = offset;
-      this.stop = offset + length;
-    }
-  }
 }
@@ -3,10 +3,16 @@ package com.tools.methylation.extractor;
 import akka.actor.*;
 import akka.japi.Creator;
 import akka.japi.Function;
+import akka.routing.RoundRobinRouter;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 import com.tools.io.MethylationCall;
 import com.tools.io.SequenceDictionary;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMSequenceRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.concurrent.duration.Duration;
@@ -18,52 +24,83 @@ import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static akka.actor.SupervisorStrategy.stop;
 
 public class Master extends UntypedActor {
   private final Logger logger = LoggerFactory.getLogger(Master.class);
 
-  protected final ActorRef blockerRef;
-  protected ActorRef extractorRef;
+  // The fewest positions of the reference in a block, below which the memory is not split across more blocks
+  private static final int MIN_REFERENCE_BLOCK_SIZE = 100000;
 
-  private final Path cpgOutputPath;
-  private final Path chgOutputPath;
-  private final Path chhOutputPath;
-  private final Path cnOutputPath;
+  // The name of the file of methylation by read cycle, which is written in the directory of the summary
+  public static final String MBIAS_FILE_NAME = "mbias.tab";
+
+  protected ActorRef blockerRef;
+
+  // The workers that count the reads of every block, which the blocks share for the whole extraction
+  protected final ActorRef counterRef;
+
+  // The extractors of the blocks being extracted in the order of the blocks, where only the first may be writing
+  protected final ArrayDeque<ActorRef> extractorRefs = new ArrayDeque<>();
+
+  private final Path inputPath;
+  private final SequenceDictionary sequenceDictionary;
+
+  // The outputs of the contexts, which stay open while the blocks are written
+  private final ContextWriters contextWriters;
   private final Path summaryPath;
 
+  // Whether the PCR duplicates are dropped as the reads are extracted
+  private final boolean isDeduplicated;
+
+  // The filter of the reads that are counted
+  private final ReadFilter readFilter;
+
   private final long availableMemory;
   private final int threadCount;
+  private final int workerCount;
+  private final int concurrentBlockCount;
 
   // Record of reads depth and methylation ratio per contig
   private final Map<String, DepthCounter> depthCounts;
 
+  // Record of the methylation ratio by read cycle, which is written next to the summary
+  private final MbiasCounter mbiasCounts = new MbiasCounter();
+
   private PeekingIterator<BlockedReads> blockedReads;
 
   public Master(Path inputPath,
                 SequenceDictionary sequenceDictionary,
-                Path cpgOutputPath,
-                Path chgOutputPath,
-                Path chhOutputPath,
-                Path cnOutputPath,
+                Map<Character, Path> outputPaths,
+                boolean isCollapsed,
+                boolean isDeduplicated,
+                ReadFilter readFilter,
                 Path summaryPath,
                 long availableMemory,
-                int threadCount) {
-    Props blockerProps = Blocker.props(inputPath, sequenceDictionary, getSelf(), availableMemory, threadCount);
-    this.blockerRef = getContext().actorOf(blockerProps, "blocker");
-
-    this.cpgOutputPath = cpgOutputPath;
-    this.chgOutputPath = chgOutputPath;
-    this.chhOutputPath = chhOutputPath;
-    this.cnOutputPath = cnOutputPath;
+                int threadCount) throws IOException {
+    this.inputPath = inputPath;
+    this.sequenceDictionary = sequenceDictionary;
+
+    this.contextWriters = new ContextWriters(outputPaths, isCollapsed);
     this.summaryPath = summaryPath;
+    this.isDeduplicated = isDeduplicated;
+    this.readFilter = readFilter;
 
     this.availableMemory = availableMemory;
     this.threadCount = threadCount;
+    this.workerCount = Math.max(threadCount - 2, 1);
+    Set<Character> contexts = contextWriters.getContexts();
+    this.concurrentBlockCount = determineConcurrentBlockCount(threadCount, availableMemory, contexts);
+
+    Props counterProps = ExtractorCounter.props(contexts).withRouter(new RoundRobinRouter(workerCount));
+    this.counterRef = getContext().actorOf(counterProps, "counter");
 
     this.depthCounts = new HashMap<>();
     for (String contig : sequenceDictionary.getSortedContigs()) depthCounts.put(contig, new DepthCounter());
@@ -93,16 +130,54 @@ public class Master extends UntypedActor {
                             final Path summaryPath,
                             final long availableMemory,
                             final int threadCount) {
+    Map<Character, Path> outputPaths = ImmutableMap.of(
+      MethylationCounts.CPG_CONTEXT, cpgOutputPath,
+      MethylationCounts.CHG_CONTEXT, chgOutputPath,
+      MethylationCounts.CHH_CONTEXT, chhOutputPath,
+      MethylationCounts.CN_CHN_CONTEXT, cnOutputPath
+    );
+
+    return props(
+      inputPath,
+      sequenceDictionary,
+      outputPaths,
+      false,
+      false,
+      ReadFilter.NONE,
+      summaryPath,
+      availableMemory,
+      threadCount
+    );
+  }
+
+  /**
+   * Returns the Props for a Master that only counts and writes the contexts with an output, which spares the memory
+   * and time of counting the contexts that are not wanted.
+   *
+   * @param outputPaths the Path of the output of each selected context keyed by its context code
+   * @param isCollapsed    whether the calls on both strands of each CpG are written as a single site
+   * @param isDeduplicated whether the PCR duplicates are dropped rather than counted
+   * @param readFilter     the ReadFilter of the reads that are counted
+   */
+  public static Props props(final Path inputPath,
+                            final SequenceDictionary sequenceDictionary,
+                            final Map<Character, Path> outputPaths,
+                            final boolean isCollapsed,
+                            final boolean isDeduplicated,
+                            final ReadFilter readFilter,
+                            final Path summaryPath,
+                            final long availableMemory,
+                            final int threadCount) {
     return Props.create(new Creator<Master>() {
       @Override
       public Master create() throws Exception {
         return new Master(
           inputPath,
           sequenceDictionary,
-          cpgOutputPath,
-          chgOutputPath,
-          chhOutputPath,
-          cnOutputPath,
+          outputPaths,
+          isCollapsed,
+          isDeduplicated,
+          readFilter,
           summaryPath,
           availableMemory,
           threadCount
@@ -120,53 +195,169 @@ public class Master extends UntypedActor {
   }
 
   protected void shutdown() {
+    contextWriters.close();
+
     // Write out the details
     writeStatistics(depthCounts, summaryPath);
+    writeMbias(mbiasCounts, summaryPath.resolveSibling(MBIAS_FILE_NAME));
 
     getContext().system().shutdown();
   }
 
-  private void extractBlock(BlockedReads blockedReads, Map<Character, ArrayList<MethylationCall>> remainders) {
-    // Discard empty blocks
+  /**
+   * Returns the number of reference blocks to extract at the same time, so that the workers keep counting one block
+   * while another block is written.  Each block runs its own reader and writer alongside the shared workers, so blocks
+   * are only overlapped when there are threads to spare, and the blocks split the memory, so each must still be able
+   * to cover the minimum number of positions of the reference.
+   */
+  static int determineConcurrentBlockCount(int threadCount, long availableMemory, Set<Character> contexts) {
+    int workerCount = Math.max(threadCount - 2, 1);
+    int blockCount = Math.max(Math.min(threadCount / 2, workerCount), 1);
+    while (blockCount > 1) {
+      long blockMemory = availableMemory / blockCount;
+      if (Blocker.Builder.determineReferenceBlockSize(blockMemory, workerCount, contexts) >= MIN_REFERENCE_BLOCK_SIZE) {
+        break;
+      }
+      blockCount--;
+    }
+
+    return blockCount;
+  }
+
+  /**
+   * Starts extracting the block, which is written once it receives the remainders of the preceding block unless its
+   * remainders are provided.
+   */
+  private void extractBlock(BlockedReads blockedReads,
+                            Optional<Map<Character, ArrayList<MethylationCall>>> remainders,
+                            long blockMemory,
+                            boolean isStreaming) {
     CoordinateConverter coordinateConverter = blockedReads.coordinateConverter;
     logger.info("Extracting to {}:{}", coordinateConverter.stopContig, coordinateConverter.stopPosition);
 
     Props extractorProps = Extractor.props(
-      blockedReads.path,
-      cpgOutputPath,
-      chgOutputPath,
-      chhOutputPath,
-      cnOutputPath,
+      blockedReads,
+      contextWriters,
       coordinateConverter,
       remainders,
       getSelf(),
-      availableMemory,
-      threadCount
+      blockMemory,
+      threadCount,
+      isStreaming,
+      isDeduplicated,
+      Optional.of(counterRef)
     );
-    this.extractorRef = getContext().actorOf(extractorProps);
+    ActorRef extractorRef = getContext().actorOf(extractorProps);
+    extractorRefs.add(extractorRef);
 
     extractorRef.tell(new Messages.Start(), getSelf());
   }
 
-  private void start(Messages.Start message) { blockerRef.tell(message, getSelf()); }
+  /**
+   * Starts extracting the following blocks until the limit of concurrent blocks is reached.
+   */
+  private void extractBlocks() {
+    while (extractorRefs.size() < concurrentBlockCount) {
+      // Drop empty blocks
+      while (blockedReads.hasNext() && blockedReads.peek().isEmpty()) blockedReads.next();
+      if (!blockedReads.hasNext()) break;
+
+      // The blocks share the memory and wait for the remainders of their preceding blocks
+      extractBlock(
+        blockedReads.next(),
+        Optional.<Map<Character, ArrayList<MethylationCall>>>absent(),
+        availableMemory / concurrentBlockCount,
+        false
+      );
+    }
+  }
+
+  private void start(Messages.Start message) {
+    if (IndexedBlockedReads.isIndexed(inputPath)) {
+      // Query each block from the index rather than writing the blocks out
+      logger.info("Querying blocks from the index of {}", inputPath);
+
+      CoordinateConverter coordinateConverter = CoordinateConverter.fromSequenceDictionary(sequenceDictionary);
+      int blockSize = Blocker.Builder.determineReferenceBlockSize(
+        availableMemory / concurrentBlockCount,
+        workerCount,
+        contextWriters.getContexts()
+      );
+      ArrayList<BlockedReads> blocks = IndexedBlockedReads.split(inputPath, coordinateConverter, blockSize, readFilter);
+      blocksWritten(new Messages.BlocksWritten(blocks));
+    } else if (isStreamable(inputPath, sequenceDictionary)) {
+      // Extract the whole file as a single block writing calls as the reads move past them
+      logger.info("Streaming the sorted reads of {}", inputPath);
+
+      CoordinateConverter coordinateConverter = CoordinateConverter.fromSequenceDictionary(sequenceDictionary);
+      this.blockedReads = Iterators.peekingIterator(Collections.<BlockedReads>emptyIterator());
+      extractBlock(
+        new BlockedReads(inputPath, coordinateConverter, readFilter),
+        Optional.<Map<Character, ArrayList<MethylationCall>>>of(new HashMap<Character, ArrayList<MethylationCall>>()),
+        availableMemory,
+        true
+      );
+    } else {
+      Props blockerProps = Blocker.props(
+        inputPath,
+        sequenceDictionary,
+        getSelf(),
+        availableMemory,
+        threadCount,
+        concurrentBlockCount,
+        contextWriters.getContexts(),
+        readFilter
+      );
+      this.blockerRef = getContext().actorOf(blockerProps, "blocker");
+      blockerRef.tell(message, getSelf());
+    }
+  }
+
+  /**
+   * Returns true if the reads are sorted by coordinate with the contigs in the same order as the flattened
+   * coordinates, in which case the calls are complete once the reads have moved past them.
+   */
+  private static boolean isStreamable(Path inputPath, SequenceDictionary sequenceDictionary) {
+    boolean isStreamable;
+    try (SAMFileReader samReader = new SAMFileReader(inputPath.toFile())) {
+      SAMFileHeader samHeader = samReader.getFileHeader();
+      isStreamable = samHeader.getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+
+      // Control contigs are moved to the front of the coordinates, which can break the order of the reads
+      int lastIndex = -1;
+      for (SAMSequenceRecord sequenceRecord : samHeader.getSequenceDictionary().getSequences()) {
+        int index = sequenceDictionary.getContigIndex(sequenceRecord.getSequenceName());
+        if (index < lastIndex) isStreamable = false;
+        lastIndex = index;
+      }
+    }
+
+    return isStreamable;
+  }
 
   private void blocksWritten(Messages.BlocksWritten message) {
     this.blockedReads = Iterators.peekingIterator(message.blockedReads.iterator());
-    while (blockedReads.hasNext() && blockedReads.peek().isEmpty()) blockedReads.next();
+    extractBlocks();
 
-    if (blockedReads.hasNext()) extractBlock(blockedReads.next(), new HashMap<Character, ArrayList<MethylationCall>>());
-    else shutdown();
+    // The first block has no preceding block to wait on
+    if (extractorRefs.isEmpty()) shutdown();
+    else {
+      Map<Character, ArrayList<MethylationCall>> remainders = new HashMap<>();
+      extractorRefs.peek().tell(new Messages.BlockRemainders(remainders), getSelf());
+    }
   }
 
   private void countsWritten(Messages.BlockCountsWritten message) {
     // Log the statistics
     recordStatistics(message.depthCounts);
+    mbiasCounts.merge(message.mbiasCounts);
 
-    // Drop empty blocks
-    while (blockedReads.hasNext() && blockedReads.peek().isEmpty()) blockedReads.next();
+    // The blocks are written in order, so the written block is the first and the next block can start writing
+    extractorRefs.poll();
+    extractBlocks();
 
-    if (blockedReads.hasNext()) extractBlock(blockedReads.next(), message.remainders);
-    else shutdown();
+    if (extractorRefs.isEmpty()) shutdown();
+    else extractorRefs.peek().tell(new Messages.BlockRemainders(message.remainders), getSelf());
   }
 
   private void recordStatistics(Map<String, DepthCounter> depthCounts) {
@@ -191,4 +382,13 @@ public class Master extends UntypedActor {
       logger.error("Unable to write summary file {}", summaryPath);
     }
   }
+
+  private void writeMbias(MbiasCounter mbiasCounts, Path mbiasPath) {
+    try (OutputStream outputStream = Files.newOutputStream(mbiasPath);
+         PrintWriter writer = new PrintWriter(outputStream)) {
+      mbiasCounts.write(writer, BismarkMethylationExtractor.CONTEXT_NAMES);
+    } catch (IOException exception) {
+      logger.error("Unable to write M-bias file {}", mbiasPath);
+    }
+  }
 }
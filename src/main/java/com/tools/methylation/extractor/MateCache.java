@@ -0,0 +1,354 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.base.Optional;
+import com.tools.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Pairs the reads of coordinate sorted records, whose mates are rarely adjacent.  The first read of each pair waits in
+ * the cache, keyed by a fingerprint of its name, until its mate arrives, and the fragments are released in the order
+ * of their first reads so that they remain sorted by their start.  A waiting read is given up on once the records move
+ * past the start of its mate, which will then never arrive, and is released as a single read.  Mates further apart
+ * than the maximum mate distance of the IndexedBlockedReads are not waited for and are both released as single reads,
+ * as they are when the reads are queried by region.
+ *
+ * The slots are therefore bounded by the reads that start within the maximum mate distance of the oldest waiting read.
+ * Only the most recent of them keep their reads in memory, and once there are too many, the oldest waiting reads and
+ * the fragments held behind them are spilled to disk in the FragmentSpill format, to be read back once their mate
+ * arrives or they are released.  The spill is reused from its start each time every spilled slot has been released.
+ * The mate of a rejected read is dropped along with it, as it is when the mates are adjacent.  Closing the cache
+ * deletes its spill.
+ */
+class MateCache implements Closeable {
+  // The most reads held in memory waiting for their mate or behind a waiting read
+  public static final int MAX_READ_COUNT = 100000;
+
+  private final int maxReadCount;
+
+  // The fragments in the order of their first read, where the waiting reads are pending fragments
+  private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+  private final HashMap<Long, Slot> pendingSlots = new HashMap<>();
+
+  // The slots whose read or fragment is held in memory, which always follow the spilled slots
+  private final ArrayDeque<Slot> residentSlots = new ArrayDeque<>();
+
+  // The rejected reads whose mate has yet to arrive, ordered by the start of the mate so that the passed ones are
+  // found first, along with the rejected read of each name that is still waiting
+  private final PriorityQueue<Departure> departures = new PriorityQueue<>();
+  private final HashMap<Long, Departure> departedNames = new HashMap<>();
+
+  // The spill of the slots that did not fit in memory, which is only created once the cache first overflows
+  private final FragmentSpill fragmentSpill;
+  private final ByteArrayOutputStream spillBuffer = new ByteArrayOutputStream();
+  private final DataOutputStream spillOutputStream = new DataOutputStream(spillBuffer);
+  private Path spillPath;
+  private FileChannel spillChannel;
+  private long spillLength = 0;
+
+  /**
+   * Constructs a MateCache for reads on the contigs, given in the order of their reference indices.
+   */
+  public MateCache(List<String> contigs) {
+    this(contigs, MAX_READ_COUNT);
+  }
+
+  MateCache(List<String> contigs, int maxReadCount) {
+    this.fragmentSpill = new FragmentSpill(contigs);
+    this.maxReadCount = maxReadCount;
+  }
+
+  /**
+   * Releases the waiting reads whose mate should already have arrived before a record at the position.
+   */
+  public void advance(int referenceIndex, int start) {
+    while (!slots.isEmpty() && slots.peek().isPending && slots.peek().isPassed(referenceIndex, start)) {
+      Slot slot = slots.peek();
+      pendingSlots.remove(slot.name);
+      slot.release();
+    }
+
+    while (!departures.isEmpty() && departures.peek().isPassed(referenceIndex, start)) {
+      Departure departure = departures.poll();
+      if (departedNames.get(departure.name) == departure) departedNames.remove(departure.name);
+    }
+  }
+
+  /**
+   * Adds a read whose mate is not on the same contig, which is a fragment on its own.
+   */
+  public void add(AlignedRead read) {
+    addSlot(new Slot(new SingleEndFragment(read)));
+    limit();
+  }
+
+  /**
+   * Adds a read whose mate is on the same contig.
+   *
+   * @param name      the long fingerprint of the name shared by the mates
+   * @param mateStart the int start of the mate
+   * @param read      the AlignedRead, or absent if the read was rejected
+   */
+  public void addMate(long name, int referenceIndex, int start, int mateStart, Optional<AlignedRead> read) {
+    Slot slot = pendingSlots.remove(name);
+    Departure departure = slot == null ? departedNames.remove(name) : null;
+    if (slot != null) {
+      if (read.isPresent()) slot.pair(read.get());
+      else slot.drop();
+    } else if (departure != null) {
+      // The mate of a rejected read is dropped along with it
+    } else if (mateStart < start || mateStart - start > IndexedBlockedReads.MAX_MATE_DISTANCE) {
+      // The mate has already been passed without arriving or is too far away to wait for
+      if (read.isPresent()) addSlot(new Slot(new SingleEndFragment(read.get())));
+    } else if (read.isPresent()) {
+      slot = new Slot(name, read.get());
+      addSlot(slot);
+      pendingSlots.put(name, slot);
+    } else {
+      departure = new Departure(name, referenceIndex, mateStart);
+      departures.add(departure);
+      departedNames.put(name, departure);
+    }
+
+    limit();
+  }
+
+  /**
+   * Returns true if the next fragment is complete, which is never the case while the oldest read is waiting.
+   */
+  public boolean hasFragment() {
+    while (!slots.isEmpty() && slots.peek().isDropped) pollSlot();
+
+    return !slots.isEmpty() && !slots.peek().isPending;
+  }
+
+  public AlignedFragment nextFragment() {
+    if (!hasFragment()) throw new IllegalStateException("no complete fragment");
+
+    return pollSlot().getFragment();
+  }
+
+  /**
+   * Releases every waiting read as a single read, which is done once there are no more records.
+   */
+  public void finish() {
+    for (Slot slot : slots) {
+      if (slot.isPending) slot.release();
+    }
+    pendingSlots.clear();
+    departures.clear();
+    departedNames.clear();
+  }
+
+  /**
+   * Returns the number of reads held in memory by the cache.
+   */
+  public int size() { return residentSlots.size(); }
+
+  /**
+   * Returns the number of reads and fragments spilled to disk that have yet to be released.
+   */
+  public int spilledSize() { return slots.size() - residentSlots.size(); }
+
+  /**
+   * Returns the number of slots held by the cache, including those of the spilled reads and fragments.
+   */
+  int slotCount() { return slots.size(); }
+
+  /**
+   * Deletes the spill of the cache.
+   */
+  @Override
+  public void close() {
+    if (spillChannel != null) {
+      try {
+        spillChannel.close();
+        Files.deleteIfExists(spillPath);
+      } catch (IOException exception) {
+        throw new IllegalStateException("unable to delete spilled reads " + spillPath, exception);
+      }
+    }
+  }
+
+  private void addSlot(Slot slot) {
+    slots.addLast(slot);
+    residentSlots.addLast(slot);
+  }
+
+  private Slot pollSlot() {
+    Slot slot = slots.poll();
+    if (slot == residentSlots.peek()) residentSlots.poll();
+
+    // The spill is only read at the offsets of the spilled slots, so it can be overwritten once they are released
+    if (slots.size() == residentSlots.size()) spillLength = 0;
+
+    return slot;
+  }
+
+  // Spills the oldest reads held in memory while the cache holds too many reads, unless they can be released
+  private void limit() {
+    while (residentSlots.size() > maxReadCount && !hasFragment()) residentSlots.poll().spill();
+  }
+
+  // Appends the fragment to the spill, returning its offset
+  private long writeSpill(AlignedFragment fragment) {
+    try {
+      if (spillChannel == null) {
+        this.spillPath = FileUtils.createTempFile("spill");
+        this.spillChannel = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+
+      spillBuffer.reset();
+      fragmentSpill.write(fragment, spillOutputStream);
+      long offset = spillLength;
+      ByteBuffer buffer = ByteBuffer.wrap(spillBuffer.toByteArray());
+      while (buffer.hasRemaining()) spillChannel.write(buffer, offset + buffer.position());
+      spillLength += buffer.position();
+
+      return offset;
+    } catch (IOException exception) {
+      throw new IllegalStateException("unable to spill reads " + spillPath, exception);
+    }
+  }
+
+  // Reads back the fragment spilled at the offset
+  private AlignedFragment readSpill(long offset) {
+    try {
+      ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+      readFully(lengthBuffer, offset);
+
+      ByteBuffer fragmentBuffer = ByteBuffer.allocate(lengthBuffer.getInt(0));
+      readFully(fragmentBuffer, offset + 4);
+      fragmentBuffer.flip();
+
+      return fragmentSpill.read(fragmentBuffer);
+    } catch (IOException exception) {
+      throw new IllegalStateException("unable to read spilled reads " + spillPath, exception);
+    }
+  }
+
+  private void readFully(ByteBuffer buffer, long offset) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (spillChannel.read(buffer, offset + buffer.position()) < 0) throw new IOException("truncated spill");
+    }
+  }
+
+  /**
+   * A fragment in the order of its first read, which is pending while its first read waits for its mate and is
+   * dropped along with a rejected mate.  A spilled slot only keeps the offset of its read or fragment in the spill,
+   * where a waiting read is spilled as a single read so that it can be released without reading it back.
+   */
+  private class Slot {
+    private final long name;
+    private AlignedRead read;
+    private AlignedFragment fragment;
+    private long spillOffset = -1;
+    private boolean isPending;
+    private boolean isDropped = false;
+
+    // The reference index and the start of the mate of a waiting read, which are kept once it is spilled
+    private final int referenceIndex;
+    private final int mateStart;
+
+    public Slot(AlignedFragment fragment) {
+      this.name = 0;
+      this.fragment = fragment;
+      this.isPending = false;
+      this.referenceIndex = fragment.referenceIndex();
+      this.mateStart = 0;
+    }
+
+    public Slot(long name, AlignedRead read) {
+      this.name = name;
+      this.read = read;
+      this.isPending = true;
+      this.referenceIndex = read.referenceIndex;
+      this.mateStart = read.mateStart;
+    }
+
+    public boolean isPassed(int referenceIndex, int start) {
+      return referenceIndex != this.referenceIndex || start > mateStart;
+    }
+
+    // Pairs the waiting read with its mate, where the first of the pair comes first if the mates share a start
+    public void pair(AlignedRead mate) {
+      AlignedRead waitingRead = isSpilled() ? ((SingleEndFragment) readSpill(spillOffset)).read : read;
+      AlignedFragment pairedFragment;
+      if (mate.isFirstOfPair()) pairedFragment = new PairedEndFragment(mate, waitingRead);
+      else pairedFragment = new PairedEndFragment(waitingRead, mate);
+
+      // A spilled fragment stays spilled so that the reads held in memory are still the most recent
+      if (isSpilled()) spillOffset = writeSpill(pairedFragment);
+      else fragment = pairedFragment;
+      complete();
+    }
+
+    public void release() {
+      if (!isSpilled()) fragment = new SingleEndFragment(read);
+      complete();
+    }
+
+    public void drop() {
+      fragment = null;
+      spillOffset = -1;
+      isDropped = true;
+      complete();
+    }
+
+    public void spill() {
+      if (!isDropped) {
+        spillOffset = writeSpill(isPending ? new SingleEndFragment(read) : fragment);
+        read = null;
+        fragment = null;
+      }
+    }
+
+    public AlignedFragment getFragment() { return isSpilled() ? readSpill(spillOffset) : fragment; }
+
+    private boolean isSpilled() { return spillOffset >= 0; }
+
+    private void complete() {
+      read = null;
+      isPending = false;
+    }
+  }
+
+  /**
+   * A rejected read whose mate has yet to arrive, which is ordered by the start of its mate.
+   */
+  private static class Departure implements Comparable<Departure> {
+    private final long name;
+    private final int referenceIndex;
+    private final int mateStart;
+
+    public Departure(long name, int referenceIndex, int mateStart) {
+      this.name = name;
+      this.referenceIndex = referenceIndex;
+      this.mateStart = mateStart;
+    }
+
+    public boolean isPassed(int referenceIndex, int start) {
+      return referenceIndex != this.referenceIndex || start > mateStart;
+    }
+
+    @Override
+    public int compareTo(Departure other) {
+      int comparison = Integer.compare(referenceIndex, other.referenceIndex);
+      if (comparison == 0) comparison = Integer.compare(mateStart, other.mateStart);
+
+      return comparison;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.tools.methylation.extractor;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Counts the methylated and total calls of each context by the cycle of the read that they were called at, which is
+ * the position of the call in the sequenced order of the read, separately for the first and second reads of pairs.  The
+ * methylation rate across the cycles shows the bias at the ends of the reads.  The counts are held in flat arrays of
+ * longs indexed by the cycle, context and read, which grow with the longest read.
+ */
+class MbiasCounter {
+  private static final int CONTEXT_COUNT = 4;
+  private static final int READ_COUNT = 2;
+  private static final int CYCLE_STRIDE = CONTEXT_COUNT * READ_COUNT;
+
+  // The cycles that are allocated up front, which covers the reads of most sequencers
+  private static final int INITIAL_CYCLE_COUNT = 160;
+
+  private long[] methylatedCounts = new long[INITIAL_CYCLE_COUNT * CYCLE_STRIDE];
+  private long[] totalCounts = new long[INITIAL_CYCLE_COUNT * CYCLE_STRIDE];
+
+  // The number of cycles through the last cycle that was counted
+  private int cycleCount = 0;
+
+  /**
+   * Counts a call given its code, which holds its context and whether it is methylated, at the zero based cycle.
+   *
+   * @param isSecondRead whether the call is from the second read of a pair rather than the first or only read
+   */
+  public void count(int callCode, int cycle, boolean isSecondRead) {
+    if (cycle >= cycleCount) {
+      int length = (cycle + 1) * CYCLE_STRIDE;
+      if (length > totalCounts.length) resize(Math.max(2 * totalCounts.length, length));
+      cycleCount = cycle + 1;
+    }
+
+    int index = index(cycle, callCode >> 1, isSecondRead);
+    methylatedCounts[index] += callCode & 1;
+    totalCounts[index]++;
+  }
+
+  public long getMethylatedCount(int callCode, int cycle, boolean isSecondRead) {
+    return cycle < cycleCount ? methylatedCounts[index(cycle, callCode >> 1, isSecondRead)] : 0;
+  }
+
+  public long getTotalCount(int callCode, int cycle, boolean isSecondRead) {
+    return cycle < cycleCount ? totalCounts[index(cycle, callCode >> 1, isSecondRead)] : 0;
+  }
+
+  public int getCycleCount() { return cycleCount; }
+
+  public void merge(MbiasCounter counter) {
+    if (counter.cycleCount > cycleCount) {
+      if (counter.cycleCount * CYCLE_STRIDE > totalCounts.length) resize(counter.cycleCount * CYCLE_STRIDE);
+      cycleCount = counter.cycleCount;
+    }
+
+    for (int i = 0; i < counter.cycleCount * CYCLE_STRIDE; i++) {
+      methylatedCounts[i] += counter.methylatedCounts[i];
+      totalCounts[i] += counter.totalCounts[i];
+    }
+  }
+
+  /**
+   * Writes a row for each context, read and one based cycle with any calls, where the contexts are given by their
+   * names.
+   */
+  public void write(PrintWriter writer, Map<String, Character> contextNames) {
+    writer.println("Context\tRead\tCycle\tMethylated\tTotal\tMethylation Ratio");
+    for (Map.Entry<String, Character> entry : contextNames.entrySet()) {
+      int callCode = MethylationCounts.callCode((byte) entry.getValue().charValue());
+      for (int read = 0; read < READ_COUNT; read++) {
+        for (int cycle = 0; cycle < cycleCount; cycle++) {
+          int index = index(cycle, callCode >> 1, read == 1);
+          long methylatedCount = methylatedCounts[index];
+          long totalCount = totalCounts[index];
+          if (totalCount > 0) {
+            writer.println(
+              entry.getKey() + "\t" + (read + 1) + "\t" + (cycle + 1) + "\t" + methylatedCount + "\t" + totalCount +
+                "\t" + (double) methylatedCount / totalCount
+            );
+          }
+        }
+      }
+    }
+  }
+
+  private void resize(int length) {
+    methylatedCounts = Arrays.copyOf(methylatedCounts, length);
+    totalCounts = Arrays.copyOf(totalCounts, length);
+  }
+
+  private static int index(int cycle, int contextIndex, boolean isSecondRead) {
+    return cycle * CYCLE_STRIDE + contextIndex * READ_COUNT + (isSecondRead ? 1 : 0);
+  }
+}
@@ -1,5 +1,6 @@
 package com.tools.methylation.extractor;
 
+import com.google.common.base.Optional;
 import com.tools.actors.AbstractMessages;
 import com.tools.io.MethylationCall;
 
@@ -11,15 +12,27 @@ class Messages extends AbstractMessages {
   // Messages that a block has been created
   public static class BlockingCompleted { }
 
+  // Messages the calls of the preceding block that fall past its stop, which must be counted before a block is written
+  public static class BlockRemainders {
+    public final Map<Character, ArrayList<MethylationCall>> remainders;
+
+    public BlockRemainders(Map<Character, ArrayList<MethylationCall>> remainders) {
+      this.remainders = remainders;
+    }
+  }
+
   // Messages that the counts for the block were written out
   public static class BlockCountsWritten {
     public final Map<Character, ArrayList<MethylationCall>> remainders;
     public final Map<String, DepthCounter> depthCounts;
+    public final MbiasCounter mbiasCounts;
 
     public BlockCountsWritten(Map<Character, ArrayList<MethylationCall>> remainders,
-                              Map<String, DepthCounter> depthCounts) {
+                              Map<String, DepthCounter> depthCounts,
+                              MbiasCounter mbiasCounts) {
       this.remainders = remainders;
       this.depthCounts = depthCounts;
+      this.mbiasCounts = mbiasCounts;
     }
   }
 
@@ -36,9 +49,17 @@ class Messages extends AbstractMessages {
   public static class AlignedReadsRead extends AbstractMessages.Work {
     public final ArrayDeque<AlignedFragment> fragments;
 
+    // The block that the reads are counted for, which is present when the workers are shared by the blocks
+    public final Optional<ExtractorCounter.Block> block;
+
     public AlignedReadsRead(int index, ArrayDeque<AlignedFragment> fragments) {
+      this(index, fragments, Optional.<ExtractorCounter.Block>absent());
+    }
+
+    public AlignedReadsRead(int index, ArrayDeque<AlignedFragment> fragments, Optional<ExtractorCounter.Block> block) {
       super(index);
       this.fragments = fragments;
+      this.block = block;
     }
   }
 
@@ -46,9 +67,21 @@ class Messages extends AbstractMessages {
   public static class MethylationCalculated extends AbstractMessages.WorkComplete {
     public final MethylationCounts counts;
 
-    public MethylationCalculated(int index, MethylationCounts counts) {
+    // The flattened start of the last fragment counted, after which sorted fragments in later blocks all start
+    public final long lastStart;
+
+    // The counts by read cycle of the chunk
+    public final MbiasCounter mbiasCounts;
+
+    public MethylationCalculated(int index, MethylationCounts counts, long lastStart) {
+      this(index, counts, lastStart, new MbiasCounter());
+    }
+
+    public MethylationCalculated(int index, MethylationCounts counts, long lastStart, MbiasCounter mbiasCounts) {
       super(index);
       this.counts = counts;
+      this.lastStart = lastStart;
+      this.mbiasCounts = mbiasCounts;
     }
   }
 
@@ -66,11 +99,14 @@ class Messages extends AbstractMessages {
   public static class WriteAllComplete {
     public final Map<Character, ArrayList<MethylationCall>> remainders;
     public final Map<String, DepthCounter> depthCounts;
+    public final MbiasCounter mbiasCounts;
 
     public WriteAllComplete(Map<Character, ArrayList<MethylationCall>> remainders,
-                            Map<String, DepthCounter> depthCounts) {
+                            Map<String, DepthCounter> depthCounts,
+                            MbiasCounter mbiasCounts) {
       this.remainders = remainders;
       this.depthCounts = depthCounts;
+      this.mbiasCounts = mbiasCounts;
     }
   }
 }
@@ -1,13 +1,15 @@
 package com.tools.methylation.extractor;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.AbstractIterator;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.ImmutableSet;
 import com.tools.io.MethylationCall;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 
 // Counts methylation calls using relative positions
 class MethylationCounts {
@@ -16,35 +18,158 @@ class MethylationCounts {
   public static final char CHG_CONTEXT = 'X';
   public static final char CHH_CONTEXT = 'H';
   public static final char CN_CHN_CONTEXT = 'U';
+  public static final Set<Character> ALL_CONTEXTS = ImmutableSet.of(
+    CPG_CONTEXT,
+    CHG_CONTEXT,
+    CHH_CONTEXT,
+    CN_CHN_CONTEXT
+  );
 
   // These bits identify the positions that store additional information about the calls at a position
   private static final int METHYLATED_BIT = 0x1;
   private static final int REVERSE_STRAND_BIT = 0x2;
 
-  public ArrayList<TreeMap<Integer, Integer>> callCounters;
+  // The codes of the bismark call characters that are not methylation calls
+  public static final int NO_CALL = -1;
+  public static final int UNKNOWN_CALL = -2;
+
+  // The code of each call character, which is the index of its context shifted above its methylated bit
+  private static final int[] CALL_CODES = new int[256];
+  static {
+    Arrays.fill(CALL_CODES, UNKNOWN_CALL);
+    CALL_CODES['.'] = NO_CALL;
+    for (char context : ALL_CONTEXTS) {
+      CALL_CODES[context] = contextIndex(context) << 1 | METHYLATED_BIT;
+      CALL_CODES[Character.toLowerCase(context)] = contextIndex(context) << 1;
+    }
+  }
+
+  // The fraction of the window that must be covered by calls for them to be counted densely
+  private static final double DENSE_COVERAGE = 0.5;
+
+  // The longest window whose keys fit in an int, leaving room for calls that fall outside of the window
+  public static final long MAX_WINDOW_LENGTH = 1L << 28;
+
+  // The counter for each context, which is only allocated once the context is counted
+  private final CallCounter[] callCounters = new CallCounter[4];
 
   private final CoordinateConverter coordinateConverter;
   private final long stop;
 
+  // The window of flattened positions that the counters initially cover, whose start is the position of the zero
+  // key so that the keys of a window far along the reference still fit in an int
+  private final long windowStart;
+  private final int windowLength;
+
+  // Whether new counters are dense rather than sparse
+  private final boolean isDense;
+
+  /**
+   * Constructs a MethylationCounts for accumulating the counts of other MethylationCounts, whose counters are sparse
+   * until dense counts are added to them.
+   */
   public MethylationCounts(CoordinateConverter coordinateConverter) {
+    this(
+      coordinateConverter,
+      0,
+      coordinateConverter.convert(coordinateConverter.stopContig, coordinateConverter.stopPosition),
+      0
+    );
+  }
+
+  /**
+   * Constructs a MethylationCounts for calls in the specified window of flattened positions, though calls outside of
+   * the window are still counted.  The calls are counted densely if they cover enough of the window and otherwise in
+   * sparse counters, which suits targeted libraries whose calls cluster in small parts of the reference.
+   *
+   * @param coordinateConverter the CoordinateConverter flattening the reference positions
+   * @param windowStart         the long first flattened position expected to be counted
+   * @param windowStop          the long last flattened position expected to be counted
+   * @param coveredPositions    the long number of positions in the window expected to have calls
+   */
+  public MethylationCounts(CoordinateConverter coordinateConverter,
+                           long windowStart,
+                           long windowStop,
+                           long coveredPositions) {
     this.coordinateConverter = coordinateConverter;
     this.stop = coordinateConverter.convert(coordinateConverter.stopContig, coordinateConverter.stopPosition);
+    this.windowStart = windowStart;
+    this.windowLength = (int) Math.max(windowStop - windowStart + 1, 1);
+    this.isDense = coveredPositions > 0 && coveredPositions >= DENSE_COVERAGE * windowLength;
+  }
 
-    this.callCounters = new ArrayList<>();
-    for (int i = 0; i < 4; i++) this.callCounters.add(new TreeMap<Integer, Integer>());
+  /**
+   * Returns a MethylationCounts that all of the workers of a block count into concurrently, whose counters are shared
+   * and span the entire block so that the writer does not need to merge the counts of each worker.
+   */
+  public static MethylationCounts shared(CoordinateConverter coordinateConverter, Set<Character> contexts) {
+    MethylationCounts counts = new MethylationCounts(coordinateConverter);
+    for (char context : contexts) {
+      counts.callCounters[contextIndex(context)] = new SharedCallCounter(counts.windowLength);
+    }
+
+    return counts;
+  }
+
+  /**
+   * Returns the number of bytes needed to densely count the contexts at a single position.
+   */
+  public static int bytesPerPosition(Set<Character> contexts) {
+    return contexts.size() * DenseCallCounter.BYTES_PER_POSITION;
   }
 
   public void count(char call, boolean isForward, String contig, int position) {
-    int adjustedPosition = getIndex(contig, position, isForward, Character.isUpperCase(call));
+    int callCode = callCode((byte) call);
+    if (callCode < 0) throw new RuntimeException("unknown context encountered: " + call);
+
+    countCall(callCode, contigOffset(contig) + position, isForward);
+  }
+
+  /**
+   * Counts a single call given its code and its position relative to the start of the window, which is the offset of
+   * its contig plus its position on the contig.
+   */
+  public void countCall(int callCode, int windowPosition, boolean isForward) {
+    int key = windowPosition << 2 | (callCode & METHYLATED_BIT);
+    if (!isForward) key |= REVERSE_STRAND_BIT;
+
+    getCounter(callCode >> 1).add(key, 1);
+  }
+
+  /**
+   * Returns the position of the start of the contig relative to the start of the window, so that the contig only needs
+   * to be resolved once for all of the calls of a read.
+   */
+  public int contigOffset(String contig) { return (int) (coordinateConverter.convert(contig, 0) - windowStart); }
 
-    // Calculate the index for the count category
-    int index = contextIndex(call);
+  /**
+   * Returns the position of the start of the contig relative to the start of the window given the index of the contig
+   * in the sequence dictionary of the alignment file.
+   */
+  public int contigOffset(int referenceIndex) {
+    return (int) (coordinateConverter.convert(referenceIndex, 0) - windowStart);
+  }
 
-    // Update the count
-    TreeMap<Integer, Integer> callCounter = callCounters.get(index);
-    Integer count = callCounter.get(adjustedPosition);
-    int adjustedCount = count == null ? 0 : count;
-    callCounter.put(adjustedPosition, adjustedCount + 1);
+  /**
+   * Returns the code of the bismark call character, which is NO_CALL for a position without a call and UNKNOWN_CALL
+   * for an unrecognized character.
+   */
+  public static int callCode(byte call) { return CALL_CODES[call & 0xFF]; }
+
+  /**
+   * Returns the codes of the bismark call characters indexed by the unsigned value of the character, where the calls of
+   * any context that is not selected are NO_CALL so that they are skipped before they reach a counter.
+   */
+  public static int[] callCodes(Set<Character> contexts) {
+    int[] callCodes = Arrays.copyOf(CALL_CODES, CALL_CODES.length);
+    for (char context : ALL_CONTEXTS) {
+      if (!contexts.contains(context)) {
+        callCodes[context] = NO_CALL;
+        callCodes[Character.toLowerCase(context)] = NO_CALL;
+      }
+    }
+
+    return callCodes;
   }
 
   /**
@@ -54,12 +179,18 @@ class MethylationCounts {
    */
   public void countAll(MethylationCounts counts) {
     // Merge all of the counts
-    for (int i = 0; i < counts.callCounters.size(); i++ ) {
-      TreeMap<Integer, Integer> callCounter = callCounters.get(i);
-      for (Map.Entry<Integer, Integer> callCount : counts.callCounters.get(i).entrySet()) {
-        Integer count = callCounter.get(callCount.getKey());
-        int adjustedCount = count == null ? 0 : count;
-        callCounter.put(callCount.getKey(), adjustedCount + callCount.getValue());
+    for (int i = 0; i < counts.callCounters.length; i++) {
+      CallCounter callCounter = counts.callCounters[i];
+      if (callCounter != null) {
+        // Dense counts are merged into a dense counter unless the counter is already shared
+        if (callCounter instanceof DenseCallCounter &&
+            !(callCounters[i] instanceof DenseCallCounter || callCounters[i] instanceof SharedCallCounter)) {
+          DenseCallCounter denseCounter = new DenseCallCounter(0, windowLength);
+          if (callCounters[i] != null) denseCounter.addAll(callCounters[i]);
+          callCounters[i] = denseCounter;
+        }
+
+        getCounter(i).addAll(callCounter, (int) (counts.windowStart - windowStart) << 2);
       }
     }
   }
@@ -67,8 +198,7 @@ class MethylationCounts {
   public void countAll(Map<Character, ArrayList<MethylationCall>> contextCounts) {
     for (Map.Entry<Character, ArrayList<MethylationCall>> entryPair : contextCounts.entrySet()) {
       // Get the counter
-      int index = contextIndex(entryPair.getKey());
-      TreeMap<Integer, Integer> callCounter = callCounters.get(index);
+      CallCounter callCounter = getCounter(contextIndex(entryPair.getKey()));
 
       for (MethylationCall call : entryPair.getValue()) {
         boolean isForward = call.strand == '+';
@@ -76,35 +206,52 @@ class MethylationCounts {
         int unmethylatedCount = call.totalCount - call.methylatedCount;
 
         if (methylatedCount > 0) {
-          int adjustedPosition = getIndex(call.contig, call.position, isForward, true);
-          Integer count = callCounter.get(adjustedPosition);
-          int adjustedCount = count == null ? 0 : count;
-          callCounter.put(adjustedPosition, adjustedCount + methylatedCount);
+          callCounter.add(getIndex(call.contig, call.position, isForward, true), methylatedCount);
         }
 
         if (unmethylatedCount > 0) {
-          if (methylatedCount > 0) {
-            int adjustedPosition = getIndex(call.contig, call.position, isForward, false);
-            Integer count = callCounter.get(adjustedPosition);
-            int adjustedCount = count == null ? 0 : count;
-            callCounter.put(adjustedPosition, adjustedCount + unmethylatedCount);
-          }
+          callCounter.add(getIndex(call.contig, call.position, isForward, false), unmethylatedCount);
         }
       }
     }
   }
 
-  public MethylationCallIterator iterator(char context) {
+  public MethylationCallIterator iterator(char context) { return iterator(context, stop); }
+
+  /**
+   * Returns an iterator over the calls of the context through the specified flattened position, leaving any later
+   * calls to getRemainingCounts.
+   */
+  public MethylationCallIterator iterator(char context, long stop) { return iterator(context, stop, false); }
+
+  /**
+   * Returns an iterator over the calls of the context through the specified flattened position, which collapses the
+   * strands of each CpG into a single site if requested.  A collapsed site whose reverse strand calls may follow the
+   * stop is left to getRemainingCounts with the later calls.
+   */
+  public MethylationCallIterator iterator(char context, long stop, boolean isCollapsed) {
     // Get the counts for the context
     int index = contextIndex(context);
-    TreeMap<Integer, Integer> contextCounts = callCounters.get(index);
 
     // Construct an iterator
+    return new MethylationCallIterator(callCounters[index], coordinateConverter.inverseConvertor(), stop, isCollapsed);
+  }
+
+  /**
+   * Returns the last flattened position of the block of the counts.
+   */
+  public long getStop() { return stop; }
+
+  private CallCounter getCounter(int index) {
+    if (callCounters[index] == null) {
+      if (isDense) callCounters[index] = new DenseCallCounter(0, windowLength);
+      else callCounters[index] = new SparseCallCounter();
+    }
 
-    return new MethylationCallIterator(contextCounts, coordinateConverter.inverseConvertor(), stop);
+    return callCounters[index];
   }
 
-  private int contextIndex(char context) {
+  private static int contextIndex(char context) {
     int index;
     switch(Character.toUpperCase(context)) {
       case CHH_CONTEXT:
@@ -128,7 +275,7 @@ class MethylationCounts {
 
   private int getIndex(String contig, int position, boolean isForward, boolean isMethylated) {
     // Flatten the position
-    int flattenPosition = (int) coordinateConverter.convert(contig, position);
+    int flattenPosition = (int) (coordinateConverter.convert(contig, position) - windowStart);
 
     // Adjust the position to the counter key
     int adjustedPosition = flattenPosition << 2;
@@ -139,54 +286,94 @@ class MethylationCounts {
   }
 
   public class MethylationCallIterator extends AbstractIterator<MethylationCall> {
-    private final PeekingIterator<Map.Entry<Integer, Integer>> entries;
+    private final CallCounter callCounter;
     private final InverseCoordinateConvertor inverseCoordinateConvertor;
     private final long stop;
 
-    public MethylationCallIterator(TreeMap<Integer, Integer> callCounts,
+    // The next slot of the counter with a count
+    private final int slotCount;
+    private int slot;
+
+    // Collapses the strands of the calls through the stop, which are otherwise returned by strand
+    private final Optional<CpgStrandCollapser> collapser;
+
+    public MethylationCallIterator(CallCounter callCounter,
                                    InverseCoordinateConvertor inverseCoordinateConvertor,
-                                   long stop) {
-      this.entries = Iterators.peekingIterator(callCounts.entrySet().iterator());
+                                   final long stop,
+                                   boolean isCollapsed) {
+      this.callCounter = callCounter;
       this.inverseCoordinateConvertor = inverseCoordinateConvertor;
       this.stop = stop;
+
+      // A context that was never counted has no calls
+      this.slotCount = callCounter == null ? 0 : callCounter.getSlotCount();
+      this.slot = callCounter == null ? 0 : callCounter.nextSlot(0);
+
+      if (isCollapsed) {
+        Iterator<MethylationCall> calls = new AbstractIterator<MethylationCall>() {
+          @Override
+          protected MethylationCall computeNext() { return hasNextCall() ? parseNextCall() : endOfData(); }
+        };
+
+        // The reverse strand of a site at the stop may still be counted unless the site ends its contig
+        this.collapser = Optional.<CpgStrandCollapser>of(new CpgStrandCollapser(calls) {
+          @Override
+          protected boolean isComplete(MethylationCall site) {
+            return coordinateConverter.convert(site.contig, site.position) < stop ||
+              site.position >= coordinateConverter.contigLength(site.contig);
+          }
+        });
+      } else this.collapser = Optional.absent();
     }
 
     @Override
     public MethylationCall computeNext() {
       MethylationCall nextElement;
-      if (entries.hasNext() && (entries.peek().getKey() >> 2) <= stop) nextElement = parseNextCall();
+      if (collapser.isPresent()) nextElement = collapser.get().hasNext() ? collapser.get().next() : endOfData();
+      else if (hasNextCall()) nextElement = parseNextCall();
       else nextElement = endOfData();
 
       return nextElement;
     }
 
+    /**
+     * Returns all of the calls after the stop position, which belong to the following block, preceded by the calls of
+     * any collapsed site that is not yet complete.
+     */
     public ArrayList<MethylationCall> getRemainingCounts() {
       ArrayList<MethylationCall> counts = new ArrayList<>();
-      if (entries.hasNext()) counts.add(parseNextCall());
+      if (collapser.isPresent()) counts.addAll(collapser.get().getRemainingCalls());
+      while (slot < slotCount) counts.add(parseNextCall());
 
       return counts;
     }
 
+    private boolean hasNextCall() {
+      return slot < slotCount && windowStart + (callCounter.getKey(slot) >> 2) <= stop;
+    }
+
     private MethylationCall parseNextCall() {
-      Map.Entry<Integer, Integer> entryPair = entries.next();
-      Integer key = entryPair.getKey();
+      int key = callCounter.getKey(slot);
+      int count = callCounter.getCount(slot);
+      slot = callCounter.nextSlot(slot + 1);
 
       // Get the position, strand, and type
-      int position = key >> 2;
+      long position = windowStart + (key >> 2);
       boolean isForward = (key & REVERSE_STRAND_BIT) == 0;
       boolean isMethylated = (key & METHYLATED_BIT) != 0;
 
-      // Determine the counts checking the following entry if necessary
+      // Determine the counts checking the following slot if necessary
       int methylatedCount, unmethylatedCount;
-      if (entries.hasNext() && entries.peek().getKey() == (key | METHYLATED_BIT)) {
-        unmethylatedCount = entryPair.getValue();
-        methylatedCount = entries.next().getValue();
+      if (slot < slotCount && callCounter.getKey(slot) == (key | METHYLATED_BIT)) {
+        unmethylatedCount = count;
+        methylatedCount = callCounter.getCount(slot);
+        slot = callCounter.nextSlot(slot + 1);
       } else if (isMethylated) {
-        methylatedCount = entryPair.getValue();
+        methylatedCount = count;
         unmethylatedCount = 0;
       } else {
         methylatedCount = 0;
-        unmethylatedCount = entryPair.getValue();
+        unmethylatedCount = count;
       }
 
       // Get the reference position
@@ -200,6 +387,5 @@ class MethylationCounts {
         methylatedCount + unmethylatedCount
       );
     }
-
   }
 }
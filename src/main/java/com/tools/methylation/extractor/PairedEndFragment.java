@@ -1,13 +1,11 @@
 package com.tools.methylation.extractor;
 
-import net.sf.samtools.SAMRecord;
-
 class PairedEndFragment extends AlignedFragment {
-  public final SAMRecord read1;
-  public final SAMRecord read2;
+  public final AlignedRead read1;
+  public final AlignedRead read2;
 
-  public PairedEndFragment(SAMRecord read1, SAMRecord read2) {
-    if (read1.getAlignmentStart() <= read2.getAlignmentStart()) {
+  public PairedEndFragment(AlignedRead read1, AlignedRead read2) {
+    if (read1.start <= read2.start) {
       this.read1 = read1;
       this.read2 = read2;
     } else {
@@ -16,7 +14,8 @@ class PairedEndFragment extends AlignedFragment {
     }
   }
 
-  @Override public String contig() { return read1.getReferenceName(); }
-  @Override public int start() { return read1.getAlignmentStart(); }
-  @Override public int stop() { return read2.getAlignmentEnd(); }
+  @Override public String contig() { return read1.contig; }
+  @Override public int referenceIndex() { return read1.referenceIndex; }
+  @Override public int start() { return read1.start; }
+  @Override public int stop() { return read2.stop; }
 }
@@ -0,0 +1,292 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.sf.samtools.util.CloseableIterator;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Iterates over the records of a BAM file, inflating its BGZF blocks and decoding its records on a pool of threads.
+ * The compressed blocks are read sequentially and inflated in batches, the records of each batch are split at the
+ * batch boundaries and then decoded in parallel into RawBamRecord views, and the records are returned in file order so
+ * that mates remain adjacent.  Closing the iterator stops the pool.
+ */
+class ParallelBamIterator extends AbstractIterator<RawBamRecord> implements CloseableIterator<RawBamRecord> {
+  // The number of BGZF blocks inflated together, each of which holds at most 64 KB of records
+  public static final int BATCH_BLOCK_COUNT = 16;
+
+  // The fixed part of the BGZF header preceding the extra subfields of each block
+  private static final int BLOCK_HEADER_LENGTH = 12;
+  private static final int BLOCK_FOOTER_LENGTH = 8;
+
+  private final Path path;
+  private final DataInputStream inputStream;
+  private final ExecutorService executor;
+  private final int batchBlockCount;
+  private final int readAheadCount;
+
+  // The batches being inflated and the batches of records being decoded, both in file order
+  private final ArrayDeque<Future<byte[]>> inflatedBatches = new ArrayDeque<>();
+  private final ArrayDeque<Future<List<RawBamRecord>>> decodedBatches = new ArrayDeque<>();
+  private boolean isInputComplete = false;
+
+  // The inflated bytes following the last complete record, which continue into the next batch
+  private byte[] remainder = new byte[0];
+  private boolean isHeaderSkipped = false;
+
+  private Iterator<RawBamRecord> records = Collections.emptyIterator();
+
+  public ParallelBamIterator(Path path, int threadCount) throws IOException {
+    this(path, threadCount, BATCH_BLOCK_COUNT);
+  }
+
+  ParallelBamIterator(Path path, int threadCount, int batchBlockCount) throws IOException {
+    this.path = path;
+    this.inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    this.executor = Executors.newFixedThreadPool(
+      threadCount,
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bam-decoder-%d").build()
+    );
+    this.batchBlockCount = batchBlockCount;
+    this.readAheadCount = 2 * threadCount;
+  }
+
+  @Override
+  protected RawBamRecord computeNext() {
+    while (!records.hasNext()) {
+      fillBatches();
+      if (decodedBatches.isEmpty()) {
+        if (remainder.length > 0) throw new IllegalStateException("truncated record at the end of " + path);
+        return endOfData();
+      }
+
+      records = await(decodedBatches.removeFirst()).iterator();
+    }
+
+    return records.next();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    try {
+      inputStream.close();
+    } catch (IOException exception) {
+      throw new IllegalStateException("unable to close " + path, exception);
+    }
+  }
+
+  /**
+   * Keeps the pool busy by queuing batches to inflate and, once they are inflated in order, queuing their records to
+   * decode.
+   */
+  private void fillBatches() {
+    queueInflation();
+    while (decodedBatches.size() < readAheadCount && !inflatedBatches.isEmpty()) {
+      byte[] inflatedBytes = await(inflatedBatches.removeFirst());
+      queueInflation();
+
+      queueDecoding(inflatedBytes);
+    }
+  }
+
+  private void queueInflation() {
+    while (!isInputComplete && inflatedBatches.size() < readAheadCount) {
+      final List<byte[]> blocks = readBlocks();
+      if (!blocks.isEmpty()) {
+        inflatedBatches.addLast(executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception { return inflate(blocks); }
+        }));
+      }
+    }
+  }
+
+  /**
+   * Splits the records of the inflated batch, along with the remainder of the previous batch, at the last record
+   * boundary and queues the complete records to decode.
+   */
+  private void queueDecoding(byte[] inflatedBytes) {
+    final byte[] bytes;
+    if (remainder.length == 0) bytes = inflatedBytes;
+    else {
+      bytes = Arrays.copyOf(remainder, remainder.length + inflatedBytes.length);
+      System.arraycopy(inflatedBytes, 0, bytes, remainder.length, inflatedBytes.length);
+    }
+
+    // The header precedes the records at the start of the file
+    int start = 0;
+    if (!isHeaderSkipped) {
+      start = headerLength(bytes);
+      if (start < 0) {
+        remainder = bytes;
+        return;
+      }
+      isHeaderSkipped = true;
+    }
+
+    int stop = start;
+    while (stop + 4 <= bytes.length) {
+      int recordLength = 4 + RawBamRecord.readInt(bytes, stop);
+      if (stop + recordLength > bytes.length) break;
+      stop += recordLength;
+    }
+    remainder = Arrays.copyOfRange(bytes, stop, bytes.length);
+
+    final int offset = start;
+    final int length = stop - start;
+    if (length > 0) {
+      decodedBatches.addLast(executor.submit(new Callable<List<RawBamRecord>>() {
+        @Override
+        public List<RawBamRecord> call() throws Exception { return decode(bytes, offset, length); }
+      }));
+    }
+  }
+
+  /**
+   * Reads the next batch of compressed blocks, each without its fixed header, marking the input complete at the end of
+   * the file.
+   */
+  private List<byte[]> readBlocks() {
+    ArrayList<byte[]> blocks = new ArrayList<>(batchBlockCount);
+    byte[] header = new byte[BLOCK_HEADER_LENGTH];
+    try {
+      while (blocks.size() < batchBlockCount && !isInputComplete) {
+        int firstByte = inputStream.read();
+        if (firstByte < 0) {
+          isInputComplete = true;
+        } else {
+          header[0] = (byte) firstByte;
+          inputStream.readFully(header, 1, BLOCK_HEADER_LENGTH - 1);
+          if ((header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139 || (header[3] & 0x04) == 0) {
+            throw new IllegalStateException("invalid BGZF block in " + path);
+          }
+
+          // The total size of the block is held in the BC subfield of the extra field
+          byte[] extra = new byte[RawBamRecord.readShort(header, 10)];
+          inputStream.readFully(extra);
+          int blockSize = -1;
+          for (int i = 0; i + 4 <= extra.length; i += 4 + RawBamRecord.readShort(extra, i + 2)) {
+            if (extra[i] == 'B' && extra[i + 1] == 'C') blockSize = RawBamRecord.readShort(extra, i + 4) + 1;
+          }
+          if (blockSize < 0) throw new IllegalStateException("invalid BGZF block in " + path);
+
+          byte[] block = new byte[blockSize - BLOCK_HEADER_LENGTH - extra.length];
+          inputStream.readFully(block);
+          blocks.add(block);
+        }
+      }
+    } catch (EOFException exception) {
+      throw new IllegalStateException("truncated BGZF block at the end of " + path, exception);
+    } catch (IOException exception) {
+      throw new IllegalStateException("unable to read " + path, exception);
+    }
+
+    return blocks;
+  }
+
+  /**
+   * Returns the concatenated contents of the blocks, each of which is the compressed data followed by its CRC and
+   * inflated size.
+   */
+  private byte[] inflate(List<byte[]> blocks) throws DataFormatException {
+    int inflatedLength = 0;
+    for (byte[] block : blocks) inflatedLength += RawBamRecord.readInt(block, block.length - 4);
+
+    byte[] inflatedBytes = new byte[inflatedLength];
+    Inflater inflater = new Inflater(true);
+    CRC32 crc = new CRC32();
+    try {
+      int offset = 0;
+      for (byte[] block : blocks) {
+        int blockLength = RawBamRecord.readInt(block, block.length - 4);
+        inflater.reset();
+        inflater.setInput(block, 0, block.length - BLOCK_FOOTER_LENGTH);
+
+        int count = 0;
+        while (count < blockLength && !inflater.finished()) {
+          int inflated = inflater.inflate(inflatedBytes, offset + count, blockLength - count);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+          count += inflated;
+        }
+
+        crc.reset();
+        crc.update(inflatedBytes, offset, blockLength);
+        int expectedCrc = RawBamRecord.readInt(block, block.length - BLOCK_FOOTER_LENGTH);
+        if (count != blockLength || (int) crc.getValue() != expectedCrc) {
+          throw new IllegalStateException("corrupt BGZF block in " + path);
+        }
+        offset += blockLength;
+      }
+    } finally {
+      inflater.end();
+    }
+
+    return inflatedBytes;
+  }
+
+  private List<RawBamRecord> decode(byte[] bytes, int offset, int length) {
+    ArrayList<RawBamRecord> decodedRecords = new ArrayList<>();
+    int recordOffset = offset;
+    while (recordOffset < offset + length) {
+      RawBamRecord record = new RawBamRecord(bytes, recordOffset);
+      decodedRecords.add(record);
+      recordOffset += record.getLength();
+    }
+
+    return decodedRecords;
+  }
+
+  private <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while decoding " + path, exception);
+    } catch (ExecutionException exception) {
+      throw new IllegalStateException("unable to decode " + path, exception.getCause());
+    }
+  }
+
+  /**
+   * Returns the length of the BAM header at the start of the bytes, or -1 if the bytes do not hold all of it.
+   */
+  private int headerLength(byte[] bytes) {
+    if (bytes.length < 8) return -1;
+    if (bytes[0] != 'B' || bytes[1] != 'A' || bytes[2] != 'M' || bytes[3] != 1) {
+      throw new IllegalStateException("invalid BAM header in " + path);
+    }
+
+    // The text of the header is followed by the reference names and lengths
+    long offset = 8L + RawBamRecord.readInt(bytes, 4);
+    if (offset + 4 > bytes.length) return -1;
+    int referenceCount = RawBamRecord.readInt(bytes, (int) offset);
+    offset += 4;
+    for (int i = 0; i < referenceCount; i++) {
+      if (offset + 4 > bytes.length) return -1;
+      offset += 4 + RawBamRecord.readInt(bytes, (int) offset) + 4;
+    }
+
+    return offset > bytes.length ? -1 : (int) offset;
+  }
+}
@@ -0,0 +1,252 @@
+package com.tools.methylation.extractor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A view of a record in its binary BAM encoding that decodes only the fields needed to extract methylation calls.  The
+ * read name, Cigar and tags are read in place from the record bytes, so no SAMRecord, bases, qualities or attribute
+ * lists are built for the read.  The tags are located once when the view is constructed.
+ */
+class RawBamRecord {
+  // The offsets of the fixed fields, which follow the int length of the record
+  private static final int REFERENCE_INDEX_OFFSET = 4;
+  private static final int POSITION_OFFSET = 8;
+  private static final int NAME_LENGTH_OFFSET = 12;
+  private static final int MAPPING_QUALITY_OFFSET = 13;
+  private static final int CIGAR_COUNT_OFFSET = 16;
+  private static final int FLAG_OFFSET = 18;
+  private static final int SEQUENCE_LENGTH_OFFSET = 20;
+  private static final int MATE_REFERENCE_INDEX_OFFSET = 24;
+  private static final int MATE_POSITION_OFFSET = 28;
+  private static final int NAME_OFFSET = 36;
+
+  // The flag bits that determine how the record is paired
+  private static final int PAIRED_FLAG = 0x1;
+  private static final int UNMAPPED_FLAG = 0x4;
+  private static final int MATE_UNMAPPED_FLAG = 0x8;
+
+  private final byte[] bytes;
+  private final int offset;
+  private final int length;
+  private final int cigarOffset;
+  private final int qualityOffset;
+
+  // The offsets of the values of the bismark tags, or -1 if the record lacks them
+  private final int methylationTagOffset;
+  private final int conversionTagOffset;
+
+  /**
+   * Constructs a view of the record starting at the offset, which is the position of its int length.
+   */
+  public RawBamRecord(byte[] bytes, int offset) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = 4 + readInt(bytes, offset);
+    this.cigarOffset = offset + NAME_OFFSET + (bytes[offset + NAME_LENGTH_OFFSET] & 0xFF);
+
+    // The tags follow the Cigar, the bases packed two to a byte and the qualities
+    int sequenceLength = readInt(bytes, offset + SEQUENCE_LENGTH_OFFSET);
+    this.qualityOffset = cigarOffset + 4 * getCigarCount() + (sequenceLength + 1) / 2;
+    int tagOffset = qualityOffset + sequenceLength;
+
+    int methylationTagOffset = -1;
+    int conversionTagOffset = -1;
+    int stop = offset + length;
+    while (tagOffset + 3 <= stop) {
+      int valueOffset = tagOffset + 3;
+      if (isTag(tagOffset, AlignedRead.METHYLATION_TAG)) methylationTagOffset = valueOffset;
+      else if (isTag(tagOffset, AlignedRead.GENOME_CONVERSION_TAG)) conversionTagOffset = valueOffset;
+
+      tagOffset = valueOffset + valueLength(bytes[tagOffset + 2], valueOffset);
+    }
+    this.methylationTagOffset = methylationTagOffset;
+    this.conversionTagOffset = conversionTagOffset;
+  }
+
+  /**
+   * Returns the number of bytes of the record including its length.
+   */
+  public int getLength() { return length; }
+
+  public int getReferenceIndex() { return readInt(bytes, offset + REFERENCE_INDEX_OFFSET); }
+
+  /**
+   * Returns the 1-based position of the first aligned base.
+   */
+  public int getAlignmentStart() { return readInt(bytes, offset + POSITION_OFFSET) + 1; }
+
+  public int getMappingQuality() { return bytes[offset + MAPPING_QUALITY_OFFSET] & 0xFF; }
+
+  public int getMateReferenceIndex() { return readInt(bytes, offset + MATE_REFERENCE_INDEX_OFFSET); }
+
+  /**
+   * Returns the 1-based position of the first aligned base of the mate.
+   */
+  public int getMateAlignmentStart() { return readInt(bytes, offset + MATE_POSITION_OFFSET) + 1; }
+
+  public int getFlags() { return readShort(bytes, offset + FLAG_OFFSET); }
+
+  public boolean getReadPairedFlag() { return (getFlags() & PAIRED_FLAG) != 0; }
+  public boolean getReadUnmappedFlag() { return (getFlags() & UNMAPPED_FLAG) != 0; }
+  public boolean getMateUnmappedFlag() { return (getFlags() & MATE_UNMAPPED_FLAG) != 0; }
+
+  public int getCigarCount() { return readShort(bytes, offset + CIGAR_COUNT_OFFSET); }
+
+  /**
+   * Returns the Cigar packed as in the BAM format, which is the packing used by AlignedRead.
+   */
+  public int[] getCigar() {
+    int[] cigar = new int[getCigarCount()];
+    for (int i = 0; i < cigar.length; i++) cigar[i] = readInt(bytes, cigarOffset + 4 * i);
+
+    return cigar;
+  }
+
+  /**
+   * Returns true if the other record has the same read name as this one.
+   */
+  public boolean hasSameName(RawBamRecord record) {
+    int nameLength = bytes[offset + NAME_LENGTH_OFFSET] & 0xFF;
+    if (nameLength != (record.bytes[record.offset + NAME_LENGTH_OFFSET] & 0xFF)) return false;
+
+    for (int i = 0; i < nameLength; i++) {
+      if (bytes[offset + NAME_OFFSET + i] != record.bytes[record.offset + NAME_OFFSET + i]) return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the 64-bit fingerprint of the read name, which is shared by the mates of a pair.
+   */
+  public long getNameFingerprint() {
+    // The length of the name includes its terminating null
+    return fingerprint(bytes, offset + NAME_OFFSET, (bytes[offset + NAME_LENGTH_OFFSET] & 0xFF) - 1);
+  }
+
+  /**
+   * Returns a copy of the bismark methylation call string, whose bytes are the call characters.
+   */
+  public byte[] getMethylationCalls() {
+    int callOffset = requireTag(methylationTagOffset, AlignedRead.METHYLATION_TAG);
+
+    int callStop = callOffset;
+    while (bytes[callStop] != 0) callStop++;
+
+    return Arrays.copyOfRange(bytes, callOffset, callStop);
+  }
+
+  /**
+   * Returns the number of methylated CHG, CHH and CN or CHN calls, which are counted in place.
+   */
+  public int getMethylatedNonCpgCount() {
+    int count = 0;
+    for (int i = requireTag(methylationTagOffset, AlignedRead.METHYLATION_TAG); bytes[i] != 0; i++) {
+      if (ReadFilter.isMethylatedNonCpg(bytes[i])) count++;
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns true if bismark aligned the read to the C to T converted forward strand of the reference.
+   */
+  public boolean isForward() {
+    int conversionOffset = requireTag(conversionTagOffset, AlignedRead.GENOME_CONVERSION_TAG);
+    return bytes[conversionOffset] == 'C' && bytes[conversionOffset + 1] == 'T' && bytes[conversionOffset + 2] == 0;
+  }
+
+  /**
+   * Returns the AlignedRead of the record given the contigs in the order of the reference indices.
+   */
+  public AlignedRead toAlignedRead(List<String> contigs) { return toAlignedRead(contigs, ReadFilter.NONE); }
+
+  /**
+   * Returns the AlignedRead of the record given the contigs in the order of the reference indices, without the calls
+   * at bases below the minimum quality of the filter.
+   */
+  public AlignedRead toAlignedRead(List<String> contigs, ReadFilter readFilter) {
+    byte[] methylationCalls = getMethylationCalls();
+    readFilter.maskCalls(methylationCalls, bytes, qualityOffset);
+
+    return new AlignedRead(
+      contigs.get(getReferenceIndex()),
+      getReferenceIndex(),
+      getAlignmentStart(),
+      getCigar(),
+      methylationCalls,
+      isForward(),
+      getFlags(),
+      getReadPairedFlag() ? getMateAlignmentStart() : 0
+    );
+  }
+
+  private boolean isTag(int tagOffset, String tag) {
+    return bytes[tagOffset] == tag.charAt(0) && bytes[tagOffset + 1] == tag.charAt(1);
+  }
+
+  // Returns the offset of the value of the tag, which must be a string
+  private int requireTag(int valueOffset, String tag) {
+    if (valueOffset < 0 || bytes[valueOffset - 1] != 'Z') {
+      throw new IllegalStateException("record is missing the " + tag + " tag");
+    }
+
+    return valueOffset;
+  }
+
+  // Returns the number of bytes in the value of a tag of the type
+  private int valueLength(byte type, int valueOffset) {
+    int valueLength;
+    switch (type) {
+      case 'A':
+      case 'c':
+      case 'C':
+        valueLength = 1;
+        break;
+      case 's':
+      case 'S':
+        valueLength = 2;
+        break;
+      case 'i':
+      case 'I':
+      case 'f':
+        valueLength = 4;
+        break;
+      case 'Z':
+      case 'H':
+        valueLength = 0;
+        while (bytes[valueOffset + valueLength] != 0) valueLength++;
+        valueLength++;
+        break;
+      case 'B':
+        valueLength = 5 + valueLength(bytes[valueOffset], valueOffset) * readInt(bytes, valueOffset + 1);
+        break;
+      default:
+        throw new IllegalStateException("unknown tag type encountered: " + (char) type);
+    }
+
+    return valueLength;
+  }
+
+  /**
+   * Returns the 64-bit FNV-1a hash of the bytes.
+   */
+  static long fingerprint(byte[] bytes, int offset, int length) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = offset; i < offset + length; i++) hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001b3L;
+
+    return hash;
+  }
+
+  static int readShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+  }
+
+  static int readInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) |
+      (bytes[offset + 1] & 0xFF) << 8 |
+      (bytes[offset + 2] & 0xFF) << 16 |
+      (bytes[offset + 3] & 0xFF) << 24;
+  }
+}
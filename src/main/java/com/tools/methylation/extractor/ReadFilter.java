@@ -0,0 +1,69 @@
+package com.tools.methylation.extractor;
+
+/**
+ * The criteria that a read must meet to be counted, which are checked on the fields of the raw records before any
+ * fragment is built so that the rejected reads never reach the workers.  A read is rejected if it has any of the
+ * excluded flag bits, a mapping quality below the minimum or more methylated non-CpG calls than the maximum, which
+ * marks a read that was not fully converted.  The calls of an accepted read at bases below the minimum quality are
+ * not counted.
+ */
+public class ReadFilter {
+  // A filter that accepts every read and call
+  public static final ReadFilter NONE = new ReadFilter(0, 0, 0, Integer.MAX_VALUE);
+
+  public final int minMappingQuality;
+  public final int excludedFlags;
+  public final int minBaseQuality;
+  public final int maxMethylatedNonCpgCount;
+
+  /**
+   * Constructs a ReadFilter.
+   *
+   * @param minMappingQuality        the int lowest mapping quality of an accepted read
+   * @param excludedFlags            the int SAM flag bits of which a read must have none
+   * @param minBaseQuality           the int lowest base quality of a counted call
+   * @param maxMethylatedNonCpgCount the int most methylated CHG, CHH and CN or CHN calls of an accepted read
+   */
+  public ReadFilter(int minMappingQuality, int excludedFlags, int minBaseQuality, int maxMethylatedNonCpgCount) {
+    this.minMappingQuality = minMappingQuality;
+    this.excludedFlags = excludedFlags;
+    this.minBaseQuality = minBaseQuality;
+    this.maxMethylatedNonCpgCount = maxMethylatedNonCpgCount;
+  }
+
+  /**
+   * Returns true if the read is rejected by its flags or mapping quality.
+   */
+  public boolean isExcluded(int flags, int mappingQuality) {
+    return (flags & excludedFlags) != 0 || mappingQuality < minMappingQuality;
+  }
+
+  /**
+   * Returns true if the methylated non-CpG calls of reads must be counted, which is only when they are limited.
+   */
+  public boolean isConversionChecked() { return maxMethylatedNonCpgCount < Integer.MAX_VALUE; }
+
+  /**
+   * Returns true if the read has too many methylated non-CpG calls to have been fully converted.
+   */
+  public boolean isUnconverted(int methylatedNonCpgCount) { return methylatedNonCpgCount > maxMethylatedNonCpgCount; }
+
+  /**
+   * Replaces the calls at the bases below the minimum quality with no call, where the qualities of the calls follow
+   * the offset.  Reads without qualities, whose first quality is 0xFF in a BAM file, are left as they are.
+   */
+  public void maskCalls(byte[] methylationCalls, byte[] qualities, int qualityOffset) {
+    boolean hasQualities = qualities.length >= qualityOffset + methylationCalls.length &&
+      (methylationCalls.length == 0 || qualities[qualityOffset] != (byte) 0xFF);
+    if (minBaseQuality > 0 && hasQualities) {
+      for (int i = 0; i < methylationCalls.length; i++) {
+        if ((qualities[qualityOffset + i] & 0xFF) < minBaseQuality) methylationCalls[i] = '.';
+      }
+    }
+  }
+
+  /**
+   * Returns true if the bismark call is a methylated CHG, CHH or CN or CHN call.
+   */
+  public static boolean isMethylatedNonCpg(byte call) { return call == 'X' || call == 'H' || call == 'U'; }
+}
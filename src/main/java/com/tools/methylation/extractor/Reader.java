@@ -7,82 +7,113 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 import com.tools.actors.AbstractReader;
-import net.sf.samtools.SAMFileReader;
-import net.sf.samtools.SAMRecord;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import net.sf.samtools.util.CloseableIterator;
 
 import java.io.IOException;
-import java.nio.file.Path;
 import java.util.ArrayDeque;
 
 class Reader extends AbstractReader<Messages.AlignedReadsRead> {
   private final int blockSize;
-  private final PeekingIterator<SAMRecord> recordIterator;
-  private final SAMFileReader fileReader;
+  private final long maxSpan;
+  private final CoordinateConverter coordinateConverter;
+  private final CloseableIterator<AlignedFragment> fragments;
+  private final PeekingIterator<AlignedFragment> fragmentIterator;
 
-  public Reader(Path inputPath, int blockSize, ActorRef receiverRef) throws IOException {
+  // The block that the fragments are counted for, which the workers are sent when they are shared by the blocks
+  private final Optional<ExtractorCounter.Block> block;
+
+  public Reader(BlockedReads blockedReads,
+                int blockSize,
+                int decoderCount,
+                long maxSpan,
+                boolean isDeduplicated,
+                Optional<ExtractorCounter.Block> block,
+                ActorRef receiverRef) throws IOException {
     super(receiverRef);
 
     this.blockSize = blockSize;
-    this.fileReader = new SAMFileReader(inputPath.toFile());
-    this.recordIterator = Iterators.peekingIterator(fileReader.iterator());
+    this.maxSpan = maxSpan;
+    this.block = block;
+    this.coordinateConverter = blockedReads.coordinateConverter;
+    if (isDeduplicated) {
+      this.fragments = new DuplicateFilter(blockedReads.fragments(decoderCount), blockedReads.isSorted());
+    } else this.fragments = blockedReads.fragments(decoderCount);
+    this.fragmentIterator = Iterators.peekingIterator(fragments);
   }
 
   @Override
   public void postStop() throws Exception {
     super.postStop();
-    fileReader.close();
+    fragments.close();
   }
 
   @Override
   protected boolean isComplete() {
-    return !recordIterator.hasNext();
+    return !fragmentIterator.hasNext();
   }
 
   @Override
   protected Messages.AlignedReadsRead read(int blockIndex) {
-    // Successively read in calls for each of the regions
-    ArrayDeque<AlignedFragment> fragments = readBlock(recordIterator, blockSize);
-
-    return new Messages.AlignedReadsRead(blockIndex, fragments);
-  }
-
-  private ArrayDeque<AlignedFragment> readBlock(PeekingIterator<SAMRecord> records, int recordChunkSize) {
-    // Initialize the queues
+    // Successively read in the fragments of the block
     ArrayDeque<AlignedFragment> fragments = new ArrayDeque<>();
+    long blockStart = 0;
+    while (fragments.size() < blockSize && fragmentIterator.hasNext()) {
+      // End the block early once the sorted fragments move too far past its first fragment
+      AlignedFragment fragment = fragmentIterator.peek();
+      long start = coordinateConverter.convert(fragment.referenceIndex(), fragment.start());
+      if (fragments.isEmpty()) blockStart = start;
+      else if (start - blockStart >= maxSpan) break;
 
-    // Add the records
-    while (fragments.size() < recordChunkSize && records.hasNext()) {
-      // Get the record and ensure that it is mapped
-      SAMRecord record = records.next();
-      if (record.getReadUnmappedFlag()) continue;
+      fragments.addLast(fragmentIterator.next());
+    }
 
-      AlignedFragment alignedFragment;
-      if (record.getReadPairedFlag() &&
-          records.hasNext() &&
-          !record.getMateUnmappedFlag() &&
-          record.getReadName().equals(records.peek().getReadName())) {
-        // The record is paired end, handle its mate too
-        SAMRecord mateRecord = records.next();
-        alignedFragment = new PairedEndFragment(record, mateRecord);
-      } else {
-        alignedFragment = new SingleEndFragment(record);
-      }
+    return new Messages.AlignedReadsRead(blockIndex, fragments, block);
+  }
 
-      fragments.addLast(alignedFragment);
-    }
+  public static Props props(final BlockedReads blockedReads,
+                            final int blockSize,
+                            final ActorRef receiverRef) {
+    return props(blockedReads, blockSize, 1, Long.MAX_VALUE, false, receiverRef);
+  }
 
-    return fragments;
+  /**
+   * Returns the Props of a Reader that decodes the reads on the specified number of threads and, for sorted reads,
+   * ends a block once its fragments span the maximum number of flattened positions.
+   *
+   * @param isDeduplicated whether the PCR duplicates are dropped before the fragments are sent to the workers
+   */
+  public static Props props(final BlockedReads blockedReads,
+                            final int blockSize,
+                            final int decoderCount,
+                            final long maxSpan,
+                            final boolean isDeduplicated,
+                            final ActorRef receiverRef) {
+    return props(
+      blockedReads,
+      blockSize,
+      decoderCount,
+      maxSpan,
+      isDeduplicated,
+      Optional.<ExtractorCounter.Block>absent(),
+      receiverRef
+    );
   }
 
-  public static Props props(final Path inputPath,
+  /**
+   * Returns the Props of a Reader whose fragments name the block that they are counted for, so that they can be sent
+   * to workers shared by the blocks.
+   */
+  public static Props props(final BlockedReads blockedReads,
                             final int blockSize,
+                            final int decoderCount,
+                            final long maxSpan,
+                            final boolean isDeduplicated,
+                            final Optional<ExtractorCounter.Block> block,
                             final ActorRef receiverRef) {
     return Props.create(new Creator<Reader>() {
       @Override
       public Reader create() throws Exception {
-        return new Reader(inputPath, blockSize, receiverRef);
+        return new Reader(blockedReads, blockSize, decoderCount, maxSpan, isDeduplicated, block, receiverRef);
       }
     });
   }
@@ -0,0 +1,272 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceRecord;
+import net.sf.samtools.util.CloseableIterator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups the mapped records of an alignment file into fragments, where paired end records form a fragment with the
+ * record that follows them if it is their mate.  Coordinate sorted records are instead paired through a MateCache,
+ * since their mates are rarely adjacent, and the fragments remain sorted by their start.  The records rejected by the
+ * ReadFilter are dropped before they are decoded, along with their mate.  Closing the iterator closes the underlying
+ * records and deletes any reads that the MateCache spilled.
+ */
+abstract class RecordFragmentIterator<R> extends AbstractIterator<AlignedFragment>
+                                         implements CloseableIterator<AlignedFragment> {
+  private final PeekingIterator<R> recordIterator;
+  protected final ReadFilter readFilter;
+
+  // The cache pairing the mates of sorted records, which is absent when the mates are adjacent
+  private final Optional<MateCache> mateCache;
+
+  /**
+   * Constructs a RecordFragmentIterator over records on the contigs, given in the order of their reference indices.
+   */
+  protected RecordFragmentIterator(CloseableIterator<R> records,
+                                   List<String> contigs,
+                                   ReadFilter readFilter,
+                                   boolean isSorted) {
+    this.recordIterator = Iterators.peekingIterator(records);
+    this.readFilter = readFilter;
+    this.mateCache = isSorted ? Optional.of(new MateCache(contigs)) : Optional.<MateCache>absent();
+  }
+
+  @Override
+  public void close() {
+    if (mateCache.isPresent()) mateCache.get().close();
+    closeRecords();
+  }
+
+  @Override
+  protected AlignedFragment computeNext() {
+    return mateCache.isPresent() ? computeNextSorted(mateCache.get()) : computeNextAdjacent();
+  }
+
+  private AlignedFragment computeNextAdjacent() {
+    AlignedFragment alignedFragment = null;
+    while (alignedFragment == null && recordIterator.hasNext()) {
+      // Get the record and ensure that it is mapped
+      R record = recordIterator.next();
+      if (isUnmapped(record)) continue;
+
+      if (hasMappedMate(record) && recordIterator.hasNext() && isSameRead(record, recordIterator.peek())) {
+        // The record is paired end, handle its mate too
+        R mateRecord = recordIterator.next();
+        if (isAccepted(record) && isAccepted(mateRecord)) {
+          alignedFragment = new PairedEndFragment(toAlignedRead(record), toAlignedRead(mateRecord));
+        }
+      } else if (isAccepted(record)) {
+        alignedFragment = new SingleEndFragment(toAlignedRead(record));
+      }
+    }
+
+    return alignedFragment == null ? endOfData() : alignedFragment;
+  }
+
+  private AlignedFragment computeNextSorted(MateCache mateCache) {
+    while (!mateCache.hasFragment() && recordIterator.hasNext()) {
+      R record = recordIterator.next();
+      if (isUnmapped(record)) continue;
+
+      int referenceIndex = getReferenceIndex(record);
+      int start = getAlignmentStart(record);
+      mateCache.advance(referenceIndex, start);
+
+      // A rejected record is still passed on without its read, so that its mate is dropped too
+      Optional<AlignedRead> read = Optional.absent();
+      if (isAccepted(record)) read = Optional.of(toAlignedRead(record));
+      if (hasMappedMate(record) && getMateReferenceIndex(record) == referenceIndex) {
+        mateCache.addMate(getNameFingerprint(record), referenceIndex, start, getMateAlignmentStart(record), read);
+      } else if (read.isPresent()) mateCache.add(read.get());
+    }
+    if (!recordIterator.hasNext()) mateCache.finish();
+
+    return mateCache.hasFragment() ? mateCache.nextFragment() : endOfData();
+  }
+
+  private boolean isAccepted(R record) {
+    return !readFilter.isExcluded(getFlags(record), getMappingQuality(record)) &&
+      !(readFilter.isConversionChecked() && readFilter.isUnconverted(getMethylatedNonCpgCount(record)));
+  }
+
+  protected abstract boolean isUnmapped(R record);
+
+  // Whether the record is paired end with a mapped mate
+  protected abstract boolean hasMappedMate(R record);
+
+  protected abstract boolean isSameRead(R record, R otherRecord);
+
+  protected abstract int getReferenceIndex(R record);
+
+  protected abstract int getAlignmentStart(R record);
+
+  protected abstract int getMateReferenceIndex(R record);
+
+  protected abstract int getMateAlignmentStart(R record);
+
+  // The 64-bit fingerprint of the read name, which is shared by the mates of a pair
+  protected abstract long getNameFingerprint(R record);
+
+  protected abstract int getFlags(R record);
+
+  protected abstract int getMappingQuality(R record);
+
+  protected abstract int getMethylatedNonCpgCount(R record);
+
+  protected abstract AlignedRead toAlignedRead(R record);
+
+  protected abstract void closeRecords();
+
+  /**
+   * Groups the SAMRecords of a reader, closing the reader once the iterator is closed.
+   */
+  static class SamRecords extends RecordFragmentIterator<SAMRecord> {
+    private final SAMFileReader samReader;
+    private final CloseableIterator<SAMRecord> records;
+
+    public SamRecords(SAMFileReader samReader,
+                      CloseableIterator<SAMRecord> records,
+                      ReadFilter readFilter,
+                      boolean isSorted) {
+      super(records, getContigs(samReader), readFilter, isSorted);
+      this.samReader = samReader;
+      this.records = records;
+    }
+
+    @Override
+    protected boolean isUnmapped(SAMRecord record) { return record.getReadUnmappedFlag(); }
+
+    @Override
+    protected boolean hasMappedMate(SAMRecord record) {
+      return record.getReadPairedFlag() && !record.getMateUnmappedFlag();
+    }
+
+    @Override
+    protected boolean isSameRead(SAMRecord record, SAMRecord otherRecord) {
+      return record.getReadName().equals(otherRecord.getReadName());
+    }
+
+    @Override
+    protected int getReferenceIndex(SAMRecord record) { return record.getReferenceIndex(); }
+
+    @Override
+    protected int getAlignmentStart(SAMRecord record) { return record.getAlignmentStart(); }
+
+    @Override
+    protected int getMateReferenceIndex(SAMRecord record) { return record.getMateReferenceIndex(); }
+
+    @Override
+    protected int getMateAlignmentStart(SAMRecord record) { return record.getMateAlignmentStart(); }
+
+    @Override
+    protected long getNameFingerprint(SAMRecord record) {
+      byte[] name = record.getReadName().getBytes(StandardCharsets.US_ASCII);
+      return RawBamRecord.fingerprint(name, 0, name.length);
+    }
+
+    @Override
+    protected int getFlags(SAMRecord record) { return record.getFlags(); }
+
+    @Override
+    protected int getMappingQuality(SAMRecord record) { return record.getMappingQuality(); }
+
+    @Override
+    protected int getMethylatedNonCpgCount(SAMRecord record) {
+      String methylationCalls = (String) record.getAttribute(AlignedRead.METHYLATION_TAG);
+
+      int count = 0;
+      for (byte call : methylationCalls.getBytes(StandardCharsets.US_ASCII)) {
+        if (ReadFilter.isMethylatedNonCpg(call)) count++;
+      }
+
+      return count;
+    }
+
+    @Override
+    protected AlignedRead toAlignedRead(SAMRecord record) { return AlignedRead.fromRecord(record, readFilter); }
+
+    @Override
+    protected void closeRecords() {
+      records.close();
+      samReader.close();
+    }
+
+    private static List<String> getContigs(SAMFileReader samReader) {
+      ArrayList<String> contigs = new ArrayList<>();
+      for (SAMSequenceRecord sequenceRecord : samReader.getFileHeader().getSequenceDictionary().getSequences()) {
+        contigs.add(sequenceRecord.getSequenceName());
+      }
+
+      return contigs;
+    }
+  }
+
+  /**
+   * Groups the raw records of a BAM file, given its contigs in the order of their reference indices.
+   */
+  static class RawBamRecords extends RecordFragmentIterator<RawBamRecord> {
+    private final CloseableIterator<RawBamRecord> records;
+    private final List<String> contigs;
+
+    public RawBamRecords(CloseableIterator<RawBamRecord> records,
+                         List<String> contigs,
+                         ReadFilter readFilter,
+                         boolean isSorted) {
+      super(records, contigs, readFilter, isSorted);
+      this.records = records;
+      this.contigs = contigs;
+    }
+
+    @Override
+    protected boolean isUnmapped(RawBamRecord record) { return record.getReadUnmappedFlag(); }
+
+    @Override
+    protected boolean hasMappedMate(RawBamRecord record) {
+      return record.getReadPairedFlag() && !record.getMateUnmappedFlag();
+    }
+
+    @Override
+    protected boolean isSameRead(RawBamRecord record, RawBamRecord otherRecord) {
+      return record.hasSameName(otherRecord);
+    }
+
+    @Override
+    protected int getReferenceIndex(RawBamRecord record) { return record.getReferenceIndex(); }
+
+    @Override
+    protected int getAlignmentStart(RawBamRecord record) { return record.getAlignmentStart(); }
+
+    @Override
+    protected int getMateReferenceIndex(RawBamRecord record) { return record.getMateReferenceIndex(); }
+
+    @Override
+    protected int getMateAlignmentStart(RawBamRecord record) { return record.getMateAlignmentStart(); }
+
+    @Override
+    protected long getNameFingerprint(RawBamRecord record) { return record.getNameFingerprint(); }
+
+    @Override
+    protected int getFlags(RawBamRecord record) { return record.getFlags(); }
+
+    @Override
+    protected int getMappingQuality(RawBamRecord record) { return record.getMappingQuality(); }
+
+    @Override
+    protected int getMethylatedNonCpgCount(RawBamRecord record) { return record.getMethylatedNonCpgCount(); }
+
+    @Override
+    protected AlignedRead toAlignedRead(RawBamRecord record) { return record.toAlignedRead(contigs, readFilter); }
+
+    @Override
+    protected void closeRecords() { records.close(); }
+  }
+}
@@ -0,0 +1,140 @@
+package com.tools.methylation.extractor;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts calls from many threads at once, so that all of the workers of a block count into a single counter rather
+ * than each filling their own to be merged by the writer.  The calls within the window are counted in pages of atomic
+ * counts that are allocated once a call lands in them, while the few calls outside of the window, such as those of
+ * reads extending past the end of a block, are counted in a synchronized sparse counter.  The counter must only be
+ * iterated once all of the counting has finished.
+ */
+class SharedCallCounter extends CallCounter {
+  // The number of positions in each page
+  private static final int PAGE_SHIFT = 10;
+  private static final int PAGE_POSITIONS = 1 << PAGE_SHIFT;
+  private static final int PAGE_SLOTS = PAGE_POSITIONS * DenseCallCounter.SLOTS_PER_POSITION;
+
+  private final int windowSlotCount;
+  private final AtomicReferenceArray<AtomicIntegerArray> pages;
+
+  // The calls outside of the window, guarded by the counter itself
+  private final SparseCallCounter outsideCounter = new SparseCallCounter();
+
+  // The number of calls before the window, or -1 if they have not been counted since the last call outside the window
+  private int precedingCount = -1;
+
+  /**
+   * Constructs a SharedCallCounter for the window of positions from zero through length - 1.
+   *
+   * @param length  the int number of positions in the window
+   */
+  public SharedCallCounter(int length) {
+    if ((long) length * DenseCallCounter.SLOTS_PER_POSITION > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("window spans too many positions to count");
+    }
+
+    this.windowSlotCount = length * DenseCallCounter.SLOTS_PER_POSITION;
+    this.pages = new AtomicReferenceArray<>((length + PAGE_POSITIONS - 1) >> PAGE_SHIFT);
+  }
+
+  @Override
+  public void add(int key, int count) {
+    if (key >= 0 && key < windowSlotCount) {
+      int page = key / PAGE_SLOTS;
+      AtomicIntegerArray pageCounts = pages.get(page);
+      if (pageCounts == null) {
+        // Only one of the threads racing to allocate the page succeeds
+        pages.compareAndSet(page, null, new AtomicIntegerArray(PAGE_SLOTS));
+        pageCounts = pages.get(page);
+      }
+
+      pageCounts.getAndAdd(key % PAGE_SLOTS, count);
+    } else {
+      synchronized (outsideCounter) {
+        outsideCounter.add(key, count);
+        precedingCount = -1;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of slots, where the calls before the window come first followed by a slot for every key of the
+   * window and then the calls after the window.
+   */
+  @Override
+  public int getSlotCount() {
+    synchronized (outsideCounter) {
+      return outsideCounter.getSlotCount() + windowSlotCount;
+    }
+  }
+
+  @Override
+  public int nextSlot(int slot) {
+    int precedingCount = getPrecedingCount();
+    int windowStop = precedingCount + windowSlotCount;
+    while (slot >= precedingCount && slot < windowStop) {
+      AtomicIntegerArray pageCounts = pages.get((slot - precedingCount) / PAGE_SLOTS);
+      if (pageCounts == null) {
+        // Skip to the start of the next page, where the last page may extend past the window
+        slot = Math.min(precedingCount + ((slot - precedingCount) / PAGE_SLOTS + 1) * PAGE_SLOTS, windowStop);
+      } else if (pageCounts.get((slot - precedingCount) % PAGE_SLOTS) == 0) {
+        slot++;
+      } else break;
+    }
+
+    return Math.min(slot, getSlotCount());
+  }
+
+  @Override
+  public int getKey(int slot) {
+    int precedingCount = getPrecedingCount();
+
+    int key;
+    if (slot < precedingCount) key = getOutsideKey(slot);
+    else if (slot < precedingCount + windowSlotCount) key = slot - precedingCount;
+    else key = getOutsideKey(slot - windowSlotCount);
+
+    return key;
+  }
+
+  @Override
+  public int getCount(int slot) {
+    int precedingCount = getPrecedingCount();
+
+    int count;
+    if (slot < precedingCount) count = getOutsideCount(slot);
+    else if (slot < precedingCount + windowSlotCount) {
+      AtomicIntegerArray pageCounts = pages.get((slot - precedingCount) / PAGE_SLOTS);
+      count = pageCounts == null ? 0 : pageCounts.get((slot - precedingCount) % PAGE_SLOTS);
+    } else count = getOutsideCount(slot - windowSlotCount);
+
+    return count;
+  }
+
+  private int getPrecedingCount() {
+    synchronized (outsideCounter) {
+      if (precedingCount < 0) {
+        int slotCount = outsideCounter.getSlotCount();
+        int slot = outsideCounter.nextSlot(0);
+        while (slot < slotCount && outsideCounter.getKey(slot) < 0) slot = outsideCounter.nextSlot(slot + 1);
+        precedingCount = slot;
+      }
+
+      return precedingCount;
+    }
+  }
+
+  private int getOutsideKey(int slot) {
+    synchronized (outsideCounter) {
+      return outsideCounter.getKey(slot);
+    }
+  }
+
+  private int getOutsideCount(int slot) {
+    synchronized (outsideCounter) {
+      return outsideCounter.getCount(slot);
+    }
+  }
+}
@@ -1,15 +1,14 @@
 package com.tools.methylation.extractor;
 
-import net.sf.samtools.SAMRecord;
-
 class SingleEndFragment extends AlignedFragment {
-  public final SAMRecord read;
+  public final AlignedRead read;
 
-  public SingleEndFragment (SAMRecord read) {
+  public SingleEndFragment (AlignedRead read) {
     this.read = read;
   }
 
-  @Override public String contig() { return read.getReferenceName(); }
-  @Override public int start() { return read.getAlignmentStart(); }
-  @Override public int stop() { return read.getAlignmentEnd(); }
+  @Override public String contig() { return read.contig; }
+  @Override public int referenceIndex() { return read.referenceIndex; }
+  @Override public int start() { return read.start; }
+  @Override public int stop() { return read.stop; }
 }
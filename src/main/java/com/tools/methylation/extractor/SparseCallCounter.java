@@ -0,0 +1,109 @@
+package com.tools.methylation.extractor;
+
+import java.util.Arrays;
+
+/**
+ * Counts calls in an open-addressing hash table of primitive keys and counts, which keeps the memory proportional to
+ * the number of distinct calls when they are scattered across the reference.  The calls are sorted once when the
+ * counter is first iterated, after which the slots are the calls in key order.  Adding a call afterwards discards the
+ * sorted calls until the counter is iterated again.
+ */
+class SparseCallCounter extends CallCounter {
+  // The capacities of the table, which is grown once it is more than half full
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  // The hashed keys and counts, where a zero count marks an empty entry
+  private int[] keys;
+  private int[] counts;
+  private int size = 0;
+
+  // The calls in key order with each key in the high bits and its count in the low bits, or null if not yet sorted
+  private long[] sortedCalls = null;
+
+  public SparseCallCounter() {
+    this.keys = new int[INITIAL_CAPACITY];
+    this.counts = new int[INITIAL_CAPACITY];
+  }
+
+  @Override
+  public void add(int key, int count) {
+    if (count == 0) return;
+    sortedCalls = null;
+
+    int mask = keys.length - 1;
+    int entry = hash(key) & mask;
+    while (counts[entry] != 0) {
+      if (keys[entry] == key) {
+        counts[entry] += count;
+        return;
+      }
+      entry = (entry + 1) & mask;
+    }
+
+    keys[entry] = key;
+    counts[entry] = count;
+    size++;
+    if (2 * size > keys.length) resize(2 * keys.length);
+  }
+
+  @Override
+  public int getSlotCount() { return size; }
+
+  @Override
+  public int nextSlot(int slot) {
+    sort();
+    return Math.min(slot, size);
+  }
+
+  @Override
+  public int getKey(int slot) {
+    sort();
+    return (int) (sortedCalls[slot] >> 32);
+  }
+
+  @Override
+  public int getCount(int slot) {
+    sort();
+    return (int) sortedCalls[slot];
+  }
+
+  private void sort() {
+    if (sortedCalls != null) return;
+
+    long[] calls = new long[size];
+    int index = 0;
+    for (int entry = 0; entry < keys.length; entry++) {
+      if (counts[entry] != 0) calls[index++] = ((long) keys[entry] << 32) | (counts[entry] & 0xFFFFFFFFL);
+    }
+    Arrays.sort(calls);
+
+    this.sortedCalls = calls;
+  }
+
+  private void resize(int capacity) {
+    if (capacity > MAX_CAPACITY) throw new IllegalArgumentException("too many calls to count");
+
+    int[] oldKeys = keys;
+    int[] oldCounts = counts;
+    this.keys = new int[capacity];
+    this.counts = new int[capacity];
+
+    int mask = capacity - 1;
+    for (int oldEntry = 0; oldEntry < oldKeys.length; oldEntry++) {
+      if (oldCounts[oldEntry] != 0) {
+        int entry = hash(oldKeys[oldEntry]) & mask;
+        while (counts[entry] != 0) entry = (entry + 1) & mask;
+
+        keys[entry] = oldKeys[oldEntry];
+        counts[entry] = oldCounts[oldEntry];
+      }
+    }
+  }
+
+  // Spreads the neighboring keys of a region across the table
+  private static int hash(int key) {
+    int hash = key * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+}
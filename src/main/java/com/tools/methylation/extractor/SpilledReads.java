@@ -0,0 +1,29 @@
+package com.tools.methylation.extractor;
+
+import net.sf.samtools.util.CloseableIterator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The fragments of a block that were spilled to disk by the BlockerWriter in the FragmentSpill format, which were
+ * already filtered as they were blocked.
+ */
+class SpilledReads extends BlockedReads {
+  private final List<String> contigs;
+
+  public SpilledReads(Path path, CoordinateConverter coordinateConverter, List<String> contigs) {
+    super(path, coordinateConverter);
+    this.contigs = contigs;
+  }
+
+  // The fragments are spilled in the order they were read rather than by their start
+  @Override
+  public boolean isSorted() { return false; }
+
+  @Override
+  public CloseableIterator<AlignedFragment> fragments(int decoderCount) throws IOException {
+    return new FragmentSpill(contigs).read(path);
+  }
+}
@@ -0,0 +1,81 @@
+package com.tools.methylation.extractor;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.japi.Creator;
+import com.tools.actors.AbstractWriter;
+import com.tools.io.MethylationCall;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the calls of coordinate sorted reads as soon as they are complete.  The fragments of each block start at or
+ * after the last fragment of the preceding block, so once a block is counted none of the calls before its last start
+ * can change.  Those calls are written out while the rest are carried into the next block, which keeps only a
+ * window of calls around the current position in memory.
+ */
+class StreamingExtractorWriter extends AbstractWriter<Messages.MethylationCalculated> {
+  private final ContextWriters contextWriters;
+
+  // The calls of each context that may still be counted by following blocks
+  private Map<Character, ArrayList<MethylationCall>> remainders = new HashMap<>();
+
+  // Counts stats about the depth of coverage across each contig
+  private final HashMap<String, DepthCounter> depthCounts = new HashMap<>();
+
+  // The counts by read cycle of the chunks of the block
+  private final MbiasCounter mbiasCounts = new MbiasCounter();
+
+  private boolean written = false;
+
+  public StreamingExtractorWriter(ContextWriters contextWriters, ActorRef masterRef) {
+    super(masterRef, true);
+    this.contextWriters = contextWriters;
+  }
+
+  @Override
+  protected Class<Messages.MethylationCalculated> getWorkCompleteClass() {
+    return Messages.MethylationCalculated.class;
+  }
+
+  @Override
+  protected void handleCustom(Object message) throws Exception {
+    if (message instanceof Messages.WriteAll && !written) {
+      // Write out everything that was carried, which is already in order
+      written = true;
+      contextWriters.write(remainders, depthCounts);
+      this.remainders = new HashMap<>();
+
+      // Inform the master that all writing in now complete
+      masterRef.tell(new Messages.WriteAllComplete(remainders, depthCounts, mbiasCounts), getSelf());
+    } else unhandled(message);
+  }
+
+  @Override
+  protected void write(Messages.MethylationCalculated message) {
+    // Add the carried calls and write out the calls that are complete
+    MethylationCounts counts = message.counts;
+    counts.countAll(remainders);
+    writeCounts(counts, message.lastStart - 1);
+    mbiasCounts.merge(message.mbiasCounts);
+  }
+
+  @Override
+  protected void writeHeader(Messages.MethylationCalculated message) { }
+
+  // Writes the calls through the stop position, carrying the later calls as the remainders
+  private void writeCounts(MethylationCounts counts, long stop) {
+    this.remainders = contextWriters.write(counts, stop, depthCounts);
+  }
+
+  public static Props props(final ContextWriters contextWriters, final ActorRef receiverRef) {
+    return Props.create(new Creator<StreamingExtractorWriter>() {
+      @Override
+      public StreamingExtractorWriter create() throws Exception {
+        return new StreamingExtractorWriter(contextWriters, receiverRef);
+      }
+    });
+  }
+}
@@ -3,14 +3,18 @@ package com.tools.methylation.merger;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
+import com.tools.FileUtils;
 import com.tools.actors.AbstractMaster;
+import com.tools.io.CallBlock;
+import com.tools.io.CallColumn;
 import com.tools.io.MethylationCallReader;
 import com.tools.io.SequenceDictionary;
+import com.tools.io.SiteBlock;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 class Master extends AbstractMaster {
@@ -28,28 +32,34 @@ class Master extends AbstractMaster {
   }
 
   public static class Builder extends MasterBuilder {
-    private final List<Path> inputPaths;
+    private final List<MethylationCallReader> callReaders;
     private final SequenceDictionary sequenceDictionary;
     private final Path outputPath;
 
     public Builder(List<Path> inputPaths, Path outputPath, int threadCount) throws IOException {
       super(threadCount);
 
-      // Open the call Readers
-      this.inputPaths = inputPaths;
+      // Open the call Readers once so that an input can be streamed, skipping the ratios since only the counts are
+      // merged
+      EnumSet<CallColumn> columns = EnumSet.of(CallColumn.METHYLATED_COUNT, CallColumn.TOTAL_COUNT);
+      this.callReaders = new ArrayList<>();
+      for (Path inputPath : inputPaths) {
+        callReaders.add(new MethylationCallReader(FileUtils.newInputStream(inputPath), columns));
+      }
+
       this.outputPath = outputPath;
-      this.sequenceDictionary = getConsensusDictionary(inputPaths);
+      this.sequenceDictionary = getConsensusDictionary(callReaders);
     }
 
     @Override
     protected Props readerProps(ActorRef workerRef) {
-      int blockSize = determineBlockSize(workerCount);
-      return Reader.props(inputPaths, sequenceDictionary, blockSize, workerRef);
+      int blockSize = determineBlockSize(callReaders.size(), workerCount);
+      return Reader.props(callReaders, sequenceDictionary, blockSize, workerRef);
     }
 
     @Override
     protected Props workerProps(ActorRef writerRef) {
-      return Merger.props(sequenceDictionary, writerRef);
+      return Merger.props(writerRef);
     }
 
     @Override
@@ -58,23 +68,23 @@ class Master extends AbstractMaster {
     }
 
     // Determine the block size to prevent out of memory errors
-    private static int determineBlockSize(int threadCount) {
-      // The maximum number of records that any child actor will have to hold in memory
-      int maxBlockSize = 100000;
+    private static int determineBlockSize(int inputCount, int threadCount) {
+      // The maximum number of sites that any child actor will have to hold in memory
+      int maxBlockSize = 400000;
 
+      // Each worker holds the sites it was sent along with the calls it produces
       double availableThreadMemory = 0.8 * Runtime.getRuntime().maxMemory() / threadCount;
-      long maxBlockLength = (long) Math.floor(availableThreadMemory / 200);
+      int bytesPerSite = SiteBlock.bytesPerSite(inputCount) + CallBlock.BYTES_PER_CALL;
+      long maxBlockLength = (long) Math.floor(availableThreadMemory / bytesPerSite);
       return Math.min((int) maxBlockLength, maxBlockSize);
     }
 
-    private SequenceDictionary getConsensusDictionary(List<Path> inputPaths) throws IOException {
-      SequenceDictionary consensusDictionary;
-      try (InputStream inputStream = Files.newInputStream(inputPaths.get(0));
-           MethylationCallReader callReader = new MethylationCallReader(inputStream)) {
-        consensusDictionary = callReader.sequenceDictionary;
-      }
+    // Builds the union of the sequence dictionaries of all the inputs
+    private SequenceDictionary getConsensusDictionary(List<MethylationCallReader> callReaders) {
+      ArrayList<SequenceDictionary> sequenceDictionaries = new ArrayList<>();
+      for (MethylationCallReader callReader : callReaders) sequenceDictionaries.add(callReader.sequenceDictionary);
 
-      return consensusDictionary;
+      return SequenceDictionary.union(sequenceDictionaries);
     }
   }
 }
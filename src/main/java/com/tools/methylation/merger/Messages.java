@@ -1,28 +1,26 @@
 package com.tools.methylation.merger;
 
 import com.tools.actors.AbstractMessages;
-import com.tools.io.MethylationCall;
-
-import java.util.ArrayDeque;
-import java.util.ArrayList;
+import com.tools.io.CallBlock;
+import com.tools.io.SiteBlock;
 
 class Messages extends AbstractMessages {
 
-  // Messages that a collection of co-located MethylationCalls can be merged
+  // Messages that a block of sites aligned across the inputs can be merged
   public static class Work extends AbstractMessages.Work {
-    public final ArrayList<ArrayDeque<MethylationCall>> mergeableBlocks;
+    public final SiteBlock sites;
 
-    public Work(int index, ArrayList<ArrayDeque<MethylationCall>> mergeableBlocks) {
+    public Work(int index, SiteBlock sites) {
       super(index);
-      this.mergeableBlocks = mergeableBlocks;
+      this.sites = sites;
     }
   }
 
   // Messages that a block has been merged and is ready to be written
   public static class MergeComplete extends AbstractMessages.WorkComplete {
-    public final ArrayList<MethylationCall> methylationCalls;
+    public final CallBlock methylationCalls;
 
-    public MergeComplete(int index, ArrayList<MethylationCall> methylationCalls) {
+    public MergeComplete(int index, CallBlock methylationCalls) {
       super(index);
       this.methylationCalls = methylationCalls;
     }
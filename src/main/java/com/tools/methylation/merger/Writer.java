@@ -5,6 +5,7 @@ import akka.actor.Props;
 import akka.actor.UntypedActor;
 import akka.japi.Creator;
 import com.tools.actors.AbstractWriter;
+import com.tools.io.CompressionCodec;
 import com.tools.io.MethylationCall;
 import com.tools.io.MethylationCallWriter;
 import com.tools.io.SequenceDictionary;
@@ -12,7 +13,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -25,7 +25,7 @@ class Writer extends AbstractWriter<Messages.MergeComplete> {
   public Writer(Path outputPath, SequenceDictionary sequenceDictionary, ActorRef masterRef) throws IOException {
     super(masterRef, true);
 
-    this.writer = new MethylationCallWriter(Files.newOutputStream(outputPath));
+    this.writer = new MethylationCallWriter(CompressionCodec.newOutputStream(outputPath));
     this.sequenceDictionary = sequenceDictionary;
   }
 
@@ -4,72 +4,48 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
 import com.tools.actors.AbstractWorker;
-import com.tools.io.MethylationCall;
-import com.tools.io.SequenceDictionary;
+import com.tools.io.SiteBlock;
 
-import java.util.*;
+import java.util.ArrayList;
 
 class Caller extends AbstractWorker<Messages.CallsRead, Messages.CallingComplete> {
-  private final SequenceDictionary sequenceDictionary;
-
-
-  public Caller(SequenceDictionary sequenceDictionary, ActorRef writerRef) {
+  public Caller(ActorRef writerRef) {
     super(writerRef);
-    this.sequenceDictionary = sequenceDictionary;
   }
 
   @Override protected Class<Messages.CallsRead> getWorkClass() { return Messages.CallsRead.class; }
 
   @Override
   protected Messages.CallingComplete work(Messages.CallsRead message) {
-    ArrayList<PopulationRatio> consensusCalls = call(message.blocks, sequenceDictionary);
+    ArrayList<PopulationRatio> consensusCalls = call(message.sites);
     return new Messages.CallingComplete(message.index, consensusCalls);
   }
 
   /**
-   * Returns an ArrayList of MethylationCalls built out of merging co-located counts across all the blocks.
+   * Returns an ArrayList of PopulationRatios built out of the ratios of all the inputs at each site.
    *
-   * @param callBlocks          the List<ArrayDeque<MethylationCall>> enumerating the calls across all of the blocks
-   * @param sequenceDictionary  the SequenceDictionary specifying the order of the contigs
+   * @param sites the SiteBlock with the calls of every input aligned by site
    *
-   * @return an ArrayList<MethylationCall> with the merged calls in the contig order
+   * @return an ArrayList<PopulationRatio> with the population calls in the contig order
    */
-  protected ArrayList<PopulationRatio> call(List<ArrayDeque<MethylationCall>> callBlocks,
-                                            SequenceDictionary sequenceDictionary) {
-    HashMap<String, TreeMap<Integer, Observations>> mergedCalls = new HashMap<>();
-    for (ArrayDeque<MethylationCall> callBlock : callBlocks) {
-      for (MethylationCall call : callBlock) {
-        // Retrieve the contig call count structure
-        TreeMap<Integer, Observations> contigObservations = mergedCalls.get(call.contig);
-        if (contigObservations == null) {
-          contigObservations = new TreeMap<>();
-          mergedCalls.put(call.contig, contigObservations);
-        }
+  protected ArrayList<PopulationRatio> call(SiteBlock sites) {
+    ArrayList<PopulationRatio> methylationCalls = new ArrayList<>();
 
-        // Increment the counts
-        Observations observations = contigObservations.get(call.position);
-        if (observations == null) {
-          observations = new Observations(call.strand);
-          contigObservations.put(call.position, observations);
+    Observations observations = new Observations(sites.inputCount);
+    for (int run = 0; run < sites.getRunCount(); run++) {
+      String contig = sites.getRunContig(run);
+      for (int site = sites.getRunStart(run), n = sites.getRunEnd(run); site < n; site++) {
+        observations.clear();
+        for (int input = 0; input < sites.inputCount; input++) {
+          if (sites.isPresent(site, input)) observations.count(sites.getRatio(site, input));
         }
-        observations.count(call.ratio.get());
-      }
-    }
-
-    ArrayList<String> contigs = new ArrayList<>(mergedCalls.keySet());
-    Collections.sort(contigs, sequenceDictionary.getContigOrder());
-
-    ArrayList<PopulationRatio> methylationCalls = new ArrayList<>();
-    for (String contig : contigs) {
-      for (Map.Entry<Integer, Observations> entry : mergedCalls.get(contig).entrySet()) {
-        Observations observations = entry.getValue();
 
         // If there is sufficient representation, observe
-        if (observations.values.size() >= 2) {
+        if (observations.size() >= 2) {
           PopulationRatio populationRatio = new PopulationRatio(
             contig,
-            entry.getKey(),
-            observations.strand,
+            sites.getPosition(site),
+            sites.getStrand(site),
             observations.mean(),
             observations.meanStandardDeviation()
           );
@@ -81,42 +57,44 @@ class Caller extends AbstractWorker<Messages.CallsRead, Messages.CallingComplete
     return methylationCalls;
   }
 
-  public static Props props(final SequenceDictionary sequenceDictionary, final ActorRef writerRef) {
+  public static Props props(final ActorRef writerRef) {
     return Props.create(new Creator<Caller>() {
       @Override
       public Caller create() throws Exception {
-        return new Caller(sequenceDictionary, writerRef);
+        return new Caller(writerRef);
       }
     });
   }
 
   class Observations {
-    private final char strand;
-    private final ArrayList<Double> values = new ArrayList<>();
+    private final double[] values;
+    private int size = 0;
 
-    public Observations(char strand) {
-      this.strand = strand;
+    public Observations(int capacity) {
+      this.values = new double[capacity];
     }
 
-    public void count(double observation) { values.add(observation); }
+    public void clear() { size = 0; }
+    public void count(double observation) { values[size++] = observation; }
+    public int size() { return size; }
 
     public double mean() {
       double cumulativeValue = 0;
-      for (Double value : values) cumulativeValue += value;
+      for (int i = 0; i < size; i++) cumulativeValue += values[i];
 
-      return cumulativeValue / values.size();
+      return cumulativeValue / size;
     }
 
     public double standardDeviation() {
       double cumulativeValue = 0;
       double mean = mean();
-      for (double value : values) cumulativeValue += Math.pow(value - mean, 2);
+      for (int i = 0; i < size; i++) cumulativeValue += Math.pow(values[i] - mean, 2);
 
-      return Math.sqrt(cumulativeValue / (values.size() - 1));
+      return Math.sqrt(cumulativeValue / (size - 1));
     }
 
     public double meanStandardDeviation() {
-      return standardDeviation() / Math.sqrt(values.size());
+      return standardDeviation() / Math.sqrt(size);
     }
   }
 
@@ -3,64 +3,68 @@ package com.tools.methylation.population;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.japi.Creator;
+import com.tools.FileUtils;
 import com.tools.actors.AbstractMaster;
+import com.tools.io.CallBlock;
+import com.tools.io.CallColumn;
+import com.tools.io.MethylationCallReader;
 import com.tools.io.SequenceDictionary;
+import com.tools.io.SiteBlock;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 class Master extends AbstractMaster {
-  public Master(List<Path> inputPaths,
-                Path outputPath,
-                SequenceDictionary sequenceDictionary,
-                int depthCutoff,
-                int threadCount) throws IOException {
-    super(new Builder(inputPaths, outputPath, sequenceDictionary, depthCutoff, threadCount));
+  public Master(List<Path> inputPaths, Path outputPath, int depthCutoff, int threadCount) throws IOException {
+    super(new Builder(inputPaths, outputPath, depthCutoff, threadCount));
   }
 
   public static Props props(final List<Path> inputPaths,
                             final Path outputPath,
-                            final SequenceDictionary sequenceDictionary,
                             final int depthCutoff,
                             final int threadCount) throws IOException {
     return Props.create(new Creator<Master>() {
       @Override
       public Master create() throws Exception {
-        return new Master(inputPaths, outputPath, sequenceDictionary, depthCutoff, threadCount);
+        return new Master(inputPaths, outputPath, depthCutoff, threadCount);
       }
     });
   }
 
   public static class Builder extends MasterBuilder {
-    private final List<Path> inputPaths;
+    private final List<MethylationCallReader> callReaders;
     private final SequenceDictionary sequenceDictionary;
     private final int depthCutoff;
     private final Path outputPath;
 
-    public Builder(List<Path> inputPaths,
-                   Path outputPath,
-                   SequenceDictionary sequenceDictionary,
-                   int depthCutoff,
-                   int threadCount) throws IOException {
+    public Builder(List<Path> inputPaths, Path outputPath, int depthCutoff, int threadCount) throws IOException {
       super(threadCount);
 
-      // Open the call Reader
-      this.inputPaths = inputPaths;
-      this.sequenceDictionary = sequenceDictionary;
+      // Open the call Readers once so that an input can be streamed, skipping the methylated counts since only the
+      // ratios are used
+      EnumSet<CallColumn> columns = EnumSet.of(CallColumn.TOTAL_COUNT, CallColumn.RATIO);
+      this.callReaders = new ArrayList<>();
+      for (Path inputPath : inputPaths) {
+        callReaders.add(new MethylationCallReader(FileUtils.newInputStream(inputPath), columns));
+      }
+
+      this.sequenceDictionary = getSequenceDictionary(callReaders);
       this.depthCutoff = depthCutoff;
       this.outputPath = outputPath;
     }
 
     @Override
     protected Props readerProps(ActorRef workerRef) {
-      int blockSize = determineBlockSize(workerCount);
-      return Reader.props(inputPaths, sequenceDictionary, depthCutoff, blockSize, workerRef);
+      int blockSize = determineBlockSize(callReaders.size(), workerCount);
+      return Reader.props(callReaders, sequenceDictionary, depthCutoff, blockSize, workerRef);
     }
 
     @Override
     protected Props workerProps(ActorRef writerRef) {
-      return Caller.props(sequenceDictionary, writerRef);
+      return Caller.props(writerRef);
     }
 
     @Override
@@ -69,13 +73,23 @@ class Master extends AbstractMaster {
     }
 
     // Determine the block size to prevent out of memory errors
-    private static int determineBlockSize(int threadCount) {
-      // The maximum number of records that any child actor will have to hold in memory
-      int maxBlockSize = 100000;
+    private static int determineBlockSize(int inputCount, int threadCount) {
+      // The maximum number of sites that any child actor will have to hold in memory
+      int maxBlockSize = 400000;
 
+      // Each worker holds the sites it was sent along with the calls it produces
       double availableThreadMemory = 0.8 * Runtime.getRuntime().maxMemory() / threadCount;
-      long maxBlockLength = (long) Math.floor(availableThreadMemory / 200);
+      int bytesPerSite = SiteBlock.bytesPerSite(inputCount) + CallBlock.BYTES_PER_CALL;
+      long maxBlockLength = (long) Math.floor(availableThreadMemory / bytesPerSite);
       return Math.min((int) maxBlockLength, maxBlockSize);
     }
+
+    // Builds the union of the sequence dictionaries of all the inputs
+    private static SequenceDictionary getSequenceDictionary(List<MethylationCallReader> callReaders) {
+      ArrayList<SequenceDictionary> sequenceDictionaries = new ArrayList<>();
+      for (MethylationCallReader callReader : callReaders) sequenceDictionaries.add(callReader.sequenceDictionary);
+
+      return SequenceDictionary.union(sequenceDictionaries);
+    }
   }
 }
@@ -1,11 +1,9 @@
 package com.tools.methylation.population;
 
 import com.tools.actors.AbstractMessages;
-import com.tools.io.MethylationCall;
+import com.tools.io.SiteBlock;
 import com.tools.io.SequenceDictionary;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Collection;
 
 public class Messages extends AbstractMessages {
@@ -20,16 +18,14 @@ public class Messages extends AbstractMessages {
     }
   }
 
-  // Messages that a collection of co-located MethylationCalls can be merged
+  // Messages that a block of sites aligned across the inputs can be called
   public static class CallsRead extends Work {
-    public final ArrayList<ArrayDeque<MethylationCall>> blocks;
+    public final SiteBlock sites;
     public final SequenceDictionary sequenceDictionary;
 
-    public CallsRead(int index,
-                     ArrayList<ArrayDeque<MethylationCall>> blocks,
-                     SequenceDictionary sequenceDictionary) {
+    public CallsRead(int index, SiteBlock sites, SequenceDictionary sequenceDictionary) {
       super(index);
-      this.blocks = blocks;
+      this.sites = sites;
       this.sequenceDictionary = sequenceDictionary;
     }
   }
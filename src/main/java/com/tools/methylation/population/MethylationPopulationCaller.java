@@ -4,12 +4,7 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import com.google.common.base.Optional;
-import com.tools.io.MethylationCallReader;
-import com.tools.io.SequenceDictionary;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
@@ -33,8 +28,7 @@ public class MethylationPopulationCaller {
   }
 
   public void run(int threadCount) throws Exception {
-    SequenceDictionary sequenceDictionary = getSequenceDictionary(inputPaths);
-    Props props = Master.props(inputPaths, outputPath, sequenceDictionary, depthCutoff, threadCount);
+    Props props = Master.props(inputPaths, outputPath, depthCutoff, threadCount);
 
     ActorSystem system = ActorSystem.create("MethylationSystem");
     ActorRef master = system.actorOf(props);
@@ -42,14 +36,4 @@ public class MethylationPopulationCaller {
     master.tell(new Messages.Start(), master);
     system.awaitTermination();
   }
-
-  private SequenceDictionary getSequenceDictionary(List<Path> inputPaths) throws IOException {
-    SequenceDictionary sequenceDictionary;
-    try (InputStream inputStream = Files.newInputStream(inputPaths.get(0))) {
-      MethylationCallReader callReader = new MethylationCallReader(inputStream);
-      sequenceDictionary = callReader.sequenceDictionary;
-    }
-
-    return sequenceDictionary;
-  }
 }
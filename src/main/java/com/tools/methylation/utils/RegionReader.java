@@ -6,14 +6,17 @@ import akka.japi.Creator;
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
+import com.tools.FileUtils;
 import com.tools.actors.AbstractMessages;
 import com.tools.actors.AbstractReader;
-import com.tools.io.MethylationCall;
+import com.tools.io.CallColumn;
+import com.tools.io.IntervalSet;
+import com.tools.io.MethylationCallMerger;
 import com.tools.io.MethylationCallReader;
 import com.tools.io.SequenceDictionary;
+import com.tools.io.SiteBlock;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -23,11 +26,11 @@ import java.util.*;
  * same region are not separated.
  */
 public class RegionReader extends AbstractReader {
-  // Calls that have been read off of a reader, but are buffered in case regions overlap
-  private final ArrayList<ArrayDeque<MethylationCall>> bufferedCalls;
+  // Sites that have been read off of the inputs, but are buffered in case regions overlap
+  private SiteBlock bufferedSites;
 
-  // The readers for each of the input files
-  private final ArrayList<MethylationCallReader> callReaders;
+  // The merged readers for each of the input files
+  private final MethylationCallMerger callMerger;
   private final SequenceDictionary consensusDictionary;
   private final int maxWorkSize;
 
@@ -41,16 +44,20 @@ public class RegionReader extends AbstractReader {
     super(workerRef);
     this.maxWorkSize = maxWorkSize;
 
-    // Open all of the files and read in the headers
-    this.callReaders = new ArrayList<>();
-    this.bufferedCalls = new ArrayList<>();
+    // Open all of the files and read in the headers, rejecting calls outside of the regions as they are read
+    EnumSet<CallColumn> columns = EnumSet.of(CallColumn.METHYLATED_COUNT, CallColumn.TOTAL_COUNT);
+    IntervalSet regionIntervals = buildIntervals(regions);
+    ArrayList<MethylationCallReader> callReaders = new ArrayList<>();
     for (Path inputPath : inputPaths) {
-      callReaders.add(new MethylationCallReader(Files.newInputStream(inputPath)));
-      bufferedCalls.add(new ArrayDeque<MethylationCall>());
+      MethylationCallReader callReader = new MethylationCallReader(FileUtils.newInputStream(inputPath), columns);
+      callReader.setIntervals(regionIntervals);
+      callReaders.add(callReader);
     }
 
     // Build the consensus sequence dictionary
     this.consensusDictionary = buildConsensusDictionary(callReaders);
+    this.callMerger = new MethylationCallMerger(callReaders, consensusDictionary);
+    this.bufferedSites = new SiteBlock(callReaders.size(), false);
 
     // Sort the regions
     this.regions = getSortedRegions(regions, consensusDictionary);
@@ -61,7 +68,7 @@ public class RegionReader extends AbstractReader {
     super.postStop();
 
     // Close any open file handles
-    for (MethylationCallReader callReader : callReaders) callReader.close();
+    callMerger.close();
   }
 
   @Override
@@ -73,42 +80,32 @@ public class RegionReader extends AbstractReader {
   protected AbstractMessages.Work read(int blockIndex) {
     ArrayList<RegionCalls> extractedRegions = new ArrayList<>();
 
-    // Successively read in calls for each of the regions
-    int cumulativeCallCount = 0;
-    while (regions.hasNext() && cumulativeCallCount < maxWorkSize) {
+    // Successively read in sites for each of the regions
+    int cumulativeSiteCount = 0;
+    while (regions.hasNext() && cumulativeSiteCount < maxWorkSize) {
       Region region = regions.next();
-      ArrayList<ArrayDeque<MethylationCall>> extractedCalls = new ArrayList<>();
-      for (int i = 0; i < callReaders.size(); i++) {
-        ArrayDeque<MethylationCall> calls = readRegionCalls(
-          callReaders.get(i),
-          bufferedCalls.get(i),
-          region,
-          consensusDictionary
-        );
-        extractedCalls.add(calls);
-
-        cumulativeCallCount += calls.size();
-      }
+      SiteBlock sites = readRegionSites(region, consensusDictionary);
+      extractedRegions.add(new RegionCalls(region, sites));
 
-      extractedRegions.add(new RegionCalls(region, extractedCalls));
+      cumulativeSiteCount += sites.size();
     }
 
     return new CallRegions(blockIndex, extractedRegions, consensusDictionary);
   }
 
+  // Builds the union of the sequence dictionaries of all the inputs
   private SequenceDictionary buildConsensusDictionary(List<MethylationCallReader> callReaders) {
-//    ArrayList<String> orderedContigs = new ArrayList<>();
-//    for (MethylationCallReader callReader : callReaders) {
-//      ArrayList<Integer> matchIndices = new ArrayList<>();
-//      for (String contigName : callReader.getContigOrder().keySet()) {
-//        matchIndices.add(orderedContigs.indexOf(contigName));
-//      }
-//
-//      // Ensure that the indices are monotonically increasing
-//      for (int i = 1; )
-//    }
-
-    return callReaders.get(0).sequenceDictionary;
+    ArrayList<SequenceDictionary> sequenceDictionaries = new ArrayList<>();
+    for (MethylationCallReader callReader : callReaders) sequenceDictionaries.add(callReader.sequenceDictionary);
+
+    return SequenceDictionary.union(sequenceDictionaries);
+  }
+
+  private IntervalSet buildIntervals(List<Region> regions) {
+    IntervalSet.Builder builder = new IntervalSet.Builder();
+    for (Region region : regions) builder.add(region.contig, region.start, region.stop);
+
+    return builder.build();
   }
 
   private PeekingIterator<Region> getSortedRegions(List<Region> regions, final SequenceDictionary sequenceDictionary) {
@@ -137,42 +134,42 @@ public class RegionReader extends AbstractReader {
   }
 
   /**
-   * Returns a collection containing all of the calls falling inside the specified region.  Has the side effect of
+   * Returns a SiteBlock containing all of the sites falling inside the specified region.  Has the side effect of
    * updating the buffer.
    *
-   * @param callReader          the MethylationCallReader from which to read
-   * @param region              the Region for which to read calls
+   * @param region              the Region for which to read sites
    * @param sequenceDictionary  the SequenceDictionary specifying the order of contigs
    */
-  private ArrayDeque<MethylationCall> readRegionCalls(MethylationCallReader callReader,
-                                                      ArrayDeque<MethylationCall> bufferedCalls,
-                                                      Region region,
-                                                      SequenceDictionary sequenceDictionary) {
-    ArrayDeque<MethylationCall> calls = new ArrayDeque<>();
+  private SiteBlock readRegionSites(Region region, SequenceDictionary sequenceDictionary) {
+    SiteBlock sites = new SiteBlock(callMerger.getInputCount(), false);
+    SiteBlock retainedSites = new SiteBlock(callMerger.getInputCount(), false);
 
     // Stash the index of the contig for faster comparison
     int contigIndex = sequenceDictionary.getContigIndex(region.contig);
 
-    // Search through the buffer for any stashed calls
-    for (MethylationCall bufferedCall : bufferedCalls) {
-      if (callPrecedes(bufferedCall, contigIndex, region.start - 1)) bufferedCalls.remove(bufferedCall);
-      else if (callPrecedes(bufferedCall, contigIndex, region.stop)) calls.addLast(bufferedCall);
+    // Search through the buffer for any stashed sites, dropping those preceding the region
+    for (int site = 0; site < bufferedSites.size(); site++) {
+      if (!sitePrecedes(bufferedSites, site, contigIndex, region.start - 1)) {
+        retainedSites.addSite(bufferedSites, site);
+        if (sitePrecedes(bufferedSites, site, contigIndex, region.stop)) sites.addSite(bufferedSites, site);
+      }
     }
 
-    while (callReader.hasNext() && callPrecedes(callReader.peek(), contigIndex, region.stop)) {
-      if (callPrecedes(callReader.peek(), contigIndex, region.start - 1)) callReader.next();
-      else {
-        bufferedCalls.addLast(callReader.peek());
-        calls.addLast(callReader.next());
+    SiteBlock readSites = callMerger.readBlock(contigIndex, region.stop);
+    for (int site = 0; site < readSites.size(); site++) {
+      if (!sitePrecedes(readSites, site, contigIndex, region.start - 1)) {
+        retainedSites.addSite(readSites, site);
+        sites.addSite(readSites, site);
       }
     }
+    bufferedSites = retainedSites;
 
-    return calls;
+    return sites;
   }
 
-  private boolean callPrecedes(MethylationCall methylationCall, int contigIndex, int position) {
-    int callContigIndex = consensusDictionary.getContigIndex(methylationCall.contig);
-    return (callContigIndex < contigIndex) || (callContigIndex == contigIndex && methylationCall.position <= position);
+  private boolean sitePrecedes(SiteBlock sites, int site, int contigIndex, int position) {
+    int siteContigIndex = consensusDictionary.getContigIndex(sites.getContig(site));
+    return (siteContigIndex < contigIndex) || (siteContigIndex == contigIndex && sites.getPosition(site) <= position);
   }
 
   public static Props props(final List<Path> inputPaths,
@@ -188,12 +185,12 @@ public class RegionReader extends AbstractReader {
   }
 
   public class RegionCalls {
-    public final ArrayList<ArrayDeque<MethylationCall>> calls;
+    public final SiteBlock sites;
     public final Region region;
 
-    public RegionCalls(Region region, ArrayList<ArrayDeque<MethylationCall>> calls) {
+    public RegionCalls(Region region, SiteBlock sites) {
       this.region = region;
-      this.calls = calls;
+      this.sites = sites;
     }
   }
 }
@@ -3,6 +3,7 @@ package com.tools;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -24,6 +25,28 @@ public class RunnerTest extends ApplicationTest {
     Assert.assertTrue(contentEquals(expectedPath, outputPath));
   }
 
+  @Test
+  public void testRunCallerStandardInput() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+    Path outputPath = createTempFile("tab");
+
+    InputStream standardInput = System.in;
+    try (InputStream inputStream = Files.newInputStream(inputPath)) {
+      System.setIn(inputStream);
+      Runner.runCaller(new String[]{"-i", "-", "-o", outputPath.toString()});
+    } finally {
+      System.setIn(standardInput);
+    }
+
+    Path expectedPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.calls.tab");
+    Assert.assertTrue(contentEquals(expectedPath, outputPath));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRunMergerRepeatedStandardInput() throws Exception {
+    Runner.runMerger(new String[]{"-i", "-", "-i", "-", "-o", createTempFile("tab").toString()});
+  }
+
   @Test
   public void testRunExtractor() throws Exception {
     Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.fastq_bismark.sam");
@@ -42,6 +65,7 @@ public class RunnerTest extends ApplicationTest {
     Assert.assertTrue(Files.exists(outputPath.resolve("CHH_context.tab")));
     Assert.assertTrue(Files.exists(outputPath.resolve("CN_CHN_context.tab")));
     Assert.assertTrue(Files.exists(outputPath.resolve("summary.tab")));
+    Assert.assertTrue(Files.exists(outputPath.resolve("mbias.tab")));
   }
 
 //  @Test
@@ -0,0 +1,53 @@
+package com.tools.io;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CallBlockTest {
+  @Test
+  public void testAdd() {
+    CallBlock block = new CallBlock(1, false);
+    block.add("Chr1", 10, '+', 1, 2);
+    block.add("Chr1", 12, '-', 0, 3);
+    block.add("Chr2", 5, '+', 4, 4);
+
+    Assert.assertEquals(3, block.size());
+    Assert.assertEquals(2, block.getRunCount());
+    Assert.assertEquals("Chr1", block.getContig(1));
+    Assert.assertEquals("Chr2", block.getContig(2));
+    Assert.assertEquals(new MethylationCall("Chr1", 12, '-', 0, 3), block.get(1));
+    Assert.assertEquals(new MethylationCall("Chr2", 5, '+', 4, 4), block.getLast());
+  }
+
+  @Test
+  public void testRatios() {
+    CallBlock block = new CallBlock(4, true);
+    block.add("Chr1", 10, '+', 1, 2, 0.5);
+
+    Assert.assertTrue(block.hasRatios());
+    Assert.assertEquals(0.5, block.getRatio(0), 0.0);
+    Assert.assertEquals(0.5, block.get(0).ratio.get(), 0.0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingRatio() {
+    CallBlock block = new CallBlock(4, true);
+    block.add("Chr1", 10, '+', 1, 2);
+  }
+
+  @Test
+  public void testIterator() {
+    List<MethylationCall> calls = Arrays.asList(
+      new MethylationCall("Chr1", 10, '+', 1, 2),
+      new MethylationCall("Chr2", 5, '+', 4, 4),
+      new MethylationCall("Chr2", 8, '-', 2, 6)
+    );
+
+    CallBlock block = CallBlock.fromCalls(calls);
+    Assert.assertEquals(calls, Lists.newArrayList(block));
+  }
+}
@@ -0,0 +1,110 @@
+package com.tools.io;
+
+import com.google.common.io.ByteStreams;
+import com.tools.ApplicationTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+public class CompressionCodecTest extends ApplicationTest {
+  @Test
+  public void testRoundTrip() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+    byte[] bytes = Files.readAllBytes(inputPath);
+
+    for (CompressionCodec codec : CompressionCodec.values()) {
+      byte[] compressed = compress(codec, bytes);
+      if (codec != CompressionCodec.NONE) Assert.assertTrue(compressed.length < bytes.length);
+
+      InputStream inputStream = new ByteArrayInputStream(compressed);
+      Assert.assertArrayEquals(bytes, ByteStreams.toByteArray(CompressionCodec.decompressDetected(inputStream)));
+    }
+  }
+
+  @Test
+  public void testBlockLzIncompressible() throws Exception {
+    // Random bytes spanning several blocks are stored as is
+    byte[] bytes = new byte[3 * 65536 + 17];
+    new Random(7).nextBytes(bytes);
+
+    byte[] compressed = compress(CompressionCodec.BLOCK_LZ, bytes);
+    InputStream inputStream = CompressionCodec.BLOCK_LZ.decompress(new ByteArrayInputStream(compressed));
+    Assert.assertArrayEquals(bytes, ByteStreams.toByteArray(inputStream));
+  }
+
+  @Test
+  public void testBlockLzRepetitive() throws Exception {
+    // Long overlapping matches use the extended lengths
+    byte[] bytes = new byte[200000];
+    for (int index = 0; index < bytes.length; index++) bytes[index] = (byte) (index % 3 == 0 ? 'C' : 'G');
+
+    byte[] compressed = compress(CompressionCodec.BLOCK_LZ, bytes);
+    Assert.assertTrue(compressed.length < bytes.length / 50);
+
+    InputStream inputStream = CompressionCodec.BLOCK_LZ.decompress(new ByteArrayInputStream(compressed));
+    Assert.assertArrayEquals(bytes, ByteStreams.toByteArray(inputStream));
+  }
+
+  @Test
+  public void testBlockLzAppended() throws Exception {
+    // Streams appended to one another read back as one
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    outputStream.write(compress(CompressionCodec.BLOCK_LZ, "#seq\tChr1\t100\n".getBytes("UTF-8")));
+    outputStream.write(compress(CompressionCodec.BLOCK_LZ, new byte[0]));
+    outputStream.write(compress(CompressionCodec.BLOCK_LZ, "Chr1\t3\t+\t1\t2\n".getBytes("UTF-8")));
+
+    InputStream inputStream = CompressionCodec.decompressDetected(new ByteArrayInputStream(outputStream.toByteArray()));
+    String expected = "#seq\tChr1\t100\nChr1\t3\t+\t1\t2\n";
+    Assert.assertEquals(expected, new String(ByteStreams.toByteArray(inputStream), "UTF-8"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testBlockLzTruncated() throws Exception {
+    byte[] compressed = compress(CompressionCodec.BLOCK_LZ, new byte[1000]);
+    byte[] truncated = new byte[compressed.length - 1];
+    System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+
+    ByteStreams.toByteArray(CompressionCodec.BLOCK_LZ.decompress(new ByteArrayInputStream(truncated)));
+  }
+
+  @Test
+  public void testForPath() {
+    Assert.assertEquals(CompressionCodec.GZIP, CompressionCodec.forPath(Paths.get("/tmp/calls.tab.gz")));
+    Assert.assertEquals(CompressionCodec.BLOCK_LZ, CompressionCodec.forPath(Paths.get("calls.tab.blz")));
+    Assert.assertEquals(CompressionCodec.NONE, CompressionCodec.forPath(Paths.get("calls.tab")));
+  }
+
+  @Test
+  public void testReadCompressedCalls() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+    byte[] compressed = compress(CompressionCodec.BLOCK_LZ, Files.readAllBytes(inputPath));
+
+    try (MethylationCallReader callReader = new MethylationCallReader(new ByteArrayInputStream(compressed))) {
+      int callCount = 0;
+      while (callReader.hasNext()) {
+        callReader.next();
+        callCount++;
+      }
+
+      Assert.assertEquals(193, callCount);
+    }
+  }
+
+  private static byte[] compress(CompressionCodec codec, byte[] bytes) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (OutputStream compressedStream = codec.compress(outputStream)) {
+      compressedStream.write(bytes);
+    }
+
+    return outputStream.toByteArray();
+  }
+}
@@ -0,0 +1,24 @@
+package com.tools.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntervalSetTest {
+  @Test
+  public void testContains() {
+    IntervalSet intervals = new IntervalSet.Builder()
+      .add("Chr1", 100, 200)
+      .add("Chr1", 150, 250)
+      .add("Chr1", 400, 400)
+      .add("Chr2", 10, 20)
+      .build();
+
+    Assert.assertFalse(intervals.contains("Chr1", 99));
+    Assert.assertTrue(intervals.contains("Chr1", 100));
+    Assert.assertTrue(intervals.contains("Chr1", 250));
+    Assert.assertFalse(intervals.contains("Chr1", 251));
+    Assert.assertTrue(intervals.contains("Chr1", 400));
+    Assert.assertTrue(intervals.contains("Chr2", 15));
+    Assert.assertFalse(intervals.contains("Chr3", 15));
+  }
+}
@@ -0,0 +1,79 @@
+package com.tools.io;
+
+import com.tools.ApplicationTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MethylationCallMergerTest extends ApplicationTest {
+  @Test
+  public void testReadBlock() throws Exception {
+    try (MethylationCallMerger callMerger = getCallMerger()) {
+      SiteBlock sites = callMerger.readBlock(Integer.MAX_VALUE);
+      Assert.assertFalse(callMerger.hasNext());
+
+      // Sites are ordered and each appears only once
+      for (int site = 1; site < sites.size(); site++) {
+        if (sites.getContig(site).equals(sites.getContig(site - 1))) {
+          Assert.assertTrue(sites.getPosition(site) > sites.getPosition(site - 1));
+        }
+      }
+
+      // The final site is only present in the later inputs
+      int last = sites.size() - 1;
+      Assert.assertEquals("19", sites.getContig(last));
+      Assert.assertEquals(5804669, sites.getPosition(last));
+      Assert.assertFalse(sites.isPresent(last, 0));
+      Assert.assertTrue(sites.isPresent(last, 1));
+      Assert.assertEquals(2, sites.getMethylatedCount(last, 1));
+      Assert.assertEquals(7, sites.getTotalCount(last, 2));
+    }
+  }
+
+  @Test
+  public void testReadBlockBalance() throws Exception {
+    try (MethylationCallMerger callMerger = getCallMerger()) {
+      int siteCount = 0;
+      while (callMerger.hasNext()) {
+        SiteBlock sites = callMerger.readBlock(100);
+        Assert.assertTrue(sites.size() <= 100);
+        siteCount += sites.size();
+      }
+
+      try (MethylationCallMerger referenceMerger = getCallMerger()) {
+        Assert.assertEquals(referenceMerger.readBlock(Integer.MAX_VALUE).size(), siteCount);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadBlockRepeatedCall() throws Exception {
+    String calls = "###methylcf\n#seq\t1\t1000\n1\t10\t+\t1\t2\n1\t10\t-\t0\t1\n1\t10\t-\t1\t1\n";
+    MethylationCallReader callReader = new MethylationCallReader(new ByteArrayInputStream(calls.getBytes()));
+    try (MethylationCallMerger callMerger = new MethylationCallMerger(
+      Arrays.asList(callReader),
+      callReader.sequenceDictionary
+    )) {
+      callMerger.readBlock(Integer.MAX_VALUE);
+    }
+  }
+
+  private MethylationCallMerger getCallMerger() throws Exception {
+    List<Path> inputPaths = Arrays.asList(
+      getFileResource("/methylation/VK1Dconv.CpG_context.tab"),
+      getFileResource("/methylation/VK2Dconv.CpG_context.tab"),
+      getFileResource("/methylation/VK3Dconv.CpG_context.tab")
+    );
+
+    ArrayList<MethylationCallReader> callReaders = new ArrayList<>();
+    for (Path inputPath : inputPaths) callReaders.add(new MethylationCallReader(Files.newInputStream(inputPath)));
+
+    return new MethylationCallMerger(callReaders, callReaders.get(0).sequenceDictionary);
+  }
+}
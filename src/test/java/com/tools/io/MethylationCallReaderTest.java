@@ -8,6 +8,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -66,4 +67,79 @@ public class MethylationCallReaderTest extends ApplicationTest {
       Assert.assertEquals(result, expected);
     }
   }
+
+  @Test
+  public void testReadBlock() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+
+    try (InputStream inputStream = Files.newInputStream(inputPath);
+         MethylationCallReader methylationCallReader = new MethylationCallReader(inputStream)) {
+      CallBlock firstBlock = methylationCallReader.readBlock(100);
+      Assert.assertEquals(100, firstBlock.size());
+      Assert.assertFalse(firstBlock.hasRatios());
+      Assert.assertEquals(new MethylationCall("gi|9626243|ref|NC_001416.1|", 1518, '-', 0, 1), firstBlock.get(0));
+
+      CallBlock secondBlock = methylationCallReader.readBlock(100);
+      Assert.assertEquals(93, secondBlock.size());
+      Assert.assertFalse(methylationCallReader.hasNext());
+    }
+  }
+
+  @Test
+  public void testReadBlockStop() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+
+    try (InputStream inputStream = Files.newInputStream(inputPath);
+         MethylationCallReader methylationCallReader = new MethylationCallReader(inputStream)) {
+      SequenceDictionary sequenceDictionary = methylationCallReader.sequenceDictionary;
+      int controlIndex = sequenceDictionary.getContigIndex("gi|9626243|ref|NC_001416.1|");
+      CallBlock firstBlock = methylationCallReader.readBlock(controlIndex, 1533, sequenceDictionary);
+      Assert.assertEquals(2, firstBlock.size());
+      Assert.assertEquals(1533, firstBlock.getPosition(1));
+
+      // The stop is also found from a call that has already been peeked
+      Assert.assertEquals(1548, methylationCallReader.peek().position);
+      CallBlock secondBlock = methylationCallReader.readBlock(controlIndex, 1548, sequenceDictionary);
+      Assert.assertEquals(1, secondBlock.size());
+
+      int chr4Index = sequenceDictionary.getContigIndex("Chr4");
+      CallBlock thirdBlock = methylationCallReader.readBlock(chr4Index, Integer.MAX_VALUE, sequenceDictionary);
+      Assert.assertEquals(39, thirdBlock.size());
+      Assert.assertEquals("Chr1", methylationCallReader.peek().contig);
+    }
+  }
+
+  @Test
+  public void testReadBlockProjection() throws Exception {
+    Path inputPath = getFileResource("/methylation/RK1.CpG_context.calls.tab");
+
+    EnumSet<CallColumn> columns = EnumSet.of(CallColumn.TOTAL_COUNT, CallColumn.RATIO);
+    try (InputStream inputStream = Files.newInputStream(inputPath);
+         MethylationCallReader methylationCallReader = new MethylationCallReader(inputStream, columns)) {
+      CallBlock block = methylationCallReader.readBlock(10);
+      Assert.assertTrue(block.hasRatios());
+      for (int i = 0; i < block.size(); i++) Assert.assertEquals(0, block.getMethylatedCount(i));
+    }
+
+    columns = EnumSet.of(CallColumn.METHYLATED_COUNT, CallColumn.TOTAL_COUNT);
+    try (InputStream inputStream = Files.newInputStream(inputPath);
+         MethylationCallReader methylationCallReader = new MethylationCallReader(inputStream, columns)) {
+      Assert.assertFalse(methylationCallReader.readBlock(10).hasRatios());
+    }
+  }
+
+  @Test
+  public void testReadBlockIntervals() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+
+    IntervalSet intervals = new IntervalSet.Builder().add("gi|9626243|ref|NC_001416.1|", 1, 1518).build();
+    try (InputStream inputStream = Files.newInputStream(inputPath);
+         MethylationCallReader methylationCallReader = new MethylationCallReader(inputStream)) {
+      methylationCallReader.setIntervals(intervals);
+
+      CallBlock block = methylationCallReader.readBlock(Integer.MAX_VALUE);
+      Assert.assertEquals(1, block.size());
+      Assert.assertEquals(1518, block.getPosition(0));
+    }
+  }
 }
@@ -0,0 +1,65 @@
+package com.tools.io;
+
+import com.tools.ApplicationTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class PrefetchingCallReaderTest extends ApplicationTest {
+  @Test
+  public void testReadBlock() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+
+    MethylationCallReader callReader = new MethylationCallReader(Files.newInputStream(inputPath));
+    try (PrefetchingCallReader prefetchingReader = new PrefetchingCallReader(callReader, 50, 0)) {
+      int callCount = 0;
+      CallBlock block;
+      while (!(block = prefetchingReader.readBlock()).isEmpty()) {
+        Assert.assertTrue(block.size() <= 50);
+        callCount += block.size();
+      }
+
+      Assert.assertEquals(193, callCount);
+      Assert.assertTrue(prefetchingReader.readBlock().isEmpty());
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+
+    // An error in the reading thread fails the consumer instead of leaving it waiting for the next block
+    MethylationCallReader callReader = new MethylationCallReader(Files.newInputStream(inputPath)) {
+      private int blockCount = 0;
+
+      @Override
+      public CallBlock readBlock(int maxCount, int minDepth) {
+        blockCount += 1;
+        if (blockCount > 1) throw new OutOfMemoryError("block too large");
+
+        return super.readBlock(maxCount, minDepth);
+      }
+    };
+    try (PrefetchingCallReader prefetchingReader = new PrefetchingCallReader(callReader, 50, 0)) {
+      Assert.assertEquals(50, prefetchingReader.readBlock().size());
+      try {
+        prefetchingReader.readBlock();
+        Assert.fail("expected the error of the reading thread");
+      } catch (IllegalStateException exception) {
+        Assert.assertTrue(exception.getCause() instanceof OutOfMemoryError);
+      }
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    Path inputPath = getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab");
+
+    // Closing before consuming stops the reading thread even though the queue is full
+    MethylationCallReader callReader = new MethylationCallReader(Files.newInputStream(inputPath));
+    PrefetchingCallReader prefetchingReader = new PrefetchingCallReader(callReader, 1, 0);
+    prefetchingReader.close();
+  }
+}
@@ -34,4 +34,52 @@ public class SequenceDictionaryTest extends ApplicationTest {
       Assert.assertEquals(pair.getValue1(), dictionary.getSortedContigs());
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testUnion() throws Exception {
+    LinkedHashMap<String, Integer> contigLengths1 = new LinkedHashMap<>();
+    contigLengths1.put("Chr1", 30427671);
+    contigLengths1.put("Chr3", 23459830);
+    LinkedHashMap<String, Integer> contigLengths2 = new LinkedHashMap<>();
+    contigLengths2.put("Chr3", 23459830);
+    contigLengths2.put("Chr2", 19698289);
+    contigLengths2.put("Chr4", 18585056);
+
+    SequenceDictionary dictionary1 = new SequenceDictionary(contigLengths1, Arrays.asList("Chr3"));
+    SequenceDictionary dictionary2 = new SequenceDictionary(contigLengths2);
+    SequenceDictionary union = SequenceDictionary.union(Arrays.asList(dictionary1, dictionary2));
+    Assert.assertEquals(Arrays.asList("Chr3", "Chr1", "Chr2", "Chr4"), union.getSortedContigs());
+
+    // Each dictionary maps onto increasing indices of the union
+    Assert.assertArrayEquals(new int[] {0, 1}, union.mapContigIndices(dictionary1));
+    Assert.assertArrayEquals(new int[] {0, 2, 3}, union.mapContigIndices(dictionary2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnionConflictingOrder() throws Exception {
+    LinkedHashMap<String, Integer> contigLengths1 = new LinkedHashMap<>();
+    contigLengths1.put("Chr1", 30427671);
+    contigLengths1.put("Chr2", 19698289);
+    LinkedHashMap<String, Integer> contigLengths2 = new LinkedHashMap<>();
+    contigLengths2.put("Chr2", 19698289);
+    contigLengths2.put("Chr1", 30427671);
+
+    SequenceDictionary.union(Arrays.asList(
+      new SequenceDictionary(contigLengths1),
+      new SequenceDictionary(contigLengths2)
+    ));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnionConflictingLength() throws Exception {
+    LinkedHashMap<String, Integer> contigLengths1 = new LinkedHashMap<>();
+    contigLengths1.put("Chr1", 30427671);
+    LinkedHashMap<String, Integer> contigLengths2 = new LinkedHashMap<>();
+    contigLengths2.put("Chr1", 100);
+
+    SequenceDictionary.union(Arrays.asList(
+      new SequenceDictionary(contigLengths1),
+      new SequenceDictionary(contigLengths2)
+    ));
+  }
+}
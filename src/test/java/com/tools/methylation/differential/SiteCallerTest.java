@@ -6,16 +6,16 @@ import akka.actor.Props;
 import akka.testkit.JavaTestKit;
 import akka.testkit.TestActorRef;
 import com.tools.ApplicationTest;
-import com.tools.io.MethylationCall;
+import com.tools.io.MethylationCallMerger;
 import com.tools.io.MethylationCallReader;
 import com.tools.io.SequenceDictionary;
+import com.tools.io.SiteBlock;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,11 +32,7 @@ public class SiteCallerTest extends ApplicationTest {
     TestActorRef<SiteCaller> actorRef = TestActorRef.create(system, props);
     SiteCaller actor = actorRef.underlyingActor();
 
-    ArrayList<DifferentialCall> results = actor.call(
-      getCalls(),
-      conditions,
-      getSequenceDictionary().contigOrderMap
-    );
+    ArrayList<DifferentialCall> results = actor.call(getSites(), conditions);
     Assert.assertEquals(1, results.size());
 
     DifferentialSiteCall expected =
@@ -54,7 +50,7 @@ public class SiteCallerTest extends ApplicationTest {
           ActorRef subject = system.actorOf(props);
 
           try {
-            Messages.Call message = new Messages.Call(0, getCalls(), getSequenceDictionary());
+            Messages.Call message = new Messages.Call(0, getSites(), getSequenceDictionary());
             subject.tell(message, getRef());
             expectMsgClass(duration("1 second"), Messages.CallingComplete.class);
           } catch (Exception exception) {
@@ -65,7 +61,7 @@ public class SiteCallerTest extends ApplicationTest {
     }};
   }
 
-  private ArrayList<ArrayDeque<MethylationCall>> getCalls() throws Exception {
+  private SiteBlock getSites() throws Exception {
     List<Path> inputPaths = Arrays.asList(
       getFileResource("/methylation/VK1Dconv.CpG_context.tab"),
       getFileResource("/methylation/VK2Dconv.CpG_context.tab"),
@@ -75,17 +71,12 @@ public class SiteCallerTest extends ApplicationTest {
       getFileResource("/methylation/VV3Dconv.CpG_context.tab")
     );
 
-    ArrayList<ArrayDeque<MethylationCall>> methylationCalls = new ArrayList<>();
-    for (Path inputPath : inputPaths) {
-      try(InputStream inputStream = Files.newInputStream(inputPath);
-          MethylationCallReader callReader = new MethylationCallReader(inputStream)) {
-        ArrayDeque<MethylationCall> expectedCalls = new ArrayDeque<>();
-        while (callReader.hasNext()) expectedCalls.add(callReader.next());
-        methylationCalls.add(expectedCalls);
-      }
-    }
+    ArrayList<MethylationCallReader> callReaders = new ArrayList<>();
+    for (Path inputPath : inputPaths) callReaders.add(new MethylationCallReader(Files.newInputStream(inputPath)));
 
-    return methylationCalls;
+    try (MethylationCallMerger callMerger = new MethylationCallMerger(callReaders, getSequenceDictionary())) {
+      return callMerger.readBlock(Integer.MAX_VALUE);
+    }
   }
 
   private SequenceDictionary getSequenceDictionary() throws Exception {
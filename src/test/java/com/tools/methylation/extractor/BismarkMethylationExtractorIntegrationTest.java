@@ -10,7 +10,11 @@ import com.tools.io.MethylationCallWriter;
 import com.tools.io.SequenceDictionary;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMFileWriter;
+import net.sf.samtools.SAMFileWriterFactory;
+import net.sf.samtools.SAMRecord;
 import net.sf.samtools.SAMSequenceDictionary;
 import net.sf.samtools.SAMSequenceRecord;
 import org.junit.Assert;
@@ -110,6 +114,103 @@ public class BismarkMethylationExtractorIntegrationTest extends ApplicationTest
     }};
   }
 
+  @Test
+  public void testMethylationIndexedCounting() throws Exception {
+    final ActorSystem system = ActorSystem.create("TestSys");
+
+    final Path samPath = getFileResource("/methylation/single_end_athaliana_reads.fastq_bismark.sam");
+    final Path inputPath = createTempFile("bam");
+    final Path cpgOutputPath = createTempFile("tab");
+    final Path chgOutputPath = createTempFile("tab");
+    final Path chhOutputPath = createTempFile("tab");
+    final Path cnOutputPath = createTempFile("tab");
+    final Path summaryPath = createTempFile("tab");
+
+    // Sort and index the reads so that the blocks are queried from the index
+    final SAMSequenceDictionary samSequenceDictionary;
+    try (SAMFileReader samReader = new SAMFileReader(samPath.toFile())) {
+      SAMFileHeader samHeader = samReader.getFileHeader();
+      samHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+      samSequenceDictionary = samHeader.getSequenceDictionary();
+
+      SAMFileWriterFactory samFileWriterFactory = new SAMFileWriterFactory().setCreateIndex(true);
+      SAMFileWriter samWriter = samFileWriterFactory.makeBAMWriter(samHeader, false, inputPath.toFile());
+      for (SAMRecord samRecord : samReader) samWriter.addAlignment(samRecord);
+      samWriter.close();
+    }
+    Path indexPath = inputPath.resolveSibling(inputPath.getFileName().toString().replace(".bam", ".bai"));
+    indexPath.toFile().deleteOnExit();
+    Assert.assertTrue(IndexedBlockedReads.isIndexed(inputPath));
+
+    LinkedHashMap<String, Integer> contigLengths = new LinkedHashMap<>();
+    for (SAMSequenceRecord sequenceRecord : samSequenceDictionary.getSequences()) {
+      contigLengths.put(sequenceRecord.getSequenceName(), sequenceRecord.getSequenceLength());
+    }
+    final SequenceDictionary sequenceDictionary = new SequenceDictionary(
+      contigLengths,
+      Arrays.asList("gi|9626243|ref|NC_001416.1|")
+    );
+
+    final Map<String, Path> expectations = ImmutableMap.of(
+      "CpG", cpgOutputPath,
+      "CHH", chhOutputPath,
+      "CHG", chgOutputPath,
+      "CN_CHN", cnOutputPath
+    );
+
+    // Write out the headers
+    for (Map.Entry<String, Path> entry : expectations.entrySet()) {
+      Path outputPath = entry.getValue();
+
+      try (OutputStream outputStream = Files.newOutputStream(outputPath);
+           MethylationCallWriter writer = new MethylationCallWriter(outputStream)) {
+        writer.writeHeader(sequenceDictionary);
+      }
+    }
+
+    new JavaTestKit(system) {{
+      new Within(duration("5 seconds")) {
+        protected void run() {
+          Props props = Master.props(
+            inputPath,
+            sequenceDictionary,
+            cpgOutputPath,
+            chgOutputPath,
+            chhOutputPath,
+            cnOutputPath,
+            summaryPath,
+            Runtime.getRuntime().maxMemory() / 2,
+            4
+          );
+          ActorRef subject = system.actorOf(props);
+
+          // Start the run
+          subject.tell(new Messages.Start(), getRef());
+
+          new AwaitAssert(duration("5 second"), duration("100 millis")) {
+            protected void check() {
+              system.awaitTermination();
+
+              try {
+                for (Map.Entry<String, Path> entry : expectations.entrySet()) {
+                  String context = entry.getKey();
+                  Path outputPath = entry.getValue();
+
+                  String filename = "/methylation/single_end_athaliana_reads." + context + "_context.tab";
+                  Path expectedPath = getFileResource(filename);
+                  Assert.assertTrue(contentEquals(expectedPath, outputPath));
+                  Files.delete(outputPath);
+                }
+              } catch (Exception exception) {
+                exception.printStackTrace();
+              }
+            }
+          };
+        }
+      };
+    }};
+  }
+
   @Test
   public void testMethylationPairedEndCounting() throws Exception {
     final ActorSystem system = ActorSystem.create("TestSys");
@@ -0,0 +1,75 @@
+package com.tools.methylation.extractor;
+
+import com.tools.ApplicationTest;
+import com.tools.io.MethylationCall;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ContextWritersTest extends ApplicationTest {
+  @Test
+  public void testWrite() throws Exception {
+    Path cpgOutputPath = createTempFile("tab");
+    Path chgOutputPath = createTempFile("tab");
+    Path chhOutputPath = createTempFile("tab");
+    Path cnOutputPath = createTempFile("tab");
+
+    CoordinateConverter coordinateConverter = new CoordinateConverter(
+      Arrays.asList(
+        new CoordinateConverter.ReferenceSequence("Chr1", 1000),
+        new CoordinateConverter.ReferenceSequence("Chr2", 1000)
+      ),
+      0
+    );
+
+    MethylationCounts counts = new MethylationCounts(coordinateConverter);
+    counts.count('Z', true, "Chr1", 10);
+    counts.count('z', true, "Chr1", 10);
+    counts.count('X', false, "Chr1", 20);
+    counts.count('h', true, "Chr2", 30);
+    counts.count('H', true, "Chr2", 500);
+
+    HashMap<String, DepthCounter> depthCounts = new HashMap<>();
+    try (ContextWriters contextWriters = new ContextWriters(
+      cpgOutputPath,
+      chgOutputPath,
+      chhOutputPath,
+      cnOutputPath
+    )) {
+      // The calls after the stop are left for the following block
+      Map<Character, ArrayList<MethylationCall>> remainders = contextWriters.write(
+        counts,
+        coordinateConverter.convert("Chr2", 100),
+        depthCounts
+      );
+      Assert.assertEquals(1, remainders.get(MethylationCounts.CHH_CONTEXT).size());
+      Assert.assertEquals(500, remainders.get(MethylationCounts.CHH_CONTEXT).get(0).position);
+      Assert.assertTrue(remainders.get(MethylationCounts.CPG_CONTEXT).isEmpty());
+
+      // The calls are visible as soon as they are written
+      Charset charset = Charset.forName("UTF-8");
+      Assert.assertEquals(Arrays.asList("Chr1\t10\t+\t1\t2"), Files.readAllLines(cpgOutputPath, charset));
+      Assert.assertEquals(Arrays.asList("Chr1\t20\t-\t1\t1"), Files.readAllLines(chgOutputPath, charset));
+      Assert.assertEquals(Arrays.asList("Chr2\t30\t+\t0\t1"), Files.readAllLines(chhOutputPath, charset));
+
+      contextWriters.write(remainders, depthCounts);
+      Assert.assertEquals(
+        Arrays.asList("Chr2\t30\t+\t0\t1", "Chr2\t500\t+\t1\t1"),
+        Files.readAllLines(chhOutputPath, charset)
+      );
+    }
+
+    // The depths of the contexts are merged by contig
+    Assert.assertEquals(2, depthCounts.get("Chr1").siteCount);
+    Assert.assertEquals(3, depthCounts.get("Chr1").cumulativeDepth);
+    Assert.assertEquals(2, depthCounts.get("Chr2").siteCount);
+    Assert.assertEquals(0, Files.size(cnOutputPath));
+  }
+}
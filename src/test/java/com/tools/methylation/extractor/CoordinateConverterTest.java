@@ -2,6 +2,7 @@ package com.tools.methylation.extractor;
 
 import com.tools.ApplicationTest;
 import com.tools.io.SequenceDictionary;
+import com.tools.methylation.utils.Region;
 import net.sf.samtools.SAMFileReader;
 import net.sf.samtools.SAMSequenceDictionary;
 import net.sf.samtools.SAMSequenceRecord;
@@ -48,6 +49,21 @@ public class CoordinateConverterTest extends ApplicationTest {
 
   }
 
+  @Test
+  public void testRegions() throws Exception {
+    CoordinateConverter coordinateConverter = CoordinateConverterTest.buildConverter(sequenceDictionary);
+
+    // The flattened positions span the end of the first contig and the start of the second
+    List<Region> regions = coordinateConverter.regions(18585050, 18585060);
+    Assert.assertEquals(2, regions.size());
+    Assert.assertEquals("Chr4", regions.get(0).contig);
+    Assert.assertEquals(18585050, regions.get(0).start);
+    Assert.assertEquals(18585056, regions.get(0).stop);
+    Assert.assertEquals("Chr1", regions.get(1).contig);
+    Assert.assertEquals(1, regions.get(1).start);
+    Assert.assertEquals(4, regions.get(1).stop);
+  }
+
   @Test
   public void testConvertOffset() throws Exception {
     CoordinateConverter coordinateConverter = buildSamOffsetConverter(sequenceDictionary, 10000);
@@ -85,6 +101,30 @@ public class CoordinateConverterTest extends ApplicationTest {
     }
   }
 
+  @Test
+  public void testConvertReferenceIndex() throws Exception {
+    List<String> controlContigs = Arrays.asList("gi|9626243|ref|NC_001416.1|");
+    CoordinateConverter coordinateConverter = buildConverter(sequenceDictionary, controlContigs);
+
+    // The reference indices follow the alignment file even though the control contig is moved to the front
+    for (SAMSequenceRecord sequenceRecord : sequenceDictionary.getSequences()) {
+      String contig = sequenceRecord.getSequenceName();
+      int referenceIndex = sequenceRecord.getSequenceIndex();
+      Assert.assertEquals(coordinateConverter.convert(contig, 1), coordinateConverter.convert(referenceIndex, 1));
+      Assert.assertEquals(coordinateConverter.convert(contig, 5000), coordinateConverter.convert(referenceIndex, 5000));
+    }
+
+    // The chunks keep the reference indices of the alignment file
+    CoordinateConverter chunkConverter = coordinateConverter.split(18000000).get(1);
+    Assert.assertEquals(chunkConverter.convert("Chr1", 10), chunkConverter.convert(1, 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConvertReferenceIndexOutsideChunk() throws Exception {
+    CoordinateConverter chunkConverter = buildConverter(sequenceDictionary).split(18000000).get(0);
+    chunkConverter.convert(2, 10);
+  }
+
   @Test
   public void testReferenceLength() throws Exception {
     CoordinateConverter coordinateConverter = buildConverter(sequenceDictionary);
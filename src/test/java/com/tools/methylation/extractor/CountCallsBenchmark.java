@@ -0,0 +1,251 @@
+package com.tools.methylation.extractor;
+
+import com.tools.io.MethylationCall;
+import net.sf.samtools.Cigar;
+import net.sf.samtools.CigarElement;
+import net.sf.samtools.CigarOperator;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks counting the calls of the same reads through the SAMRecord walk that the extractor used to run and through
+ * the kernel over the packed Cigar and the XM bytes.  The SAMRecord walk iterates the Cigar elements, reads the calls
+ * from the XM string one character at a time and resolves the contig of every call, while the kernel resolves the
+ * contig once per read and looks the calls up in a table.  Both count into fresh counts, which must agree before
+ * either is measured.
+ *
+ * Run with the benchmark task, optionally passing the path of a bismark SAM or BAM file whose reads fit in a single
+ * window of the reference, which defaults to the paired end reads of the tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CountCallsBenchmark {
+  private static final String GENOME_CONVERSION_TAG = "XG";
+  private static final String METHYLATION_TAG = "XM";
+  private static final String DEFAULT_SAM_RESOURCE = "/com/tools/methylation/paired_end_spolyrhiza_reads.fastq_bismark.sam";
+
+  // The path of the reads to count, or empty for the reads of the tests
+  @Param("")
+  public String samPath;
+
+  private Reads reads;
+
+  public static void main(String[] args) throws Exception {
+    ChainedOptionsBuilder options = new OptionsBuilder().include(CountCallsBenchmark.class.getSimpleName());
+    if (args.length > 0) options.param("samPath", args[0]);
+
+    new Runner(options.build()).run();
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    Path path = samPath.isEmpty() ?
+      Paths.get(CountCallsBenchmark.class.getResource(DEFAULT_SAM_RESOURCE).toURI()) :
+      Paths.get(samPath);
+    this.reads = new Reads(path);
+    reads.checkCounts();
+  }
+
+  @Benchmark
+  public void countRecords(Blackhole blackhole) {
+    blackhole.consume(reads.countRecords());
+  }
+
+  @Benchmark
+  public void countKernel(Blackhole blackhole) {
+    blackhole.consume(reads.countKernel());
+  }
+
+  /**
+   * The mapped reads of a file, grouped into fragments both as records and as packed reads, which are counted into
+   * fresh counts spanning the window of the fragments.
+   */
+  public static class Reads {
+    private final CoordinateConverter coordinateConverter;
+
+    private final List<SAMRecord[]> recordFragments = new ArrayList<>();
+    private final List<AlignedFragment> fragments = new ArrayList<>();
+
+    // The span of the fragments in the flattened coordinates and the positions that they cover
+    private final long windowStart;
+    private final long windowStop;
+    private final long coveredPositions;
+
+    public Reads(Path samPath) {
+      try (SAMFileReader samReader = new SAMFileReader(samPath.toFile())) {
+        ArrayList<CoordinateConverter.ReferenceSequence> referenceSequences = new ArrayList<>();
+        for (SAMSequenceRecord sequenceRecord : samReader.getFileHeader().getSequenceDictionary().getSequences()) {
+          String contig = sequenceRecord.getSequenceName();
+          referenceSequences.add(new CoordinateConverter.ReferenceSequence(contig, sequenceRecord.getSequenceLength()));
+        }
+        this.coordinateConverter = new CoordinateConverter(referenceSequences, 0);
+
+        // Pair adjacent mates as the extractor reads them
+        SAMRecord previousRecord = null;
+        for (SAMRecord record : samReader) {
+          if (record.getReadUnmappedFlag()) continue;
+
+          if (previousRecord != null && record.getReadName().equals(previousRecord.getReadName())) {
+            // The mates are counted in the order of their starts, as the fragments order them
+            SAMRecord[] records = previousRecord.getAlignmentStart() <= record.getAlignmentStart() ?
+              new SAMRecord[] {previousRecord, record} :
+              new SAMRecord[] {record, previousRecord};
+            recordFragments.set(recordFragments.size() - 1, records);
+            fragments.set(
+              fragments.size() - 1,
+              new PairedEndFragment(AlignedRead.fromRecord(previousRecord), AlignedRead.fromRecord(record))
+            );
+            previousRecord = null;
+          } else {
+            recordFragments.add(new SAMRecord[] {record});
+            fragments.add(new SingleEndFragment(AlignedRead.fromRecord(record)));
+            previousRecord = record.getReadPairedFlag() && !record.getMateUnmappedFlag() ? record : null;
+          }
+        }
+      }
+
+      long[] starts = new long[fragments.size()];
+      long[] stops = new long[fragments.size()];
+      for (int i = 0; i < fragments.size(); i++) {
+        AlignedFragment fragment = fragments.get(i);
+        starts[i] = coordinateConverter.convert(fragment.contig(), fragment.start());
+        stops[i] = coordinateConverter.convert(fragment.contig(), fragment.stop());
+      }
+      this.coveredPositions = ExtractorCounter.countCoveredPositions(starts, stops);
+      this.windowStart = starts.length == 0 ? 0 : starts[0];
+      this.windowStop = stops.length == 0 ? 0 : stops[stops.length - 1];
+      if (windowStop - windowStart >= MethylationCounts.MAX_WINDOW_LENGTH) {
+        throw new IllegalArgumentException("the reads span more than a single window of the reference");
+      }
+    }
+
+    public int fragmentCount() { return fragments.size(); }
+
+    /**
+     * Throws an IllegalStateException unless both paths count the same calls in every context.
+     */
+    public void checkCounts() {
+      MethylationCounts recordCounts = countRecords();
+      MethylationCounts kernelCounts = countKernel();
+      for (char context : MethylationCounts.ALL_CONTEXTS) {
+        if (!calls(recordCounts, context).equals(calls(kernelCounts, context))) {
+          throw new IllegalStateException("the counts of the " + context + " context differ");
+        }
+      }
+    }
+
+    public MethylationCounts countKernel() {
+      MethylationCounts counts = newCounts();
+      int[] callCodes = MethylationCounts.callCodes(MethylationCounts.ALL_CONTEXTS);
+      ExtractorCounter.countFragments(counts, new MbiasCounter(), callCodes, fragments);
+
+      return counts;
+    }
+
+    public MethylationCounts countRecords() {
+      MethylationCounts counts = newCounts();
+      for (SAMRecord[] records : recordFragments) {
+        if (records.length == 1) countSingle(counts, records[0]);
+        else countPairedEnd(counts, records[0], records[1]);
+      }
+
+      return counts;
+    }
+
+    private MethylationCounts newCounts() {
+      return new MethylationCounts(coordinateConverter, windowStart, windowStop, coveredPositions);
+    }
+  }
+
+  static List<MethylationCall> calls(MethylationCounts counts, char context) {
+    ArrayList<MethylationCall> calls = new ArrayList<>();
+    MethylationCounts.MethylationCallIterator iterator = counts.iterator(context);
+    while (iterator.hasNext()) calls.add(iterator.next());
+
+    return calls;
+  }
+
+  // The SAMRecord walk of the extractor before the kernel, kept as it was for comparison
+
+  private static void countCalls(MethylationCounts counts,
+                                 String contig,
+                                 int startPosition,
+                                 Cigar cigar,
+                                 String methylationCalls,
+                                 boolean isForward,
+                                 int discardOffset) {
+    int callStartPosition = startPosition + discardOffset;
+
+    int callOffset = 0;
+    for (CigarElement cigarElement : cigar.getCigarElements()) {
+      CigarOperator operator = cigarElement.getOperator();
+      if (CigarOperator.MATCH_OR_MISMATCH == operator) {
+        for (int i = 0, n = cigarElement.getLength(); i < n; i++) {
+          char call = methylationCalls.charAt(callOffset);
+          if (call != '.') {
+            int position = i + startPosition;
+            if (position >= callStartPosition) counts.count(call, isForward, contig, position);
+          }
+
+          callOffset += 1;
+        }
+
+        startPosition += cigarElement.getLength();
+      } else if (CigarOperator.INSERTION == operator) {
+        callOffset += cigarElement.getLength();
+      } else if (CigarOperator.DELETION == operator) {
+        startPosition += cigarElement.getLength();
+      } else {
+        throw new RuntimeException("unrecognized operation encountered (" + operator + ")");
+      }
+    }
+  }
+
+  private static void countPairedEnd(MethylationCounts counts, SAMRecord record1, SAMRecord record2) {
+    boolean isForward = record1.getAttribute(GENOME_CONVERSION_TAG).equals("CT");
+    String contig = record1.getReferenceName();
+
+    Cigar cigar1 = record1.getCigar();
+    String methylationCalls1 = (String) record1.getAttribute(METHYLATION_TAG);
+    countCalls(counts, contig, record1.getAlignmentStart(), cigar1, methylationCalls1, isForward, 0);
+
+    Cigar cigar2 = record2.getCigar();
+    String methylationCalls2 = (String) record2.getAttribute(METHYLATION_TAG);
+    int overlap = Math.max(0, record1.getAlignmentEnd() - record2.getAlignmentStart() + 1);
+    countCalls(counts, contig, record2.getAlignmentStart(), cigar2, methylationCalls2, isForward, overlap);
+  }
+
+  private static void countSingle(MethylationCounts counts, SAMRecord record) {
+    boolean isForward = record.getAttribute(GENOME_CONVERSION_TAG).equals("CT");
+    Cigar cigar = record.getCigar();
+    String methylationCalls = (String) record.getAttribute(METHYLATION_TAG);
+
+    countCalls(counts, record.getReferenceName(), record.getAlignmentStart(), cigar, methylationCalls, isForward, 0);
+  }
+}
@@ -0,0 +1,25 @@
+package com.tools.methylation.extractor;
+
+import com.tools.ApplicationTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CountCallsBenchmarkTest extends ApplicationTest {
+  @Test
+  public void testCounts() throws Exception {
+    // Both paths of the benchmark count the same calls
+    CountCallsBenchmark.Reads reads = new CountCallsBenchmark.Reads(
+      getFileResource("/methylation/paired_end_spolyrhiza_reads.fastq_bismark.sam")
+    );
+    Assert.assertTrue(reads.fragmentCount() > 0);
+
+    MethylationCounts recordCounts = reads.countRecords();
+    MethylationCounts kernelCounts = reads.countKernel();
+    for (char context : MethylationCounts.ALL_CONTEXTS) {
+      Assert.assertEquals(
+        CountCallsBenchmark.calls(recordCounts, context),
+        CountCallsBenchmark.calls(kernelCounts, context)
+      );
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.tools.methylation.extractor;
+
+import com.tools.io.MethylationCall;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class CpgStrandCollapserTest {
+  @Test
+  public void testCollapse() {
+    List<MethylationCall> calls = Arrays.asList(
+      new MethylationCall("Chr1", 1, '-', 1, 1),
+      new MethylationCall("Chr1", 10, '+', 1, 2),
+      new MethylationCall("Chr1", 11, '+', 0, 1),
+      new MethylationCall("Chr1", 11, '-', 3, 3),
+      new MethylationCall("Chr1", 12, '-', 1, 4),
+      new MethylationCall("Chr1", 20, '-', 2, 2),
+      new MethylationCall("Chr2", 1, '+', 0, 1),
+      new MethylationCall("Chr2", 2, '-', 1, 1)
+    );
+
+    // The reverse strand calls move onto the preceding position unless they start their contig
+    Assert.assertEquals(
+      Arrays.asList("Chr1:1-1/1", "Chr1:10+4/5", "Chr1:11+1/5", "Chr1:19+2/2", "Chr2:1+1/2"),
+      describe(new CpgStrandCollapser(calls.iterator()))
+    );
+  }
+
+  @Test
+  public void testRemainingCalls() {
+    List<MethylationCall> calls = Arrays.asList(
+      new MethylationCall("Chr1", 10, '+', 1, 2),
+      new MethylationCall("Chr1", 20, '+', 1, 1)
+    );
+
+    // The last site may still gain the reverse strand calls that follow the calls
+    CpgStrandCollapser collapser = new CpgStrandCollapser(calls.iterator()) {
+      @Override
+      protected boolean isComplete(MethylationCall site) { return site.position < 20; }
+    };
+
+    Assert.assertEquals(Arrays.asList("Chr1:10+1/2"), describe(collapser));
+    Assert.assertEquals(Arrays.asList("Chr1:20+1/1"), describe(collapser.getRemainingCalls().iterator()));
+  }
+
+  private static List<String> describe(Iterator<MethylationCall> calls) {
+    ArrayList<String> descriptions = new ArrayList<>();
+    while (calls.hasNext()) {
+      MethylationCall call = calls.next();
+      descriptions.add(call.contig + ":" + call.position + call.strand + call.methylatedCount + "/" + call.totalCount);
+    }
+
+    return descriptions;
+  }
+}
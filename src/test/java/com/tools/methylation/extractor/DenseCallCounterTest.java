@@ -0,0 +1,83 @@
+package com.tools.methylation.extractor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DenseCallCounterTest {
+  @Test
+  public void testAdd() {
+    DenseCallCounter counter = new DenseCallCounter(100, 5000);
+    counter.add(4000 << 2 | 0x3, 2);
+    counter.add(150 << 2, 1);
+    counter.add(150 << 2 | 0x1, 4);
+    counter.add(150 << 2, 1);
+
+    Assert.assertEquals(Arrays.asList(150 << 2, 150 << 2 | 0x1, 4000 << 2 | 0x3), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(2, 4, 2), getCounts(counter));
+  }
+
+  @Test
+  public void testAddOutsideWindow() {
+    // Calls on either side of the window extend it
+    DenseCallCounter counter = new DenseCallCounter(5000, 10);
+    counter.add(5005 << 2, 1);
+    counter.add(90000 << 2 | 0x2, 3);
+    counter.add(7 << 2 | 0x1, 5);
+
+    Assert.assertEquals(Arrays.asList(7 << 2 | 0x1, 5005 << 2, 90000 << 2 | 0x2), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(5, 1, 3), getCounts(counter));
+  }
+
+  @Test
+  public void testAddManyPages() {
+    // Enough pages are touched to grow the off-heap storage
+    DenseCallCounter counter = new DenseCallCounter(0, 100000);
+    for (int position = 0; position < 100000; position += 997) counter.add(position << 2, position + 1);
+
+    List<Integer> keys = getKeys(counter);
+    List<Integer> counts = getCounts(counter);
+    Assert.assertEquals(101, keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      Assert.assertEquals(i * 997 << 2, (int) keys.get(i));
+      Assert.assertEquals(i * 997 + 1, (int) counts.get(i));
+    }
+  }
+
+  @Test
+  public void testAddAll() {
+    DenseCallCounter counter = new DenseCallCounter(0, 100);
+    counter.add(10 << 2, 1);
+
+    DenseCallCounter otherCounter = new DenseCallCounter(50000, 100);
+    otherCounter.add(10 << 2, 2);
+    otherCounter.add(50001 << 2 | 0x1, 3);
+    counter.addAll(otherCounter);
+
+    Assert.assertEquals(Arrays.asList(10 << 2, 50001 << 2 | 0x1), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(3, 3), getCounts(counter));
+  }
+
+  private static List<Integer> getKeys(DenseCallCounter counter) {
+    ArrayList<Integer> keys = new ArrayList<>();
+    int slotCount = counter.getSlotCount();
+    for (int slot = counter.nextSlot(0); slot < slotCount; slot = counter.nextSlot(slot + 1)) {
+      keys.add(counter.getKey(slot));
+    }
+
+    return keys;
+  }
+
+  private static List<Integer> getCounts(DenseCallCounter counter) {
+    ArrayList<Integer> counts = new ArrayList<>();
+    int slotCount = counter.getSlotCount();
+    for (int slot = counter.nextSlot(0); slot < slotCount; slot = counter.nextSlot(slot + 1)) {
+      counts.add(counter.getCount(slot));
+    }
+
+    return counts;
+  }
+}
@@ -0,0 +1,94 @@
+package com.tools.methylation.extractor;
+
+import net.sf.samtools.util.CloseableIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class DuplicateFilterTest {
+  @Test
+  public void testSorted() {
+    List<AlignedFragment> fragments = Arrays.<AlignedFragment>asList(
+      single(0, 10, true, 0x63, 50),
+      single(0, 10, true, 0x63, 50),
+      single(0, 10, true, 0x93, 10),
+      single(0, 10, true, 0x63, 10),
+      single(0, 10, false, 0x63, 50),
+      single(0, 10, true, 0x463, 60),
+      single(0, 20, true, 0x63, 50),
+      single(1, 20, true, 0x63, 50)
+    );
+
+    // The mates of a pair sharing a start are kept, while the flagged and repeated fragments are dropped
+    DuplicateFilter duplicateFilter = new DuplicateFilter(closeable(fragments), true);
+    Assert.assertEquals(Arrays.asList(0, 2, 3, 4, 6, 7), indices(duplicateFilter, fragments));
+    Assert.assertEquals(2, duplicateFilter.getDuplicateCount());
+  }
+
+  @Test
+  public void testUnsorted() {
+    AlignedRead read1 = new AlignedRead("Chr1", 0, 10, new int[] {5 << 4}, new byte[5], true, 0x63, 30);
+    AlignedRead read2 = new AlignedRead("Chr1", 0, 30, new int[] {5 << 4}, new byte[5], true, 0x93, 10);
+    AlignedRead read3 = new AlignedRead("Chr1", 0, 30, new int[] {5 << 4}, new byte[5], true, 0x93, 10);
+    List<AlignedFragment> fragments = Arrays.asList(
+      new PairedEndFragment(read1, read2),
+      single(0, 500, true, 0, 0),
+      new PairedEndFragment(read2, read1),
+      single(0, 500, true, 0, 0),
+      new PairedEndFragment(read1, read3),
+      single(0, 10, true, 0x63, 30)
+    );
+
+    // The duplicates are found however far apart they are
+    DuplicateFilter duplicateFilter = new DuplicateFilter(closeable(fragments), false);
+    Assert.assertEquals(Arrays.asList(0, 1, 5), indices(duplicateFilter, fragments));
+  }
+
+  @Test
+  public void testFingerprintSet() {
+    FingerprintSet fingerprints = new FingerprintSet();
+    for (long i = 0; i < 1000; i++) Assert.assertTrue(fingerprints.add(i * 0x9e3779b97f4a7c15L));
+    for (long i = 0; i < 1000; i++) Assert.assertFalse(fingerprints.add(i * 0x9e3779b97f4a7c15L));
+    Assert.assertEquals(1000, fingerprints.size());
+
+    fingerprints.clear();
+    Assert.assertEquals(0, fingerprints.size());
+    Assert.assertTrue(fingerprints.add(0));
+    Assert.assertFalse(fingerprints.add(0));
+  }
+
+  private static SingleEndFragment single(int referenceIndex, int start, boolean isForward, int flags, int mateStart) {
+    String contig = "Chr" + (referenceIndex + 1);
+    return new SingleEndFragment(
+      new AlignedRead(contig, referenceIndex, start, new int[] {5 << 4}, new byte[5], isForward, flags, mateStart)
+    );
+  }
+
+  // Returns the index of each filtered fragment in the original fragments
+  private static List<Integer> indices(Iterator<AlignedFragment> filteredFragments, List<AlignedFragment> fragments) {
+    ArrayList<Integer> indices = new ArrayList<>();
+    while (filteredFragments.hasNext()) {
+      AlignedFragment fragment = filteredFragments.next();
+      int index = 0;
+      while (fragments.get(index) != fragment) index++;
+      indices.add(index);
+    }
+
+    return indices;
+  }
+
+  private static CloseableIterator<AlignedFragment> closeable(List<AlignedFragment> fragments) {
+    final Iterator<AlignedFragment> iterator = fragments.iterator();
+
+    return new CloseableIterator<AlignedFragment>() {
+      @Override public void close() {}
+      @Override public boolean hasNext() { return iterator.hasNext(); }
+      @Override public AlignedFragment next() { return iterator.next(); }
+      @Override public void remove() { throw new UnsupportedOperationException(); }
+    };
+  }
+}
@@ -64,17 +64,21 @@ public class ExtractorIntegrationTest extends ApplicationTest {
       }
     }
 
+    final ContextWriters contextWriters = new ContextWriters(
+      cpgOutputPath,
+      chgOutputPath,
+      chhOutputPath,
+      cnOutputPath
+    );
+
     new JavaTestKit(system) {{
       final JavaTestKit probe = new JavaTestKit(system);
 
       new Within(duration("5 seconds")) {
         protected void run() {
           Props props = Extractor.props(
-            inputPath,
-            cpgOutputPath,
-            chgOutputPath,
-            chhOutputPath,
-            cnOutputPath,
+            new BlockedReads(inputPath, coordinateConverter),
+            contextWriters,
             coordinateConverter,
             new HashMap<Character, ArrayList<MethylationCall>>(),
             probe.getRef(),
@@ -106,5 +110,7 @@ public class ExtractorIntegrationTest extends ApplicationTest {
         }
       };
     }};
+
+    contextWriters.close();
   }
 }
@@ -0,0 +1,65 @@
+package com.tools.methylation.extractor;
+
+import com.tools.ApplicationTest;
+import com.tools.io.CompressionCodec;
+import net.sf.samtools.util.CloseableIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class FragmentSpillTest extends ApplicationTest {
+  @Test
+  public void testRoundTrip() throws Exception {
+    FragmentSpill fragmentSpill = new FragmentSpill(Arrays.asList("Chr1", "Chr2"));
+    Path spillPath = createTempFile("spill.blz");
+
+    // 10M2I5M3D4M
+    int[] cigar = {10 << 4, 2 << 4 | AlignedRead.CIGAR_INSERTION, 5 << 4, 3 << 4 | AlignedRead.CIGAR_DELETION, 4 << 4};
+    AlignedRead read = new AlignedRead("Chr2", 1, 100, cigar, calls("..Z..x...hh......Z..."), false);
+    AlignedRead read1 = new AlignedRead("Chr1", 0, 50, new int[] {5 << 4}, calls("z...H"), true, 0x463, 52);
+    AlignedRead read2 = new AlignedRead("Chr1", 0, 52, new int[] {4 << 4}, calls("..X."), true, 0x493, 50);
+    Assert.assertEquals(121, read.stop);
+
+    // Spill the fragments in separate streams as when the file is reopened
+    try (DataOutputStream outputStream = new DataOutputStream(CompressionCodec.newOutputStream(spillPath))) {
+      fragmentSpill.write(new SingleEndFragment(read), outputStream);
+    }
+    try (DataOutputStream outputStream = new DataOutputStream(
+      CompressionCodec.newOutputStream(spillPath, StandardOpenOption.APPEND)
+    )) {
+      fragmentSpill.write(new PairedEndFragment(read2, read1), outputStream);
+    }
+
+    CloseableIterator<AlignedFragment> fragments = fragmentSpill.read(spillPath);
+    SingleEndFragment singleEndFragment = (SingleEndFragment) fragments.next();
+    Assert.assertEquals("Chr2", singleEndFragment.contig());
+    Assert.assertEquals(1, singleEndFragment.referenceIndex());
+    Assert.assertEquals(100, singleEndFragment.start());
+    Assert.assertEquals(121, singleEndFragment.stop());
+    Assert.assertArrayEquals(cigar, singleEndFragment.read.cigar);
+    Assert.assertArrayEquals(read.methylationCalls, singleEndFragment.read.methylationCalls);
+    Assert.assertFalse(singleEndFragment.read.isForward);
+    Assert.assertEquals(0, singleEndFragment.read.flags);
+    Assert.assertEquals(0, singleEndFragment.read.mateStart);
+
+    PairedEndFragment pairedEndFragment = (PairedEndFragment) fragments.next();
+    Assert.assertEquals("Chr1", pairedEndFragment.contig());
+    Assert.assertEquals(50, pairedEndFragment.start());
+    Assert.assertEquals(55, pairedEndFragment.stop());
+    Assert.assertArrayEquals(calls("..X."), pairedEndFragment.read2.methylationCalls);
+    Assert.assertTrue(pairedEndFragment.read1.isForward);
+    Assert.assertEquals(0x463, pairedEndFragment.read1.flags);
+    Assert.assertTrue(pairedEndFragment.read1.isDuplicate());
+    Assert.assertEquals(50, pairedEndFragment.read2.mateStart);
+
+    Assert.assertFalse(fragments.hasNext());
+    fragments.close();
+  }
+
+  private static byte[] calls(String methylationCalls) { return methylationCalls.getBytes(StandardCharsets.US_ASCII); }
+}
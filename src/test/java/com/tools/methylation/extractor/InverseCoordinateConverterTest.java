@@ -44,6 +44,27 @@ public class InverseCoordinateConverterTest extends ApplicationTest {
     }
   }
 
+  @Test
+  public void testConvertOutOfOrder() throws Exception {
+    CoordinateConverter coordinateConverter = CoordinateConverterTest.buildConverter(sequenceDictionary);
+    InverseCoordinateConvertor inverseCoordinateConvertor = coordinateConverter.inverseConvertor();
+
+    // The positions can be converted in any order
+    List<Triplet<String, Integer, Integer>> expectations = Arrays.asList(
+      Triplet.with("Chr5", 26975502, 119716252),
+      Triplet.with("Chr4", 10000, 10000),
+      Triplet.with("Chr1", 1, 18585057),
+      Triplet.with("Chr4", 18585056, 18585056),
+      Triplet.with("Chr4", 1, 1)
+    );
+
+    for (Triplet<String, Integer, Integer> expectation : expectations) {
+      InverseCoordinateConvertor.ContigPosition result = inverseCoordinateConvertor.convert(expectation.getValue2());
+      Assert.assertEquals(expectation.getValue0(), result.contig);
+      Assert.assertEquals((int) expectation.getValue1(), result.position);
+    }
+  }
+
   @Test
   public void testConvertOffset() throws Exception {
     CoordinateConverter coordinateConverter = CoordinateConverterTest.buildSamOffsetConverter(
@@ -0,0 +1,20 @@
+package com.tools.methylation.extractor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MasterTest {
+  private static final long GIGABYTE = 1L << 30;
+
+  @Test
+  public void testDetermineConcurrentBlockCount() {
+    // The blocks are overlapped with the threads to spare for their readers and writers
+    Assert.assertEquals(1, Master.determineConcurrentBlockCount(1, GIGABYTE, MethylationCounts.ALL_CONTEXTS));
+    Assert.assertEquals(2, Master.determineConcurrentBlockCount(4, GIGABYTE, MethylationCounts.ALL_CONTEXTS));
+    Assert.assertEquals(8, Master.determineConcurrentBlockCount(16, 16 * GIGABYTE, MethylationCounts.ALL_CONTEXTS));
+
+    // But only as long as the memory of each block still covers enough of the reference
+    Assert.assertEquals(3, Master.determineConcurrentBlockCount(16, GIGABYTE, MethylationCounts.ALL_CONTEXTS));
+    Assert.assertEquals(1, Master.determineConcurrentBlockCount(16, GIGABYTE / 2, MethylationCounts.ALL_CONTEXTS));
+  }
+}
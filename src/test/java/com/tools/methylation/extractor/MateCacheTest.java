@@ -0,0 +1,145 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.base.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MateCacheTest {
+  private static final List<String> CONTIGS = Arrays.asList("Chr1");
+
+  @Test
+  public void testPairing() {
+    MateCache mateCache = new MateCache(CONTIGS);
+    AlignedRead read1 = read(10, 0x63, 30);
+    AlignedRead read2 = read(20, 0x63, 40);
+    AlignedRead read3 = read(30, 0x93, 10);
+    AlignedRead read4 = read(40, 0x93, 20);
+
+    // The fragments wait on their first read and come out in its order once the mates arrive
+    add(mateCache, 1, read1);
+    add(mateCache, 2, read2);
+    Assert.assertFalse(mateCache.hasFragment());
+    add(mateCache, 1, read3);
+    add(mateCache, 2, read4);
+
+    List<AlignedFragment> fragments = drain(mateCache);
+    Assert.assertEquals(2, fragments.size());
+    Assert.assertSame(read1, ((PairedEndFragment) fragments.get(0)).read1);
+    Assert.assertSame(read3, ((PairedEndFragment) fragments.get(0)).read2);
+    Assert.assertSame(read2, ((PairedEndFragment) fragments.get(1)).read1);
+    Assert.assertEquals(0, mateCache.size());
+  }
+
+  @Test
+  public void testMissingMate() {
+    MateCache mateCache = new MateCache(CONTIGS);
+    AlignedRead read1 = read(10, 0x63, 30);
+    AlignedRead read2 = read(20, 0x93, 5);
+    add(mateCache, 1, read1);
+    add(mateCache, 2, read2);
+    Assert.assertFalse(mateCache.hasFragment());
+
+    // A read is released on its own once the records pass the start of its mate
+    mateCache.advance(0, 31);
+    List<AlignedFragment> fragments = drain(mateCache);
+    Assert.assertEquals(2, fragments.size());
+    Assert.assertSame(read1, ((SingleEndFragment) fragments.get(0)).read);
+    Assert.assertSame(read2, ((SingleEndFragment) fragments.get(1)).read);
+
+    // As it is once the records reach the next contig or run out
+    AlignedRead read3 = read(40, 0x63, 50);
+    add(mateCache, 3, read3);
+    mateCache.finish();
+    Assert.assertSame(read3, ((SingleEndFragment) mateCache.nextFragment()).read);
+  }
+
+  @Test
+  public void testRejectedMate() {
+    MateCache mateCache = new MateCache(CONTIGS);
+    AlignedRead read1 = read(10, 0x63, 30);
+    add(mateCache, 1, read1);
+    mateCache.addMate(1, 0, 30, 10, Optional.<AlignedRead>absent());
+    mateCache.addMate(2, 0, 35, 40, Optional.<AlignedRead>absent());
+    add(mateCache, 2, read(40, 0x93, 35));
+    mateCache.finish();
+
+    // Both reads of a pair are dropped when either is rejected
+    Assert.assertEquals(0, drain(mateCache).size());
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    try (MateCache mateCache = new MateCache(CONTIGS, 2)) {
+      AlignedRead read1 = read(10, 0x63, 40);
+      AlignedRead read2 = read(11, 0x63, 30);
+      AlignedRead read3 = read(12, 0x63, 50);
+      add(mateCache, 1, read1);
+      add(mateCache, 2, read2);
+      add(mateCache, 3, read3);
+
+      // The oldest reads are spilled once the cache is full rather than released early
+      Assert.assertFalse(mateCache.hasFragment());
+      Assert.assertEquals(2, mateCache.size());
+      Assert.assertEquals(1, mateCache.spilledSize());
+
+      // And are read back to be paired once their mates arrive, keeping the order of the first reads
+      add(mateCache, 2, read(30, 0x93, 11));
+      add(mateCache, 1, read(40, 0x93, 10));
+      add(mateCache, 4, read(45, 0x63, 60));
+      mateCache.finish();
+      List<AlignedFragment> fragments = drain(mateCache);
+      Assert.assertEquals(4, fragments.size());
+      Assert.assertEquals(10, ((PairedEndFragment) fragments.get(0)).read1.start);
+      Assert.assertEquals(40, ((PairedEndFragment) fragments.get(0)).read2.start);
+      Assert.assertEquals(11, ((PairedEndFragment) fragments.get(1)).read1.start);
+      Assert.assertEquals("zZzzz", new String(((PairedEndFragment) fragments.get(1)).read2.methylationCalls));
+      Assert.assertEquals(12, ((SingleEndFragment) fragments.get(2)).read.start);
+      Assert.assertEquals(45, ((SingleEndFragment) fragments.get(3)).read.start);
+      Assert.assertEquals(0, mateCache.spilledSize());
+    }
+  }
+
+  @Test
+  public void testDistantMate() throws Exception {
+    try (MateCache mateCache = new MateCache(CONTIGS, 2)) {
+      int mateStart = 10 + IndexedBlockedReads.MAX_MATE_DISTANCE + 1;
+      AlignedRead read1 = read(10, 0x63, mateStart);
+      add(mateCache, 1, read1);
+
+      // A read whose mate is too far away is released without waiting, so the reads in between hold no slots
+      Assert.assertSame(read1, ((SingleEndFragment) mateCache.nextFragment()).read);
+      for (int i = 0; i < 1000; i++) {
+        add(mateCache, i + 2, read(20 + i, 0x63, 20 + i));
+        add(mateCache, i + 2, read(20 + i, 0x93, 20 + i));
+        Assert.assertEquals(1, drain(mateCache).size());
+        Assert.assertEquals(0, mateCache.slotCount());
+      }
+
+      // And its mate is released on its own once it arrives
+      AlignedRead read2 = read(mateStart, 0x93, 10);
+      add(mateCache, 1, read2);
+      Assert.assertSame(read2, ((SingleEndFragment) mateCache.nextFragment()).read);
+      Assert.assertEquals(0, mateCache.slotCount());
+    }
+  }
+
+  private static AlignedRead read(int start, int flags, int mateStart) {
+    return new AlignedRead("Chr1", 0, start, new int[] {5 << 4}, "zZzzz".getBytes(), true, flags, mateStart);
+  }
+
+  private static void add(MateCache mateCache, long name, AlignedRead read) {
+    mateCache.advance(read.referenceIndex, read.start);
+    mateCache.addMate(name, read.referenceIndex, read.start, read.mateStart, Optional.of(read));
+  }
+
+  private static List<AlignedFragment> drain(MateCache mateCache) {
+    ArrayList<AlignedFragment> fragments = new ArrayList<>();
+    while (mateCache.hasFragment()) fragments.add(mateCache.nextFragment());
+
+    return fragments;
+  }
+}
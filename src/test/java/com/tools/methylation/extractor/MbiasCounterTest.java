@@ -0,0 +1,73 @@
+package com.tools.methylation.extractor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class MbiasCounterTest {
+  private static final int METHYLATED_CPG = MethylationCounts.callCode((byte) 'Z');
+  private static final int UNMETHYLATED_CPG = MethylationCounts.callCode((byte) 'z');
+  private static final int METHYLATED_CHH = MethylationCounts.callCode((byte) 'H');
+
+  @Test
+  public void testCount() {
+    MbiasCounter counter = new MbiasCounter();
+    counter.count(METHYLATED_CPG, 0, false);
+    counter.count(UNMETHYLATED_CPG, 0, false);
+    counter.count(METHYLATED_CPG, 0, true);
+    counter.count(METHYLATED_CHH, 4, false);
+
+    Assert.assertEquals(1, counter.getMethylatedCount(METHYLATED_CPG, 0, false));
+    Assert.assertEquals(2, counter.getTotalCount(UNMETHYLATED_CPG, 0, false));
+    Assert.assertEquals(1, counter.getTotalCount(METHYLATED_CPG, 0, true));
+    Assert.assertEquals(0, counter.getTotalCount(METHYLATED_CHH, 0, false));
+    Assert.assertEquals(1, counter.getMethylatedCount(METHYLATED_CHH, 4, false));
+    Assert.assertEquals(5, counter.getCycleCount());
+
+    // The counters grow with the longest read
+    counter.count(UNMETHYLATED_CPG, 1000, true);
+    Assert.assertEquals(1001, counter.getCycleCount());
+    Assert.assertEquals(1, counter.getTotalCount(METHYLATED_CPG, 1000, true));
+    Assert.assertEquals(0, counter.getTotalCount(METHYLATED_CPG, 2000, true));
+  }
+
+  @Test
+  public void testMerge() {
+    MbiasCounter firstCounter = new MbiasCounter();
+    firstCounter.count(METHYLATED_CPG, 2, false);
+    MbiasCounter secondCounter = new MbiasCounter();
+    secondCounter.count(METHYLATED_CPG, 2, false);
+    secondCounter.count(UNMETHYLATED_CPG, 300, false);
+
+    MbiasCounter counter = new MbiasCounter();
+    counter.merge(firstCounter);
+    counter.merge(secondCounter);
+    Assert.assertEquals(2, counter.getMethylatedCount(METHYLATED_CPG, 2, false));
+    Assert.assertEquals(1, counter.getTotalCount(METHYLATED_CPG, 300, false));
+    Assert.assertEquals(301, counter.getCycleCount());
+  }
+
+  @Test
+  public void testWrite() {
+    MbiasCounter counter = new MbiasCounter();
+    counter.count(METHYLATED_CPG, 0, false);
+    counter.count(UNMETHYLATED_CPG, 0, false);
+    counter.count(UNMETHYLATED_CPG, 2, true);
+    counter.count(METHYLATED_CHH, 1, false);
+
+    StringWriter output = new StringWriter();
+    try (PrintWriter writer = new PrintWriter(output)) {
+      counter.write(writer, BismarkMethylationExtractor.CONTEXT_NAMES);
+    }
+
+    String[] expectedLines = new String[] {
+      "Context\tRead\tCycle\tMethylated\tTotal\tMethylation Ratio",
+      "CpG\t1\t1\t1\t2\t0.5",
+      "CpG\t2\t3\t0\t1\t0.0",
+      "CHH\t1\t2\t1\t1\t1.0"
+    };
+    Assert.assertArrayEquals(expectedLines, output.toString().split(System.lineSeparator()));
+  }
+}
@@ -0,0 +1,122 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.tools.io.MethylationCall;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class MethylationCountsTest {
+  @Test
+  public void testCallCode() {
+    Assert.assertEquals(MethylationCounts.NO_CALL, MethylationCounts.callCode((byte) '.'));
+    Assert.assertEquals(MethylationCounts.UNKNOWN_CALL, MethylationCounts.callCode((byte) 'Q'));
+
+    // Both states of a context share the context and differ in the methylated bit
+    int methylatedCode = MethylationCounts.callCode((byte) 'Z');
+    int unmethylatedCode = MethylationCounts.callCode((byte) 'z');
+    Assert.assertEquals(methylatedCode >> 1, unmethylatedCode >> 1);
+    Assert.assertEquals(1, methylatedCode & 0x1);
+    Assert.assertEquals(0, unmethylatedCode & 0x1);
+    Assert.assertNotEquals(methylatedCode >> 1, MethylationCounts.callCode((byte) 'H') >> 1);
+  }
+
+  @Test
+  public void testCallCodes() {
+    // The calls of the contexts that are not selected are skipped like positions without a call
+    int[] callCodes = MethylationCounts.callCodes(ImmutableSet.of(MethylationCounts.CPG_CONTEXT));
+    Assert.assertEquals(MethylationCounts.callCode((byte) 'Z'), callCodes['Z']);
+    Assert.assertEquals(MethylationCounts.callCode((byte) 'z'), callCodes['z']);
+    Assert.assertEquals(MethylationCounts.NO_CALL, callCodes['H']);
+    Assert.assertEquals(MethylationCounts.NO_CALL, callCodes['x']);
+    Assert.assertEquals(MethylationCounts.NO_CALL, callCodes['.']);
+    Assert.assertEquals(MethylationCounts.UNKNOWN_CALL, callCodes['Q']);
+  }
+
+  @Test
+  public void testCountCall() {
+    CoordinateConverter coordinateConverter = new CoordinateConverter(
+      Arrays.asList(
+        new CoordinateConverter.ReferenceSequence("Chr1", 1000),
+        new CoordinateConverter.ReferenceSequence("Chr2", 1000)
+      ),
+      0
+    );
+    long windowStart = coordinateConverter.convert("Chr2", 100);
+    MethylationCounts counts = new MethylationCounts(coordinateConverter, windowStart, windowStart + 100, 0);
+
+    // Calls counted at their offset into the window match those counted by contig and position
+    int contigOffset = counts.contigOffset("Chr2");
+    counts.countCall(MethylationCounts.callCode((byte) 'Z'), contigOffset + 120, true);
+    counts.countCall(MethylationCounts.callCode((byte) 'z'), contigOffset + 120, true);
+    counts.count('Z', true, "Chr2", 120);
+    counts.count('z', false, "Chr2", 150);
+
+    List<String> calls = new ArrayList<>();
+    MethylationCounts.MethylationCallIterator iterator = counts.iterator(MethylationCounts.CPG_CONTEXT);
+    while (iterator.hasNext()) {
+      MethylationCall call = iterator.next();
+      calls.add(call.contig + ":" + call.position + call.strand + call.methylatedCount + "/" + call.totalCount);
+    }
+
+    Assert.assertEquals(Arrays.asList("Chr2:120+2/3", "Chr2:150-0/1"), calls);
+  }
+
+  @Test
+  public void testIteratorCollapsedAcrossStop() {
+    CoordinateConverter coordinateConverter = new CoordinateConverter(
+      Arrays.asList(
+        new CoordinateConverter.ReferenceSequence("Chr1", 1000),
+        new CoordinateConverter.ReferenceSequence("Chr2", 1000)
+      ),
+      0
+    );
+    MethylationCounts counts = new MethylationCounts(coordinateConverter);
+    counts.count('Z', true, "Chr1", 10);
+    counts.count('z', false, "Chr1", 11);
+    counts.count('Z', true, "Chr1", 1000);
+    counts.count('Z', true, "Chr2", 50);
+
+    // The site at the stop is carried since its reverse strand may be counted later, unless it ends its contig
+    MethylationCounts.MethylationCallIterator iterator = counts.iterator(
+      MethylationCounts.CPG_CONTEXT,
+      coordinateConverter.convert("Chr2", 50),
+      true
+    );
+    Assert.assertEquals(Arrays.asList("Chr1:10+1/2", "Chr1:1000+1/1"), describe(iterator));
+    ArrayList<MethylationCall> remainders = iterator.getRemainingCounts();
+    Assert.assertEquals(Arrays.asList("Chr2:50+1/1"), describe(remainders.iterator()));
+
+    // A site at the end of its contig cannot gain any later calls
+    MethylationCounts.MethylationCallIterator contigStopIterator = counts.iterator(
+      MethylationCounts.CPG_CONTEXT,
+      coordinateConverter.convert("Chr1", 1000),
+      true
+    );
+    Assert.assertEquals(Arrays.asList("Chr1:10+1/2", "Chr1:1000+1/1"), describe(contigStopIterator));
+
+    // The carried site is completed by the reverse strand calls of the following block
+    MethylationCounts followingCounts = new MethylationCounts(coordinateConverter);
+    followingCounts.countAll(ImmutableMap.of(MethylationCounts.CPG_CONTEXT, remainders));
+    followingCounts.count('z', false, "Chr2", 51);
+    Assert.assertEquals(
+      Arrays.asList("Chr2:50+1/2"),
+      describe(followingCounts.iterator(MethylationCounts.CPG_CONTEXT, followingCounts.getStop(), true))
+    );
+  }
+
+  private static List<String> describe(Iterator<MethylationCall> calls) {
+    List<String> descriptions = new ArrayList<>();
+    while (calls.hasNext()) {
+      MethylationCall call = calls.next();
+      descriptions.add(call.contig + ":" + call.position + call.strand + call.methylatedCount + "/" + call.totalCount);
+    }
+
+    return descriptions;
+  }
+}
@@ -0,0 +1,106 @@
+package com.tools.methylation.extractor;
+
+import com.google.common.base.Joiner;
+import com.tools.ApplicationTest;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMFileWriter;
+import net.sf.samtools.SAMFileWriterFactory;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ParallelBamIteratorTest extends ApplicationTest {
+  @Test
+  public void testIterator() throws Exception {
+    Path samPath = getFileResource("/methylation/paired_end_spolyrhiza_reads.fastq_bismark.sam");
+    Path bamPath = createTempFile("bam");
+    try (SAMFileReader samReader = new SAMFileReader(samPath.toFile())) {
+      SAMFileWriterFactory samFileWriterFactory = new SAMFileWriterFactory();
+      SAMFileWriter samWriter = samFileWriterFactory.makeBAMWriter(samReader.getFileHeader(), true, bamPath.toFile());
+      for (SAMRecord samRecord : samReader) samWriter.addAlignment(samRecord);
+      samWriter.close();
+    }
+
+    // The calls at low quality bases are dropped from the raw records as from the SAMRecords
+    ReadFilter readFilter = new ReadFilter(0, 0, 35, Integer.MAX_VALUE);
+    int maskedCount = 0;
+
+    List<String> expectedRecords = new ArrayList<>();
+    List<String> contigs = new ArrayList<>();
+    try (SAMFileReader samReader = new SAMFileReader(bamPath.toFile())) {
+      for (SAMSequenceRecord sequenceRecord : samReader.getFileHeader().getSequenceDictionary().getSequences()) {
+        contigs.add(sequenceRecord.getSequenceName());
+      }
+
+      for (SAMRecord samRecord : samReader) {
+        String methylationCalls = (String) samRecord.getAttribute(AlignedRead.METHYLATION_TAG);
+        AlignedRead read = AlignedRead.fromRecord(samRecord, readFilter);
+        if (!new String(read.methylationCalls, StandardCharsets.US_ASCII).equals(methylationCalls)) maskedCount++;
+
+        expectedRecords.add(describe(
+          samRecord.getReferenceIndex(),
+          samRecord.getAlignmentStart(),
+          samRecord.getFlags(),
+          samRecord.getMappingQuality(),
+          methylationCalls.replaceAll("[^XHU]", "").length(),
+          read
+        ));
+      }
+    }
+
+    // Inflate a single block at a time so records are split across the batches
+    List<String> records = new ArrayList<>();
+    ParallelBamIterator iterator = new ParallelBamIterator(bamPath, 3, 1);
+    RawBamRecord lastRecord = null;
+    int mateCount = 0;
+    while (iterator.hasNext()) {
+      RawBamRecord record = iterator.next();
+      records.add(describe(
+        record.getReferenceIndex(),
+        record.getAlignmentStart(),
+        record.getFlags(),
+        record.getMappingQuality(),
+        record.getMethylatedNonCpgCount(),
+        record.toAlignedRead(contigs, readFilter)
+      ));
+      if (lastRecord != null && lastRecord.hasSameName(record)) mateCount++;
+      lastRecord = record;
+    }
+    iterator.close();
+
+    Assert.assertTrue(expectedRecords.size() > 0);
+    Assert.assertEquals(expectedRecords, records);
+    Assert.assertTrue(mateCount > 0);
+    Assert.assertTrue(maskedCount > 0);
+  }
+
+  private static String describe(int referenceIndex,
+                                 int start,
+                                 int flags,
+                                 int mappingQuality,
+                                 int methylatedNonCpgCount,
+                                 AlignedRead read) {
+    return Joiner.on(" ").join(
+      referenceIndex,
+      start,
+      flags,
+      mappingQuality,
+      methylatedNonCpgCount,
+      read.contig,
+      read.referenceIndex,
+      read.stop,
+      Arrays.toString(read.cigar),
+      new String(read.methylationCalls, StandardCharsets.US_ASCII),
+      read.isForward,
+      read.flags,
+      read.mateStart
+    );
+  }
+}
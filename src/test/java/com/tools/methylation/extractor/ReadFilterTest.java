@@ -0,0 +1,49 @@
+package com.tools.methylation.extractor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ReadFilterTest {
+  @Test
+  public void testIsExcluded() {
+    ReadFilter readFilter = new ReadFilter(20, 0x100 | 0x200, 0, Integer.MAX_VALUE);
+    Assert.assertFalse(readFilter.isExcluded(0x63, 20));
+    Assert.assertTrue(readFilter.isExcluded(0x63, 19));
+    Assert.assertTrue(readFilter.isExcluded(0x163, 40));
+    Assert.assertTrue(readFilter.isExcluded(0x200, 40));
+    Assert.assertFalse(ReadFilter.NONE.isExcluded(0xFFF, 0));
+  }
+
+  @Test
+  public void testIsUnconverted() {
+    ReadFilter readFilter = new ReadFilter(0, 0, 0, 2);
+    Assert.assertTrue(readFilter.isConversionChecked());
+    Assert.assertFalse(readFilter.isUnconverted(2));
+    Assert.assertTrue(readFilter.isUnconverted(3));
+    Assert.assertFalse(ReadFilter.NONE.isConversionChecked());
+
+    int count = 0;
+    for (byte call : "ZzXxHhUu.".getBytes(StandardCharsets.US_ASCII)) {
+      if (ReadFilter.isMethylatedNonCpg(call)) count++;
+    }
+    Assert.assertEquals(3, count);
+  }
+
+  @Test
+  public void testMaskCalls() {
+    ReadFilter readFilter = new ReadFilter(0, 0, 20, Integer.MAX_VALUE);
+
+    // The qualities of the calls may follow other bytes
+    byte[] methylationCalls = "Z.xH".getBytes(StandardCharsets.US_ASCII);
+    readFilter.maskCalls(methylationCalls, new byte[] {0, 0, 30, 10, 19, 20}, 2);
+    Assert.assertEquals("Z..H", new String(methylationCalls, StandardCharsets.US_ASCII));
+
+    // Missing qualities leave the calls as they are
+    methylationCalls = "Z.xH".getBytes(StandardCharsets.US_ASCII);
+    readFilter.maskCalls(methylationCalls, new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}, 0);
+    readFilter.maskCalls(methylationCalls, new byte[0], 0);
+    Assert.assertEquals("Z.xH", new String(methylationCalls, StandardCharsets.US_ASCII));
+  }
+}
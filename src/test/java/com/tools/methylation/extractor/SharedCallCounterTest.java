@@ -0,0 +1,92 @@
+package com.tools.methylation.extractor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SharedCallCounterTest {
+  @Test
+  public void testAdd() {
+    SharedCallCounter counter = new SharedCallCounter(5000);
+    counter.add(4000 << 2 | 0x3, 2);
+    counter.add(150 << 2, 1);
+    counter.add(150 << 2 | 0x1, 4);
+    counter.add(150 << 2, 1);
+
+    Assert.assertEquals(Arrays.asList(150 << 2, 150 << 2 | 0x1, 4000 << 2 | 0x3), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(2, 4, 2), getCounts(counter));
+  }
+
+  @Test
+  public void testAddOutsideWindow() {
+    // Calls on either side of the window are still counted in key order
+    SharedCallCounter counter = new SharedCallCounter(10);
+    counter.add(5 << 2, 1);
+    counter.add(90000 << 2 | 0x2, 3);
+    counter.add(-7 << 2 | 0x1, 5);
+    counter.add(-7 << 2 | 0x1, 1);
+
+    Assert.assertEquals(Arrays.asList(-7 << 2 | 0x1, 5 << 2, 90000 << 2 | 0x2), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(6, 1, 3), getCounts(counter));
+  }
+
+  @Test
+  public void testAddPastUnallocatedPage() {
+    // The calls just past the window follow a last page that was never allocated
+    SharedCallCounter counter = new SharedCallCounter(5000);
+    counter.add(100 << 2, 1);
+    counter.add(5001 << 2 | 0x2, 2);
+
+    Assert.assertEquals(Arrays.asList(100 << 2, 5001 << 2 | 0x2), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(1, 2), getCounts(counter));
+  }
+
+  @Test
+  public void testAddConcurrently() throws Exception {
+    final SharedCallCounter counter = new SharedCallCounter(100000);
+
+    // Every thread counts each call once, including calls past the end of the window
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int position = 0; position < 101000; position += 7) counter.add(position << 2 | 0x1, 1);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) thread.join();
+
+    List<Integer> keys = getKeys(counter);
+    List<Integer> counts = getCounts(counter);
+    Assert.assertEquals((101000 + 6) / 7, keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      Assert.assertEquals(i * 7 << 2 | 0x1, (int) keys.get(i));
+      Assert.assertEquals(threads.length, (int) counts.get(i));
+    }
+  }
+
+  private static List<Integer> getKeys(SharedCallCounter counter) {
+    ArrayList<Integer> keys = new ArrayList<>();
+    int slotCount = counter.getSlotCount();
+    for (int slot = counter.nextSlot(0); slot < slotCount; slot = counter.nextSlot(slot + 1)) {
+      keys.add(counter.getKey(slot));
+    }
+
+    return keys;
+  }
+
+  private static List<Integer> getCounts(SharedCallCounter counter) {
+    ArrayList<Integer> counts = new ArrayList<>();
+    int slotCount = counter.getSlotCount();
+    for (int slot = counter.nextSlot(0); slot < slotCount; slot = counter.nextSlot(slot + 1)) {
+      counts.add(counter.getCount(slot));
+    }
+
+    return counts;
+  }
+}
@@ -0,0 +1,84 @@
+package com.tools.methylation.extractor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SparseCallCounterTest {
+  @Test
+  public void testAdd() {
+    SparseCallCounter counter = new SparseCallCounter();
+    counter.add(4000000 << 2 | 0x3, 2);
+    counter.add(150 << 2, 1);
+    counter.add(150 << 2 | 0x1, 4);
+    counter.add(150 << 2, 1);
+
+    Assert.assertEquals(Arrays.asList(150 << 2, 150 << 2 | 0x1, 4000000 << 2 | 0x3), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(2, 4, 2), getCounts(counter));
+  }
+
+  @Test
+  public void testAddAfterIterating() {
+    // Adding to a sorted counter sorts it again on the next iteration
+    SparseCallCounter counter = new SparseCallCounter();
+    counter.add(500 << 2, 1);
+    Assert.assertEquals(Arrays.asList(500 << 2), getKeys(counter));
+
+    counter.add(20 << 2 | 0x2, 3);
+    counter.add(500 << 2, 1);
+    Assert.assertEquals(Arrays.asList(20 << 2 | 0x2, 500 << 2), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(3, 2), getCounts(counter));
+  }
+
+  @Test
+  public void testAddMany() {
+    // Enough calls are added to grow the table
+    SparseCallCounter counter = new SparseCallCounter();
+    for (int position = 99999 * 997; position >= 0; position -= 997) counter.add(position << 2, position + 1);
+
+    List<Integer> keys = getKeys(counter);
+    List<Integer> counts = getCounts(counter);
+    Assert.assertEquals(100000, keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      Assert.assertEquals(i * 997 << 2, (int) keys.get(i));
+      Assert.assertEquals(i * 997 + 1, (int) counts.get(i));
+    }
+  }
+
+  @Test
+  public void testAddAll() {
+    SparseCallCounter counter = new SparseCallCounter();
+    counter.add(10 << 2, 1);
+
+    DenseCallCounter otherCounter = new DenseCallCounter(50000, 100);
+    otherCounter.add(10 << 2, 2);
+    otherCounter.add(50001 << 2 | 0x1, 3);
+    counter.addAll(otherCounter);
+
+    Assert.assertEquals(Arrays.asList(10 << 2, 50001 << 2 | 0x1), getKeys(counter));
+    Assert.assertEquals(Arrays.asList(3, 3), getCounts(counter));
+  }
+
+  private static List<Integer> getKeys(CallCounter counter) {
+    ArrayList<Integer> keys = new ArrayList<>();
+    int slotCount = counter.getSlotCount();
+    for (int slot = counter.nextSlot(0); slot < slotCount; slot = counter.nextSlot(slot + 1)) {
+      keys.add(counter.getKey(slot));
+    }
+
+    return keys;
+  }
+
+  private static List<Integer> getCounts(CallCounter counter) {
+    ArrayList<Integer> counts = new ArrayList<>();
+    int slotCount = counter.getSlotCount();
+    for (int slot = counter.nextSlot(0); slot < slotCount; slot = counter.nextSlot(slot + 1)) {
+      counts.add(counter.getCount(slot));
+    }
+
+    return counts;
+  }
+}
@@ -0,0 +1,132 @@
+package com.tools.methylation.extractor;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.JavaTestKit;
+import com.tools.ApplicationTest;
+import com.tools.actors.AbstractMessages;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class StreamingExtractorWriterTest extends ApplicationTest {
+  @Test
+  public void testWriteAcrossBlocks() throws Exception {
+    final ActorSystem system = ActorSystem.create("TestSys");
+
+    final Path cpgOutputPath = createTempFile("tab");
+    final Path chgOutputPath = createTempFile("tab");
+    final Path chhOutputPath = createTempFile("tab");
+    final Path cnOutputPath = createTempFile("tab");
+    final ContextWriters contextWriters = new ContextWriters(
+      cpgOutputPath,
+      chgOutputPath,
+      chhOutputPath,
+      cnOutputPath
+    );
+
+    final CoordinateConverter coordinateConverter = new CoordinateConverter(
+      Arrays.asList(new CoordinateConverter.ReferenceSequence("Chr1", 1000)),
+      0
+    );
+
+    // The first block completes the site before its last start and leaves the later site open
+    final MethylationCounts firstCounts = new MethylationCounts(coordinateConverter);
+    firstCounts.count('Z', true, "Chr1", 10);
+    firstCounts.count('z', true, "Chr1", 50);
+
+    // The second block adds to the carried site
+    final MethylationCounts secondCounts = new MethylationCounts(coordinateConverter);
+    secondCounts.count('Z', true, "Chr1", 50);
+    secondCounts.count('z', false, "Chr1", 60);
+
+    new JavaTestKit(system) {{
+      ActorRef subject = system.actorOf(StreamingExtractorWriter.props(contextWriters, getRef()));
+
+      subject.tell(new Messages.MethylationCalculated(0, firstCounts, 30), getRef());
+      expectMsgClass(AbstractMessages.WriteComplete.class);
+      subject.tell(new Messages.MethylationCalculated(1, secondCounts, 55), getRef());
+      expectMsgClass(AbstractMessages.WriteComplete.class);
+      subject.tell(new Messages.WriteAll(), getRef());
+      Messages.WriteAllComplete writeAllComplete = expectMsgClass(Messages.WriteAllComplete.class);
+
+      try {
+        Assert.assertEquals(
+          Arrays.asList("Chr1\t10\t+\t1\t1", "Chr1\t50\t+\t1\t2", "Chr1\t60\t-\t0\t1"),
+          Files.readAllLines(cpgOutputPath, Charset.forName("UTF-8"))
+        );
+        Assert.assertEquals(0, Files.size(chgOutputPath));
+      } catch (Exception exception) {
+        throw new RuntimeException(exception);
+      }
+      Assert.assertEquals(3, writeAllComplete.depthCounts.get("Chr1").siteCount);
+    }};
+
+    contextWriters.close();
+    system.shutdown();
+  }
+
+  @Test
+  public void testWriteFarAlongReference() throws Exception {
+    final ActorSystem system = ActorSystem.create("TestSys");
+
+    final Path cpgOutputPath = createTempFile("tab");
+    final Path chgOutputPath = createTempFile("tab");
+    final Path chhOutputPath = createTempFile("tab");
+    final Path cnOutputPath = createTempFile("tab");
+    final ContextWriters contextWriters = new ContextWriters(
+      cpgOutputPath,
+      chgOutputPath,
+      chhOutputPath,
+      cnOutputPath
+    );
+
+    // The flattened positions of the second contig are beyond the range of the counter keys
+    final CoordinateConverter coordinateConverter = new CoordinateConverter(
+      Arrays.asList(
+        new CoordinateConverter.ReferenceSequence("Chr1", 1500000000),
+        new CoordinateConverter.ReferenceSequence("Chr2", 1000)
+      ),
+      0
+    );
+
+    long firstStart = coordinateConverter.convert("Chr2", 10);
+    final MethylationCounts firstCounts = new MethylationCounts(coordinateConverter, firstStart, firstStart + 50, 0);
+    firstCounts.count('Z', true, "Chr2", 10);
+    firstCounts.count('z', true, "Chr2", 50);
+
+    long secondStart = coordinateConverter.convert("Chr2", 40);
+    final MethylationCounts secondCounts = new MethylationCounts(coordinateConverter, secondStart, secondStart + 30, 0);
+    secondCounts.count('Z', true, "Chr2", 50);
+    secondCounts.count('z', false, "Chr2", 60);
+
+    new JavaTestKit(system) {{
+      ActorRef subject = system.actorOf(StreamingExtractorWriter.props(contextWriters, getRef()));
+
+      long firstLastStart = coordinateConverter.convert("Chr2", 30);
+      subject.tell(new Messages.MethylationCalculated(0, firstCounts, firstLastStart), getRef());
+      expectMsgClass(AbstractMessages.WriteComplete.class);
+      long secondLastStart = coordinateConverter.convert("Chr2", 55);
+      subject.tell(new Messages.MethylationCalculated(1, secondCounts, secondLastStart), getRef());
+      expectMsgClass(AbstractMessages.WriteComplete.class);
+      subject.tell(new Messages.WriteAll(), getRef());
+      expectMsgClass(Messages.WriteAllComplete.class);
+
+      try {
+        Assert.assertEquals(
+          Arrays.asList("Chr2\t10\t+\t1\t1", "Chr2\t50\t+\t1\t2", "Chr2\t60\t-\t0\t1"),
+          Files.readAllLines(cpgOutputPath, Charset.forName("UTF-8"))
+        );
+      } catch (Exception exception) {
+        throw new RuntimeException(exception);
+      }
+    }};
+
+    contextWriters.close();
+    system.shutdown();
+  }
+}
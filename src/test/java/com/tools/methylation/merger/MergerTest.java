@@ -6,9 +6,12 @@ import akka.actor.Props;
 import akka.testkit.JavaTestKit;
 import akka.testkit.TestActorRef;
 import com.tools.ApplicationTest;
+import com.tools.io.CallBlock;
 import com.tools.io.MethylationCall;
+import com.tools.io.MethylationCallMerger;
 import com.tools.io.MethylationCallReader;
 import com.tools.io.SequenceDictionary;
+import com.tools.io.SiteBlock;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -23,11 +26,11 @@ public class MergerTest extends ApplicationTest {
   @Test
   public void testMerge() throws Exception {
     JavaTestKit testKit = new JavaTestKit(system);
-    Props props = Merger.props(getSequenceDictionary(), testKit.getTestActor());
+    Props props = Merger.props(testKit.getTestActor());
     TestActorRef<Merger> actorRef = TestActorRef.create(system, props);
     Merger actor = actorRef.underlyingActor();
 
-    ArrayList<MethylationCall> results = actor.merge(getCalls(), getSequenceDictionary().contigOrderMap);
+    CallBlock results = actor.merge(getSites());
     Assert.assertEquals(193, results.size());
 
     MethylationCall methylationCall = new MethylationCall("gi|9626243|ref|NC_001416.1|", 1518, '-', 0, 3);
@@ -36,17 +39,15 @@ public class MergerTest extends ApplicationTest {
 
   @Test
   public void testRun() throws Exception {
-    final SequenceDictionary sequenceDictionary = getSequenceDictionary();
-
     new JavaTestKit(system) {{
       // the run() method needs to finish within 3 seconds
       new Within(duration("3 seconds")) {
         protected void run() {
-          Props props = Merger.props(sequenceDictionary, getRef());
+          Props props = Merger.props(getRef());
           ActorRef subject = system.actorOf(props);
 
           try {
-            Messages.Work message = new Messages.Work(0, getCalls());
+            Messages.Work message = new Messages.Work(0, getSites());
             subject.tell(message, getRef());
             expectMsgClass(duration("1 second"), Messages.MergeComplete.class);
           } catch (Exception exception) {
@@ -57,24 +58,19 @@ public class MergerTest extends ApplicationTest {
     }};
   }
 
-  private ArrayList<ArrayDeque<MethylationCall>> getCalls() throws Exception {
+  private SiteBlock getSites() throws Exception {
     List<Path> inputPaths = Arrays.asList(
       getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab"),
       getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab"),
       getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab")
     );
 
-    ArrayList<ArrayDeque<MethylationCall>> methylationCalls = new ArrayList<>();
-    for (Path inputPath : inputPaths) {
-      try(InputStream inputStream = Files.newInputStream(inputPath);
-          MethylationCallReader callReader = new MethylationCallReader(inputStream)) {
-        ArrayDeque<MethylationCall> expectedCalls = new ArrayDeque<>();
-        while (callReader.hasNext()) expectedCalls.add(callReader.next());
-        methylationCalls.add(expectedCalls);
-      }
-    }
+    ArrayList<MethylationCallReader> callReaders = new ArrayList<>();
+    for (Path inputPath : inputPaths) callReaders.add(new MethylationCallReader(Files.newInputStream(inputPath)));
 
-    return methylationCalls;
+    try (MethylationCallMerger callMerger = new MethylationCallMerger(callReaders, getSequenceDictionary())) {
+      return callMerger.readBlock(Integer.MAX_VALUE);
+    }
   }
 
   private SequenceDictionary getSequenceDictionary() throws Exception {
@@ -9,14 +9,13 @@ import com.tools.ApplicationTest;
 import com.tools.io.MethylationCall;
 import com.tools.io.MethylationCallReader;
 import com.tools.io.SequenceDictionary;
+import com.tools.io.SiteBlock;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,38 +31,39 @@ public class ReaderTest extends ApplicationTest {
       getFileResource("/methylation/single_end_athaliana_reads.CpG_context.tab")
     );
 
+    ArrayList<MethylationCallReader> callReaders = new ArrayList<>();
+    for (Path inputPath : inputPaths) callReaders.add(new MethylationCallReader(Files.newInputStream(inputPath)));
+
     JavaTestKit testKit = new JavaTestKit(system);
-    SequenceDictionary consensusDictionary = getConsensusDictionary(inputPaths);
-    Props props = Reader.props(inputPaths, consensusDictionary, 1000, testKit.getTestActor());
+    SequenceDictionary consensusDictionary = callReaders.get(0).sequenceDictionary;
+    Props props = Reader.props(callReaders, consensusDictionary, 1000, testKit.getTestActor());
     TestActorRef<Reader> actorRef = TestActorRef.create(system, props);
     Reader actor = actorRef.underlyingActor();
 
-    ArrayList<ArrayDeque<MethylationCall>> methylationCalls = actor.read(0).mergeableBlocks;
-    Assert.assertEquals(methylationCalls.size(), 3);
+    SiteBlock sites = actor.read(0).sites;
+    Assert.assertEquals(3, sites.inputCount);
 
     for (int i = 0; i < inputPaths.size(); i++) {
       Path inputPath = inputPaths.get(i);
-      ArrayDeque<MethylationCall> calls = methylationCalls.get(i);
 
       try(InputStream inputStream = Files.newInputStream(inputPath);
           MethylationCallReader callReader = new MethylationCallReader(inputStream)) {
-        ArrayDeque<MethylationCall> expectedCalls = new ArrayDeque<>();
+        ArrayList<MethylationCall> expectedCalls = new ArrayList<>();
         while (callReader.hasNext()) expectedCalls.add(callReader.next());
+        Assert.assertEquals(expectedCalls.size(), sites.size());
 
-        ArrayList<MethylationCall> callsList = new ArrayList<>(calls);
-        ArrayList<MethylationCall> expectedCallsList = new ArrayList<>(expectedCalls);
-        Assert.assertEquals(expectedCallsList, callsList);
+        for (int site = 0; site < sites.size(); site++) {
+          MethylationCall call = new MethylationCall(
+            sites.getContig(site),
+            sites.getPosition(site),
+            sites.getStrand(site),
+            sites.getMethylatedCount(site, i),
+            sites.getTotalCount(site, i)
+          );
+          Assert.assertTrue(sites.isPresent(site, i));
+          Assert.assertEquals(expectedCalls.get(site), call);
+        }
       }
     }
   }
-
-  private SequenceDictionary getConsensusDictionary(List<Path> inputPaths) throws IOException {
-    SequenceDictionary consensusDictionary;
-    try (InputStream inputStream = Files.newInputStream(inputPaths.get(0));
-         MethylationCallReader callReader = new MethylationCallReader(inputStream)) {
-      consensusDictionary = callReader.sequenceDictionary;
-    }
-
-    return consensusDictionary;
-  }
 }
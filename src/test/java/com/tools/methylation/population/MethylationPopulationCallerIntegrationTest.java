@@ -5,13 +5,10 @@ import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.JavaTestKit;
 import com.tools.ApplicationTest;
-import com.tools.io.MethylationCallReader;
-import com.tools.io.SequenceDictionary;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -30,17 +27,11 @@ public class MethylationPopulationCallerIntegrationTest extends ApplicationTest
     );
     final Path outputPath = createTempFile("tab");
 
-    final SequenceDictionary sequenceDictionary;
-    try (InputStream inputStream = Files.newInputStream(inputPaths.get(0))) {
-      MethylationCallReader callReader = new MethylationCallReader(inputStream);
-      sequenceDictionary = callReader.sequenceDictionary;
-    }
-
     new JavaTestKit(system) {{
       new Within(duration("50 seconds")) {
         protected void run() {
           try {
-            Props props = Master.props(inputPaths, outputPath, sequenceDictionary, 2, 1);
+            Props props = Master.props(inputPaths, outputPath, 2, 1);
             ActorRef subject = system.actorOf(props);
 
             // Start the run
@@ -5,6 +5,7 @@ import akka.actor.Props;
 import akka.testkit.JavaTestKit;
 import akka.testkit.TestActorRef;
 import com.tools.ApplicationTest;
+import com.tools.io.SiteBlock;
 import com.tools.methylation.utils.CallRegions;
 import com.tools.methylation.utils.Region;
 import com.tools.methylation.utils.RegionReader;
@@ -43,7 +44,7 @@ public class RegionReaderTest extends ApplicationTest {
     CallRegions callRegions = (CallRegions) actor.read(0);
     Assert.assertEquals(3, callRegions.regionCalls.size());
 
-    Assert.assertEquals(0, callRegions.regionCalls.get(1).calls.get(0).size());
+    Assert.assertEquals(0, countCalls(callRegions.regionCalls.get(1).sites, 0));
     Assert.assertEquals("19", callRegions.regionCalls.get(2).region.contig);
   }
 
@@ -71,7 +72,16 @@ public class RegionReaderTest extends ApplicationTest {
     CallRegions callRegions = (CallRegions) actor.read(0);
     Assert.assertEquals(2, callRegions.regionCalls.size());
 
-    Assert.assertEquals(33, callRegions.regionCalls.get(0).calls.get(0).size());
-    Assert.assertEquals(33, callRegions.regionCalls.get(1).calls.get(0).size());
+    Assert.assertEquals(33, countCalls(callRegions.regionCalls.get(0).sites, 0));
+    Assert.assertEquals(33, countCalls(callRegions.regionCalls.get(1).sites, 0));
+  }
+
+  private int countCalls(SiteBlock sites, int input) {
+    int count = 0;
+    for (int site = 0; site < sites.size(); site++) {
+      if (sites.isPresent(site, input)) count++;
+    }
+
+    return count;
   }
 }